@@ -39,7 +39,18 @@ public class Environment {
 							 CREDITS_TEXTURE_FILE,
 							 OSM_COPYRIGHT_TEXTURE_FILE,
 							 VERSION_STRING,
-							 SETTINGS_FILE_PATH
+							 SETTINGS_FILE_PATH,
+							 METRICS_PORT, // The port of the local metrics-endpoint or empty if it is disabled
+							 TILE_CACHE_EVICTION_POLICY, // The name of the strategy removing tiles from cache, s. EvictionPolicy.Type
+							 TILE_STORE_DIR, // The directory of the file packing the cached tile-images, s. PackedTileStore
+							 TILE_CACHE_JOURNAL_FILE, // The path to the journal of the persistent tile-caches index, s. TileCacheJournal
+							 TILE_CACHE_CHECKPOINT_FILE, // The path to the last checkpoint of the persistent tile-caches index
+							 TILE_MEMORY_CACHE_SIZE, // The maximum size of the decoded tiles kept in memory in bytes, s. DecodedTileTier
+							 TILE_PIXEL_POOL_SIZE, // The maximum size of the pooled pixel-buffers of decoded tiles in bytes, s. PixelBufferPool
+							 TILE_CACHE_DELETION_RATE, // The maximum number of cached tiles deleted per second, s. TileCacheJanitor
+							 TILE_SEED_PROGRESS_FILE, // The path to the progress of seeding a region into the tile-cache, s. TileSeeder
+							 TILE_IDLE_PREFETCH_RING, // The number of tiles around the view prefetched while it stands still, s. IdleTilePrefetcher
+							 TILE_IDLE_PREFETCH_BANDWIDTH // The maximum bytes per second prefetched while the view stands still, s. IdleTilePrefetcher
 							 };
 	
 	/**
@@ -105,6 +116,17 @@ public class Environment {
 		case OSM_COPYRIGHT_TEXTURE_FILE: return "res" + System.getProperty("file.separator") + "osmcpy.png";
 		case VERSION_STRING: return "Version 1.0.0.0 Stable";
 		case SETTINGS_FILE_PATH: return "config" + System.getProperty("file.separator") + "settings.xml";
+		case METRICS_PORT: return System.getProperty("gaia.metrics.port", "");
+		case TILE_CACHE_EVICTION_POLICY: return System.getProperty("gaia.tilecache.eviction", "W_TINY_LFU");
+		case TILE_STORE_DIR: return "tilestore";
+		case TILE_CACHE_JOURNAL_FILE: return "config" + System.getProperty("file.separator") + "tilecache.journal";
+		case TILE_CACHE_CHECKPOINT_FILE: return "config" + System.getProperty("file.separator") + "tilecache.checkpoint";
+		case TILE_MEMORY_CACHE_SIZE: return System.getProperty("gaia.tilecache.memory", Long.toString(64L * 1024 * 1024));
+		case TILE_PIXEL_POOL_SIZE: return System.getProperty("gaia.tilecache.pixelpool", Long.toString(128L * 1024 * 1024));
+		case TILE_CACHE_DELETION_RATE: return System.getProperty("gaia.tilecache.janitor.rate", "500");
+		case TILE_SEED_PROGRESS_FILE: return "config" + System.getProperty("file.separator") + "tileseed.progress";
+		case TILE_IDLE_PREFETCH_RING: return System.getProperty("gaia.tileprefetch.ring", "2");
+		case TILE_IDLE_PREFETCH_BANDWIDTH: return System.getProperty("gaia.tileprefetch.bandwidth", Long.toString(128L * 1024));
 		default: return "";
 		}
 	}
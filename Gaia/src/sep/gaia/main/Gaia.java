@@ -3,6 +3,7 @@ package sep.gaia.main;
 import java.awt.Cursor;
 import java.awt.Dimension;
 import java.io.File;
+import java.io.IOException;
 
 import javax.media.opengl.GLCapabilities;
 import javax.media.opengl.GLProfile;
@@ -39,6 +40,7 @@ import sep.gaia.renderer.layer.WikipediaLayer;
 import sep.gaia.resources.ResourceMaster;
 import sep.gaia.resources.markeroption.MarkerResourceManager;
 import sep.gaia.resources.markeroption.MarkerStorage;
+import sep.gaia.resources.monitoring.Monitor;
 import sep.gaia.resources.poi.POIManager;
 import sep.gaia.resources.tiles2d.TileManager;
 import sep.gaia.resources.weather.WeatherManager;
@@ -121,6 +123,7 @@ public class Gaia {
 		tileManager = new TileManager(profile);
 		tileManager.register(tileAdapter);
 		tileManager.disable();
+		tileAdapter.registerMetrics(TileManager.MANAGER_LABEL);
 		
 		ResourceMaster.getInstance().addResourceManager(tileManager);
 		
@@ -144,6 +147,7 @@ public class Gaia {
 		
 		poiManager.register(poiAdapter);
 		glState.register(poiManager);
+		poiAdapter.registerMetrics(POIManager.MANAGER_LABEL);
 		
 		// Wikipedia resource
 		wikipediaManager = new WikipediaManager();
@@ -224,6 +228,23 @@ public class Gaia {
 		canvas.requestFocusInWindow();
 		
 		animator.start();
+		
+		startMetricsEndpoint();
+	}
+	
+	/**
+	 * Starts serving the metrics of the resource-loading subsystem on the local machine,
+	 * if a port is set in the environment (see <code>EnvVariable.METRICS_PORT</code>).
+	 */
+	private void startMetricsEndpoint() {
+		String port = Environment.getInstance().getString(EnvVariable.METRICS_PORT);
+		if(!port.isEmpty()) {
+			try {
+				Monitor.getInstance().startEndpoint(Integer.parseInt(port));
+			} catch (IOException | NumberFormatException e) {
+				Logger.getInstance().error("Cannot start metrics-endpoint on port " + port + ": " + e.getMessage());
+			}
+		}
 	}
 
 	private void addShutdownHook() {
@@ -17,6 +17,8 @@ import javax.media.opengl.GLProfile;
 
 import sep.gaia.resources.DataResource;
 import sep.gaia.resources.DuplicateFreeQueue;
+import sep.gaia.resources.monitoring.Monitor;
+import sep.gaia.resources.tiles2d.PooledTextureData;
 import sep.gaia.util.Logger;
 
 import com.jogamp.opengl.util.texture.Texture;
@@ -122,8 +124,11 @@ abstract class TextureAdapter<R extends DataResource> extends ResourceAdapter<R>
 				return false;
 			}
 		}
-		
-		
+
+		@Override
+		public int hashCode() {
+			return name.hashCode();
+		}
 	}
 
 	/**
@@ -200,11 +205,18 @@ abstract class TextureAdapter<R extends DataResource> extends ResourceAdapter<R>
 	protected void performGLCalls(GL2 gl) {
 		 while(!toBeBound.isEmpty()) {
 			 NamedImage<TextureData> namedTexData = toBeBound.pop();
+			 TextureData texData = namedTexData.getImage();
+			 
+			 if(texData instanceof PooledTextureData && ((PooledTextureData) texData).isReleased()) {
+				 // The pixels were already uploaded and returned to their pool:
+				 Logger.getInstance().warning("Texture-data of " + namedTexData.getName() + " was already released.");
+				 continue;
+			 }
 			 
 			 // Create the texture from the tiles image without auto-generating mipmaps:
 			 Texture texture;
 			 try {
-				 texture = TextureIO.newTexture(namedTexData.getImage());
+				 texture = TextureIO.newTexture(texData);
 				 
 				 //System.out.println("Created a texture " + namedTexData.getName());
 				 
@@ -213,6 +225,11 @@ abstract class TextureAdapter<R extends DataResource> extends ResourceAdapter<R>
 				 return;
 			 }
 			 
+			 // The pixels are on the graphics-card now, so give them back to their pool:
+			 if(texData instanceof PooledTextureData) {
+				 ((PooledTextureData) texData).release();
+			 }
+			 
 			 NamedImage<Texture> namedTexture = new NamedImage<Texture>(namedTexData.getName(), 
 					 													texture);
 			 
@@ -220,6 +237,7 @@ abstract class TextureAdapter<R extends DataResource> extends ResourceAdapter<R>
 			 primaryTexturesLock.lock();
 			 primaryTextures.add(namedTexture);
 			 primaryTexturesLock.unlock();
+			 onTextureCreated(namedTexture.getName());
 			 
 			 // Before removing entries from secondary cache, lock it:
 			 secondaryTexturesLock.lock();
@@ -229,11 +247,10 @@ abstract class TextureAdapter<R extends DataResource> extends ResourceAdapter<R>
 				 
 				 // Destroy the first inserted entries:
 				 for(int i = 0; i < DESTROY_COUNT; i++) {
-					 Texture removedTexture = secondaryTextures.get(0).getImage();
-					 removedTexture.destroy(gl);
-					 secondaryTextures.remove(0);
+					 NamedImage<Texture> removed = secondaryTextures.remove(0);
+					 removed.getImage().destroy(gl);
+					 onTextureDestroyed(removed.getName());
 				 }
-				 System.gc();
 			 }
 			 
 			 // Removing entries done. So free the lock:
@@ -241,6 +258,20 @@ abstract class TextureAdapter<R extends DataResource> extends ResourceAdapter<R>
 		 }
 	}
 	
+	/**
+	 * Called by the OpenGL-thread after a texture was created. The default
+	 * implementation doesn't do anything.
+	 * @param key The key of the texture.
+	 */
+	protected void onTextureCreated(String key) { }
+	
+	/**
+	 * Called by the OpenGL-thread after a texture was destroyed. The default
+	 * implementation doesn't do anything.
+	 * @param key The key of the texture.
+	 */
+	protected void onTextureDestroyed(String key) { }
+	
 	/**
 	 * Shifts all textures contained in the primary texture-cache into the
 	 * secondary texture-cache (cf. <a href="#caching">Caching</a>).
@@ -401,6 +432,73 @@ abstract class TextureAdapter<R extends DataResource> extends ResourceAdapter<R>
 		
 	}
 	
+	/**
+	 * Publishes the metrics of this adapter at the <code>Monitor</code>.
+	 * @param name The name to publish the metrics under, e.g. the resource drawn.
+	 */
+	public void registerMetrics(String name) {
+		Monitor.getInstance().register("TextureAdapter", name, new TextureStats(this));
+	}
+	
+	/**
+	 * Returns the number of textures in the primary texture-cache.
+	 * @return The number of textures currently required for drawing.
+	 */
+	public int getPrimaryTextureCount() {
+		primaryTexturesLock.lock();
+		try {
+			return primaryTextures.size();
+		} finally {
+			primaryTexturesLock.unlock();
+		}
+	}
+	
+	/**
+	 * Returns the number of textures in the secondary texture-cache.
+	 * @return The number of textures kept for future use.
+	 */
+	public int getSecondaryTextureCount() {
+		secondaryTexturesLock.lock();
+		try {
+			return secondaryTextures.size();
+		} finally {
+			secondaryTexturesLock.unlock();
+		}
+	}
+	
+	/**
+	 * Returns the number of textures scheduled but not created yet.
+	 * @return The number of textures waiting for the OpenGL-thread.
+	 */
+	public int getPendingTextureCount() {
+		return toBeBound.size();
+	}
+	
+	/**
+	 * Returns the estimated memory used by the textures of both texture-caches.
+	 * @return The estimated size of all textures created in bytes.
+	 */
+	public long getResidentTextureBytes() {
+		long bytes = 0;
+		primaryTexturesLock.lock();
+		try {
+			for(NamedImage<Texture> current : primaryTextures) {
+				bytes += current.getImage().getEstimatedMemorySize();
+			}
+		} finally {
+			primaryTexturesLock.unlock();
+		}
+		secondaryTexturesLock.lock();
+		try {
+			for(NamedImage<Texture> current : secondaryTextures) {
+				bytes += current.getImage().getEstimatedMemorySize();
+			}
+		} finally {
+			secondaryTexturesLock.unlock();
+		}
+		return bytes;
+	}
+	
 	/**
 	 * Checks first if a texture with the given key is contained in primary texture-cache.
 	 * If it is not the secondary texture-cache is checked.
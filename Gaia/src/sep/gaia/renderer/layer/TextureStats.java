@@ -0,0 +1,60 @@
+package sep.gaia.renderer.layer;
+
+import sep.gaia.resources.monitoring.MetricsSource;
+import sep.gaia.resources.monitoring.MetricsWriter;
+
+/**
+ * Provides the metrics of a <code>TextureAdapter</code>: the textures resident
+ * on the GPU and those waiting for creation.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class TextureStats implements TextureStatsMBean, MetricsSource {
+
+	/**
+	 * The adapter observed.
+	 */
+	private TextureAdapter<?> adapter;
+
+	/**
+	 * Initializes the statistics.
+	 * @param adapter The adapter to observe.
+	 */
+	TextureStats(TextureAdapter<?> adapter) {
+		this.adapter = adapter;
+	}
+
+	@Override
+	public int getPrimaryTextures() {
+		return adapter.getPrimaryTextureCount();
+	}
+
+	@Override
+	public int getSecondaryTextures() {
+		return adapter.getSecondaryTextureCount();
+	}
+
+	@Override
+	public int getPendingTextures() {
+		return adapter.getPendingTextureCount();
+	}
+
+	@Override
+	public long getResidentBytes() {
+		return adapter.getResidentTextureBytes();
+	}
+
+	@Override
+	public void collect(MetricsWriter writer, String labels) {
+		String help = "Textures resident on the GPU per texture-cache.";
+		writer.add("gpu_textures_resident", MetricsWriter.Type.GAUGE, help,
+				MetricsWriter.join(labels, MetricsWriter.label("cache", "primary")), getPrimaryTextures());
+		writer.add("gpu_textures_resident", MetricsWriter.Type.GAUGE, help,
+				MetricsWriter.join(labels, MetricsWriter.label("cache", "secondary")), getSecondaryTextures());
+		writer.add("gpu_textures_pending", MetricsWriter.Type.GAUGE,
+				"Textures waiting for creation by the OpenGL-thread.", labels, getPendingTextures());
+		writer.add("gpu_texture_bytes", MetricsWriter.Type.GAUGE,
+				"Estimated size of the textures resident on the GPU.", labels, getResidentBytes());
+	}
+}
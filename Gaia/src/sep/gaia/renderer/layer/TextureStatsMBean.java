@@ -0,0 +1,34 @@
+package sep.gaia.renderer.layer;
+
+/**
+ * Management-interface of <code>TextureStats</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public interface TextureStatsMBean {
+
+	/**
+	 * Returns the number of textures currently required for drawing.
+	 * @return The number of textures in the primary texture-cache.
+	 */
+	public int getPrimaryTextures();
+
+	/**
+	 * Returns the number of textures kept for future use.
+	 * @return The number of textures in the secondary texture-cache.
+	 */
+	public int getSecondaryTextures();
+
+	/**
+	 * Returns the number of textures waiting for creation by the OpenGL-thread.
+	 * @return The number of textures waiting.
+	 */
+	public int getPendingTextures();
+
+	/**
+	 * Returns the estimated size of all textures resident on the GPU.
+	 * @return The estimated size of the textures in bytes.
+	 */
+	public long getResidentBytes();
+}
@@ -1,12 +1,18 @@
 package sep.gaia.renderer.layer;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import sep.gaia.resources.tiles2d.TileResidencyTree;
+import sep.gaia.resources.tiles2d.Style;
 import sep.gaia.resources.tiles2d.TileResource;
-import sep.gaia.state.AbstractStateManager.StateType;
-import sep.gaia.state.GLState;
-import sep.gaia.state.StateManager;
 import sep.gaia.util.AlgoUtil;
 import sep.gaia.util.FloatBoundingBox;
 import sep.gaia.util.IntegerVector3D;
@@ -18,46 +24,177 @@ import com.jogamp.opengl.util.texture.TextureData;
  * processes to fit the requirements of the <code>TileLayer</code>.
  * Apart from converting coordinates the creation of textures from the tile-images
  * is done here.
- * 
+ * <p>
+ * Tiles of the current view still loading are drawn by the textures of other tiles
+ * covering them: Their nearest ancestor, of which the part covering the tile is drawn
+ * upscaled, or their descendants. Which tiles have a texture is recorded in a
+ * <code>TileResidencyTree</code> per style. The tree is accessed by the OpenGL-thread only.
+ *
  * @author Johannes Bauer, Matthias Fisch
  */
 public class TileAdapter extends TextureAdapter<TileResource> {
 
+	/**
+	 * The maximum number of zoom-levels an ancestor drawn in place of a tile may be above it.
+	 */
+	private static final int MAX_ANCESTOR_LEVELS = 6;
+
+	/**
+	 * The maximum number of zoom-levels descendants drawn in place of a tile may be below it.
+	 */
+	private static final int MAX_DESCENDANT_LEVELS = 2;
+
+	/**
+	 * The tiles having a texture, by the label of their style.
+	 */
+	private Map<String, TileResidencyTree> residency = new HashMap<>();
+
 	private FloatBoundingBox getTileBoundingBox(TileResource tile) {
 		IntegerVector3D upperLeft = tile.getCoord();
 		return AlgoUtil.tileToGLBox(upperLeft);
 	}
-	
+
 	@Override
 	public void onUpdate(Collection<TileResource> resources) {
 		if(resources != null) {
 			// Call the method of TextureAdapter as required:
 			super.onUpdate(resources);
-			
+
 			Collection<GLResource> drawableResources = new LinkedList<>();
-			
-			GLState glState = (GLState) StateManager.getInstance().getState(StateType.GLState);
-			FloatBoundingBox glBBox = glState.getBoundingBox();
-			glBBox.getLowerLeft();
-			
+			Set<String> loadedKeys = new HashSet<>();
+			Map<String, TileResource> loading = new LinkedHashMap<>();
+
 			for(TileResource tile : resources) {
+				Style style = tile.getStyle();
+				if(style == null) {
+					continue;
+				}
+				String key = tile.getKey();
 				if(!tile.isDummy()) {
-					String key = tile.getKey();
 					FloatBoundingBox bbox = getTileBoundingBox(tile);
 					TextureData texData = tile.getTextureData();
-					
+
 					scheduleTextureCreation(key, texData);
-					
-					GLResource glResource = new GLResource(key, bbox);
-					
+
+					GLResource glResource = new TileGLResource(key, bbox, tile.getCoord(), style.getLabel());
+
 					drawableResources.add(glResource);
+					loadedKeys.add(key);
+
+				} else {
+					loading.put(key, tile);
 				}
 			}
-			
+
+			// Tiles of the query not loaded yet are drawn by the tiles covering them:
+			for(TileResource dummy : loading.values()) {
+				if(!loadedKeys.contains(dummy.getKey())) {
+					drawableResources.add(new TileGLResource(dummy.getKey(), getTileBoundingBox(dummy),
+							dummy.getCoord(), dummy.getStyle().getLabel()));
+				}
+			}
+
 			setGLResources(drawableResources);
 		}
 	}
 
-	
-	
-}
\ No newline at end of file
+	/**
+	 * Returns the tiles to draw in place of a tile without texture. If resident
+	 * descendants cover the tile completely, they are drawn. Otherwise the nearest
+	 * resident ancestor is drawn, cropped to the region covering the tile. If there
+	 * is none either, the descendants covering the tile partially are drawn.
+	 * Must be called by the OpenGL-thread.
+	 *
+	 * @param missing The tile without texture.
+	 * @return The tiles to draw, which may be empty.
+	 */
+	public List<TileGLResource> getFallbacks(TileGLResource missing) {
+		TileResidencyTree tree = residency.get(missing.getStyleLabel());
+		if(tree == null) {
+			return Collections.emptyList();
+		}
+		IntegerVector3D coord = missing.getCoord();
+		String label = missing.getStyleLabel();
+
+		// Descendants are sharper than an upscaled ancestor, if they cover the tile:
+		List<IntegerVector3D> descendants = tree.findDescendants(coord, MAX_DESCENDANT_LEVELS);
+		float coverage = 0;
+		for(IntegerVector3D descendant : descendants) {
+			int levelsBelow = descendant.getZ() - coord.getZ();
+			coverage += 1f / (1 << (2 * levelsBelow));
+		}
+
+		List<TileGLResource> fallbacks = new LinkedList<>();
+		IntegerVector3D ancestor = coverage < 1 ? tree.findAncestor(coord, MAX_ANCESTOR_LEVELS) : null;
+		if(ancestor != null) {
+			int levelsAbove = coord.getZ() - ancestor.getZ();
+			float scale = 1 << levelsAbove;
+			TileGLResource fallback = new TileGLResource(
+					TileResource.generateKey(ancestor.getX(), ancestor.getY(), ancestor.getZ(), label),
+					missing.getBox(), ancestor, label);
+			// The part of the ancestor covering the tile:
+			fallback.setRegion((coord.getX() - (ancestor.getX() << levelsAbove)) / scale,
+					(coord.getY() - (ancestor.getY() << levelsAbove)) / scale, 1 / scale);
+			fallbacks.add(fallback);
+
+		} else {
+			for(IntegerVector3D descendant : descendants) {
+				fallbacks.add(new TileGLResource(
+						TileResource.generateKey(descendant.getX(), descendant.getY(), descendant.getZ(), label),
+						AlgoUtil.tileToGLBox(descendant), descendant, label));
+			}
+		}
+		return fallbacks;
+	}
+
+	@Override
+	protected void onTextureCreated(String key) {
+		String label = getStyleLabel(key);
+		IntegerVector3D coord = getCoord(key);
+		if(label != null && coord != null) {
+			TileResidencyTree tree = residency.get(label);
+			if(tree == null) {
+				tree = new TileResidencyTree();
+				residency.put(label, tree);
+			}
+			tree.add(coord);
+		}
+	}
+
+	@Override
+	protected void onTextureDestroyed(String key) {
+		String label = getStyleLabel(key);
+		IntegerVector3D coord = getCoord(key);
+		if(label != null && coord != null && residency.containsKey(label)) {
+			residency.get(label).remove(coord);
+		}
+	}
+
+	/**
+	 * Returns the coordinates of a tile from its key (see <code>TileResource.generateKey()</code>).
+	 * @param key The key of the tile.
+	 * @return The coordinates or <code>null</code> if <code>key</code> is not the key of a tile.
+	 */
+	private static IntegerVector3D getCoord(String key) {
+		String[] parts = key.split("-", 4);
+		if(parts.length < 4) {
+			return null;
+		}
+		try {
+			return new IntegerVector3D(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]),
+					Integer.parseInt(parts[2]));
+		} catch(NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the label of the style of a tile from its key (see <code>TileResource.generateKey()</code>).
+	 * @param key The key of the tile.
+	 * @return The label or <code>null</code> if <code>key</code> is not the key of a tile.
+	 */
+	private static String getStyleLabel(String key) {
+		String[] parts = key.split("-", 4);
+		return parts.length == 4 ? parts[3] : null;
+	}
+}
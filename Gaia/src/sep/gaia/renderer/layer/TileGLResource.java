@@ -0,0 +1,104 @@
+package sep.gaia.renderer.layer;
+
+import sep.gaia.util.FloatBoundingBox;
+import sep.gaia.util.IntegerVector3D;
+
+/**
+ * A tile prepared for drawing. Besides the area to draw on it knows the tile
+ * whose texture is drawn, so that another tile can be drawn in place of it
+ * while its texture is not available, and the region of the texture to draw.
+ *
+ * @author Matthias Fisch
+ */
+public class TileGLResource extends GLResource {
+
+	/**
+	 * The coordinates of the tile whose texture is drawn.
+	 */
+	private IntegerVector3D coord;
+
+	/**
+	 * The label of the style of the tile.
+	 */
+	private String styleLabel;
+
+	/**
+	 * The left edge of the region of the texture drawn as a fraction of its width.
+	 */
+	private float regionLeft;
+
+	/**
+	 * The upper edge of the region of the texture drawn as a fraction of its height.
+	 */
+	private float regionTop;
+
+	/**
+	 * The edge-length of the region of the texture drawn as a fraction of the texture.
+	 */
+	private float regionSize = 1;
+
+	/**
+	 * Initializes the resource drawing the whole texture of a tile.
+	 * @param key The key of the texture.
+	 * @param box The area to draw on in GL-coordinates.
+	 * @param coord The coordinates of the tile whose texture is drawn.
+	 * @param styleLabel The label of the style of the tile.
+	 */
+	public TileGLResource(String key, FloatBoundingBox box, IntegerVector3D coord, String styleLabel) {
+		super(key, box);
+		this.coord = coord;
+		this.styleLabel = styleLabel;
+	}
+
+	/**
+	 * Returns the coordinates of the tile whose texture is drawn.
+	 * @return The coordinates of the tile.
+	 */
+	public IntegerVector3D getCoord() {
+		return coord;
+	}
+
+	/**
+	 * Returns the label of the style of the tile.
+	 * @return The label of the style.
+	 */
+	public String getStyleLabel() {
+		return styleLabel;
+	}
+
+	/**
+	 * Sets the square region of the texture to draw.
+	 * @param left The left edge as a fraction of the width of the texture.
+	 * @param top The upper edge as a fraction of the height of the texture.
+	 * @param size The edge-length as a fraction of the texture.
+	 */
+	public void setRegion(float left, float top, float size) {
+		this.regionLeft = left;
+		this.regionTop = top;
+		this.regionSize = size;
+	}
+
+	/**
+	 * Returns the left edge of the region of the texture drawn.
+	 * @return The left edge as a fraction of the width of the texture.
+	 */
+	public float getRegionLeft() {
+		return regionLeft;
+	}
+
+	/**
+	 * Returns the upper edge of the region of the texture drawn.
+	 * @return The upper edge as a fraction of the height of the texture.
+	 */
+	public float getRegionTop() {
+		return regionTop;
+	}
+
+	/**
+	 * Returns the edge-length of the region of the texture drawn.
+	 * @return The edge-length as a fraction of the texture.
+	 */
+	public float getRegionSize() {
+		return regionSize;
+	}
+}
@@ -41,9 +41,10 @@ public class TileLayer extends AbstractLayer {
 	}
 
 	/**
-	 * Draws all tiles available for the current view. Also all OpenGL-specific
-	 * work in the adapter must be performed here. To accomplish this
-	 * <code>performGLCalls()</code> is called.
+	 * Draws all tiles available for the current view. Tiles whose texture is
+	 * not available yet are drawn by the tiles covering them, as far as those
+	 * have a texture. Also all OpenGL-specific work in the adapter must be
+	 * performed here. To accomplish this <code>performGLCalls()</code> is called.
 	 */
 	@Override
 	public void draw(GL2 gl, float height) {
@@ -57,35 +58,18 @@ public class TileLayer extends AbstractLayer {
 				// Get texture.
 				Texture tex = adapter.getTexture(current.getKey());
 
-				// Bind texture.
 				if (tex != null) {
-					tex.bind(gl);
-					
-					// Vertices to draw.
-					FloatBoundingBox box = current.getBox();
-					FloatVector3D[] vertices = box.getCornersCounterClockwise();
-					// Tex coords.
-					TextureCoords texCoords = tex.getImageTexCoords();
-					
-					// Backup the current Model-View-Matrix:
-					gl.glPushMatrix();
-					// Lift the x-y-pane up:
-					gl.glTranslatef(0, 0, height);
-					
-					// Draw vertices and pass tex coords.
-					gl.glBegin(GL2.GL_QUADS);
-					gl.glTexCoord2f(texCoords.right(), texCoords.top());
-					gl.glVertex3f(vertices[0].getX(), vertices[0].getY(), 0);
-					gl.glTexCoord2f(texCoords.left(), texCoords.top());
-					gl.glVertex3f(vertices[1].getX(), vertices[1].getY(), 0);
-					gl.glTexCoord2f(texCoords.left(), texCoords.bottom());
-					gl.glVertex3f(vertices[2].getX(), vertices[2].getY(), 0);
-					gl.glTexCoord2f(texCoords.right(), texCoords.bottom());
-					gl.glVertex3f(vertices[3].getX(), vertices[3].getY(), 0);
-					gl.glEnd();
-					
-					// Restore the old matrix:
-					gl.glPopMatrix();
+					drawTile(gl, tex, current, height);
+
+				} else if (current instanceof TileGLResource) {
+					// Draw the tiles covering the one still loading instead:
+					for (TileGLResource fallback : adapter
+							.getFallbacks((TileGLResource) current)) {
+						Texture fallbackTex = adapter.getTexture(fallback.getKey());
+						if (fallbackTex != null) {
+							drawTile(gl, fallbackTex, fallback, height);
+						}
+					}
 				}
 			}
 		}
@@ -96,4 +80,73 @@ public class TileLayer extends AbstractLayer {
 		}
 
 	}
+
+	/**
+	 * Draws the texture of a tile onto its area. For a
+	 * <code>TileGLResource</code> only its region of the texture is drawn.
+	 * 
+	 * @param gl
+	 *            The OpenGL-context to draw in.
+	 * @param tex
+	 *            The texture of the tile.
+	 * @param resource
+	 *            The tile to draw.
+	 * @param height
+	 *            The height of the layer.
+	 */
+	private void drawTile(GL2 gl, Texture tex, GLResource resource, float height) {
+		// Bind texture.
+		tex.bind(gl);
+
+		// Vertices to draw.
+		FloatBoundingBox box = resource.getBox();
+		FloatVector3D[] vertices = box.getCornersCounterClockwise();
+		// Tex coords.
+		TextureCoords texCoords = tex.getImageTexCoords();
+		if (resource instanceof TileGLResource) {
+			texCoords = cropTexCoords(texCoords, (TileGLResource) resource);
+		}
+
+		// Backup the current Model-View-Matrix:
+		gl.glPushMatrix();
+		// Lift the x-y-pane up:
+		gl.glTranslatef(0, 0, height);
+
+		// Draw vertices and pass tex coords.
+		gl.glBegin(GL2.GL_QUADS);
+		gl.glTexCoord2f(texCoords.right(), texCoords.top());
+		gl.glVertex3f(vertices[0].getX(), vertices[0].getY(), 0);
+		gl.glTexCoord2f(texCoords.left(), texCoords.top());
+		gl.glVertex3f(vertices[1].getX(), vertices[1].getY(), 0);
+		gl.glTexCoord2f(texCoords.left(), texCoords.bottom());
+		gl.glVertex3f(vertices[2].getX(), vertices[2].getY(), 0);
+		gl.glTexCoord2f(texCoords.right(), texCoords.bottom());
+		gl.glVertex3f(vertices[3].getX(), vertices[3].getY(), 0);
+		gl.glEnd();
+
+		// Restore the old matrix:
+		gl.glPopMatrix();
+	}
+
+	/**
+	 * Returns the texture-coordinates of the region of a texture to draw.
+	 * 
+	 * @param full
+	 *            The texture-coordinates of the whole image.
+	 * @param resource
+	 *            The tile defining the region.
+	 * @return The texture-coordinates of the region.
+	 */
+	private static TextureCoords cropTexCoords(TextureCoords full, TileGLResource resource) {
+		if (resource.getRegionSize() >= 1) {
+			return full;
+		}
+		// Image-rows may be stored bottom-up, so interpolate between the edges:
+		float width = full.right() - full.left();
+		float height = full.bottom() - full.top();
+		float left = full.left() + width * resource.getRegionLeft();
+		float top = full.top() + height * resource.getRegionTop();
+		return new TextureCoords(left, top + height * resource.getRegionSize(),
+				left + width * resource.getRegionSize(), top);
+	}
 }
\ No newline at end of file
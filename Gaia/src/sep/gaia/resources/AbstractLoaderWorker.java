@@ -2,15 +2,18 @@ package sep.gaia.resources;
 
 import java.util.Collection;
 import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 
 /**
- * A thread processing a part of a query in order to take e.g. advantage of
+ * A task processing a part of a query in order to take e.g. advantage of
  * higher bandwidth-usage. After a worker was created, a task has been assigned
- * and it was started, it will perform its query and finish afterwards.
+ * and it was submitted to the <code>WorkerPool</code>, it will perform its query
+ * on one of the pools threads and finish afterwards.
  * @author Matthias Fisch
  *
  */
-public abstract class AbstractLoaderWorker<Q extends Query, R extends DataResource> extends Thread {
+public abstract class AbstractLoaderWorker<Q extends Query, R extends DataResource> implements Runnable {
 
 	/**
 	 * The part of the query this worker is supposed to process.
@@ -32,12 +35,45 @@ public abstract class AbstractLoaderWorker<Q extends Query, R extends DataResour
 	 */
 	private boolean evaluated;
 
+	/**
+	 * Flag if the worker was submitted for execution and has not finished yet.
+	 */
+	private volatile boolean alive;
+
+	/**
+	 * Flag if the worker was requested to stop.
+	 */
+	private volatile boolean interrupted;
+
+	/**
+	 * The token cancelled when the worker is requested to stop. Blocking downloads
+	 * of the worker are aborted by it.
+	 */
+	private CancellationToken cancellationToken = new CancellationToken();
+
+	/**
+	 * The queue the worker adds itself to when it has finished or <code>null</code>
+	 * if nobody waits for its completion.
+	 */
+	private BlockingQueue<AbstractLoaderWorker<?, ?>> completionQueue;
+
+	/**
+	 * The sink receiving single results as soon as they are available or
+	 * <code>null</code> if results are only delivered when the worker has finished.
+	 */
+	private volatile ResultSink<R> resultSink;
+
+	/**
+	 * The keys of the resources of the sub-query still to be loaded or <code>null</code>
+	 * if all of them are.
+	 */
+	private volatile Set<String> retainedKeys;
+
 	/**
 	 * Initializes the worker.
 	 * @param subQuery The part of the query this worker is supposed to process.
 	 */
 	public AbstractLoaderWorker(Q subQuery) {
-		super();
 		this.subQuery = subQuery;
 	}
 	
@@ -48,16 +84,147 @@ public abstract class AbstractLoaderWorker<Q extends Query, R extends DataResour
 	 * should be used.
 	 */
 	public AbstractLoaderWorker(Q subQuery, Cache<R> cache) {
-		super();
 		this.subQuery = subQuery;
 		this.cache = cache;
 	}
 
 	/**
 	 * Performs the partial query and stores the result in <code>result</code>.
-	 * After the result is stored this thread terminates.
+	 * After the result is stored this task terminates.
 	 */
 	public abstract void run();
+
+	/**
+	 * Submits the worker to the default share of the <code>WorkerPool</code>.
+	 * Workers belonging to a loader are submitted to the loaders share instead.
+	 */
+	public void start() {
+		WorkerPool.getInstance().getDefaultShare().submit(this);
+	}
+
+	/**
+	 * Executes the worker on the calling thread. Called by the <code>WorkerPool</code>.
+	 * If the worker was interrupted before it was started, <code>run()</code> is skipped.
+	 */
+	void perform() {
+		try {
+			if(!interrupted) {
+				run();
+			}
+		} finally {
+			setFinished();
+		}
+	}
+
+	/**
+	 * Marks the worker as submitted for execution.
+	 */
+	void setSubmitted() {
+		alive = true;
+	}
+
+	/**
+	 * Marks the worker as finished and reports its completion to the
+	 * completion-queue, if one was set.
+	 */
+	void setFinished() {
+		alive = false;
+		if(completionQueue != null) {
+			completionQueue.offer(this);
+		}
+	}
+
+	/**
+	 * Sets the queue the worker adds itself to when it has finished.
+	 * Used by loaders to wait for the completion of their workers without polling.
+	 * @param completionQueue The queue to report the completion to or <code>null</code>
+	 * if nobody waits for the completion.
+	 */
+	public void setCompletionQueue(BlockingQueue<AbstractLoaderWorker<?, ?>> completionQueue) {
+		this.completionQueue = completionQueue;
+	}
+
+	/**
+	 * Sets the sink receiving single results as soon as they are available.
+	 * Used by loaders to forward results before the whole sub-query is processed.
+	 * @param resultSink The sink to publish results to or <code>null</code> if
+	 * results should only be delivered when the worker has finished.
+	 */
+	public void setResultSink(ResultSink<R> resultSink) {
+		this.resultSink = resultSink;
+	}
+
+	/**
+	 * Hands a single result over to the result-sink, if one was set and the
+	 * worker was not interrupted. Workers should call this for each resource as soon as
+	 * it is available. The result must nevertheless be part of the results set by
+	 * <code>setResults()</code>.
+	 * @param result The resource available.
+	 * @return <code>true</code> if the result-sink took <code>result</code> over.
+	 * Otherwise the worker still owns it.
+	 */
+	protected boolean publishResult(R result) {
+		ResultSink<R> sink = resultSink;
+		if(sink != null && !interrupted) {
+			return sink.onResult(this, result);
+		}
+		return false;
+	}
+
+	/**
+	 * Returns if the worker was submitted and has not finished yet.
+	 * @return <code>true</code> if the worker is waiting for execution or running.
+	 */
+	public boolean isAlive() {
+		return alive;
+	}
+
+	/**
+	 * Requests the worker to stop. Workers not started yet will not be executed,
+	 * running workers should check <code>isInterrupted()</code> regularly.
+	 * Downloads bound to the workers cancellation-token are aborted.
+	 */
+	public void interrupt() {
+		interrupted = true;
+		cancellationToken.cancel();
+	}
+
+	/**
+	 * Restricts the resources of the sub-query still to be loaded, e.g. because the
+	 * others are not visible any more. Running workers should check <code>isRetained()</code>
+	 * before loading each resource.
+	 * @param keys The keys of the resources still to be loaded. Must not be modified afterwards.
+	 */
+	public void retainOnly(Set<String> keys) {
+		retainedKeys = keys;
+	}
+
+	/**
+	 * Returns if a resource of the sub-query is still to be loaded (see <code>retainOnly()</code>).
+	 * @param resource The resource of the sub-query.
+	 * @return <code>true</code> if the resource should be loaded.
+	 */
+	public boolean isRetained(DataResource resource) {
+		Set<String> keys = retainedKeys;
+		return keys == null || keys.contains(resource.getKey());
+	}
+
+	/**
+	 * Returns the token cancelled when the worker is requested to stop.
+	 * Blocking operations of the worker should be bound to it.
+	 * @return The cancellation-token of the worker.
+	 */
+	public CancellationToken getCancellationToken() {
+		return cancellationToken;
+	}
+
+	/**
+	 * Returns if the worker was requested to stop.
+	 * @return <code>true</code> if the worker was requested to stop.
+	 */
+	public boolean isInterrupted() {
+		return interrupted;
+	}
 	
 	
 	/**
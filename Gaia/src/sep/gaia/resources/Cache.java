@@ -1,19 +1,34 @@
 package sep.gaia.resources;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import sep.gaia.resources.eviction.AccessBuffer;
+import sep.gaia.resources.eviction.EvictionPolicy;
+import sep.gaia.resources.eviction.FrequencySketch;
+import sep.gaia.resources.eviction.LruEvictionPolicy;
 
 /**
  * A class for keeping resources in memory and accepting requests for them. Each
  * instance has a limit of resources it will maximally manage. If the count of
  * resources exceeds this value, resources are picked to by removed, according
- * to a specific removal-strategy.
+ * to a removal-strategy (see <code>EvictionPolicy</code>). The strategy can be
+ * set per cache and defaults to removing the least recently used resources.
+ * <p>
+ * The cache is thread-safe. Lookups never block: The entries are kept in a concurrent
+ * map and hits are recorded in an <code>AccessBuffer</code>, which is passed to the
+ * eviction-policy in batches by whichever thread obtains the lock first. Modifications
+ * and evictions are serialized by this lock, so that the policy always knows about
+ * exactly the entries in the map.
  * 
  * @param <Q>
  *            The type of the queries the cached resources should be associated
@@ -25,8 +40,7 @@ import java.util.Map;
 public abstract class Cache<R extends DataResource> {
 
 	/**
-	 * Percent of the lowest evaluating entries to be removed from the cache if
-	 * it has reached its maximum number of entries.
+	 * Percent of the entries to be removed from the cache by <code>purge()</code>.
 	 */
 	protected static final int REMOVE_LOWEST_PERC = 10;
 
@@ -34,13 +48,44 @@ public abstract class Cache<R extends DataResource> {
 	 * The resources currently kept in the cache associated with their
 	 * respective use-count.
 	 */
-	private Map<String, CacheEntry> cache = new HashMap<>();
+	private ConcurrentMap<String, CacheEntry> cache = new ConcurrentHashMap<>();
 
 	/**
 	 * Number of maximum entries held by the cache. By default the highest
 	 * possible integer value.
 	 */
-	private int maxEntries = Integer.MAX_VALUE;
+	private volatile int maxEntries = Integer.MAX_VALUE;
+
+	/**
+	 * The strategy choosing the entries to be removed.
+	 */
+	private EvictionPolicy evictionPolicy = new LruEvictionPolicy();
+
+	/**
+	 * Lock serializing all modifications of the cache and guarding <code>evictionPolicy</code>.
+	 * Readers only try to acquire it for passing on the accesses buffered.
+	 */
+	private Lock policyLock = new ReentrantLock();
+
+	/**
+	 * The keys of the hits not passed to <code>evictionPolicy</code> yet.
+	 */
+	private AccessBuffer accessBuffer = new AccessBuffer();
+
+	/**
+	 * Number of requests answered from the cache.
+	 */
+	private AtomicLong hitCount = new AtomicLong();
+
+	/**
+	 * Number of requests the cache could not answer.
+	 */
+	private AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * Number of entries removed by the removal-strategy.
+	 */
+	private AtomicLong evictionCount = new AtomicLong();
 
 	// //////////////////////////////////////////////////////////////////////
 	// // CONSTRUCTOR ////
@@ -62,6 +107,22 @@ public abstract class Cache<R extends DataResource> {
 	 */
 	public Cache(int maxEntries) {
 		this.maxEntries = maxEntries;
+		evictionPolicy.setCapacity(maxEntries);
+	}
+
+	/**
+	 * Initializes the cache limiting the count of resources to cache at
+	 * maximum and choosing the resources to remove by <code>evictionPolicy</code>.
+	 * 
+	 * @param maxEntries
+	 *            The count of resources this cache should manage at maximum.
+	 * @param evictionPolicy
+	 *            The strategy choosing the resources to be removed.
+	 */
+	public Cache(int maxEntries, EvictionPolicy evictionPolicy) {
+		this.maxEntries = maxEntries;
+		this.evictionPolicy = evictionPolicy;
+		evictionPolicy.setCapacity(maxEntries);
 	}
 
 	// //////////////////////////////////////////////////////////////////////
@@ -79,12 +140,34 @@ public abstract class Cache<R extends DataResource> {
 	public R get(String key) {
 		CacheEntry entry = cache.get(key);
 		if(entry != null) {
+			recordHit();
+			recordAccess(key, entry);
 			return entry.get();
 		} else {
+			recordMiss();
 			return null;
 		}
 	}
 
+	/**
+	 * Checks whether a resource is mapped to <code>key</code> without counting it as use.
+	 * @param key The key to check.
+	 * @return <code>true</code> if a resource is mapped to <code>key</code>.
+	 */
+	protected boolean contains(String key) {
+		return cache.containsKey(key);
+	}
+
+	/**
+	 * Returns the resource mapped to <code>key</code> without counting it as use.
+	 * @param key The key of the resource.
+	 * @return The resource or <code>null</code> if there is none.
+	 */
+	protected R peek(String key) {
+		CacheEntry entry = cache.get(key);
+		return entry != null ? entry.get() : null;
+	}
+
 	/**
 	 * Returns the collection of resources associated with <code>key</code>.
 	 * @param key The key the collection is mapped to.
@@ -94,6 +177,7 @@ public abstract class Cache<R extends DataResource> {
 	public Collection<R> getAll(String key) {
 		CacheEntry entry = cache.get(key);
 		if(entry != null) {
+			recordAccess(key, entry);
 			return entry.getAll();
 		} else {
 			return null;
@@ -111,64 +195,212 @@ public abstract class Cache<R extends DataResource> {
 	 *             resource.
 	 */
 	public boolean add(R resource) throws IllegalArgumentException {
-		if (!cache.containsKey(resource.getKey())) {
+		return add(resource, 0);
+	}
 
-			// Create new entry for the resource and add it.
-			CacheEntry currentEntry = new CacheEntry(resource, 0);
-			cache.put(resource.getKey(), currentEntry);
+	/**
+	 * Adds a resource that was already used before, e.g. when restoring a persistent
+	 * cache. The removal-strategy treats it as if it was requested <code>useCount</code> times.
+	 * @param resource
+	 *            The resource to be added to the cache.
+	 * @param useCount
+	 *            How often <code>resource</code> was used in the past.
+	 * @return True, if the resource was successfully added, else not.
+	 */
+	protected boolean add(R resource, int useCount) {
+		String key = resource.getKey();
+		policyLock.lock();
+		try {
+			// Create new entry for the resource and add it if there is none yet:
+			CacheEntry currentEntry = new CacheEntry(resource, useCount);
+			if (cache.putIfAbsent(key, currentEntry) != null) {
+				// There's already a resource in cache with the key of the
+				// passed resource. Don't add it.
+				return false;
+			}
+
+			evictionPolicy.recordInsertion(key);
+			// More uses than the policy distinguishes would only cost time:
+			int replayed = Math.min(useCount, FrequencySketch.MAX_FREQUENCY);
+			for (int i = 0; i < replayed; i++) {
+				evictionPolicy.recordAccess(key);
+			}
 			return true;
+
+		} finally {
+			policyLock.unlock();
 		}
+	}
 
-		// There's already a resource in cache with the key of the
-		// passed resource. Don't add it.
-		return false;
+	/**
+	 * Removes the resource mapped to <code>key</code> regardless of the removal-strategy,
+	 * e.g. because it turned out to be invalid.
+	 * @param key The key of the resource to remove.
+	 * @return The entry removed or <code>null</code> if none was mapped to <code>key</code>.
+	 */
+	protected CacheEntry remove(String key) {
+		policyLock.lock();
+		try {
+			CacheEntry removed = cache.remove(key);
+			if (removed != null) {
+				evictionPolicy.recordRemoval(key);
+			}
+			return removed;
+
+		} finally {
+			policyLock.unlock();
+		}
+	}
+
+	/**
+	 * Notes that an entry was used, so that the removal-strategy takes it into account.
+	 * The use is buffered and passed on if the lock is free, so that readers never block.
+	 * @param key The key of the entry used.
+	 * @param entry The entry used.
+	 */
+	private void recordAccess(String key, CacheEntry entry) {
+		if (accessBuffer.offer(key) && policyLock.tryLock()) {
+			try {
+				drainAccesses();
+			} finally {
+				policyLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Passes the buffered uses to the eviction-policy. The caller must hold <code>policyLock</code>.
+	 */
+	private void drainAccesses() {
+		List<String> keys = new ArrayList<>();
+		accessBuffer.drainTo(keys);
+		for (String key : keys) {
+			// Entries removed meanwhile are ignored:
+			CacheEntry entry = cache.get(key);
+			if (entry != null) {
+				entry.incrementUseCount();
+				evictionPolicy.recordAccess(key);
+			}
+		}
 	}
 
 	/**
-	 * Checks if the maximum number of held resources is reached and deletes
-	 * some of them according to the following removal-strategy: The lowest
-	 * <code>REMOVE_LOWEST_PERC</code> of all resources with the lowest
-	 * use-count will be removed. If there are entries with the same use-count
-	 * the average timestamp of all resources contained in the entry will be
-	 * used.
+	 * Checks if the maximum number of held resources is exceeded and removes
+	 * entries chosen by the eviction-policy one by one until it is not any more.
 	 * @return A collection of all the entries removed from cache.
 	 */
 	protected Collection<CacheEntry> manage() {
-		if (cache.size() >= maxEntries) {
-
-			return purge();
-			
-		} else {
-			// If nothing had to be removed return a empty collection:
-			return new LinkedList<>();
+		Collection<CacheEntry> removed = new LinkedList<>();
+		policyLock.lock();
+		try {
+			drainAccesses();
+			while (cache.size() > maxEntries) {
+				CacheEntry victim = evict();
+				if (victim == null) {
+					break;
+				}
+				removed.add(victim);
+			}
+		} finally {
+			policyLock.unlock();
 		}
+		return removed;
 	}
 	
 	/**
-	 * Removes entries from the cache according to the following removal-strategy: The lowest
-	 * <code>REMOVE_LOWEST_PERC</code> of all resources with the lowest
-	 * use-count will be removed. If there are entries with the same use-count
-	 * the average timestamp of all resources contained in the entry will be
-	 * used.
+	 * Removes <code>REMOVE_LOWEST_PERC</code> percent of the entries, but at least one,
+	 * chosen by the eviction-policy. The policy is told that the cache is full at the
+	 * number of entries remaining.
 	 * By contrast to <code>manage()</code> this method removes entries regardless if a certain limit
 	 * is reached.
 	 * @return A collection of all the entries removed from cache.
 	 */
 	protected Collection<CacheEntry> purge() {
-		// Number of elements to be remove.
-		int entriesToRemove = cache.size() / REMOVE_LOWEST_PERC;
-
-		// Sort cache entries according to their natural order.
-		List<CacheEntry> sortedEntries = new LinkedList<>(cache.values());
-		Collections.sort(sortedEntries);
-
-		// Chose first entries: these are the entries to remove.
-		List<CacheEntry> toRemove = sortedEntries.subList(0, entriesToRemove);
-		// Remove the entries and remember resources removed:
-		for (CacheEntry current : toRemove) {
-			cache.remove(current.get().getKey());
+		Collection<CacheEntry> removed = new LinkedList<>();
+		policyLock.lock();
+		try {
+			int size = cache.size();
+			if (size == 0) {
+				return removed;
+			}
+			// Number of elements to be removed:
+			int entriesToRemove = Math.max(1, size * REMOVE_LOWEST_PERC / 100);
+
+			drainAccesses();
+			evictionPolicy.setCapacity(Math.min(maxEntries, size - entriesToRemove));
+
+			for (int i = 0; i < entriesToRemove; i++) {
+				CacheEntry victim = evict();
+				if (victim == null) {
+					break;
+				}
+				removed.add(victim);
+			}
+		} finally {
+			policyLock.unlock();
 		}
-		return toRemove;
+		return removed;
+	}
+
+	/**
+	 * Removes up to <code>count</code> entries chosen by the eviction-policy. The policy is
+	 * told that the cache is full at the number of entries remaining.
+	 * By contrast to <code>purge()</code> the caller decides how many entries are removed,
+	 * so that they can be removed in small batches.
+	 * @param count The maximum number of entries to remove.
+	 * @return A collection of all the entries removed from cache.
+	 */
+	protected Collection<CacheEntry> evictEntries(int count) {
+		Collection<CacheEntry> removed = new LinkedList<>();
+		policyLock.lock();
+		try {
+			int size = cache.size();
+			if (size == 0 || count <= 0) {
+				return removed;
+			}
+			int entriesToRemove = Math.min(size, count);
+
+			drainAccesses();
+			evictionPolicy.setCapacity(Math.min(maxEntries, size - entriesToRemove));
+
+			for (int i = 0; i < entriesToRemove; i++) {
+				CacheEntry victim = evict();
+				if (victim == null) {
+					break;
+				}
+				removed.add(victim);
+			}
+		} finally {
+			policyLock.unlock();
+		}
+		return removed;
+	}
+
+	/**
+	 * Removes the entry chosen by the eviction-policy. Readers still holding the entry
+	 * may use it further. The caller must hold <code>policyLock</code>.
+	 * @return The entry removed or <code>null</code> if there was none to remove.
+	 */
+	private CacheEntry evict() {
+		String key;
+		while ((key = evictionPolicy.evict()) != null) {
+			CacheEntry victim = cache.remove(key);
+			if (victim != null) {
+				evictionCount.incrementAndGet();
+				return victim;
+			}
+			// The key was not cached any more, so choose another one.
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the number of accesses not passed to the eviction-policy because
+	 * readers were contending. This does not affect the hit-count.
+	 * @return The number of accesses dropped.
+	 */
+	public long getDroppedAccessCount() {
+		return accessBuffer.getDroppedCount();
 	}
 
 	/**
@@ -184,7 +416,8 @@ public abstract class Cache<R extends DataResource> {
 	}
 
 	/**
-	 * Returns the collection of all entries in the cache.
+	 * Returns the collection of all entries in the cache. The collection is a live view
+	 * and may be iterated while the cache is modified concurrently.
 	 * 
 	 * @return The collection of all entries in the cache.
 	 */
@@ -196,7 +429,15 @@ public abstract class Cache<R extends DataResource> {
 	 * Removes all entries from the cache.
 	 */
 	public void clear() {
-		cache.clear();
+		policyLock.lock();
+		try {
+			cache.clear();
+			evictionPolicy.clear();
+			// Forget the uses buffered:
+			accessBuffer.drainTo(new ArrayList<String>());
+		} finally {
+			policyLock.unlock();
+		}
 	}
 	
 	/**
@@ -221,6 +462,89 @@ public abstract class Cache<R extends DataResource> {
 	 */
 	public void setMaxEntries(int maxEntries) {
 		this.maxEntries = maxEntries;
+		policyLock.lock();
+		try {
+			evictionPolicy.setCapacity(maxEntries);
+		} finally {
+			policyLock.unlock();
+		}
+	}
+	
+	/**
+	 * Returns the strategy choosing the entries to be removed.
+	 * @return The eviction-policy of this cache.
+	 */
+	public EvictionPolicy getEvictionPolicy() {
+		return evictionPolicy;
+	}
+	
+	/**
+	 * Sets the strategy choosing the entries to be removed. The entries currently
+	 * cached are passed to the new policy, but their history of uses is lost.
+	 * @param evictionPolicy The eviction-policy of this cache.
+	 */
+	public void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+		policyLock.lock();
+		try {
+			drainAccesses();
+			evictionPolicy.clear();
+			evictionPolicy.setCapacity(maxEntries);
+			for (String key : cache.keySet()) {
+				evictionPolicy.recordInsertion(key);
+			}
+			this.evictionPolicy = evictionPolicy;
+		} finally {
+			policyLock.unlock();
+		}
+	}
+	
+	/**
+	 * Notes that a request was answered from the cache. Subclasses providing
+	 * their own lookup-methods must call this on success.
+	 */
+	protected void recordHit() {
+		hitCount.incrementAndGet();
+	}
+	
+	/**
+	 * Notes that the cache could not answer a request. Subclasses providing
+	 * their own lookup-methods must call this on failure.
+	 */
+	protected void recordMiss() {
+		missCount.incrementAndGet();
+	}
+	
+	/**
+	 * Returns the number of requests answered from the cache.
+	 * @return The number of cache-hits.
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+	
+	/**
+	 * Returns the number of requests the cache could not answer.
+	 * @return The number of cache-misses.
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+	
+	/**
+	 * Returns the number of entries removed by the removal-strategy.
+	 * @return The number of evictions.
+	 */
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+	
+	/**
+	 * Returns the size of the data this cache keeps on disk. This implementation
+	 * returns zero. Override this method for caches persisting their entries.
+	 * @return The size of the data on disk in bytes.
+	 */
+	public long getSizeOnDisk() {
+		return 0;
 	}
 	
 	
@@ -249,9 +573,10 @@ public abstract class Cache<R extends DataResource> {
 		private final Collection<R> resources;
 
 		/**
-		 * Counts the uses of the resource stored in this entry.
+		 * Counts the uses of the resource stored in this entry. The cache only
+		 * increments it while holding its lock.
 		 */
-		private int useCount;
+		private volatile int useCount;
 
 		/**
 		 * Initializes the entry with a single resource to be held.
@@ -264,6 +589,7 @@ public abstract class Cache<R extends DataResource> {
 		public CacheEntry(R resource, int useCount) {
 			this.resources = new HashSet<R>();
 			resources.add(resource);
+			this.useCount = useCount;
 		}
 
 		/**
@@ -277,6 +603,7 @@ public abstract class Cache<R extends DataResource> {
 		public CacheEntry(Collection<R> resources, int useCount) {
 			this.resources = new HashSet<R>();
 			this.resources.addAll(resources);
+			this.useCount = useCount;
 		}
 		
 		/**
@@ -0,0 +1,167 @@
+package sep.gaia.resources;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.utils.DateUtils;
+
+/**
+ * The HTTP-validators and the expiry of a resource received from a server.
+ * <p>
+ * The validators (entity-tag and time of the last modification) allow asking the server
+ * by a conditional request whether a cached copy of the resource is still current,
+ * which is answered by <code>304 Not Modified</code> without the content if so.
+ * The expiry is taken from the <code>Cache-Control</code>-header, or from the
+ * <code>Expires</code>-header relative to the <code>Date</code> of the response.
+ * <p>
+ * Instances are immutable.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class CacheValidators implements Serializable {
+	private static final long serialVersionUID = 4713368950521893711L;
+
+	/**
+	 * The entity-tag of the resource or <code>null</code> if the server sent none.
+	 */
+	private final String entityTag;
+
+	/**
+	 * The time of the last modification of the resource in milliseconds since epoch
+	 * or 0 if unknown.
+	 */
+	private final long lastModified;
+
+	/**
+	 * The time the resource expires in milliseconds since epoch or 0 if unknown.
+	 */
+	private final long expires;
+
+	/**
+	 * Initializes the validators.
+	 * @param entityTag The entity-tag of the resource or <code>null</code> if the server sent none.
+	 * @param lastModified The time of the last modification of the resource in milliseconds
+	 * since epoch or 0 if unknown.
+	 * @param expires The time the resource expires in milliseconds since epoch or 0 if unknown.
+	 */
+	public CacheValidators(String entityTag, long lastModified, long expires) {
+		this.entityTag = entityTag;
+		this.lastModified = lastModified;
+		this.expires = expires;
+	}
+
+	/**
+	 * Reads the validators and the expiry from the headers of a response.
+	 * @param response The response of the server.
+	 * @param responseTime The time the response was received in milliseconds since epoch.
+	 * @return The validators of the response.
+	 */
+	public static CacheValidators fromResponse(HttpResponse response, long responseTime) {
+		Header entityTagHeader = response.getFirstHeader("ETag");
+		String entityTag = entityTagHeader != null ? entityTagHeader.getValue() : null;
+		long lastModified = parseDate(response.getFirstHeader("Last-Modified"));
+
+		long expires = 0;
+		for(Header header : response.getHeaders("Cache-Control")) {
+			for(HeaderElement element : header.getElements()) {
+				String name = element.getName();
+				if(name.equalsIgnoreCase("no-cache") || name.equalsIgnoreCase("no-store")) {
+					// Must be revalidated before being used again:
+					expires = responseTime;
+
+				} else if(name.equalsIgnoreCase("max-age") && element.getValue() != null && expires == 0) {
+					try {
+						expires = responseTime + Long.parseLong(element.getValue().trim()) * 1000;
+					} catch (NumberFormatException e) {
+						// Ignore the directive.
+					}
+				}
+			}
+		}
+
+		if(expires == 0) {
+			long expiresHeader = parseDate(response.getFirstHeader("Expires"));
+			if(expiresHeader != 0) {
+				// Relative to the clock of the server, which may differ from the local one:
+				long date = parseDate(response.getFirstHeader("Date"));
+				expires = date != 0 ? responseTime + (expiresHeader - date) : expiresHeader;
+			}
+		}
+		return new CacheValidators(entityTag, lastModified, expires);
+	}
+
+	/**
+	 * Parses the date in a header.
+	 * @param header The header or <code>null</code>.
+	 * @return The date in milliseconds since epoch or 0 if there is none or it is invalid.
+	 */
+	private static long parseDate(Header header) {
+		if(header == null) {
+			return 0;
+		}
+		Date date = DateUtils.parseDate(header.getValue());
+		return date != null ? date.getTime() : 0;
+	}
+
+	/**
+	 * Adds the headers making <code>request</code> conditional on the resource being modified.
+	 * @param request The request for the resource.
+	 */
+	public void applyTo(HttpRequest request) {
+		if(entityTag != null) {
+			request.setHeader("If-None-Match", entityTag);
+		}
+		if(lastModified > 0) {
+			request.setHeader("If-Modified-Since", DateUtils.formatDate(new Date(lastModified)));
+		}
+	}
+
+	/**
+	 * Combines these validators with those of a <code>304 Not Modified</code>-response,
+	 * which need not repeat the validators but may update them and the expiry.
+	 * @param notModified The validators of the response.
+	 * @return The validators of the resource afterwards.
+	 */
+	public CacheValidators refresh(CacheValidators notModified) {
+		return new CacheValidators(notModified.entityTag != null ? notModified.entityTag : entityTag,
+				notModified.lastModified != 0 ? notModified.lastModified : lastModified,
+				notModified.expires);
+	}
+
+	/**
+	 * Checks whether a conditional request can be made.
+	 * @return <code>true</code> if there is an entity-tag or a time of the last modification.
+	 */
+	public boolean isConditional() {
+		return entityTag != null || lastModified > 0;
+	}
+
+	/**
+	 * Returns the entity-tag of the resource.
+	 * @return The entity-tag or <code>null</code> if the server sent none.
+	 */
+	public String getEntityTag() {
+		return entityTag;
+	}
+
+	/**
+	 * Returns the time of the last modification of the resource.
+	 * @return The time in milliseconds since epoch or 0 if unknown.
+	 */
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * Returns the time the resource expires.
+	 * @return The time in milliseconds since epoch or 0 if unknown.
+	 */
+	public long getExpires() {
+		return expires;
+	}
+}
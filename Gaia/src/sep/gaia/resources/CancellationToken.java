@@ -0,0 +1,113 @@
+package sep.gaia.resources;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A token signalling that the work of a query is not needed anymore.
+ * Operations blocking on I/O register the resources they block on, e.g. a
+ * connection, at the token. When the token is cancelled these resources are
+ * closed, so that the blocking operations return immediately.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class CancellationToken {
+
+	/**
+	 * Flag if the token was cancelled.
+	 */
+	private volatile boolean cancelled;
+
+	/**
+	 * The resources to close on cancellation.
+	 */
+	private List<Closeable> closeables = new LinkedList<>();
+
+	/**
+	 * Lock guarding <code>closeables</code>.
+	 */
+	private Lock closeablesLock = new ReentrantLock();
+
+	/**
+	 * Cancels the token and closes all resources registered.
+	 * Calling this method more than once has no further effect.
+	 */
+	public void cancel() {
+		List<Closeable> toClose;
+		closeablesLock.lock();
+		try {
+			if(cancelled) {
+				return;
+			}
+			cancelled = true;
+			toClose = new LinkedList<>(closeables);
+			closeables.clear();
+		} finally {
+			closeablesLock.unlock();
+		}
+
+		// Close outside the lock, as closing a connection may block:
+		for(Closeable closeable : toClose) {
+			closeQuietly(closeable);
+		}
+	}
+
+	/**
+	 * Returns if the token was cancelled.
+	 * @return <code>true</code> if the token was cancelled.
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Registers a resource to be closed when the token is cancelled.
+	 * If the token is already cancelled, <code>closeable</code> is closed immediately.
+	 * @param closeable The resource to close on cancellation.
+	 * @return <code>true</code> if the resource was registered, <code>false</code>
+	 * if the token was already cancelled.
+	 */
+	public boolean register(Closeable closeable) {
+		closeablesLock.lock();
+		try {
+			if(!cancelled) {
+				closeables.add(closeable);
+				return true;
+			}
+		} finally {
+			closeablesLock.unlock();
+		}
+		closeQuietly(closeable);
+		return false;
+	}
+
+	/**
+	 * Removes a resource registered before, e.g. when the operation using it finished.
+	 * @param closeable The resource not to close on cancellation anymore.
+	 */
+	public void unregister(Closeable closeable) {
+		closeablesLock.lock();
+		try {
+			closeables.remove(closeable);
+		} finally {
+			closeablesLock.unlock();
+		}
+	}
+
+	/**
+	 * Closes <code>closeable</code> ignoring errors.
+	 * @param closeable The resource to close.
+	 */
+	private static void closeQuietly(Closeable closeable) {
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			// The resource is discarded anyway.
+		}
+	}
+}
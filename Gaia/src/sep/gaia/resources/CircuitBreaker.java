@@ -0,0 +1,248 @@
+package sep.gaia.resources;
+
+/**
+ * Keeps track of the health of a host and stops sending requests to it while it is down.
+ * <p>
+ * The breaker is <code>CLOSED</code> while the host answers. After
+ * <code>failureThreshold</code> consecutive failures it opens, so that requests are
+ * routed to other hosts. Once the backoff has elapsed, a single request is let through
+ * as a probe (<code>HALF_OPEN</code>). If the probe succeeds, the breaker closes again.
+ * Otherwise it opens again with the backoff doubled, up to <code>maximumBackoff</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class CircuitBreaker {
+
+	/**
+	 * The number of consecutive failures after which a host is considered down, if not set otherwise.
+	 */
+	public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+
+	/**
+	 * The time in milliseconds before the first probe of a host down, if not set otherwise.
+	 */
+	public static final long DEFAULT_INITIAL_BACKOFF = 2000;
+
+	/**
+	 * The maximum time in milliseconds between two probes of a host down, if not set otherwise.
+	 */
+	public static final long DEFAULT_MAXIMUM_BACKOFF = 5L * 60 * 1000;
+
+	/**
+	 * The states of a breaker.
+	 * @author Matthias Fisch
+	 *
+	 */
+	public enum State {
+		/**
+		 * The host is healthy, all requests are let through.
+		 */
+		CLOSED,
+		/**
+		 * The host is down, no requests are let through.
+		 */
+		OPEN,
+		/**
+		 * The host is down and a single probe is in progress.
+		 */
+		HALF_OPEN
+	}
+
+	/**
+	 * Informed when the state of a breaker changed.
+	 * @author Matthias Fisch
+	 *
+	 */
+	public interface Listener {
+
+		/**
+		 * Called after the state of <code>breaker</code> changed. The breaker is not locked meanwhile.
+		 * @param breaker The breaker whose state changed.
+		 * @param state The new state.
+		 */
+		public void onStateChanged(CircuitBreaker breaker, State state);
+	}
+
+	/**
+	 * The number of consecutive failures after which the host is considered down.
+	 */
+	private final int failureThreshold;
+
+	/**
+	 * The time in milliseconds before the first probe of the host.
+	 */
+	private final long initialBackoff;
+
+	/**
+	 * The maximum time in milliseconds between two probes of the host.
+	 */
+	private final long maximumBackoff;
+
+	/**
+	 * The current state.
+	 */
+	private State state = State.CLOSED;
+
+	/**
+	 * The number of consecutive failures.
+	 */
+	private int failureCount;
+
+	/**
+	 * The time to wait before the next probe in milliseconds.
+	 */
+	private long backoff;
+
+	/**
+	 * The time the next probe is let through in milliseconds since epoch.
+	 */
+	private long probeTime;
+
+	/**
+	 * The listener informed on state changes or <code>null</code> if there is none.
+	 */
+	private volatile Listener listener;
+
+	/**
+	 * Initializes a closed breaker using the default thresholds.
+	 */
+	public CircuitBreaker() {
+		this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_INITIAL_BACKOFF, DEFAULT_MAXIMUM_BACKOFF);
+	}
+
+	/**
+	 * Initializes a closed breaker.
+	 * @param failureThreshold The number of consecutive failures after which the host is considered down.
+	 * @param initialBackoff The time in milliseconds before the first probe of the host.
+	 * @param maximumBackoff The maximum time in milliseconds between two probes of the host.
+	 */
+	public CircuitBreaker(int failureThreshold, long initialBackoff, long maximumBackoff) {
+		this.failureThreshold = Math.max(1, failureThreshold);
+		this.initialBackoff = initialBackoff;
+		this.maximumBackoff = Math.max(initialBackoff, maximumBackoff);
+		this.backoff = initialBackoff;
+	}
+
+	/**
+	 * Checks whether a request may be sent to the host. If the host is down and due to be
+	 * probed, the request is let through as the probe, whose outcome must then be recorded.
+	 * @return <code>true</code> if the request may be sent.
+	 */
+	public boolean allowRequest() {
+		boolean probing;
+		synchronized (this) {
+			if(state == State.CLOSED) {
+				return true;
+			}
+			probing = state == State.OPEN && System.currentTimeMillis() >= probeTime;
+			if(probing) {
+				state = State.HALF_OPEN;
+			}
+		}
+		if(probing) {
+			notifyListener(State.HALF_OPEN);
+		}
+		return probing;
+	}
+
+	/**
+	 * Checks without side-effects whether a request would be let through, e.g. for routing.
+	 * @return <code>true</code> if the host is healthy or due to be probed.
+	 */
+	public synchronized boolean isAvailable() {
+		return state == State.CLOSED || (state == State.OPEN && System.currentTimeMillis() >= probeTime);
+	}
+
+	/**
+	 * Records that the host answered a request.
+	 */
+	public void recordSuccess() {
+		boolean changed;
+		synchronized (this) {
+			changed = state != State.CLOSED;
+			state = State.CLOSED;
+			failureCount = 0;
+			backoff = initialBackoff;
+		}
+		if(changed) {
+			notifyListener(State.CLOSED);
+		}
+	}
+
+	/**
+	 * Records that the host did not answer a request or answered by a server-error.
+	 */
+	public void recordFailure() {
+		boolean changed = false;
+		synchronized (this) {
+			failureCount++;
+			if(state == State.HALF_OPEN) {
+				// The probe failed, so wait longer for the next one:
+				backoff = Math.min(maximumBackoff, backoff * 2);
+				changed = true;
+			} else if(state == State.CLOSED && failureCount >= failureThreshold) {
+				changed = true;
+			}
+			if(changed) {
+				state = State.OPEN;
+				probeTime = System.currentTimeMillis() + backoff;
+			}
+		}
+		if(changed) {
+			notifyListener(State.OPEN);
+		}
+	}
+
+	/**
+	 * Records that a request let through was not sent after all, e.g. because it was cancelled.
+	 * If it was the probe, the next request is let through as the probe instead.
+	 */
+	public void recordAbandoned() {
+		boolean changed;
+		synchronized (this) {
+			changed = state == State.HALF_OPEN;
+			if(changed) {
+				state = State.OPEN;
+			}
+		}
+		if(changed) {
+			notifyListener(State.OPEN);
+		}
+	}
+
+	/**
+	 * Informs the listener about a state change.
+	 * @param newState The new state.
+	 */
+	private void notifyListener(State newState) {
+		Listener currentListener = listener;
+		if(currentListener != null) {
+			currentListener.onStateChanged(this, newState);
+		}
+	}
+
+	/**
+	 * Returns the current state.
+	 * @return The state of the breaker.
+	 */
+	public synchronized State getState() {
+		return state;
+	}
+
+	/**
+	 * Returns the time to wait before the next probe if the current one fails.
+	 * @return The backoff in milliseconds.
+	 */
+	public synchronized long getBackoff() {
+		return backoff;
+	}
+
+	/**
+	 * Sets the listener informed on state changes.
+	 * @param listener The listener or <code>null</code> to inform none.
+	 */
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+}
@@ -3,8 +3,12 @@ package sep.gaia.resources;
 import java.util.Collection;
 import java.util.HashSet;
 
+import sep.gaia.resources.monitoring.CacheStats;
+import sep.gaia.resources.monitoring.LoaderStats;
+import sep.gaia.resources.monitoring.Monitor;
 import sep.gaia.state.State;
 import sep.gaia.state.StateObserver;
+import sep.gaia.util.Logger;
 
 /**
  * This class is an abstract class for all object to be managed. It observes the
@@ -41,6 +45,11 @@ public abstract class DataResourceManager<R extends DataResource> extends
 	 */
 	private final String label;
 
+	/**
+	 * How the workers loading resources for this manager are executed.
+	 */
+	private WorkerPool.ExecutionMode executionMode = WorkerPool.ExecutionMode.POOLED;
+
 	/**
 	 * This method initializes an activated manager which is not off-line but
 	 * has no loader for the moment.
@@ -110,6 +119,63 @@ public abstract class DataResourceManager<R extends DataResource> extends
 	 * possible moment.
 	 */
 	public abstract void requestLoaderStop();
+
+	/**
+	 * Sets how the workers loading resources for this manager are executed.
+	 * Network-bound managers may benefit from <code>ExecutionMode.VIRTUAL</code>.
+	 * 
+	 * @param executionMode
+	 *            How the workers of this manager should be executed.
+	 * @return <code>true</code> if the mode was set. <code>false</code> if
+	 *         <code>ExecutionMode.VIRTUAL</code> was requested but virtual
+	 *         threads are not supported by the runtime, so that the mode was
+	 *         left unchanged.
+	 */
+	public boolean setExecutionMode(WorkerPool.ExecutionMode executionMode) {
+		if (executionMode == WorkerPool.ExecutionMode.VIRTUAL
+				&& !WorkerPool.isVirtualThreadSupported()) {
+			Logger.getInstance().warning("Virtual threads are not supported by this runtime. "
+					+ "Workers of " + getLabel() + " stay pooled.");
+			return false;
+		}
+		this.executionMode = executionMode;
+		applyExecutionMode(executionMode);
+		return true;
+	}
+
+	/**
+	 * Returns how the workers loading resources for this manager are executed.
+	 * 
+	 * @return How the workers of this manager are executed.
+	 */
+	public WorkerPool.ExecutionMode getExecutionMode() {
+		return executionMode;
+	}
+
+	/**
+	 * Called when the execution-mode of the manager was changed. Managers
+	 * loading resources must override this method and pass the mode on to
+	 * their loaders. The default implementation doesn't do anything.
+	 * 
+	 * @param executionMode
+	 *            How the workers of this manager should be executed.
+	 */
+	protected void applyExecutionMode(WorkerPool.ExecutionMode executionMode) { }
+
+	/**
+	 * Publishes the metrics of <code>loader</code> and of its cache at the
+	 * <code>Monitor</code> under the label of this manager.
+	 * 
+	 * @param loader
+	 *            The loader of this manager.
+	 */
+	protected void registerMetrics(Loader<?, ?> loader) {
+		Monitor monitor = Monitor.getInstance();
+		monitor.register("Loader", getLabel(), new LoaderStats(loader));
+		if (loader.getCache() != null) {
+			monitor.register("Cache", getLabel(), new CacheStats(loader.getCache()));
+		}
+	}
 	
 	/**
 	 * Called when the manager was last used at runtime.
@@ -2,19 +2,25 @@ package sep.gaia.resources;
 
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Represents a single-direction queue with unique entries (checked by
- * <code>equals()</code>).
+ * <code>equals()</code> and <code>hashCode()</code>).
  * Furthermore an priority can be assigned to each entry.
  * The element with the highest priority will be returned first independent of
  * its actual position.
  * If priorities are equal, the element first inserted is returned.
+ * Entries are indexed by a hash-map, so checking for membership, removing an entry
+ * or changing its priority takes constant time. The priorities in use are kept in a
+ * sorted map, so <code>push()</code> and <code>pop()</code> take logarithmic time
+ * in the number of distinct priorities.
  * All methods in this class are designed for asynchronous access.
  * 
  * @author Matthias Fisch
@@ -29,9 +35,15 @@ public class DuplicateFreeQueue<T> {
 	public static final int DEFAULT_PRIORITY = 0;
 
 	/**
-	 * List of all elements currently managed.
+	 * The entries of each priority in the order of their insertion, sorted by priority.
+	 * Empty lists are removed, so the last entry is always the one with the next element.
 	 */
-	private Map<Integer, List<T>> queues = new HashMap<Integer, List<T>>();
+	private TreeMap<Integer, LinkedHashSet<T>> queues = new TreeMap<>();
+	
+	/**
+	 * The priority of each entry currently in the queue.
+	 */
+	private Map<T, Integer> priorities = new HashMap<>();
 	
 	/**
 	 * Lock to prevent unexpected modification of <code>queues</code>
@@ -39,6 +51,11 @@ public class DuplicateFreeQueue<T> {
 	 */
 	private Lock queuesLock = new ReentrantLock();
 	
+	/**
+	 * Condition signalled whenever an entry was added to the queue.
+	 */
+	private Condition notEmpty = queuesLock.newCondition();
+	
 	/**
 	 * Adds an object with default priority (<code>DEFAULT_PRIORITY</code>).
 	 * 
@@ -66,73 +83,58 @@ public class DuplicateFreeQueue<T> {
 	public boolean push(T content, int priority) {
 		// Operations on the queue-map will be done, so lock the queues:
 		queuesLock.lock();
-		
-		// Entries of all priorities must be checked on equality to content:
-		boolean unique = true; // Flag if an equal entry was not found yet
-		Iterator<List<T>> currentListIter = queues.values().iterator();
-		while(currentListIter.hasNext() && unique) {
-			// Get the current queue:
-			List<T> currentList = currentListIter.next();
-			// Check if an equal entry is contained in this queue:
-			unique = !currentList.contains(content);
-		}
-		
-		// If content has no identical entry in any list:
-		if(unique) {
-			// Get list of all entries with the specified:
-			List<T> priorityList = queues.get(priority);
-			
-			// If the list does not exist yet:
-			if(priorityList == null) {
-				priorityList = new LinkedList<>(); // Create the list
-				queues.put(priority, priorityList); // Add it associated with its priority
+		try {
+			// Entries must be unique:
+			if(priorities.containsKey(content)) {
+				return false;
 			}
 			
-			// Add content at the beginning:
-			priorityList.add(0, content);
+			// Append to the entries with the specified priority:
+			getList(priority, true).add(content);
+			priorities.put(content, priority);
+			
+			// Wake up threads waiting for entries:
+			notEmpty.signalAll();
+			return true;
+			
+		} finally {
+			// Operations have been done. Unlock the queues:
+			queuesLock.unlock();
 		}
-		
-		// Operations have been done. Unlock the queues:
-		queuesLock.unlock();
-		
-		// Return if another, equal entry was found:
-		return unique;
 	}
 	
 	/**
-	 * Returns the list from <code>queues</code> which is mapped to the 
-	 * highest priority and not empty.
-	 * @return List with elements of maximum priority or <code>null</code>
-	 * if there is no non-empty list.
+	 * Returns the list of entries with <code>priority</code>.
+	 * The caller must hold <code>queuesLock</code>.
+	 * @param priority The priority of the entries.
+	 * @param create Whether the list should be created if it does not exist.
+	 * @return The entries with <code>priority</code> or <code>null</code> if there are
+	 * none and <code>create</code> is <code>false</code>.
 	 */
-	private List<T> getHighestPrioritizedList() {
-		List<T> maxPrioList = null;
-		
-		// Operations on the queue-map will be done, so lock the queues:
-		queuesLock.lock();
-		
-		// If there are prioritized queues:
-		if(!queues.isEmpty()) {
-			int maxPriority = Integer.MIN_VALUE;
-			
-			// Iterate all priorities and determine the greatest:
-			for(Integer currentPriority : queues.keySet()) {
-				if(currentPriority > maxPriority) {
-					List<T> currentList = queues.get(currentPriority);
-					// Check if there is data in the list with current priority:
-					if(currentList != null && !currentList.isEmpty()) {
-						// Set the maximal list/priority at least temporarily:
-						maxPrioList = currentList;
-						maxPriority = currentPriority;
-					}
-				}
+	private LinkedHashSet<T> getList(int priority, boolean create) {
+		LinkedHashSet<T> list = queues.get(priority);
+		if(list == null && create) {
+			list = new LinkedHashSet<>();
+			queues.put(priority, list);
+		}
+		return list;
+	}
+	
+	/**
+	 * Removes <code>content</code> from the list of its priority.
+	 * The caller must hold <code>queuesLock</code>.
+	 * @param content The entry to remove.
+	 * @param priority The priority of the entry.
+	 */
+	private void unlink(T content, int priority) {
+		LinkedHashSet<T> list = queues.get(priority);
+		if(list != null) {
+			list.remove(content);
+			// Don't keep empty lists, so the highest key always has entries:
+			if(list.isEmpty()) {
+				queues.remove(priority);
 			}
 		}
-		
-		// Operations have been done. Unlock the queues:
-		queuesLock.unlock();
-		
-		return maxPrioList;
 	}
 	
 	/**
@@ -144,25 +146,56 @@ public class DuplicateFreeQueue<T> {
 	 * @return The next object or <code>null</code> if the queue is empty.
 	 */
 	public T pop() {
-		T nextEntry = null;
 		// Operations on the queue-map will be done, so lock the queues:
 		queuesLock.lock();
-		
-		// Get the list of elements with the highest priority:
-		List<T> maxPrioList = getHighestPrioritizedList();
-		
-		if(maxPrioList != null) {
-			// Get the last entry of the determined list:
-			int nextEntryIndex = maxPrioList.size() - 1;
-			nextEntry = maxPrioList.get(nextEntryIndex);
-			// Now remove the entry:
-			maxPrioList.remove(nextEntryIndex);
+		try {
+			// Get the list of elements with the highest priority:
+			Map.Entry<Integer, LinkedHashSet<T>> maxPrioEntry = queues.lastEntry();
+			if(maxPrioEntry == null) {
+				return null;
+			}
+			
+			// Get the first entry inserted into this list and remove it:
+			Iterator<T> iter = maxPrioEntry.getValue().iterator();
+			T nextEntry = iter.next();
+			iter.remove();
+			if(maxPrioEntry.getValue().isEmpty()) {
+				queues.remove(maxPrioEntry.getKey());
+			}
+			priorities.remove(nextEntry);
+			
+			return nextEntry;
+			
+		} finally {
+			// Operations have been done. Unlock the queues:
+			queuesLock.unlock();
+		}
+	}
+	
+	/**
+	 * Returns the next object and removes it from the queue. If the queue is
+	 * empty, the calling thread is blocked until an object is added.
+	 * The element with the highest priority will be returned first independent
+	 * of its actual position.
+	 * 
+	 * @return The next object.
+	 * @throws InterruptedException Thrown if the calling thread was interrupted
+	 * while waiting.
+	 */
+	public T take() throws InterruptedException {
+		queuesLock.lockInterruptibly();
+		try {
+			T nextEntry = pop();
+			// Wait until an entry is available:
+			while(nextEntry == null) {
+				notEmpty.await();
+				nextEntry = pop();
+			}
+			return nextEntry;
+			
+		} finally {
+			queuesLock.unlock();
 		}
-		
-		// Operations have been done. Unlock the queues:
-		queuesLock.unlock();
-		
-		return nextEntry;
 	}
 	
 	/**
@@ -174,23 +207,81 @@ public class DuplicateFreeQueue<T> {
 	 * @return The next object or <code>null</code> if the queue is empty.
 	 */
 	public T next() {
-		T nextEntry = null;
 		// Operations on the queue-map will be done, so lock the queues:
 		queuesLock.lock();
-		
-		// Get the list of elements with the highest priority:
-		List<T> maxPrioList = getHighestPrioritizedList();
-		
-		if(maxPrioList != null) {
-			// Get the last entry of the determined list:
-			int nextEntryIndex = maxPrioList.size() - 1;
-			nextEntry = maxPrioList.get(nextEntryIndex);
+		try {
+			Map.Entry<Integer, LinkedHashSet<T>> maxPrioEntry = queues.lastEntry();
+			if(maxPrioEntry == null) {
+				return null;
+			}
+			return maxPrioEntry.getValue().iterator().next();
+			
+		} finally {
+			// Operations have been done. Unlock the queues:
+			queuesLock.unlock();
+		}
+	}
+	
+	/**
+	 * Removes <code>content</code> from the queue.
+	 * @param content The object to remove.
+	 * @return <code>true</code> if <code>content</code> was contained.
+	 */
+	public boolean remove(T content) {
+		queuesLock.lock();
+		try {
+			Integer priority = priorities.remove(content);
+			if(priority == null) {
+				return false;
+			}
+			unlink(content, priority);
+			return true;
+			
+		} finally {
+			queuesLock.unlock();
+		}
+	}
+	
+	/**
+	 * Returns the priority of <code>content</code>.
+	 * @param content The object contained in the queue.
+	 * @return The priority of <code>content</code> or <code>null</code> if it is
+	 * not contained.
+	 */
+	public Integer getPriority(T content) {
+		queuesLock.lock();
+		try {
+			return priorities.get(content);
+		} finally {
+			queuesLock.unlock();
+		}
+	}
+	
+	/**
+	 * Changes the priority of an object already contained in the queue without
+	 * removing and re-inserting it. If the priority changes, the object is treated
+	 * as the last inserted one of its new priority.
+	 * @param content The object contained in the queue.
+	 * @param priority The new priority.
+	 * @return <code>true</code> if <code>content</code> was contained in the queue.
+	 */
+	public boolean setPriority(T content, int priority) {
+		queuesLock.lock();
+		try {
+			Integer oldPriority = priorities.get(content);
+			if(oldPriority == null) {
+				return false;
+			}
+			if(oldPriority != priority) {
+				unlink(content, oldPriority);
+				getList(priority, true).add(content);
+				priorities.put(content, priority);
+			}
+			return true;
+			
+		} finally {
+			queuesLock.unlock();
 		}
-		
-		// Operations have been done. Unlock the queues:
-		queuesLock.unlock();
-		
-		return nextEntry;
 	}
 	
 	/**
@@ -200,22 +291,12 @@ public class DuplicateFreeQueue<T> {
 	 * it is not.
 	 */
 	public boolean isEmpty() {
-		boolean empty = true; // Initially assume the queue is empty
-		
-		// Operations on the queue-map will be done, so lock the queues:
 		queuesLock.lock();
-		
-		// Iterate the lists of all priorities:
-		Iterator<List<T>> listIterator = queues.values().iterator();
-		while(listIterator.hasNext() && empty) {
-			List<T> currentList = listIterator.next();
-			empty = currentList.isEmpty();
+		try {
+			return priorities.isEmpty();
+		} finally {
+			queuesLock.unlock();
 		}
-		
-		// Operations have been done. Unlock the queues:
-		queuesLock.unlock();
-		
-		return empty;
 	}
 	
 	/**
@@ -224,52 +305,56 @@ public class DuplicateFreeQueue<T> {
 	 * @return The count of all entries in the queue.
 	 */
 	public int size() {
-		int countOfEntries = 0;
-		
-		// Operations on the queue-map will be done, so lock the queues:
 		queuesLock.lock();
-		
-		// Iterate the lists of all priorities:
-		for(List<T> currentList : queues.values()) {
-			countOfEntries += currentList.size(); // Add the count of elements in this list
+		try {
+			return priorities.size();
+		} finally {
+			queuesLock.unlock();
 		}
-		
-		// Operations have been done. Unlock the queues:
-		queuesLock.unlock();
-		
-		return countOfEntries;
 	}
 	
-	public boolean contains(T obj) {
-		// Operations on the queue-map will be done, so lock the queues:
+	/**
+	 * Returns the count of entries in the queue for each priority.
+	 * Priorities without entries are not contained.
+	 * @return The count of entries mapped by their priority in ascending order.
+	 */
+	public SortedMap<Integer, Integer> getSizesByPriority() {
 		queuesLock.lock();
-		
-		// Iterate the lists of all priorities:
-		for(List<T> currentList : queues.values()) {
-			if(currentList.contains(obj)) {
-				queuesLock.unlock();
-				return true;
+		try {
+			SortedMap<Integer, Integer> sizes = new TreeMap<>();
+			for(Map.Entry<Integer, LinkedHashSet<T>> entry : queues.entrySet()) {
+				sizes.put(entry.getKey(), entry.getValue().size());
 			}
+			return sizes;
+		} finally {
+			queuesLock.unlock();
+		}
+	}
+	
+	/**
+	 * Returns if an object equal to <code>obj</code> is contained in the queue.
+	 * @param obj The object to look for.
+	 * @return <code>true</code> if an equal object is contained.
+	 */
+	public boolean contains(T obj) {
+		queuesLock.lock();
+		try {
+			return priorities.containsKey(obj);
+		} finally {
+			queuesLock.unlock();
 		}
-		
-		// Operations have been done. Unlock the queues:
-		queuesLock.unlock();
-		return false;
 	}
 	
 	/**
 	 * Removes all entries from the queue.
 	 */
 	public void clear() {
-		// Operations on the queue-map will be done, so lock the queues:
 		queuesLock.lock();
-		
-		// Iterate the lists of all priorities:
-		for(List<T> currentList : queues.values()) {
-			currentList.clear();
+		try {
+			queues.clear();
+			priorities.clear();
+		} finally {
+			queuesLock.unlock();
 		}
-		
-		// Operations have been done. Unlock the queues:
-		queuesLock.unlock();
 	}
 }
@@ -0,0 +1,307 @@
+package sep.gaia.resources;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Singleton-class limiting the requests to each host across all queries and loaders.
+ * For each host there is a number of connection-slots limiting the requests running
+ * concurrently, and a token-bucket limiting the requests started per second.
+ * Requests waiting for a host are served in the order they arrived.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class HostGovernor {
+
+	/**
+	 * The number of requests per second permitted for a host if not set otherwise.
+	 */
+	public static final double DEFAULT_REQUESTS_PER_SECOND = 10;
+
+	/**
+	 * A granted permission to perform a request. Must be released when the request is done.
+	 * @author Matthias Fisch
+	 *
+	 */
+	public class Permit {
+
+		/**
+		 * The host the permit was granted for.
+		 */
+		private Host host;
+
+		/**
+		 * Flag if the permit was already released.
+		 */
+		private boolean released;
+
+		/**
+		 * Initializes the permit.
+		 * @param host The host the permit was granted for.
+		 */
+		private Permit(Host host) {
+			this.host = host;
+		}
+
+		/**
+		 * Returns the connection-slot of the permit, so that a waiting request may use it.
+		 * Calling this method more than once has no further effect.
+		 */
+		public void release() {
+			governorLock.lock();
+			try {
+				if(!released) {
+					released = true;
+					host.active--;
+					hostChanged.signalAll();
+				}
+			} finally {
+				governorLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * The limits and the state of a single host.
+	 * @author Matthias Fisch
+	 *
+	 */
+	private static class Host {
+
+		/**
+		 * The maximum number of requests running concurrently.
+		 */
+		private int maxConnections;
+
+		/**
+		 * The number of requests started per second at maximum.
+		 */
+		private double requestsPerSecond = DEFAULT_REQUESTS_PER_SECOND;
+
+		/**
+		 * The number of requests currently running.
+		 */
+		private int active;
+
+		/**
+		 * The tokens currently available. Each request started consumes one.
+		 */
+		private double tokens;
+
+		/**
+		 * The time in nanoseconds the tokens were refilled last.
+		 */
+		private long lastRefill = System.nanoTime();
+
+		/**
+		 * The requests waiting in the order of their arrival.
+		 */
+		private LinkedList<Object> waiting = new LinkedList<>();
+
+		/**
+		 * Returns the maximum number of tokens, i.e. the number of requests
+		 * that may be started at once after an idle period.
+		 */
+		private double getBurst() {
+			return Math.max(1, maxConnections);
+		}
+
+		/**
+		 * Adds the tokens earned since the last refill.
+		 */
+		private void refill() {
+			long now = System.nanoTime();
+			tokens = Math.min(getBurst(), tokens + (now - lastRefill) / 1e9 * requestsPerSecond);
+			lastRefill = now;
+		}
+
+		/**
+		 * Returns the time until the next token is available.
+		 * @return The time in nanoseconds until a token is available.
+		 */
+		private long nanosUntilToken() {
+			return (long) Math.ceil((1 - tokens) / requestsPerSecond * 1e9);
+		}
+	}
+
+	/**
+	 * The one instance of this class existing.
+	 */
+	private static HostGovernor instance;
+
+	/**
+	 * The state of all hosts requested mapped by their host-name.
+	 */
+	private Map<String, Host> hosts = new HashMap<>();
+
+	/**
+	 * Lock guarding <code>hosts</code> and their state.
+	 */
+	private Lock governorLock = new ReentrantLock();
+
+	/**
+	 * Signalled when a slot is released or a waiting request is cancelled.
+	 */
+	private Condition hostChanged = governorLock.newCondition();
+
+	/**
+	 * Initializes a governor independent of the global one, e.g. for tests.
+	 * Use <code>getInstance()</code> to limit requests across the application.
+	 */
+	public HostGovernor() { }
+
+	/**
+	 * Returns the one instance of the class shared by all loaders.
+	 * @return The one instance of the class.
+	 */
+	public static synchronized HostGovernor getInstance() {
+		if(instance == null) {
+			instance = new HostGovernor();
+		}
+		return instance;
+	}
+
+	/**
+	 * Returns the state of <code>hostname</code>, creating it if necessary.
+	 * The caller must hold <code>governorLock</code>.
+	 */
+	private Host getHost(String hostname, int maxConnections) {
+		Host host = hosts.get(hostname);
+		if(host == null) {
+			host = new Host();
+			host.maxConnections = maxConnections;
+			host.tokens = host.getBurst();
+			hosts.put(hostname, host);
+		} else if(host.maxConnections != maxConnections) {
+			// The limit may have changed, e.g. by loading another style:
+			host.maxConnections = maxConnections;
+			hostChanged.signalAll();
+		}
+		return host;
+	}
+
+	/**
+	 * Blocks until a request to <code>hostname</code> may be started. This is when all
+	 * requests waiting before have started, fewer than <code>maxConnections</code> requests
+	 * are running and the request-rate of the host permits another one.
+	 * @param hostname The host to request.
+	 * @param maxConnections The maximum number of requests to the host running
+	 * concurrently, e.g. <code>SubServer.getMaxConnections()</code>.
+	 * @param token The token the waiting is aborted by.
+	 * @return The permit to release after the request or <code>null</code> if
+	 * <code>token</code> was cancelled while waiting.
+	 */
+	public Permit acquire(String hostname, int maxConnections, CancellationToken token) {
+		// Wake up the caller if it is cancelled while waiting:
+		Closeable waker = new Closeable() {
+			@Override
+			public void close() {
+				governorLock.lock();
+				try {
+					hostChanged.signalAll();
+				} finally {
+					governorLock.unlock();
+				}
+			}
+		};
+		if(!token.register(waker)) {
+			return null;
+		}
+
+		Object ticket = new Object();
+		governorLock.lock();
+		try {
+			Host host = getHost(hostname, maxConnections);
+			host.waiting.add(ticket);
+			try {
+				while(!token.isCancelled()) {
+					host.refill();
+					boolean first = host.waiting.getFirst() == ticket;
+					boolean slotFree = host.active < Math.max(1, host.maxConnections);
+
+					if(first && slotFree && host.tokens >= 1) {
+						host.tokens -= 1;
+						host.active++;
+						return new Permit(host);
+
+					} else if(first && slotFree) {
+						// Only the rate limits, so wait for the next token:
+						hostChanged.awaitNanos(host.nanosUntilToken());
+					} else {
+						hostChanged.await();
+					}
+				}
+				return null;
+
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+
+			} finally {
+				host.waiting.remove(ticket);
+				// The next request may be able to start now:
+				hostChanged.signalAll();
+			}
+		} finally {
+			governorLock.unlock();
+			token.unregister(waker);
+		}
+	}
+
+	/**
+	 * Sets the number of requests per second permitted for <code>hostname</code>.
+	 * @param hostname The host to limit.
+	 * @param requestsPerSecond The number of requests started per second at maximum.
+	 */
+	public void setRequestRate(String hostname, double requestsPerSecond) {
+		governorLock.lock();
+		try {
+			Host host = hosts.get(hostname);
+			if(host == null) {
+				host = getHost(hostname, 1);
+			}
+			host.refill();
+			host.requestsPerSecond = requestsPerSecond;
+			hostChanged.signalAll();
+		} finally {
+			governorLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of requests to <code>hostname</code> currently running.
+	 * @param hostname The host requested.
+	 * @return The number of connection-slots in use.
+	 */
+	public int getActiveCount(String hostname) {
+		governorLock.lock();
+		try {
+			Host host = hosts.get(hostname);
+			return host != null ? host.active : 0;
+		} finally {
+			governorLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of requests waiting for <code>hostname</code>.
+	 * @param hostname The host requested.
+	 * @return The number of requests waiting.
+	 */
+	public int getWaitingCount(String hostname) {
+		governorLock.lock();
+		try {
+			Host host = hosts.get(hostname);
+			return host != null ? host.waiting.size() : 0;
+		} finally {
+			governorLock.unlock();
+		}
+	}
+}
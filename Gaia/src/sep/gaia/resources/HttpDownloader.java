@@ -0,0 +1,286 @@
+package sep.gaia.resources;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+/**
+ * Singleton-class for downloading resources over HTTP in a way that can be aborted.
+ * Each download is bound to a <code>CancellationToken</code>. If the token is cancelled
+ * while the download is in progress, the connection is closed and the data
+ * received so far is dropped. The number of bytes not transferred due to
+ * cancellations is recorded.
+ * <p>
+ * Downloads may be made conditional on validators of a copy cached before, so that
+ * the content is only transferred if it was modified.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class HttpDownloader {
+
+	/**
+	 * Milliseconds to wait for a connection to be established.
+	 */
+	private static final int CONNECT_TIMEOUT = 10000;
+
+	/**
+	 * Milliseconds to wait for data on an established connection.
+	 */
+	private static final int READ_TIMEOUT = 20000;
+
+	/**
+	 * The size of the buffer used for reading in bytes.
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * The maximum number of connections kept open in total.
+	 */
+	private static final int MAX_CONNECTIONS = 64;
+
+	/**
+	 * The outcome of a download.
+	 * @author Matthias Fisch
+	 *
+	 */
+	public static class Response {
+
+		/**
+		 * The content downloaded or <code>null</code> if it was not modified.
+		 */
+		private final byte[] content;
+
+		/**
+		 * The validators and the expiry sent by the server.
+		 */
+		private final CacheValidators validators;
+
+		/**
+		 * Initializes the response.
+		 * @param content The content downloaded or <code>null</code> if it was not modified.
+		 * @param validators The validators and the expiry sent by the server.
+		 */
+		public Response(byte[] content, CacheValidators validators) {
+			this.content = content;
+			this.validators = validators;
+		}
+
+		/**
+		 * Returns the content downloaded.
+		 * @return The content or <code>null</code> if it was not modified.
+		 */
+		public byte[] getContent() {
+			return content;
+		}
+
+		/**
+		 * Checks whether the server answered a conditional request by <code>304 Not Modified</code>.
+		 * @return <code>true</code> if the cached copy is still current.
+		 */
+		public boolean isNotModified() {
+			return content == null;
+		}
+
+		/**
+		 * Returns the validators and the expiry sent by the server.
+		 * @return The validators of the content.
+		 */
+		public CacheValidators getValidators() {
+			return validators;
+		}
+	}
+
+	/**
+	 * The one instance of this class existing.
+	 */
+	private static HttpDownloader instance;
+
+	/**
+	 * The client used for all downloads. Connections are reused across downloads.
+	 */
+	private CloseableHttpClient client;
+
+	/**
+	 * The number of downloads aborted while in progress.
+	 */
+	private AtomicLong cancelledCount = new AtomicLong();
+
+	/**
+	 * The number of bytes not transferred due to aborted downloads.
+	 * Only downloads whose size was announced by the server are considered.
+	 */
+	private AtomicLong bytesSaved = new AtomicLong();
+
+	/**
+	 * The number of bytes received by downloads completed.
+	 */
+	private AtomicLong bytesReceived = new AtomicLong();
+
+	/**
+	 * Hided because only a single instance should be existent.
+	 */
+	private HttpDownloader() {
+		PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+		connectionManager.setMaxTotal(MAX_CONNECTIONS);
+		connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS);
+
+		RequestConfig config = RequestConfig.custom()
+				.setConnectTimeout(CONNECT_TIMEOUT)
+				.setSocketTimeout(READ_TIMEOUT)
+				.build();
+
+		client = HttpClientBuilder.create()
+				.setConnectionManager(connectionManager)
+				.setDefaultRequestConfig(config)
+				.build();
+	}
+
+	/**
+	 * Returns the one instance of the class.
+	 * @return The one instance of the class.
+	 */
+	public static synchronized HttpDownloader getInstance() {
+		if(instance == null) {
+			instance = new HttpDownloader();
+		}
+		return instance;
+	}
+
+	/**
+	 * Downloads the content <code>url</code> points to.
+	 * @param url The location of the content.
+	 * @param token The token the download is aborted by.
+	 * @return The content downloaded or <code>null</code> if <code>token</code> was cancelled
+	 * before the download completed.
+	 * @throws IOException Thrown if the content could not be downloaded for another reason.
+	 */
+	public byte[] download(URL url, CancellationToken token) throws IOException {
+		Response response = download(url, null, token);
+		return response != null ? response.getContent() : null;
+	}
+
+	/**
+	 * Downloads the content <code>url</code> points to unless it was not modified since
+	 * a copy was cached.
+	 * @param url The location of the content.
+	 * @param cached The validators of the copy cached or <code>null</code> if the content
+	 * should be downloaded anyway.
+	 * @param token The token the download is aborted by.
+	 * @return The response or <code>null</code> if <code>token</code> was cancelled
+	 * before the download completed.
+	 * @throws IOException Thrown if the content could not be downloaded for another reason.
+	 * An <code>HttpStatusException</code> is thrown if the server answered by an unexpected status.
+	 */
+	public Response download(URL url, CacheValidators cached, CancellationToken token) throws IOException {
+		if(token.isCancelled()) {
+			return null;
+		}
+
+		final HttpGet request;
+		try {
+			request = new HttpGet(url.toURI());
+		} catch (URISyntaxException e) {
+			throw new IOException("Invalid URL " + url, e);
+		}
+		if(cached != null) {
+			cached.applyTo(request);
+		}
+
+		// Aborting the request closes its connection and unblocks connecting and reading:
+		Closeable closer = new Closeable() {
+			@Override
+			public void close() {
+				request.abort();
+			}
+		};
+		if(!token.register(closer)) {
+			return null;
+		}
+
+		long expectedLength = -1;
+		long received = 0;
+		try (CloseableHttpResponse response = client.execute(request)) {
+			HttpEntity entity = response.getEntity();
+			int status = response.getStatusLine().getStatusCode();
+			CacheValidators validators = CacheValidators.fromResponse(response, System.currentTimeMillis());
+			if(status == HttpStatus.SC_NOT_MODIFIED && cached != null) {
+				// The cached copy is current, nothing is transferred:
+				return new Response(null, validators);
+			}
+			if(status != HttpStatus.SC_OK || entity == null) {
+				request.abort();
+				throw new HttpStatusException("Server responded with status " + status + " for " + url, status);
+			}
+			expectedLength = entity.getContentLength();
+
+			try (InputStream in = entity.getContent()) {
+				ByteArrayOutputStream content = new ByteArrayOutputStream(
+						expectedLength > 0 ? (int) expectedLength : BUFFER_SIZE);
+				byte[] buffer = new byte[BUFFER_SIZE];
+				int read;
+				while(!token.isCancelled() && (read = in.read(buffer)) != -1) {
+					content.write(buffer, 0, read);
+					received += read;
+				}
+
+				if(!token.isCancelled()) {
+					bytesReceived.addAndGet(received);
+					return new Response(content.toByteArray(), validators);
+				}
+			}
+
+		} catch (IOException e) {
+			// A closed connection is expected on cancellation:
+			if(!token.isCancelled()) {
+				throw e;
+			}
+		} finally {
+			token.unregister(closer);
+		}
+
+		// The download was aborted, so drop the partial content:
+		cancelledCount.incrementAndGet();
+		if(expectedLength > received) {
+			bytesSaved.addAndGet(expectedLength - received);
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the number of downloads aborted while in progress.
+	 * @return The number of downloads aborted.
+	 */
+	public long getCancelledCount() {
+		return cancelledCount.get();
+	}
+
+	/**
+	 * Returns the number of bytes not transferred due to aborted downloads.
+	 * @return The number of bytes saved by cancellations.
+	 */
+	public long getBytesSaved() {
+		return bytesSaved.get();
+	}
+
+	/**
+	 * Returns the number of bytes received by downloads completed.
+	 * @return The number of bytes received.
+	 */
+	public long getBytesReceived() {
+		return bytesReceived.get();
+	}
+}
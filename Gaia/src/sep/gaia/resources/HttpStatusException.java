@@ -0,0 +1,44 @@
+package sep.gaia.resources;
+
+import java.io.IOException;
+
+/**
+ * Thrown if a server answered a request by a status other than the one expected.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class HttpStatusException extends IOException {
+	private static final long serialVersionUID = -2871339541580274913L;
+
+	/**
+	 * The status-code of the response.
+	 */
+	private final int statusCode;
+
+	/**
+	 * Initializes the exception.
+	 * @param message The description of the error.
+	 * @param statusCode The status-code of the response.
+	 */
+	public HttpStatusException(String message, int statusCode) {
+		super(message);
+		this.statusCode = statusCode;
+	}
+
+	/**
+	 * Returns the status-code of the response.
+	 * @return The HTTP status-code.
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	/**
+	 * Checks whether the server failed, so that the request may succeed later.
+	 * @return <code>true</code> if the status-code is a server-error (5xx).
+	 */
+	public boolean isServerError() {
+		return statusCode >= 500 && statusCode < 600;
+	}
+}
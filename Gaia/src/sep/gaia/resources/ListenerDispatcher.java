@@ -0,0 +1,333 @@
+package sep.gaia.resources;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Delivers the results of a loader to its listeners on a single dispatch-thread.
+ * Batches are delivered to each listener in the order they were dispatched. If a
+ * listener is still busy processing a batch, all batches dispatched meanwhile are
+ * merged into a single one, so that the listener never processes stale intermediate
+ * states. Batches belonging to an older query are discarded if a batch of a newer
+ * query arrives before they were delivered.
+ * The time between dispatching a batch and delivering it (the dispatch-lag) is recorded.
+ *
+ * @author Matthias Fisch
+ *
+ * @param <R> The type of the resources dispatched.
+ */
+public class ListenerDispatcher<R extends DataResource> {
+
+	/**
+	 * Seconds the dispatch-thread is kept alive while there is nothing to deliver.
+	 */
+	private static final int THREAD_KEEP_ALIVE = 30;
+
+	/**
+	 * The state of the delivery to a single listener.
+	 * @author Matthias Fisch
+	 *
+	 */
+	private class ListenerSlot implements Runnable {
+
+		/**
+		 * The listener to deliver to.
+		 */
+		private LoaderEventListener<R> listener;
+
+		/**
+		 * The batch waiting for delivery mapped by the keys of its resources
+		 * or <code>null</code> if there is none.
+		 */
+		private Map<String, R> pending;
+
+		/**
+		 * The generation (e.g. the number of the query) of the pending batch.
+		 */
+		private long pendingGeneration;
+
+		/**
+		 * The time in nanoseconds the oldest batch merged into <code>pending</code> was dispatched.
+		 */
+		private long pendingSince;
+
+		/**
+		 * Flag if a delivery to the listener is scheduled or running.
+		 */
+		private boolean scheduled;
+
+		/**
+		 * Initializes the slot.
+		 * @param listener The listener to deliver to.
+		 */
+		public ListenerSlot(LoaderEventListener<R> listener) {
+			this.listener = listener;
+		}
+
+		/**
+		 * Delivers pending batches until there are none left.
+		 */
+		@Override
+		public void run() {
+			while(true) {
+				Collection<R> batch;
+				slotsLock.lock();
+				try {
+					if(pending == null) {
+						scheduled = false;
+						return;
+					}
+					batch = new ArrayList<>(pending.values());
+					recordLag(System.nanoTime() - pendingSince);
+					pending = null;
+				} finally {
+					slotsLock.unlock();
+				}
+				listener.onResourcesAvailable(batch);
+			}
+		}
+	}
+
+	/**
+	 * The delivery-state of each listener.
+	 */
+	private Map<LoaderEventListener<R>, ListenerSlot> slots = new IdentityHashMap<>();
+
+	/**
+	 * Lock guarding <code>slots</code>, their contents and the statistics.
+	 */
+	private Lock slotsLock = new ReentrantLock();
+
+	/**
+	 * The executor owning the dispatch-thread.
+	 */
+	private ThreadPoolExecutor executor;
+
+	/**
+	 * The number of batches delivered.
+	 */
+	private long deliveredCount;
+
+	/**
+	 * The number of batches merged into a batch waiting for delivery.
+	 */
+	private long coalescedCount;
+
+	/**
+	 * The number of batches discarded because a batch of a newer generation arrived.
+	 */
+	private long discardedCount;
+
+	/**
+	 * The dispatch-lag of the batch delivered last in nanoseconds.
+	 */
+	private long lastLag;
+
+	/**
+	 * The highest dispatch-lag recorded in nanoseconds.
+	 */
+	private long maxLag;
+
+	/**
+	 * The sum of all dispatch-lags recorded in nanoseconds.
+	 */
+	private long totalLag;
+
+	/**
+	 * Initializes the dispatcher.
+	 * @param name The name of the dispatch-thread.
+	 */
+	public ListenerDispatcher(final String name) {
+		ThreadFactory threadFactory = new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		executor = new ThreadPoolExecutor(1, 1, THREAD_KEEP_ALIVE, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), threadFactory);
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Schedules the delivery of <code>resources</code> to <code>listener</code>.
+	 * If a batch for the listener is still waiting, <code>resources</code> is merged
+	 * into it if both have the same generation. Resources not being dummies replace dummies
+	 * with the same key. If the waiting batch has an older generation it is replaced.
+	 * Batches of a generation older than the waiting one are discarded.
+	 * @param listener The listener to deliver to.
+	 * @param resources The resources to deliver.
+	 * @param generation The generation of the batch, e.g. the number of the query it
+	 * results from. Higher values denote newer batches.
+	 */
+	public void dispatch(LoaderEventListener<R> listener, Collection<R> resources, long generation) {
+		slotsLock.lock();
+		try {
+			ListenerSlot slot = slots.get(listener);
+			if(slot == null) {
+				slot = new ListenerSlot(listener);
+				slots.put(listener, slot);
+			}
+
+			if(slot.pending != null && generation < slot.pendingGeneration) {
+				// Already superseded by a newer query:
+				discardedCount++;
+				return;
+			}
+
+			if(slot.pending == null || generation > slot.pendingGeneration) {
+				if(slot.pending != null) {
+					discardedCount++;
+				}
+				slot.pending = new LinkedHashMap<>();
+				slot.pendingGeneration = generation;
+				slot.pendingSince = System.nanoTime();
+			} else {
+				coalescedCount++;
+			}
+			merge(slot.pending, resources);
+
+			// Start a delivery if none is running for this listener:
+			if(!slot.scheduled) {
+				slot.scheduled = true;
+				executor.execute(slot);
+			}
+		} finally {
+			slotsLock.unlock();
+		}
+	}
+
+	/**
+	 * Merges <code>resources</code> into <code>batch</code>. A resource replaces
+	 * an entry with the same key unless it is a dummy and the entry is not.
+	 * @param batch The batch to merge into, mapped by the keys of its resources.
+	 * @param resources The resources to merge.
+	 */
+	private void merge(Map<String, R> batch, Collection<R> resources) {
+		for(R resource : resources) {
+			String key = resource.getKey();
+			R existing = batch.get(key);
+			if(existing == null || existing.isDummy() || !resource.isDummy()) {
+				batch.put(key, resource);
+			}
+		}
+	}
+
+	/**
+	 * Stops delivering to <code>listener</code>. A batch waiting for delivery is discarded.
+	 * @param listener The listener to stop delivering to.
+	 */
+	public void removeListener(LoaderEventListener<R> listener) {
+		slotsLock.lock();
+		try {
+			ListenerSlot slot = slots.remove(listener);
+			if(slot != null) {
+				slot.pending = null;
+			}
+		} finally {
+			slotsLock.unlock();
+		}
+	}
+
+	/**
+	 * Records the dispatch-lag of a delivered batch.
+	 * The caller must hold <code>slotsLock</code>.
+	 * @param lag The dispatch-lag in nanoseconds.
+	 */
+	private void recordLag(long lag) {
+		deliveredCount++;
+		lastLag = lag;
+		totalLag += lag;
+		maxLag = Math.max(maxLag, lag);
+	}
+
+	/**
+	 * Returns the number of batches delivered to listeners.
+	 * @return The number of batches delivered.
+	 */
+	public long getDeliveredCount() {
+		slotsLock.lock();
+		try {
+			return deliveredCount;
+		} finally {
+			slotsLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of batches merged into a batch still waiting for delivery.
+	 * @return The number of batches merged.
+	 */
+	public long getCoalescedCount() {
+		slotsLock.lock();
+		try {
+			return coalescedCount;
+		} finally {
+			slotsLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of batches discarded because a newer query produced results
+	 * before they were delivered.
+	 * @return The number of batches discarded.
+	 */
+	public long getDiscardedCount() {
+		slotsLock.lock();
+		try {
+			return discardedCount;
+		} finally {
+			slotsLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the dispatch-lag of the batch delivered last.
+	 * @return The dispatch-lag in milliseconds.
+	 */
+	public double getLastLagMillis() {
+		slotsLock.lock();
+		try {
+			return lastLag / 1e6;
+		} finally {
+			slotsLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the highest dispatch-lag recorded.
+	 * @return The highest dispatch-lag in milliseconds.
+	 */
+	public double getMaxLagMillis() {
+		slotsLock.lock();
+		try {
+			return maxLag / 1e6;
+		} finally {
+			slotsLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the average dispatch-lag of all batches delivered.
+	 * @return The average dispatch-lag in milliseconds or zero if nothing was delivered yet.
+	 */
+	public double getAverageLagMillis() {
+		slotsLock.lock();
+		try {
+			return deliveredCount > 0 ? totalLag / 1e6 / deliveredCount : 0;
+		} finally {
+			slotsLock.unlock();
+		}
+	}
+}
@@ -2,10 +2,20 @@ package sep.gaia.resources;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -22,15 +32,9 @@ import java.util.concurrent.locks.ReentrantLock;
 public final class Loader<Q extends Query, R extends DataResource> extends Thread {
 
 	/**
-	 * Amount of milliseconds to wait until next check, after <code>queryQueue</code> was evaluated
-	 * empty.
+	 * The number of workers a loader may run concurrently if no other quota is specified.
 	 */
-	private static final int DELAY_WAIT_FOR_QUERY = 25;
-
-	/**
-	 * Amount of milliseconds to wait between checks for workers having finished.
-	 */
-	private static final int DELAY_WAIT_FOR_WORKER = 10;
+	public static final int DEFAULT_WORKER_QUOTA = 4;
 
 	/**
 	 * The queue used for communication from a concrete manager to its concrete loader.
@@ -48,15 +52,21 @@ public final class Loader<Q extends Query, R extends DataResource> extends Threa
 	private Cache<R> cache;
 
 	/**
-	 * A list of workers processing a query.
+	 * The workers processing the current query.
 	 */
-	private List<AbstractLoaderWorker<Q, R>> activeWorkers = new LinkedList<>();
+	private Set<AbstractLoaderWorker<Q, R>> activeWorkers = new LinkedHashSet<>();
 
 	/**
 	 * Lock for blocking asynchronous operations when <code>activeWorkers</code>
 	 * is write-accessed.
 	 */
 	private Lock activeWorkersLock = new ReentrantLock();
+
+	/**
+	 * Workers of this loader having finished, in the order of their completion.
+	 * The loader-thread blocks on this queue while workers are active.
+	 */
+	private BlockingQueue<AbstractLoaderWorker<?, ?>> finishedWorkers = new LinkedBlockingQueue<>();
 	
 	/**
 	 * The factory used to create new workers.
@@ -74,6 +84,72 @@ public final class Loader<Q extends Query, R extends DataResource> extends Threa
 	 */
 	private List<LoaderEventListener<R>> listeners = new LinkedList<>();
 
+	/**
+	 * The share of the <code>WorkerPool</code> the workers of this loader are executed in.
+	 * Released when the loader-thread exits.
+	 */
+	private WorkerPool.Share workerShare;
+
+	/**
+	 * Flag if <code>workerShare</code> was released, so that no workers are submitted anymore.
+	 */
+	private AtomicBoolean shareReleased = new AtomicBoolean();
+
+	/**
+	 * Delivers the results of this loader to its listeners in the order of completion.
+	 */
+	private ListenerDispatcher<R> dispatcher;
+
+	/**
+	 * The number of queries taken from the queue so far. Used as generation of the
+	 * batches dispatched, so that results of outdated queries are not delivered.
+	 */
+	private volatile long querySequence;
+
+	/**
+	 * The resources of the query currently processed mapped by their keys, with those
+	 * loaded so far replacing their dummies. Guarded by <code>activeWorkersLock</code>.
+	 */
+	private Map<String, DataResource> currentResources = new LinkedHashMap<>();
+
+	/**
+	 * The keys of the resources of the current query already published by their
+	 * workers. Guarded by <code>activeWorkersLock</code>.
+	 */
+	private Set<String> publishedKeys = new HashSet<>();
+
+	/**
+	 * Receives single results from the workers of the current query and passes them
+	 * on to the listeners immediately. Only the new result is dispatched, the dispatcher
+	 * merges it into the batch of its query waiting for delivery.
+	 */
+	private ResultSink<R> resultSink = new ResultSink<R>() {
+		@Override
+		public boolean onResult(AbstractLoaderWorker<?, R> worker, R result) {
+			long generation;
+			activeWorkersLock.lock();
+			try {
+				// Ignore results of workers of outdated queries:
+				if(!activeWorkers.contains(worker) || worker.isInterrupted()) {
+					return false;
+				}
+				publishedKeys.add(result.getKey());
+				currentResources.put(result.getKey(), result);
+				generation = querySequence;
+			} finally {
+				activeWorkersLock.unlock();
+			}
+			
+			// The workers don't wait for each other while the cache is updated:
+			if(cache != null) {
+				cache.add(result);
+				cache.manage();
+			}
+			notifyAllAsnyc(Collections.singletonList(result), generation);
+			return true;
+		}
+	};
+
 
 	/**
 	 * Initializes the loader with a cache preferably used to obtain resources.
@@ -88,194 +164,226 @@ public final class Loader<Q extends Query, R extends DataResource> extends Threa
 		this.cache = cache;
 		this.workerFactory = workerFactory;
 		this.querySplitter = splitter;
+		this.workerShare = WorkerPool.getInstance().createShare(getName(), DEFAULT_WORKER_QUOTA);
+		this.dispatcher = new ListenerDispatcher<>(getName() + "-dispatcher");
+	}
+
+	/**
+	 * Initializes the loader with a cache preferably used to obtain resources.
+	 * @param name The name of the loader, e.g. the label of the manager it belongs to.
+	 * @param cache The cache to be checked before loading data or <code>null</code> if no
+	 * cache should be used.
+	 * @param workerFactory Object for generating new workers in order to process specific queries.
+	 * @param splitter An object for splitting queries into smaller parts for asynchronous processing.
+	 * If no splitting is required this member must be <code>null</code>.
+	 * @param workerQuota The number of workers this loader may run concurrently in the
+	 * shared <code>WorkerPool</code>.
+	 */
+	public Loader(String name, Cache<R> cache, WorkerFactory<Q, R> workerFactory, QuerySplitter<Q> splitter, int workerQuota) {
+		super(name);
+		this.cache = cache;
+		this.workerFactory = workerFactory;
+		this.querySplitter = splitter;
+		this.workerShare = WorkerPool.getInstance().createShare(name, workerQuota);
+		this.dispatcher = new ListenerDispatcher<>(name + "-dispatcher");
 	}
 
 	/**
-	 * Creates the workers, starts all of them and waits for them to finish. Once a worker
-	 * has finished all listeners must be notified about the presence of new data.
+	 * Blocks until a query is available, creates the workers, submits all of them and waits
+	 * for them to finish. Each worker reports its completion to the loader, so that
+	 * its results are evaluated as soon as it has finished and all listeners can be notified
+	 * about the presence of new data. While idle the loader does not consume any CPU-time.
 	 * If the interrupt-flag is set by calling <code>interrupt()</code> all workers will
-	 * be interrupted too.
+	 * be interrupted too. When the loader-thread exits, its share of the <code>WorkerPool</code>
+	 * is released.
 	 */
 	@Override
 	public void run() {
-
-		// A worker-factory is required for generating new workers:
-		if(workerFactory == null) {
-			return;
+		try {
+			// A worker-factory is required for generating new workers:
+			if(workerFactory != null) {
+				processQueries();
+			}
+		} finally {
+			releaseShare();
 		}
+	}
 
+	/**
+	 * Processes the queries of the queue until the loader is interrupted.
+	 */
+	private void processQueries() {
 		// As long the thread is not interrupted from outside:
-		while(!isInterrupted()) {
-
-			Q nextQuery = queryQueue.pop(); // Retrieve the next query to handle
-			// Check if there are queries to process:
-			if(nextQuery != null) {
-				/*
-				 * When a worker terminates, it only has the resources resulting from
-				 * the splitted query in its result-collection stored. But the convention 
-				 * is that listeners receive the whole collection of resources with those
-				 * not loaded yet marked as dummy. So the collection of dummies of the
-				 * query must be stored:
-				 */
-				Collection<DataResource> dummies = nextQuery.getResources();
-
-				// Create sub-queries to be processed separatly:
-				Collection<Q> subQueries;
-				if(querySplitter != null) {
-					subQueries = querySplitter.splitQuery(nextQuery);
-					
-				} else {
-					// "Fake" a returned collection with only the one query in it:
-					subQueries = new LinkedList<Q>();
-					// Add another subquery.
-					subQueries.add(nextQuery);
-				}
+		while(!isInterrupted() && !shareReleased.get()) {
+
+			// Block until the next query to handle is available:
+			Q nextQuery;
+			try {
+				nextQuery = queryQueue.take();
+			} catch (InterruptedException e) {
+				// Reset interruption-flag:
+				interrupt();
+				break;
+			}
+			querySequence++;
+
+			/*
+			 * When a worker terminates, it only has the resources resulting from
+			 * the splitted query in its result-collection stored. But the convention 
+			 * is that listeners receive the whole collection of resources with those
+			 * not loaded yet marked as dummy. So the collection of dummies of the
+			 * query must be stored:
+			 */
+			Collection<DataResource> dummies = nextQuery.getResources();
 
-				Iterator<Q> subQueryIter = subQueries.iterator();
-				while(subQueryIter.hasNext()) {
-					// Get next sub-query:
-					Q nextSubQuery = subQueryIter.next();
-					// Create a new worker for processing the sub-query:
-					AbstractLoaderWorker<Q, R> worker = workerFactory.createWorker(nextSubQuery, cache);
-					activeWorkers.add(worker); // Add worker to the set of active workers
+			// Create sub-queries to be processed separatly:
+			Collection<Q> subQueries;
+			if(querySplitter != null) {
+				subQueries = querySplitter.splitQuery(nextQuery);
+				
+			} else {
+				// "Fake" a returned collection with only the one query in it:
+				subQueries = new LinkedList<Q>();
+				// Add another subquery.
+				subQueries.add(nextQuery);
+			}
+
+			activeWorkersLock.lock();
+			currentResources = new LinkedHashMap<>();
+			for(DataResource dummy : dummies) {
+				currentResources.put(dummy.getKey(), dummy);
+			}
+			publishedKeys.clear();
+			Iterator<Q> subQueryIter = subQueries.iterator();
+			while(subQueryIter.hasNext()) {
+				// Get next sub-query:
+				Q nextSubQuery = subQueryIter.next();
+				// Create a new worker for processing the sub-query:
+				AbstractLoaderWorker<Q, R> worker = workerFactory.createWorker(nextSubQuery, cache);
+				// The worker reports to this loader when it has finished:
+				worker.setCompletionQueue(finishedWorkers);
+				// Results are passed on as soon as the worker publishes them:
+				worker.setResultSink(resultSink);
+				activeWorkers.add(worker); // Add worker to the set of active workers
 
-					// Finally start the worker:
-					worker.start();
+				// Finally queue the worker in the shared pool:
+				workerShare.submit(worker);
+			}
+			activeWorkersLock.unlock();
+			
+			// Evaluate workers in the order they finish as long as there are active workers:
+			while(!activeWorkers.isEmpty() && !isInterrupted()) {
+				
+				// Block until the next worker has finished:
+				AbstractLoaderWorker<?, ?> finished;
+				try {
+					finished = finishedWorkers.take();
+				} catch (InterruptedException e) {
+					interrupt(); // Reset interruption-flag
+					break;
 				}
 				
-				// Check for workers having finished as long as there are active workers:
-				while(!activeWorkers.isEmpty() && !isInterrupted()) {
-					
-					// Remember workers evaluated:
-					List<AbstractLoaderWorker<Q, R>> evaluated = new ArrayList<>(activeWorkers.size());
-					
-					// Request the lock on the activeWorkers-collection:
-					activeWorkersLock.lock();
-					
-					// Check each particular worker:
-					ListIterator<AbstractLoaderWorker<Q, R>> iter = activeWorkers.listIterator();
-					while(iter.hasNext()) {
-						
-						// Get next worker:
-						AbstractLoaderWorker<Q, R> currentWorker = iter.next();
-						
-						// If the worker has finished now:
-						if(!currentWorker.isAlive() && !currentWorker.isEvaluated()) {
-							
-							// Add to list of evaluated workers:
-							evaluated.add(currentWorker);
-
-							// Get the results the worker has generated:
-							Collection<R> results = currentWorker.getResults();
-							if(results != null) {
-								// Add the results to cache:
-								if(cache != null) {
-									for(R result : results) {
-										cache.add(result);
-									}
-								}
-								
-								updateCollection(dummies, results);
-								
-								// Now add all those resource from the initial query not yet contained:
-								for(DataResource resource : dummies) {
-									if(!results.contains(resource)) {
-										results.add((R)resource);
-									}
+				Collection<R> unpublished = new LinkedList<>();
+				Collection<R> resources = null;
+				
+				// Request the lock on the activeWorkers-collection:
+				activeWorkersLock.lock();
+				try {
+					// Ignore workers of other queries or workers already evaluated:
+					if(activeWorkers.remove(finished)) {
+						// Get the results the worker has generated:
+						Collection<?> results = finished.getResults();
+						if(results != null) {
+							// Results published while the worker was running are already processed:
+							for(Object object : results) {
+								@SuppressWarnings("unchecked")
+								R result = (R) object;
+								if(!publishedKeys.contains(result.getKey())) {
+									unpublished.add(result);
+									currentResources.put(result.getKey(), result);
 								}
-								
-								// Notify all listeners about the availability of new data:
-								notifyAllAsnyc(results);
 							}
 						}
-
-						try {
-							// Remove entries from cache if necessary:
-							if(cache != null) {
-								cache.manage();
-							}
-							
-							// Wait certain amount of time until next check:
-							sleep(DELAY_WAIT_FOR_WORKER);
-							
-						} catch(InterruptedException e) {
-							interrupt(); // Reset interruption-flag
+						/*
+						 * A worker loading nothing still notifies the listeners, so that they
+						 * receive the dummies of the query as before streaming. Workers whose
+						 * results were all published are not reported twice:
+						 */
+						if(!unpublished.isEmpty() || (results != null && results.isEmpty())) {
+							resources = snapshot(currentResources.values());
 						}
 					}
-					
-					// Remove those workers evaluated:
-					activeWorkers.removeAll(evaluated);
-					
+				} finally {
 					// Allow other threads to access the activeWorkers-collection:
 					activeWorkersLock.unlock();
 				}
 				
-			} else {
-				// If there are no queries to process, go to sleep:
-				try {
-					sleep(DELAY_WAIT_FOR_QUERY);
-				} catch (InterruptedException e) {
-					// Reset interruption-flag:
-					interrupt();
+				if(!unpublished.isEmpty() && cache != null) {
+					// Add the results to cache:
+					for(R result : unpublished) {
+						cache.add(result);
+					}
+					// Remove entries from cache if necessary:
+					cache.manage();
+				}
+				
+				if(resources != null) {
+					// Notify all listeners about the availability of new data:
+					notifyAllAsnyc(resources);
 				}
 			}
 		}
 	}
 	
 	/**
-	 * Replaces all entries in <code>originals</code> equal to a entry in 
-	 * <code>updates</code> by the latter. If no correspondent entry is present in
-	 * <code>originals</code>, the entry in <code>updates</code> will simply be added.
-	 * @param originals The collection to update.
-	 * @param updates The updates to insert.
+	 * Copies the resources of a query, so that listeners receive a collection not
+	 * modified by the loader afterwards.
+	 * @param resources The resources of the query, loaded ones and dummies.
+	 * @return A copy of <code>resources</code>.
 	 */
-	private void updateCollection(Collection<DataResource> originals, Collection<R> updates) {
-		Collection<DataResource> toRemove = new LinkedList<>();
-		
-		Iterator<R> updateIter = updates.iterator();
-		while(updateIter.hasNext()) {
-			R currentUpdate = updateIter.next();
-			
-			boolean found = false;
-			Iterator<DataResource> originalIter = originals.iterator();
-			while(originalIter.hasNext() && !found) {
-				DataResource currentOriginal = originalIter.next();
-				if(currentUpdate.equals(currentOriginal)) {
-					toRemove.add(currentOriginal);
-					found = true;
-				}
-			}
+	@SuppressWarnings("unchecked")
+	private Collection<R> snapshot(Collection<DataResource> resources) {
+		Collection<R> copy = new LinkedList<>();
+		for(DataResource resource : resources) {
+			copy.add((R) resource);
 		}
-		originals.remove(toRemove);
-		originals.addAll(updates);
+		return copy;
 	}
 
 	/**
-	 * Calls the <code>onResourcesAvaliable()</code>-event of all listeners in a new thread.
-	 * The method is designed to operate asynchronously in order to not block the loaders
-	 * managing-loop (see <code>run()</code>).
+	 * Calls the <code>onResourcesAvaliable()</code>-event of all listeners on the
+	 * dispatch-thread of this loader. The method is designed to operate asynchronously
+	 * in order to not block the loaders managing-loop (see <code>run()</code>).
+	 * Listeners receive the batches in the order of completion. Batches produced
+	 * while a listener is still busy are merged into one.
 	 */
 	protected void notifyAllAsnyc(final Collection<R> resources) {
+		notifyAllAsnyc(resources, querySequence);
+	}
+
+	/**
+	 * Dispatches <code>resources</code> to all listeners as a batch of the query
+	 * with number <code>generation</code> (see <code>notifyAllAsnyc(Collection)</code>).
+	 * @param resources The resources to deliver.
+	 * @param generation The number of the query the resources result from.
+	 */
+	private void notifyAllAsnyc(Collection<R> resources, long generation) {
 		// Iterate all listeners:
 		ListIterator<LoaderEventListener<R>> iter = listeners.listIterator();
 		while(iter.hasNext()) {
-			// Get next listener:
-			final LoaderEventListener<R> currentListener = iter.next();
-
-			// Define a routine for notifying a listening objects about the availability of new data:
-			Runnable notifyRoutine = new Runnable() {
-				@Override
-				public void run() {
-					currentListener.onResourcesAvailable(resources); // Fire the event
-				}
-			};
-
-			// Create a thread running the notification-routine:
-			Thread notificationThread = new Thread(notifyRoutine);
-			notificationThread.start(); // Start the thread
+			dispatcher.dispatch(iter.next(), resources, generation);
 		}
 	}
 
+	/**
+	 * Returns the dispatcher delivering the results of this loader to its listeners,
+	 * e.g. for reading the dispatch-lag.
+	 * @return The dispatcher of this loader.
+	 */
+	public ListenerDispatcher<R> getDispatcher() {
+		return dispatcher;
+	}
+
 	/**
 	 * Adds <code>query</code> to the queue of queries to be processed.
 	 * The object will be inserted with default priority.
@@ -296,6 +404,44 @@ public final class Loader<Q extends Query, R extends DataResource> extends Threa
 		queryQueue.push(query, priority);
 	}
 
+	/**
+	 * Returns the number of queries waiting in the queue for each priority.
+	 * @return The number of queries waiting mapped by their priority in ascending order.
+	 */
+	public SortedMap<Integer, Integer> getQueueDepths() {
+		return queryQueue.getSizesByPriority();
+	}
+
+	/**
+	 * Returns the number of workers processing the current query, either running
+	 * or waiting for a thread of the <code>WorkerPool</code>.
+	 * @return The number of active workers.
+	 */
+	public int getActiveWorkerCount() {
+		activeWorkersLock.lock();
+		try {
+			return activeWorkers.size();
+		} finally {
+			activeWorkersLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of workers of this loader currently executed.
+	 * @return The number of workers running.
+	 */
+	public int getRunningWorkerCount() {
+		return workerShare.getRunningCount();
+	}
+
+	/**
+	 * Returns the number of workers of this loader waiting for execution.
+	 * @return The number of workers waiting.
+	 */
+	public int getPendingWorkerCount() {
+		return workerShare.getPendingCount();
+	}
+
 	/**
 	 * Removes all entries from the query-queue and stops all workers processing
 	 * a query.
@@ -320,32 +466,79 @@ public final class Loader<Q extends Query, R extends DataResource> extends Threa
 	public void removeListener(LoaderEventListener<R> listener) {
 		// Remove from the list of objects to notify:
 		listeners.remove(listener);
+		dispatcher.removeListener(listener);
 	}
 	
 	/**
 	 * Requests all active workers to stop.
 	 * The actual stopping of each worker may be delayed.
-	 * Note that this method will block until asynchronous operations
-	 * of the loader are finished.
 	 */
 	public void requestWorkersStop() {
-		// Prevent that the loader-thread removes entries while iterating the workers:
-		
-		// TODO: Maybe the lock must be set?
-		//activeWorkersLock.lock();
+		// Prevent that the loader-thread or the result-sink modify the workers while copying them:
+		List<AbstractLoaderWorker<Q, R>> workers;
+		activeWorkersLock.lock();
+		try {
+			workers = new ArrayList<>(activeWorkers);
+		} finally {
+			activeWorkersLock.unlock();
+		}
 		
-		for(int i = 0; i < activeWorkers.size(); i++) {
-			AbstractLoaderWorker<Q, R> worker = activeWorkers.get(i);
+		// Aborting the downloads may take a while, so it is done outside the lock:
+		for(AbstractLoaderWorker<Q, R> worker : workers) {
 			worker.interrupt();
 		}
 		
-		// Free the collection of active workers for access by the loader-thread:
-		//activeWorkersLock.unlock();
+		// Workers not started yet don't need to be executed at all:
+		workerShare.cancelPending();
+	}
+
+	/**
+	 * Requests the active workers to stop loading resources not in <code>retained</code>,
+	 * e.g. because they are not visible any more. Workers none of whose resources are
+	 * retained are stopped, the others only skip the resources not retained. Downloads
+	 * of resources retained are not aborted.
+	 * @param retained The resources still to be loaded.
+	 * @return The number of workers stopped.
+	 */
+	public int requestWorkersStop(Collection<? extends DataResource> retained) {
+		Set<String> keys = new HashSet<>();
+		for(DataResource resource : retained) {
+			keys.add(resource.getKey());
+		}
+		
+		List<AbstractLoaderWorker<Q, R>> workers;
+		activeWorkersLock.lock();
+		try {
+			workers = new ArrayList<>(activeWorkers);
+		} finally {
+			activeWorkersLock.unlock();
+		}
+		
+		int stopped = 0;
+		for(AbstractLoaderWorker<Q, R> worker : workers) {
+			boolean needed = false;
+			for(DataResource resource : worker.getSubQuery().getResources()) {
+				if(keys.contains(resource.getKey())) {
+					needed = true;
+					break;
+				}
+			}
+			if(needed) {
+				worker.retainOnly(keys);
+			} else {
+				// Workers not started yet are not executed at all:
+				worker.interrupt();
+				stopped++;
+			}
+		}
+		return stopped;
 	}
 
 	/**
 	 * Requests the loader-thread and all its active workers to stop.
 	 * The actual stopping of both the loader and its workers may be delayed.
+	 * The share of the <code>WorkerPool</code> is released when the loader-thread
+	 * exits, or immediately if it is not running.
 	 */
 	@Override
 	public void interrupt() {
@@ -354,9 +547,60 @@ public final class Loader<Q extends Query, R extends DataResource> extends Threa
 		
 		// Now stop the loader-thread:
 		super.interrupt();
+		
+		// A loader not started or already exited won't release its share itself:
+		if(!isAlive()) {
+			releaseShare();
+		}
+	}
+
+	/**
+	 * Unregisters the share of this loader from the <code>WorkerPool</code>, so that it
+	 * does not take part in scheduling anymore. Releasing more than once has no effect.
+	 */
+	private void releaseShare() {
+		if(shareReleased.compareAndSet(false, true)) {
+			workerShare.release();
+		}
 	}
 
 	public Cache<R> getCache() {
 		return cache;
 	}
+
+	/**
+	 * Returns the number of workers this loader may run concurrently.
+	 * @return The number of workers this loader may run concurrently.
+	 */
+	public int getWorkerQuota() {
+		return workerShare.getQuota();
+	}
+
+	/**
+	 * Returns how the workers of this loader are executed.
+	 * @return How the workers of this loader are executed.
+	 */
+	public WorkerPool.ExecutionMode getExecutionMode() {
+		return workerShare.getExecutionMode();
+	}
+
+	/**
+	 * Sets how the workers of this loader are executed: On the bounded threads
+	 * of the shared <code>WorkerPool</code> or each on its own virtual thread.
+	 * @param executionMode How the workers of this loader should be executed.
+	 * @return <code>true</code> if the mode was set, <code>false</code> if virtual
+	 * threads are not supported by the runtime.
+	 */
+	public boolean setExecutionMode(WorkerPool.ExecutionMode executionMode) {
+		return workerShare.setExecutionMode(executionMode);
+	}
+
+	/**
+	 * Sets the number of workers this loader may run concurrently in the
+	 * shared <code>WorkerPool</code>.
+	 * @param workerQuota The number of workers this loader may run concurrently.
+	 */
+	public void setWorkerQuota(int workerQuota) {
+		workerShare.setQuota(workerQuota);
+	}
 }
@@ -0,0 +1,155 @@
+package sep.gaia.resources;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers resources that could not be loaded, so that they are not requested again
+ * before their entry expired.
+ * <p>
+ * Resources the server does not have (<code>404 Not Found</code> and other client-errors)
+ * are remembered for <code>notFoundLifetime</code> milliseconds, resources the server
+ * failed to deliver (server-errors and invalid content) only for <code>failureLifetime</code>
+ * milliseconds. At most <code>MAX_ENTRIES</code> resources are remembered, those failed
+ * first are forgotten first.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class NegativeCache {
+
+	/**
+	 * The time in milliseconds a resource not found is remembered, if not set otherwise.
+	 */
+	public static final long DEFAULT_NOT_FOUND_LIFETIME = 60L * 60 * 1000;
+
+	/**
+	 * The time in milliseconds a resource the server failed to deliver is remembered,
+	 * if not set otherwise.
+	 */
+	public static final long DEFAULT_FAILURE_LIFETIME = 30L * 1000;
+
+	/**
+	 * The maximum number of resources remembered.
+	 */
+	private static final int MAX_ENTRIES = 10000;
+
+	/**
+	 * The time in milliseconds a resource not found is remembered.
+	 */
+	private final long notFoundLifetime;
+
+	/**
+	 * The time in milliseconds a resource the server failed to deliver is remembered.
+	 */
+	private final long failureLifetime;
+
+	/**
+	 * The keys of the resources remembered mapped to the time they expire, in the order they failed.
+	 */
+	private Map<String, Long> expiryTimes = new LinkedHashMap<String, Long>() {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	/**
+	 * Initializes an empty cache using the default lifetimes.
+	 */
+	public NegativeCache() {
+		this(DEFAULT_NOT_FOUND_LIFETIME, DEFAULT_FAILURE_LIFETIME);
+	}
+
+	/**
+	 * Initializes an empty cache.
+	 * @param notFoundLifetime The time in milliseconds a resource not found is remembered.
+	 * @param failureLifetime The time in milliseconds a resource the server failed to deliver is remembered.
+	 */
+	public NegativeCache(long notFoundLifetime, long failureLifetime) {
+		this.notFoundLifetime = notFoundLifetime;
+		this.failureLifetime = failureLifetime;
+	}
+
+	/**
+	 * Remembers that a resource was not found on the server.
+	 * @param key The key of the resource.
+	 */
+	public void recordNotFound(String key) {
+		record(key, notFoundLifetime);
+	}
+
+	/**
+	 * Remembers that the server failed to deliver a resource.
+	 * @param key The key of the resource.
+	 */
+	public void recordFailure(String key) {
+		record(key, failureLifetime);
+	}
+
+	/**
+	 * Remembers the failure of a resource according to the status the server answered by.
+	 * @param key The key of the resource.
+	 * @param statusCode The HTTP status-code of the response.
+	 */
+	public void recordStatus(String key, int statusCode) {
+		if(statusCode >= 400 && statusCode < 500) {
+			recordNotFound(key);
+		} else {
+			recordFailure(key);
+		}
+	}
+
+	/**
+	 * Remembers a failed resource.
+	 * @param key The key of the resource.
+	 * @param lifetime The time in milliseconds the failure is remembered.
+	 */
+	private synchronized void record(String key, long lifetime) {
+		// Re-insert, so that the entry is ordered by its latest failure:
+		expiryTimes.remove(key);
+		expiryTimes.put(key, System.currentTimeMillis() + lifetime);
+	}
+
+	/**
+	 * Checks whether a resource failed recently and should not be requested again yet.
+	 * @param key The key of the resource.
+	 * @return <code>true</code> if the resource failed and the entry did not expire yet.
+	 */
+	public synchronized boolean isFailed(String key) {
+		Long expiryTime = expiryTimes.get(key);
+		if(expiryTime == null) {
+			return false;
+		}
+		if(expiryTime <= System.currentTimeMillis()) {
+			expiryTimes.remove(key);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Forgets the failure of a resource, e.g. because it was loaded after all.
+	 * @param key The key of the resource.
+	 */
+	public synchronized void remove(String key) {
+		expiryTimes.remove(key);
+	}
+
+	/**
+	 * Forgets all failures.
+	 */
+	public synchronized void clear() {
+		expiryTimes.clear();
+	}
+
+	/**
+	 * Returns the number of resources remembered, including expired ones not removed yet.
+	 * @return The number of entries.
+	 */
+	public synchronized int size() {
+		return expiryTimes.size();
+	}
+}
@@ -3,7 +3,8 @@ package sep.gaia.resources;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -19,6 +20,11 @@ import java.util.Set;
  */
 public class Query {
 
+	/**
+	 * The priority resources are added with if none is specified.
+	 */
+	public static final int DEFAULT_PRIORITY = 0;
+
 	/**
 	 * Beanclass associating a resource with a priority. Higher values imply that the
 	 * resource is preferably loaded.
@@ -28,11 +34,6 @@ public class Query {
 	 */
 	private class PrioritizingEntry implements Comparable<PrioritizingEntry> {
 
-		/**
-		 * The priority entries are set to if none is specified.
-		 */
-		public static final int DEFAULT_PRIORITY = 0;
-		
 		/**
 		 * The resource contained in this entry.
 		 */
@@ -90,14 +91,17 @@ public class Query {
 
 		@Override
 		public int compareTo(PrioritizingEntry o) {
-			return o.getPriority() - priority;
+			// Compare without subtraction, which may overflow for large priorities:
+			return Integer.compare(o.getPriority(), priority);
 		}
 	}
 
 	/**
 	 * Dummy-resources to be filled by the loader processing the query.
+	 * The order of insertion is kept, so that resources of equal priority
+	 * are loaded in the order they were added.
 	 */
-	private Set<PrioritizingEntry> resources = new HashSet<>();
+	private Set<PrioritizingEntry> resources = new LinkedHashSet<>();
 
 	/**
 	 * Initializes by a collection of dummy-resources to be filled with the
@@ -114,7 +118,7 @@ public class Query {
 			// The resource must be a dummy:
 			if(resource.isDummy()) {
 				// Add entry:
-				this.resources.add(new PrioritizingEntry(resource, PrioritizingEntry.DEFAULT_PRIORITY));
+				this.resources.add(new PrioritizingEntry(resource, DEFAULT_PRIORITY));
 				
 			} else {
 				throw new NotADummyException("Resources in queries must be dummy.");
@@ -149,7 +153,8 @@ public class Query {
 
 	/**
 	 * Returns the dummy-resources contained in the query sorted by priority.
-	 * The first resources are those with highest priority.
+	 * The first resources are those with highest priority. Resources of equal
+	 * priority are returned in the order they were added.
 	 * @return The dummy-resources contained in the query.
 	 */
 	public Collection<DataResource> getResourcesByPriority() {
@@ -168,6 +173,37 @@ public class Query {
 	}
 
 
+	/**
+	 * Returns the priority of a resource contained in the query.
+	 * @param resource The resource to get the priority of.
+	 * @return The priority of <code>resource</code> or <code>DEFAULT_PRIORITY</code>
+	 * if it is not contained in the query.
+	 */
+	public int getPriority(DataResource resource) {
+		for(PrioritizingEntry currentEntry : resources) {
+			if(currentEntry.getResource().equals(resource)) {
+				return currentEntry.getPriority();
+			}
+		}
+		return DEFAULT_PRIORITY;
+	}
+
+	/**
+	 * Returns the dummy-resources mapped to their priority. The map iterates
+	 * the resources sorted by priority, the highest priority first.
+	 * @return The dummy-resources contained in the query mapped to their priority.
+	 */
+	public Map<DataResource, Integer> getPriorities() {
+		List<PrioritizingEntry> tempList = new ArrayList<>(resources);
+		Collections.sort(tempList);
+		
+		Map<DataResource, Integer> priorities = new LinkedHashMap<>();
+		for(PrioritizingEntry currentEntry : tempList) {
+			priorities.put(currentEntry.getResource(), currentEntry.getPriority());
+		}
+		return priorities;
+	}
+
 	/**
 	 * Returns the dummy-resources contained in the query.
 	 * @return The dummy-resources contained in the query.
@@ -193,7 +229,7 @@ public class Query {
 			// Resources must be dummy:
 			if(resource.isDummy()) {
 				// Add new entry with default priority:
-				this.resources.add(new PrioritizingEntry(resource, PrioritizingEntry.DEFAULT_PRIORITY));
+				this.resources.add(new PrioritizingEntry(resource, DEFAULT_PRIORITY));
 				
 			} else {
 				throw new NotADummyException("Resources in queries must be dummy.");
@@ -14,7 +14,9 @@ public interface QuerySplitter<Q> {
 	/**
 	 * Splits the <code>query</code> into smaller parts that can be processed in separate threads.
 	 * Used by <code>Loader</code> when splitting a bigger query into parts and delegating processing
-	 * to workers.
+	 * to workers. The priorities of the resources must be kept in the sub-queries. Sub-queries
+	 * containing the resources of highest priority should come first, since workers are started
+	 * in the order of the returned collection.
 	 * @return Collection of query-packages forming the <code>query</code> in union.
 	 */
 	public Collection<Q> splitQuery(Q query);
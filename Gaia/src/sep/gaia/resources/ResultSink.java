@@ -0,0 +1,22 @@
+package sep.gaia.resources;
+
+/**
+ * An interface for receiving the results of a worker one by one while it is
+ * still running, instead of receiving all of them when the worker has finished.
+ * 
+ * @author Matthias Fisch
+ *
+ * @param <R> The type of the resources received.
+ */
+public interface ResultSink<R extends DataResource> {
+
+	/**
+	 * Called by a worker as soon as a single resource of its sub-query is available.
+	 * Note that this method is called on the thread of the worker.
+	 * @param worker The worker having produced <code>result</code>.
+	 * @param result The resource available.
+	 * @return <code>true</code> if the sink took <code>result</code> over. <code>false</code>
+	 * if it was ignored, e.g. because the worker was interrupted, so that the worker still owns it.
+	 */
+	public boolean onResult(AbstractLoaderWorker<?, R> worker, R result);
+}
@@ -0,0 +1,295 @@
+package sep.gaia.resources;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A registry of the resources currently being fetched, keyed by
+ * <code>DataResource.getKey()</code>. If a resource is requested while a fetch
+ * for its key is already in flight, the request attaches to that fetch instead
+ * of starting another one. So each resource is fetched at most once at a time,
+ * no matter how many queries or workers ask for it.
+ * If the fetch is abandoned, because the token of the requester performing it
+ * was cancelled, one of the waiting requesters takes over.
+ * <p>
+ * Resources holding references that are released by their user, e.g. pooled buffers,
+ * must not be handed to several requesters. For them a <code>Sharer</code> creates a
+ * reference of its own for each requester attached, so that each one may release
+ * its resource independently of the others.
+ *
+ * @author Matthias Fisch
+ *
+ * @param <R> The type of the resources fetched.
+ */
+public class SingleFlight<R extends DataResource> {
+
+	/**
+	 * An operation fetching a single resource.
+	 * @author Matthias Fisch
+	 *
+	 * @param <R> The type of the resource fetched.
+	 */
+	public interface Fetch<R> {
+
+		/**
+		 * Fetches the resource.
+		 * @return The resource fetched or <code>null</code> if it could not be fetched.
+		 * @throws IOException Thrown if an error occurred while fetching.
+		 */
+		public R fetch() throws IOException;
+	}
+
+	/**
+	 * Creates references of their own to resources for the requesters sharing a fetch.
+	 * @author Matthias Fisch
+	 *
+	 * @param <R> The type of the resources shared.
+	 */
+	public interface Sharer<R> {
+
+		/**
+		 * Creates another reference to a resource that is released independently of it.
+		 * @param resource The resource fetched, which is not released yet.
+		 * @return The new reference or <code>null</code> if it could not be created.
+		 */
+		public R share(R resource);
+
+		/**
+		 * Releases a reference created by <code>share()</code> that is not handed out.
+		 * @param resource The reference to release.
+		 */
+		public void release(R resource);
+	}
+
+	/**
+	 * The state of a fetch in flight.
+	 * @author Matthias Fisch
+	 *
+	 */
+	private class Flight {
+
+		/**
+		 * Flag if the fetch has completed, either successfully or not.
+		 */
+		private boolean done;
+
+		/**
+		 * Flag if the fetch was abandoned before it completed.
+		 */
+		private boolean abandoned;
+
+		/**
+		 * The resource fetched.
+		 */
+		private R result;
+
+		/**
+		 * The error occurred while fetching or <code>null</code>.
+		 */
+		private IOException error;
+
+		/**
+		 * The number of requesters waiting for the fetch.
+		 */
+		private int waiting;
+
+		/**
+		 * The references created for the requesters waiting when the fetch completed.
+		 */
+		private LinkedList<R> shares = new LinkedList<>();
+	}
+
+	/**
+	 * Creates the references of the requesters attached to a fetch or <code>null</code>
+	 * if all of them get the resource fetched itself.
+	 */
+	private Sharer<R> sharer;
+
+	/**
+	 * The fetches in flight mapped by the key of the resource they fetch.
+	 */
+	private Map<String, Flight> flights = new HashMap<>();
+
+	/**
+	 * Lock guarding <code>flights</code> and the state of each flight.
+	 */
+	private Lock flightsLock = new ReentrantLock();
+
+	/**
+	 * Signalled when a flight completes or a waiting requester was cancelled.
+	 */
+	private Condition flightChanged = flightsLock.newCondition();
+
+	/**
+	 * The number of fetches performed.
+	 */
+	private AtomicLong fetchCount = new AtomicLong();
+
+	/**
+	 * The number of requests attached to a fetch already in flight.
+	 */
+	private AtomicLong joinCount = new AtomicLong();
+
+	/**
+	 * Initializes a registry handing the resource fetched itself to all requesters sharing it.
+	 */
+	public SingleFlight() {
+		this(null);
+	}
+
+	/**
+	 * Initializes a registry handing a reference of its own to each requester attached to a fetch.
+	 * @param sharer Creates the references of the requesters attached, or <code>null</code> to hand
+	 * the resource fetched itself to all of them.
+	 */
+	public SingleFlight(Sharer<R> sharer) {
+		this.sharer = sharer;
+	}
+
+	/**
+	 * Returns the resource with key <code>key</code>. If no fetch for <code>key</code>
+	 * is in flight, <code>fetch</code> is performed on the calling thread. Otherwise
+	 * the calling thread waits for the fetch in flight and shares its result. If a
+	 * <code>Sharer</code> is set, the result shared is a reference of its own.
+	 * @param key The key of the resource.
+	 * @param token The token of the requester. If it is cancelled while waiting,
+	 * <code>null</code> is returned. If it is cancelled while fetching, the fetch is
+	 * considered abandoned and a waiting requester will fetch again.
+	 * @param fetch The operation fetching the resource.
+	 * @return The resource or <code>null</code> if it could not be fetched or
+	 * <code>token</code> was cancelled.
+	 * @throws IOException Thrown if the fetch shared failed with an error.
+	 */
+	public R execute(String key, final CancellationToken token, Fetch<R> fetch) throws IOException {
+		// Wake up the caller if it is cancelled while waiting:
+		Closeable waker = new Closeable() {
+			@Override
+			public void close() {
+				flightsLock.lock();
+				try {
+					flightChanged.signalAll();
+				} finally {
+					flightsLock.unlock();
+				}
+			}
+		};
+
+		Flight flight;
+		flightsLock.lock();
+		try {
+			while(true) {
+				flight = flights.get(key);
+				if(flight == null) {
+					// Nobody fetches the resource, so do it ourselves:
+					flight = new Flight();
+					flights.put(key, flight);
+					break;
+				}
+
+				joinCount.incrementAndGet();
+				if(!token.register(waker)) {
+					return null;
+				}
+				flight.waiting++;
+				try {
+					while(!flight.done && !token.isCancelled()) {
+						flightChanged.awaitUninterruptibly();
+					}
+				} finally {
+					token.unregister(waker);
+				}
+
+				if(!flight.done) {
+					// Cancelled while waiting:
+					flight.waiting--;
+					return null;
+				}
+				// The reference created for this requester:
+				R share = sharer != null ? flight.shares.poll() : flight.result;
+				if(token.isCancelled()) {
+					if(sharer != null && share != null) {
+						sharer.release(share);
+					}
+					return null;
+				}
+				if(!flight.abandoned) {
+					if(flight.error != null) {
+						throw flight.error;
+					}
+					return share;
+				}
+				// The fetch was abandoned, so try again:
+			}
+		} finally {
+			flightsLock.unlock();
+		}
+
+		// Perform the fetch outside the lock:
+		fetchCount.incrementAndGet();
+		R result = null;
+		IOException error = null;
+		try {
+			result = fetch.fetch();
+			return result;
+		} catch (IOException e) {
+			error = e;
+			throw e;
+		} finally {
+			flightsLock.lock();
+			try {
+				flight.result = result;
+				flight.error = error;
+				flight.abandoned = token.isCancelled();
+				flight.done = true;
+				if(sharer != null && result != null && !flight.abandoned) {
+					// Before returning, as the caller may release its reference right after:
+					for(int i = 0; i < flight.waiting; i++) {
+						flight.shares.add(sharer.share(result));
+					}
+				}
+				flights.remove(key);
+				flightChanged.signalAll();
+			} finally {
+				flightsLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Returns if a fetch for <code>key</code> is in flight.
+	 * @param key The key of the resource.
+	 * @return <code>true</code> if the resource is currently fetched.
+	 */
+	public boolean isInFlight(String key) {
+		flightsLock.lock();
+		try {
+			return flights.containsKey(key);
+		} finally {
+			flightsLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of fetches performed.
+	 * @return The number of fetches performed.
+	 */
+	public long getFetchCount() {
+		return fetchCount.get();
+	}
+
+	/**
+	 * Returns the number of requests attached to a fetch already in flight,
+	 * i.e. the number of fetches saved.
+	 * @return The number of requests deduplicated.
+	 */
+	public long getJoinCount() {
+		return joinCount.get();
+	}
+}
@@ -0,0 +1,540 @@
+package sep.gaia.resources;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import sep.gaia.util.Logger;
+
+/**
+ * A singleton executing the workers of all loaders on a bounded set of shared threads.
+ * Instead of starting a thread for each sub-query, a loader submits its workers to
+ * a <code>Share</code> of this pool. Each share has a quota limiting the number of
+ * workers it may run concurrently. If threads become free, the next worker is picked
+ * from the shares in round-robin order, so that no manager can starve the others.
+ * <br>
+ * Alternatively a share can be switched to <code>ExecutionMode.VIRTUAL</code>. Its workers
+ * are then started immediately, each on its own virtual thread, and are neither bound
+ * by the quota of the share nor by the size of the pool. This suits workers spending
+ * almost all their time blocked on network-I/O. Virtual threads require a Java 21 runtime;
+ * on older runtimes shares refuse to be switched and stay pooled, so that no unbounded
+ * number of platform-threads is started.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class WorkerPool {
+
+	/**
+	 * The number of threads the pool executes workers on at maximum.
+	 */
+	public static final int DEFAULT_POOL_SIZE = 16;
+
+	/**
+	 * Seconds an idle thread of the pool is kept alive before it is terminated.
+	 */
+	private static final int THREAD_KEEP_ALIVE = 30;
+
+	/**
+	 * Enumerates the ways workers of a share can be executed.
+	 * @author Matthias Fisch
+	 *
+	 */
+	public enum ExecutionMode {POOLED, // Workers run on the bounded threads of the pool
+							   VIRTUAL // Each worker runs on its own virtual thread
+							   };
+
+	/**
+	 * The part of the pool assigned to a single loader. Workers submitted to a share are
+	 * queued in FIFO-order and started as long as the share has not exceeded its quota.
+	 * @author Matthias Fisch
+	 *
+	 */
+	public class Share {
+
+		/**
+		 * The name of the share, e.g. the label of the manager it belongs to.
+		 */
+		private final String name;
+
+		/**
+		 * The maximum number of workers of this share running at the same time.
+		 */
+		private int quota;
+
+		/**
+		 * The number of workers of this share currently running.
+		 */
+		private int running;
+
+		/**
+		 * Workers submitted but not yet started.
+		 */
+		private List<AbstractLoaderWorker<?, ?>> pending = new LinkedList<>();
+
+		/**
+		 * How the workers of this share are executed.
+		 */
+		private ExecutionMode executionMode = ExecutionMode.POOLED;
+
+		/**
+		 * Initializes the share.
+		 * @param name The name of the share, e.g. the label of the manager it belongs to.
+		 * @param quota The maximum number of workers of this share running at the same time.
+		 */
+		private Share(String name, int quota) {
+			this.name = name;
+			this.quota = quota;
+		}
+
+		/**
+		 * Queues <code>worker</code> for execution. It will be started as soon as
+		 * this share is below its quota and it is its turn.
+		 * @param worker The worker to be executed.
+		 */
+		public void submit(AbstractLoaderWorker<?, ?> worker) {
+			poolLock.lock();
+			try {
+				worker.setSubmitted();
+				if(executionMode == ExecutionMode.VIRTUAL) {
+					// Start without waiting for a free thread of the pool:
+					running++;
+					startVirtual(new WorkerTask(this, worker, false));
+				} else {
+					pending.add(worker);
+					schedule();
+				}
+			} finally {
+				poolLock.unlock();
+			}
+		}
+
+		/**
+		 * Removes all workers of this share not started yet from the queue.
+		 * Workers already running are not affected.
+		 * @return The number of workers removed.
+		 */
+		public int cancelPending() {
+			poolLock.lock();
+			try {
+				int count = pending.size();
+				for(AbstractLoaderWorker<?, ?> worker : pending) {
+					worker.interrupt();
+					worker.setFinished();
+				}
+				pending.clear();
+				return count;
+			} finally {
+				poolLock.unlock();
+			}
+		}
+
+		/**
+		 * Returns the name of the share.
+		 * @return The name of the share.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns the maximum number of workers of this share running at the same time.
+		 * @return The maximum number of workers of this share running at the same time.
+		 */
+		public int getQuota() {
+			poolLock.lock();
+			try {
+				return quota;
+			} finally {
+				poolLock.unlock();
+			}
+		}
+
+		/**
+		 * Sets the maximum number of workers of this share running at the same time.
+		 * @param quota The quota. Values less than one are treated as one.
+		 */
+		public void setQuota(int quota) {
+			poolLock.lock();
+			try {
+				this.quota = Math.max(1, quota);
+				schedule();
+			} finally {
+				poolLock.unlock();
+			}
+		}
+
+		/**
+		 * Returns how the workers of this share are executed.
+		 * @return How the workers of this share are executed.
+		 */
+		public ExecutionMode getExecutionMode() {
+			poolLock.lock();
+			try {
+				return executionMode;
+			} finally {
+				poolLock.unlock();
+			}
+		}
+
+		/**
+		 * Sets how the workers of this share are executed. Workers already running
+		 * are not affected. If switched to <code>ExecutionMode.VIRTUAL</code>, workers
+		 * still pending are started immediately.
+		 * @param executionMode How the workers of this share should be executed.
+		 * @return <code>true</code> if the mode was set. <code>false</code> if
+		 * <code>ExecutionMode.VIRTUAL</code> was requested but virtual threads are not
+		 * supported by the runtime (see <code>isVirtualThreadSupported()</code>).
+		 */
+		public boolean setExecutionMode(ExecutionMode executionMode) {
+			if(executionMode == ExecutionMode.VIRTUAL && !isVirtualThreadSupported()) {
+				Logger.getInstance().warning("Virtual threads are not supported by this runtime. "
+						+ "Workers of " + name + " stay pooled.");
+				return false;
+			}
+			poolLock.lock();
+			try {
+				this.executionMode = executionMode;
+				if(executionMode == ExecutionMode.VIRTUAL) {
+					for(AbstractLoaderWorker<?, ?> worker : pending) {
+						running++;
+						startVirtual(new WorkerTask(this, worker, false));
+					}
+					pending.clear();
+				}
+				return true;
+			} finally {
+				poolLock.unlock();
+			}
+		}
+
+		/**
+		 * Returns the number of workers of this share currently running.
+		 * @return The number of workers of this share currently running.
+		 */
+		public int getRunningCount() {
+			poolLock.lock();
+			try {
+				return running;
+			} finally {
+				poolLock.unlock();
+			}
+		}
+
+		/**
+		 * Returns the number of workers of this share waiting for execution.
+		 * @return The number of workers of this share waiting for execution.
+		 */
+		public int getPendingCount() {
+			poolLock.lock();
+			try {
+				return pending.size();
+			} finally {
+				poolLock.unlock();
+			}
+		}
+
+		/**
+		 * Unregisters the share from the pool. Pending workers are cancelled.
+		 */
+		public void release() {
+			cancelPending();
+			poolLock.lock();
+			try {
+				shares.remove(this);
+			} finally {
+				poolLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * The method <code>Thread.startVirtualThread(Runnable)</code> or <code>null</code> if
+	 * the runtime does not support virtual threads.
+	 */
+	private static final Method START_VIRTUAL_THREAD = lookupStartVirtualThread();
+
+	/**
+	 * The one instance of this class existing or <code>null</code> if none was created yet.
+	 */
+	private static WorkerPool instance;
+
+	/**
+	 * The executor running the workers.
+	 */
+	private ExecutorService executor;
+
+	/**
+	 * The number of workers running at the same time at maximum.
+	 */
+	private final int poolSize;
+
+	/**
+	 * The number of workers currently running on the threads of the pool.
+	 */
+	private int running;
+
+	/**
+	 * All registered shares in round-robin order.
+	 */
+	private List<Share> shares = new ArrayList<>();
+
+	/**
+	 * The index in <code>shares</code> where the next scheduling-round starts.
+	 */
+	private int nextShareIndex;
+
+	/**
+	 * The share used for workers started without a loader (see <code>AbstractLoaderWorker.start()</code>).
+	 */
+	private Share defaultShare;
+
+	/**
+	 * Lock guarding the counters and queues of the pool and its shares.
+	 */
+	private Lock poolLock = new ReentrantLock();
+
+	/**
+	 * Initializes the pool.
+	 * @param poolSize The number of workers running at the same time at maximum.
+	 */
+	public WorkerPool(int poolSize) {
+		this.poolSize = poolSize;
+
+		// Daemon-threads, so that workers do not prevent the application from terminating:
+		ThreadFactory threadFactory = new ThreadFactory() {
+			private AtomicInteger threadCount = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "gaia-worker-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+		ThreadPoolExecutor threadPool = new ThreadPoolExecutor(poolSize, poolSize, THREAD_KEEP_ALIVE,
+				TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), threadFactory);
+		threadPool.allowCoreThreadTimeOut(true);
+		executor = threadPool;
+
+		defaultShare = createShare("default", poolSize);
+	}
+
+	/**
+	 * Returns the one instance of the class.
+	 * @return The one instance of the class.
+	 */
+	public static synchronized WorkerPool getInstance() {
+		if(instance == null) {
+			instance = new WorkerPool(DEFAULT_POOL_SIZE);
+		}
+		return instance;
+	}
+
+	/**
+	 * Looks up <code>Thread.startVirtualThread(Runnable)</code>, which is only present in
+	 * Java 21 and later.
+	 * @return The method or <code>null</code> if it is not available.
+	 */
+	private static Method lookupStartVirtualThread() {
+		try {
+			return Thread.class.getMethod("startVirtualThread", Runnable.class);
+		} catch (NoSuchMethodException | SecurityException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns if the runtime supports virtual threads.
+	 * @return <code>true</code> if workers of shares in <code>ExecutionMode.VIRTUAL</code>
+	 * run on virtual threads.
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return START_VIRTUAL_THREAD != null;
+	}
+
+	/**
+	 * Starts <code>task</code> on a new virtual thread. Only called for shares in
+	 * <code>ExecutionMode.VIRTUAL</code>, which requires virtual threads to be supported.
+	 * If starting the virtual thread fails nevertheless, a daemon-thread is started,
+	 * so that the task is not lost.
+	 * @param task The task to start.
+	 */
+	private void startVirtual(Runnable task) {
+		try {
+			START_VIRTUAL_THREAD.invoke(null, task);
+			return;
+		} catch (IllegalAccessException | InvocationTargetException e) {
+			Logger.getInstance().error("Cannot start virtual thread: " + e.getMessage());
+		}
+		Thread thread = new Thread(task, "gaia-worker-unpooled");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Registers a new share in the pool.
+	 * @param name The name of the share, e.g. the label of the manager it belongs to.
+	 * @param quota The maximum number of workers of the share running at the same time.
+	 * @return The created share.
+	 */
+	public Share createShare(String name, int quota) {
+		Share share = new Share(name, Math.max(1, quota));
+		poolLock.lock();
+		try {
+			shares.add(share);
+		} finally {
+			poolLock.unlock();
+		}
+		return share;
+	}
+
+	/**
+	 * Returns the share used for workers not belonging to a loader.
+	 * @return The share used for workers not belonging to a loader.
+	 */
+	public Share getDefaultShare() {
+		return defaultShare;
+	}
+
+	/**
+	 * Returns the number of shares registered, including the default share.
+	 * @return The number of shares taking part in scheduling.
+	 */
+	public int getShareCount() {
+		poolLock.lock();
+		try {
+			return shares.size();
+		} finally {
+			poolLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of workers running at the same time at maximum.
+	 * @return The number of workers running at the same time at maximum.
+	 */
+	public int getPoolSize() {
+		return poolSize;
+	}
+
+	/**
+	 * Returns the number of workers currently running on the threads of the pool.
+	 * Workers of shares in <code>ExecutionMode.VIRTUAL</code> are not counted.
+	 * @return The number of workers currently running on the threads of the pool.
+	 */
+	public int getRunningCount() {
+		poolLock.lock();
+		try {
+			return running;
+		} finally {
+			poolLock.unlock();
+		}
+	}
+
+	/**
+	 * Starts pending workers as long as there are free threads. Shares are visited
+	 * in round-robin order beginning after the share served last, so that only one
+	 * worker is taken from a share per round.
+	 * The caller must hold <code>poolLock</code>.
+	 */
+	private void schedule() {
+		while(running < poolSize) {
+			// Find the next share having pending workers and not exceeding its quota:
+			Share next = null;
+			int nextIndex = -1;
+			for(int i = 0; i < shares.size() && next == null; i++) {
+				int index = (nextShareIndex + i) % shares.size();
+				Share share = shares.get(index);
+				if(!share.pending.isEmpty() && share.running < share.quota) {
+					next = share;
+					nextIndex = index;
+				}
+			}
+
+			// Stop if no share can be served:
+			if(next == null) {
+				return;
+			}
+
+			AbstractLoaderWorker<?, ?> worker = next.pending.remove(0);
+			next.running++;
+			running++;
+			nextShareIndex = (nextIndex + 1) % shares.size();
+			executor.execute(new WorkerTask(next, worker, true));
+		}
+	}
+
+	/**
+	 * Called after a worker of <code>share</code> has finished. Frees its slot
+	 * and starts the next pending worker.
+	 * @param share The share the finished worker belonged to.
+	 * @param pooled Whether the worker ran on a thread of the pool.
+	 */
+	private void onWorkerFinished(Share share, boolean pooled) {
+		poolLock.lock();
+		try {
+			share.running--;
+			if(pooled) {
+				running--;
+				schedule();
+			}
+		} finally {
+			poolLock.unlock();
+		}
+	}
+
+	/**
+	 * The routine executed by the pools threads for a single worker.
+	 * @author Matthias Fisch
+	 *
+	 */
+	private class WorkerTask implements Runnable {
+
+		/**
+		 * The share the worker belongs to.
+		 */
+		private Share share;
+
+		/**
+		 * The worker to execute.
+		 */
+		private AbstractLoaderWorker<?, ?> worker;
+
+		/**
+		 * Whether the task runs on a thread of the pool.
+		 */
+		private boolean pooled;
+
+		/**
+		 * Initializes the task.
+		 * @param share The share the worker belongs to.
+		 * @param worker The worker to execute.
+		 * @param pooled Whether the task runs on a thread of the pool.
+		 */
+		public WorkerTask(Share share, AbstractLoaderWorker<?, ?> worker, boolean pooled) {
+			this.share = share;
+			this.worker = worker;
+			this.pooled = pooled;
+		}
+
+		@Override
+		public void run() {
+			try {
+				worker.perform();
+			} finally {
+				onWorkerFinished(share, pooled);
+			}
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package sep.gaia.resources.eviction;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Collects the keys of cache-hits without locking, so that the eviction-policy can be
+ * informed about them later in a batch by a single thread.
+ * The buffer is divided into stripes chosen by the recording thread, so that concurrent
+ * readers rarely write to the same memory. Each stripe is a bounded ring. If a stripe is
+ * full or contended, the access is dropped: The policy only loses a hint, which is
+ * preferable to blocking the reader.
+ * Any number of threads may call <code>offer()</code>, but only one at a time may call
+ * <code>drainTo()</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class AccessBuffer {
+
+	/**
+	 * The number of keys each stripe holds at maximum. Must be a power of two.
+	 */
+	public static final int STRIPE_CAPACITY = 64;
+
+	/**
+	 * The number of keys pending in a stripe at which draining is recommended.
+	 */
+	public static final int DRAIN_THRESHOLD = STRIPE_CAPACITY / 2;
+
+	/**
+	 * The maximum number of stripes.
+	 */
+	private static final int MAX_STRIPES = 64;
+
+	/**
+	 * A ring of keys recorded by the threads mapped to it.
+	 * @author Matthias Fisch
+	 *
+	 */
+	private static class Stripe {
+
+		/**
+		 * The keys recorded. A slot is <code>null</code> if it was not written yet or already drained.
+		 */
+		private AtomicReferenceArray<String> slots = new AtomicReferenceArray<>(STRIPE_CAPACITY);
+
+		/**
+		 * The number of slots reserved by writers ever.
+		 */
+		private AtomicLong writeIndex = new AtomicLong();
+
+		/**
+		 * The number of slots drained ever. Only modified by the draining thread.
+		 */
+		private volatile long readIndex;
+	}
+
+	/**
+	 * The stripes of the buffer.
+	 */
+	private Stripe[] stripes;
+
+	/**
+	 * The number of accesses dropped because a stripe was full or contended.
+	 */
+	private AtomicLong droppedCount = new AtomicLong();
+
+	/**
+	 * Initializes the buffer with stripes for twice the number of processors available.
+	 */
+	public AccessBuffer() {
+		int processors = Runtime.getRuntime().availableProcessors();
+		int count = Integer.highestOneBit(Math.max(4, Math.min(MAX_STRIPES, 2 * processors)) - 1) << 1;
+		stripes = new Stripe[count];
+		for(int i = 0; i < count; i++) {
+			stripes[i] = new Stripe();
+		}
+	}
+
+	/**
+	 * Records an access without blocking.
+	 * @param key The key accessed.
+	 * @return <code>true</code> if the stripe written to is filled so far that it
+	 * should be drained.
+	 */
+	public boolean offer(String key) {
+		Stripe stripe = stripes[probe() & (stripes.length - 1)];
+		long write = stripe.writeIndex.get();
+		long pending = write - stripe.readIndex;
+
+		if(pending >= STRIPE_CAPACITY) {
+			droppedCount.incrementAndGet();
+			return true;
+		}
+		if(!stripe.writeIndex.compareAndSet(write, write + 1)) {
+			// Another thread of this stripe was faster. Don't retry:
+			droppedCount.incrementAndGet();
+			return false;
+		}
+		stripe.slots.lazySet((int) (write & (STRIPE_CAPACITY - 1)), key);
+		return pending + 1 >= DRAIN_THRESHOLD;
+	}
+
+	/**
+	 * Moves all keys recorded to <code>keys</code>. Keys reserved but not written yet
+	 * by their thread are left for the next call.
+	 * Must not be called by more than one thread at a time.
+	 * @param keys The collection to add the keys to.
+	 * @return The number of keys added.
+	 */
+	public int drainTo(Collection<String> keys) {
+		int drained = 0;
+		for(Stripe stripe : stripes) {
+			long read = stripe.readIndex;
+			long write = stripe.writeIndex.get();
+			for(; read < write; read++) {
+				int index = (int) (read & (STRIPE_CAPACITY - 1));
+				String key = stripe.slots.get(index);
+				if(key == null) {
+					// The writer has reserved the slot but not written yet:
+					break;
+				}
+				stripe.slots.lazySet(index, null);
+				keys.add(key);
+				drained++;
+			}
+			stripe.readIndex = read;
+		}
+		return drained;
+	}
+
+	/**
+	 * Returns the number of accesses dropped because a stripe was full or contended.
+	 * @return The number of accesses dropped.
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * Returns a hash of the current thread choosing its stripe.
+	 */
+	private static int probe() {
+		long id = Thread.currentThread().getId();
+		int hash = (int) (id ^ (id >>> 32)) * 0x9e3779b9;
+		return hash ^ (hash >>> 16);
+	}
+}
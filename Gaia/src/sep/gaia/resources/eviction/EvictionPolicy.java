@@ -0,0 +1,79 @@
+package sep.gaia.resources.eviction;
+
+/**
+ * A strategy choosing the entries to be removed from a <code>Cache</code> when it is full.
+ * The policy is informed about every insertion, access and removal of the cache and keeps
+ * its own bookkeeping of the keys, so that a victim can be chosen in constant time without
+ * inspecting all entries.
+ * Implementations are not thread-safe. The cache using a policy must synchronize the calls.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public interface EvictionPolicy {
+
+	/**
+	 * The policies available.
+	 */
+	public enum Type {LRU, // Evicts the least recently used entry
+					  SEGMENTED_LRU, // Protects entries used more than once from entries used once
+					  W_TINY_LFU; // Admits entries to the cache by their estimated frequency
+
+		/**
+		 * Creates a new instance of the policy.
+		 * @return A new policy of this type.
+		 */
+		public EvictionPolicy createPolicy() {
+			switch(this) {
+			case SEGMENTED_LRU: return new SegmentedLruEvictionPolicy();
+			case W_TINY_LFU: return new WTinyLfuEvictionPolicy();
+			default: return new LruEvictionPolicy();
+			}
+		}
+	};
+
+	/**
+	 * Notifies the policy that an entry was added to the cache.
+	 * @param key The key of the entry added.
+	 */
+	public void recordInsertion(String key);
+
+	/**
+	 * Notifies the policy that an entry was requested from the cache and found.
+	 * @param key The key of the entry requested.
+	 */
+	public void recordAccess(String key);
+
+	/**
+	 * Notifies the policy that an entry was removed from the cache other than by
+	 * <code>evict()</code>. Unknown keys are ignored.
+	 * @param key The key of the entry removed.
+	 */
+	public void recordRemoval(String key);
+
+	/**
+	 * Chooses the next entry to be removed from the cache and forgets about it.
+	 * The caller must remove the entry with the returned key from the cache.
+	 * @return The key of the entry to remove or <code>null</code> if the policy
+	 * does not know about any entry.
+	 */
+	public String evict();
+
+	/**
+	 * Sets the number of entries the cache should hold at maximum. Policies dividing
+	 * the cache into segments size them accordingly.
+	 * @param capacity The number of entries the cache should hold at maximum.
+	 */
+	public void setCapacity(int capacity);
+
+	/**
+	 * Returns the number of keys the policy knows about.
+	 * @return The number of keys tracked.
+	 */
+	public int size();
+
+	/**
+	 * Forgets about all keys.
+	 */
+	public void clear();
+}
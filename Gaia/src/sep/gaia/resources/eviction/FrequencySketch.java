@@ -0,0 +1,169 @@
+package sep.gaia.resources.eviction;
+
+/**
+ * Estimates how often keys were used recently with a fixed amount of memory.
+ * This is a count-min sketch of 4-bit counters: Each key is counted in four counters
+ * chosen by different hashes, and its frequency is estimated by the smallest of them.
+ * When the number of uses counted reaches ten times the size of the table, all counters
+ * are halved, so that the frequencies of the past fade.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class FrequencySketch {
+
+	/**
+	 * The maximum frequency a counter can hold.
+	 */
+	public static final int MAX_FREQUENCY = 15;
+
+	/**
+	 * The number of counters each key is counted in.
+	 */
+	private static final int DEPTH = 4;
+
+	/**
+	 * The number of longs the table has at maximum. Each long holds 16 counters.
+	 */
+	private static final int MAX_TABLE_LENGTH = 1 << 20;
+
+	/**
+	 * The seeds of the hashes choosing the counters of a key.
+	 */
+	private static final int[] SEEDS = {0x97cb3127, 0xb9f8c0a5, 0x8ad0d3c5, 0xd1b54a33};
+
+	/**
+	 * Mask clearing the highest bit of each counter after shifting the table right by one.
+	 */
+	private static final long HALVE_MASK = 0x7777777777777777L;
+
+	/**
+	 * The counters, 16 in each long.
+	 */
+	private long[] table;
+
+	/**
+	 * The number of uses counted since the counters were halved last.
+	 */
+	private int additions;
+
+	/**
+	 * The number of uses after which the counters are halved.
+	 */
+	private int sampleSize;
+
+	/**
+	 * Initializes the sketch for a number of keys.
+	 * @param expectedKeys The number of distinct keys expected to be counted.
+	 */
+	public FrequencySketch(int expectedKeys) {
+		allocate(expectedKeys);
+	}
+
+	/**
+	 * Creates an empty table for a number of keys.
+	 */
+	private void allocate(int expectedKeys) {
+		int length = Integer.highestOneBit(Math.max(16, Math.min(expectedKeys, MAX_TABLE_LENGTH)) - 1) << 1;
+		table = new long[length];
+		sampleSize = 10 * length;
+		additions = 0;
+	}
+
+	/**
+	 * Grows the table if it is too small for <code>expectedKeys</code>. Growing
+	 * discards all counts.
+	 * @param expectedKeys The number of distinct keys expected to be counted.
+	 */
+	public void ensureCapacity(int expectedKeys) {
+		if(expectedKeys > table.length && table.length < MAX_TABLE_LENGTH) {
+			allocate(expectedKeys);
+		}
+	}
+
+	/**
+	 * Counts a use of <code>key</code>.
+	 * @param key The key used.
+	 */
+	public void increment(String key) {
+		int hash = spread(key.hashCode());
+		boolean added = false;
+		for(int i = 0; i < DEPTH; i++) {
+			int index = indexOf(hash, i);
+			int offset = offsetOf(hash, i);
+			long counter = (table[index] >>> offset) & 0xfL;
+			if(counter < MAX_FREQUENCY) {
+				table[index] += 1L << offset;
+				added = true;
+			}
+		}
+
+		if(added && ++additions >= sampleSize) {
+			halve();
+		}
+	}
+
+	/**
+	 * Returns the estimated number of recent uses of <code>key</code>.
+	 * @param key The key to get the frequency of.
+	 * @return The estimated frequency in range [0, <code>MAX_FREQUENCY</code>].
+	 */
+	public int frequency(String key) {
+		int hash = spread(key.hashCode());
+		int frequency = MAX_FREQUENCY;
+		for(int i = 0; i < DEPTH; i++) {
+			long counter = (table[indexOf(hash, i)] >>> offsetOf(hash, i)) & 0xfL;
+			frequency = Math.min(frequency, (int) counter);
+		}
+		return frequency;
+	}
+
+	/**
+	 * Halves all counters.
+	 */
+	private void halve() {
+		for(int i = 0; i < table.length; i++) {
+			table[i] = (table[i] >>> 1) & HALVE_MASK;
+		}
+		additions /= 2;
+	}
+
+	/**
+	 * Discards all counts.
+	 */
+	public void clear() {
+		for(int i = 0; i < table.length; i++) {
+			table[i] = 0;
+		}
+		additions = 0;
+	}
+
+	/**
+	 * Returns the index of the long holding the <code>i</code>-th counter of a key.
+	 */
+	private int indexOf(int hash, int i) {
+		int h = hash * SEEDS[i];
+		h ^= h >>> 16;
+		return h & (table.length - 1);
+	}
+
+	/**
+	 * Returns the position of the <code>i</code>-th counter of a key within its long.
+	 */
+	private int offsetOf(int hash, int i) {
+		int h = (hash + SEEDS[i]) * SEEDS[(i + 1) % DEPTH];
+		return (h >>> 28) << 2;
+	}
+
+	/**
+	 * Improves the distribution of a hash-code.
+	 */
+	private static int spread(int hash) {
+		hash ^= hash >>> 17;
+		hash *= 0xed5ad4bb;
+		hash ^= hash >>> 11;
+		hash *= 0xac4c1b51;
+		hash ^= hash >>> 15;
+		return hash;
+	}
+}
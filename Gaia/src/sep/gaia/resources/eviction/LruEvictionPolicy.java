@@ -0,0 +1,79 @@
+package sep.gaia.resources.eviction;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Evicts the least recently used entry. All operations run in constant time.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class LruEvictionPolicy implements EvictionPolicy {
+
+	/**
+	 * The keys known in access-order, the least recently used one first.
+	 */
+	private LinkedHashMap<String, Boolean> keys = new LinkedHashMap<>(16, 0.75f, true);
+
+	@Override
+	public void recordInsertion(String key) {
+		keys.put(key, Boolean.TRUE);
+	}
+
+	@Override
+	public void recordAccess(String key) {
+		// Moves the key to the end of the access-order:
+		keys.get(key);
+	}
+
+	@Override
+	public void recordRemoval(String key) {
+		keys.remove(key);
+	}
+
+	@Override
+	public String evict() {
+		return removeEldest(keys);
+	}
+
+	@Override
+	public void setCapacity(int capacity) {
+		// The order does not depend on the capacity.
+	}
+
+	@Override
+	public int size() {
+		return keys.size();
+	}
+
+	@Override
+	public void clear() {
+		keys.clear();
+	}
+
+	/**
+	 * Removes the first key of a map in access-order.
+	 * @param keys The map to remove the key from.
+	 * @return The key removed or <code>null</code> if <code>keys</code> is empty.
+	 */
+	static String removeEldest(LinkedHashMap<String, Boolean> keys) {
+		Iterator<String> iter = keys.keySet().iterator();
+		if(iter.hasNext()) {
+			String eldest = iter.next();
+			iter.remove();
+			return eldest;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the first key of a map in access-order without removing it.
+	 * @param keys The map to get the key from.
+	 * @return The first key or <code>null</code> if <code>keys</code> is empty.
+	 */
+	static String peekEldest(LinkedHashMap<String, Boolean> keys) {
+		Iterator<String> iter = keys.keySet().iterator();
+		return iter.hasNext() ? iter.next() : null;
+	}
+}
@@ -0,0 +1,98 @@
+package sep.gaia.resources.eviction;
+
+import java.util.LinkedHashMap;
+
+/**
+ * Segmented LRU: New entries are put on probation. An entry accessed again is moved
+ * to the protected segment, whose least recently used entries are put back on probation
+ * if it grows beyond its share. Entries are evicted from probation first, so that a
+ * burst of entries used only once cannot displace the entries used repeatedly.
+ * All operations run in constant time.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class SegmentedLruEvictionPolicy implements EvictionPolicy {
+
+	/**
+	 * The share of the capacity in percent reserved for the protected segment.
+	 */
+	public static final int PROTECTED_PERC = 80;
+
+	/**
+	 * The keys used once since they were added, the least recently used one first.
+	 */
+	private LinkedHashMap<String, Boolean> probation = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * The keys used more than once, the least recently used one first.
+	 */
+	private LinkedHashMap<String, Boolean> protectedKeys = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * The number of keys the protected segment holds at maximum.
+	 */
+	private int protectedCapacity = Integer.MAX_VALUE;
+
+	@Override
+	public void recordInsertion(String key) {
+		if(!protectedKeys.containsKey(key)) {
+			probation.put(key, Boolean.TRUE);
+		}
+	}
+
+	@Override
+	public void recordAccess(String key) {
+		if(probation.remove(key) != null) {
+			// Used again, so promote it:
+			protectedKeys.put(key, Boolean.TRUE);
+			demoteOverflow();
+
+		} else {
+			protectedKeys.get(key);
+		}
+	}
+
+	@Override
+	public void recordRemoval(String key) {
+		if(probation.remove(key) == null) {
+			protectedKeys.remove(key);
+		}
+	}
+
+	@Override
+	public String evict() {
+		String victim = LruEvictionPolicy.removeEldest(probation);
+		if(victim == null) {
+			victim = LruEvictionPolicy.removeEldest(protectedKeys);
+		}
+		return victim;
+	}
+
+	@Override
+	public void setCapacity(int capacity) {
+		protectedCapacity = (int) ((long) capacity * PROTECTED_PERC / 100);
+		demoteOverflow();
+	}
+
+	/**
+	 * Puts the least recently used protected keys back on probation while the
+	 * protected segment exceeds its share.
+	 */
+	private void demoteOverflow() {
+		while(protectedKeys.size() > protectedCapacity) {
+			probation.put(LruEvictionPolicy.removeEldest(protectedKeys), Boolean.TRUE);
+		}
+	}
+
+	@Override
+	public int size() {
+		return probation.size() + protectedKeys.size();
+	}
+
+	@Override
+	public void clear() {
+		probation.clear();
+		protectedKeys.clear();
+	}
+}
@@ -0,0 +1,185 @@
+package sep.gaia.resources.eviction;
+
+import java.util.LinkedHashMap;
+
+/**
+ * Window TinyLFU: New entries are kept in a small LRU admission-window. When an entry
+ * leaves the window, it competes with the entry the main area would evict next, and only
+ * the one used more frequently recently stays. The frequencies are estimated by a
+ * <code>FrequencySketch</code>, so also entries already evicted are remembered.
+ * The main area is a segmented LRU (see <code>SegmentedLruEvictionPolicy</code>).
+ * This keeps tiles viewed repeatedly, e.g. around the home location, cached while
+ * panning over a large area once.
+ * All operations run in constant time, <code>evict()</code> amortized.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class WTinyLfuEvictionPolicy implements EvictionPolicy {
+
+	/**
+	 * The share of the capacity in percent reserved for the admission-window.
+	 */
+	public static final int WINDOW_PERC = 1;
+
+	/**
+	 * The share of the main area in percent reserved for its protected segment.
+	 */
+	public static final int PROTECTED_PERC = 80;
+
+	/**
+	 * The number of keys the sketch is sized for initially.
+	 */
+	private static final int INITIAL_SKETCH_KEYS = 1024;
+
+	/**
+	 * The keys recently added, the least recently used one first.
+	 */
+	private LinkedHashMap<String, Boolean> window = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * The keys admitted to the main area but used only once there, the least recently used one first.
+	 */
+	private LinkedHashMap<String, Boolean> probation = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * The keys used more than once in the main area, the least recently used one first.
+	 */
+	private LinkedHashMap<String, Boolean> protectedKeys = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * The estimated frequencies of all keys used recently.
+	 */
+	private FrequencySketch sketch = new FrequencySketch(INITIAL_SKETCH_KEYS);
+
+	/**
+	 * The number of keys the window holds at maximum.
+	 */
+	private int windowCapacity = Integer.MAX_VALUE;
+
+	/**
+	 * The number of keys the main area holds at maximum.
+	 */
+	private int mainCapacity = 0;
+
+	/**
+	 * The number of keys the protected segment holds at maximum.
+	 */
+	private int protectedCapacity = 0;
+
+	@Override
+	public void recordInsertion(String key) {
+		// The sketch grows with the keys actually cached, not with the capacity, which may be unlimited:
+		sketch.ensureCapacity(size() + 1);
+		sketch.increment(key);
+		if(!probation.containsKey(key) && !protectedKeys.containsKey(key)) {
+			window.put(key, Boolean.TRUE);
+		}
+	}
+
+	@Override
+	public void recordAccess(String key) {
+		sketch.increment(key);
+		if(window.containsKey(key)) {
+			window.get(key);
+
+		} else if(probation.remove(key) != null) {
+			// Used again, so promote it:
+			protectedKeys.put(key, Boolean.TRUE);
+			demoteOverflow();
+
+		} else {
+			protectedKeys.get(key);
+		}
+	}
+
+	@Override
+	public void recordRemoval(String key) {
+		if(window.remove(key) == null && probation.remove(key) == null) {
+			protectedKeys.remove(key);
+		}
+	}
+
+	@Override
+	public String evict() {
+		// Move entries exceeding the window to the main area, if they are admitted:
+		while(window.size() > windowCapacity) {
+			String candidate = LruEvictionPolicy.removeEldest(window);
+
+			if(probation.size() + protectedKeys.size() < mainCapacity) {
+				// There is still space in the main area:
+				probation.put(candidate, Boolean.TRUE);
+				continue;
+			}
+
+			String victim = LruEvictionPolicy.peekEldest(probation);
+			LinkedHashMap<String, Boolean> victimSegment = probation;
+			if(victim == null) {
+				victim = LruEvictionPolicy.peekEldest(protectedKeys);
+				victimSegment = protectedKeys;
+			}
+			if(victim == null) {
+				return candidate;
+			}
+
+			// Only the one used more frequently recently stays:
+			if(sketch.frequency(candidate) > sketch.frequency(victim)) {
+				victimSegment.remove(victim);
+				probation.put(candidate, Boolean.TRUE);
+				return victim;
+			} else {
+				return candidate;
+			}
+		}
+
+		// The window is within its share, so evict from the main area:
+		String victim = LruEvictionPolicy.removeEldest(probation);
+		if(victim == null) {
+			victim = LruEvictionPolicy.removeEldest(protectedKeys);
+		}
+		if(victim == null) {
+			victim = LruEvictionPolicy.removeEldest(window);
+		}
+		return victim;
+	}
+
+	@Override
+	public void setCapacity(int capacity) {
+		windowCapacity = Math.max(1, (int) ((long) capacity * WINDOW_PERC / 100));
+		mainCapacity = Math.max(0, capacity - windowCapacity);
+		protectedCapacity = (int) ((long) mainCapacity * PROTECTED_PERC / 100);
+		demoteOverflow();
+	}
+
+	/**
+	 * Puts the least recently used protected keys back on probation while the
+	 * protected segment exceeds its share.
+	 */
+	private void demoteOverflow() {
+		while(protectedKeys.size() > protectedCapacity) {
+			probation.put(LruEvictionPolicy.removeEldest(protectedKeys), Boolean.TRUE);
+		}
+	}
+
+	/**
+	 * Returns the estimated number of recent uses of a key.
+	 * @param key The key to get the frequency of.
+	 * @return The estimated frequency.
+	 */
+	public int getFrequency(String key) {
+		return sketch.frequency(key);
+	}
+
+	@Override
+	public int size() {
+		return window.size() + probation.size() + protectedKeys.size();
+	}
+
+	@Override
+	public void clear() {
+		window.clear();
+		probation.clear();
+		protectedKeys.clear();
+		sketch.clear();
+	}
+}
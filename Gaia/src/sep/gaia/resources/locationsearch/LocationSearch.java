@@ -6,6 +6,7 @@ import java.util.Set;
 
 import sep.gaia.resources.Loader;
 import sep.gaia.resources.LoaderEventListener;
+import sep.gaia.resources.WorkerPool;
 
 /** 
  * This class takes all requests of locations and transmits them to 
@@ -80,4 +81,26 @@ public class LocationSearch implements LoaderEventListener<Location> {
 	public Loader<LocationQuery, Location> getLoader() {
 		return loader;
 	}
+
+	/**
+	 * This method sets how the <code>LocationWorker</code>s are executed.
+	 * The location search is no <code>DataResourceManager</code>, so it is
+	 * switched here instead.
+	 * 
+	 * @param executionMode How the <code>LocationWorker</code>s should be executed.
+	 * @return <code>true</code> if the mode was set, <code>false</code> if virtual
+	 * threads are not supported by the runtime.
+	 */
+	public boolean setExecutionMode(WorkerPool.ExecutionMode executionMode) {
+		return loader.setExecutionMode(executionMode);
+	}
+
+	/**
+	 * This method returns how the <code>LocationWorker</code>s are executed.
+	 * 
+	 * @return How the <code>LocationWorker</code>s are executed.
+	 */
+	public WorkerPool.ExecutionMode getExecutionMode() {
+		return loader.getExecutionMode();
+	}
 }
\ No newline at end of file
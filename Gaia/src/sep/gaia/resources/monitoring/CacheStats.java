@@ -0,0 +1,63 @@
+package sep.gaia.resources.monitoring;
+
+import sep.gaia.resources.Cache;
+
+/**
+ * Provides the metrics of a <code>Cache</code>: its size, hits, misses and evictions.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class CacheStats implements CacheStatsMBean, MetricsSource {
+
+	/**
+	 * The cache observed.
+	 */
+	private Cache<?> cache;
+
+	/**
+	 * Initializes the statistics.
+	 * @param cache The cache to observe.
+	 */
+	public CacheStats(Cache<?> cache) {
+		this.cache = cache;
+	}
+
+	@Override
+	public int getEntries() {
+		return cache.size();
+	}
+
+	@Override
+	public long getHits() {
+		return cache.getHitCount();
+	}
+
+	@Override
+	public long getMisses() {
+		return cache.getMissCount();
+	}
+
+	@Override
+	public long getEvictions() {
+		return cache.getEvictionCount();
+	}
+
+	@Override
+	public long getBytesOnDisk() {
+		return cache.getSizeOnDisk();
+	}
+
+	@Override
+	public void collect(MetricsWriter writer, String labels) {
+		writer.add("cache_entries", MetricsWriter.Type.GAUGE, "Entries cached.", labels, getEntries());
+		writer.add("cache_hits_total", MetricsWriter.Type.COUNTER,
+				"Requests answered from the cache.", labels, getHits());
+		writer.add("cache_misses_total", MetricsWriter.Type.COUNTER,
+				"Requests the cache could not answer.", labels, getMisses());
+		writer.add("cache_evictions_total", MetricsWriter.Type.COUNTER,
+				"Entries removed by the removal-strategy.", labels, getEvictions());
+		writer.add("cache_disk_bytes", MetricsWriter.Type.GAUGE,
+				"Size of the data kept on disk.", labels, getBytesOnDisk());
+	}
+}
@@ -0,0 +1,40 @@
+package sep.gaia.resources.monitoring;
+
+/**
+ * Management-interface of <code>CacheStats</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public interface CacheStatsMBean {
+
+	/**
+	 * Returns the number of entries cached.
+	 * @return The number of entries.
+	 */
+	public int getEntries();
+
+	/**
+	 * Returns the number of requests answered from the cache.
+	 * @return The number of cache-hits.
+	 */
+	public long getHits();
+
+	/**
+	 * Returns the number of requests the cache could not answer.
+	 * @return The number of cache-misses.
+	 */
+	public long getMisses();
+
+	/**
+	 * Returns the number of entries removed by the removal-strategy.
+	 * @return The number of evictions.
+	 */
+	public long getEvictions();
+
+	/**
+	 * Returns the size of the data the cache keeps on disk.
+	 * @return The size on disk in bytes.
+	 */
+	public long getBytesOnDisk();
+}
@@ -0,0 +1,38 @@
+package sep.gaia.resources.monitoring;
+
+/**
+ * Records the durations of the fetches from a single server, e.g. the subserver of a tile-style.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class FetchLatencyStats implements FetchLatencyStatsMBean, MetricsSource {
+
+	/**
+	 * The durations of the fetches.
+	 */
+	private Histogram latencies = new Histogram();
+
+	/**
+	 * Records the duration of a completed fetch.
+	 * @param nanos The duration of the fetch in nanoseconds.
+	 */
+	public void observe(long nanos) {
+		latencies.observe(nanos);
+	}
+
+	@Override
+	public long getFetchCount() {
+		return latencies.getCount();
+	}
+
+	@Override
+	public double getAverageLatencyMillis() {
+		return latencies.getAverageMillis();
+	}
+
+	@Override
+	public void collect(MetricsWriter writer, String labels) {
+		latencies.collect(writer, "fetch_latency_seconds", "Duration of fetches per server.", labels);
+	}
+}
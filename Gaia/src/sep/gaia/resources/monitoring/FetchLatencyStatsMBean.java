@@ -0,0 +1,22 @@
+package sep.gaia.resources.monitoring;
+
+/**
+ * Management-interface of <code>FetchLatencyStats</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public interface FetchLatencyStatsMBean {
+
+	/**
+	 * Returns the number of fetches completed.
+	 * @return The number of fetches.
+	 */
+	public long getFetchCount();
+
+	/**
+	 * Returns the average duration of the fetches completed.
+	 * @return The average duration in milliseconds.
+	 */
+	public double getAverageLatencyMillis();
+}
@@ -0,0 +1,104 @@
+package sep.gaia.resources.monitoring;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe histogram of durations with fixed bucket-bounds.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class Histogram {
+
+	/**
+	 * The default upper bounds of the buckets in seconds.
+	 */
+	public static final double[] DEFAULT_BOUNDS = {0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+	/**
+	 * The upper bounds of the buckets in seconds in ascending order.
+	 */
+	private double[] bounds;
+
+	/**
+	 * The number of observations per bucket. The last bucket holds observations
+	 * greater than all bounds.
+	 */
+	private AtomicLongArray counts;
+
+	/**
+	 * The sum of all durations observed in nanoseconds.
+	 */
+	private AtomicLong sum = new AtomicLong();
+
+	/**
+	 * Initializes the histogram with the default bucket-bounds.
+	 */
+	public Histogram() {
+		this(DEFAULT_BOUNDS);
+	}
+
+	/**
+	 * Initializes the histogram.
+	 * @param bounds The upper bounds of the buckets in seconds in ascending order.
+	 */
+	public Histogram(double[] bounds) {
+		this.bounds = bounds.clone();
+		this.counts = new AtomicLongArray(bounds.length + 1);
+	}
+
+	/**
+	 * Records a duration.
+	 * @param nanos The duration in nanoseconds.
+	 */
+	public void observe(long nanos) {
+		double seconds = nanos / 1e9;
+		int bucket = 0;
+		while(bucket < bounds.length && seconds > bounds[bucket]) {
+			bucket++;
+		}
+		counts.incrementAndGet(bucket);
+		sum.addAndGet(nanos);
+	}
+
+	/**
+	 * Returns the number of durations observed.
+	 * @return The number of observations.
+	 */
+	public long getCount() {
+		long count = 0;
+		for(int i = 0; i < counts.length(); i++) {
+			count += counts.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the average of all durations observed.
+	 * @return The average duration in milliseconds or zero if nothing was observed.
+	 */
+	public double getAverageMillis() {
+		long count = getCount();
+		return count > 0 ? sum.get() / 1e6 / count : 0;
+	}
+
+	/**
+	 * Adds the cumulative buckets, the sum and the count of the histogram to <code>writer</code>.
+	 * @param writer The writer collecting the metrics.
+	 * @param name The name of the metric without prefix.
+	 * @param help The description of the metric.
+	 * @param labels The labels identifying the histogram.
+	 */
+	public void collect(MetricsWriter writer, String name, String help, String labels) {
+		long cumulative = 0;
+		for(int i = 0; i <= bounds.length; i++) {
+			cumulative += counts.get(i);
+			String le = i < bounds.length ? Double.toString(bounds[i]) : "+Inf";
+			writer.add(name, MetricsWriter.Type.HISTOGRAM, help, name + "_bucket",
+					MetricsWriter.join(labels, MetricsWriter.label("le", le)), cumulative);
+		}
+		writer.add(name, MetricsWriter.Type.HISTOGRAM, help, name + "_sum", labels, sum.get() / 1e9);
+		writer.add(name, MetricsWriter.Type.HISTOGRAM, help, name + "_count", labels, cumulative);
+	}
+}
@@ -0,0 +1,105 @@
+package sep.gaia.resources.monitoring;
+
+import java.util.Map;
+
+import sep.gaia.resources.ListenerDispatcher;
+import sep.gaia.resources.Loader;
+
+/**
+ * Provides the metrics of a <code>Loader</code>: the depth of its query-queue
+ * per priority, its workers and the lag of delivering results to its listeners.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class LoaderStats implements LoaderStatsMBean, MetricsSource {
+
+	/**
+	 * The loader observed.
+	 */
+	private Loader<?, ?> loader;
+
+	/**
+	 * Initializes the statistics.
+	 * @param loader The loader to observe.
+	 */
+	public LoaderStats(Loader<?, ?> loader) {
+		this.loader = loader;
+	}
+
+	@Override
+	public Map<Integer, Integer> getQueueDepths() {
+		return loader.getQueueDepths();
+	}
+
+	@Override
+	public int getQueueDepth() {
+		int depth = 0;
+		for(int count : loader.getQueueDepths().values()) {
+			depth += count;
+		}
+		return depth;
+	}
+
+	@Override
+	public int getActiveWorkers() {
+		return loader.getActiveWorkerCount();
+	}
+
+	@Override
+	public int getRunningWorkers() {
+		return loader.getRunningWorkerCount();
+	}
+
+	@Override
+	public int getPendingWorkers() {
+		return loader.getPendingWorkerCount();
+	}
+
+	@Override
+	public int getWorkerQuota() {
+		return loader.getWorkerQuota();
+	}
+
+	@Override
+	public double getLastDispatchLagMillis() {
+		return loader.getDispatcher().getLastLagMillis();
+	}
+
+	@Override
+	public double getMaxDispatchLagMillis() {
+		return loader.getDispatcher().getMaxLagMillis();
+	}
+
+	@Override
+	public void collect(MetricsWriter writer, String labels) {
+		Map<Integer, Integer> depths = loader.getQueueDepths();
+		if(depths.isEmpty()) {
+			// Report an empty queue explicitly:
+			writer.add("loader_queue_depth", MetricsWriter.Type.GAUGE, "Queries waiting per priority.",
+					labels, 0);
+		}
+		for(Map.Entry<Integer, Integer> depth : depths.entrySet()) {
+			String priority = MetricsWriter.label("priority", depth.getKey().toString());
+			writer.add("loader_queue_depth", MetricsWriter.Type.GAUGE, "Queries waiting per priority.",
+					MetricsWriter.join(labels, priority), depth.getValue());
+		}
+		writer.add("loader_active_workers", MetricsWriter.Type.GAUGE,
+				"Workers processing the current query.", labels, getActiveWorkers());
+		writer.add("loader_running_workers", MetricsWriter.Type.GAUGE,
+				"Workers currently executed.", labels, getRunningWorkers());
+		writer.add("loader_pending_workers", MetricsWriter.Type.GAUGE,
+				"Workers waiting for a thread.", labels, getPendingWorkers());
+		writer.add("loader_worker_quota", MetricsWriter.Type.GAUGE,
+				"Workers the loader may run concurrently.", labels, getWorkerQuota());
+
+		ListenerDispatcher<?> dispatcher = loader.getDispatcher();
+		writer.add("loader_dispatch_lag_seconds", MetricsWriter.Type.GAUGE,
+				"Lag of the batch delivered last to the listeners.", labels,
+				dispatcher.getLastLagMillis() / 1000);
+		writer.add("loader_dispatched_batches_total", MetricsWriter.Type.COUNTER,
+				"Batches delivered to the listeners.", labels, dispatcher.getDeliveredCount());
+		writer.add("loader_coalesced_batches_total", MetricsWriter.Type.COUNTER,
+				"Batches merged while a listener was busy.", labels, dispatcher.getCoalescedCount());
+	}
+}
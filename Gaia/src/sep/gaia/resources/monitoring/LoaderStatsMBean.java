@@ -0,0 +1,60 @@
+package sep.gaia.resources.monitoring;
+
+import java.util.Map;
+
+/**
+ * Management-interface of <code>LoaderStats</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public interface LoaderStatsMBean {
+
+	/**
+	 * Returns the number of queries waiting for each priority.
+	 * @return The number of queries waiting mapped by their priority.
+	 */
+	public Map<Integer, Integer> getQueueDepths();
+
+	/**
+	 * Returns the number of queries waiting in total.
+	 * @return The number of queries waiting.
+	 */
+	public int getQueueDepth();
+
+	/**
+	 * Returns the number of workers processing the current query.
+	 * @return The number of active workers.
+	 */
+	public int getActiveWorkers();
+
+	/**
+	 * Returns the number of workers currently executed.
+	 * @return The number of workers running.
+	 */
+	public int getRunningWorkers();
+
+	/**
+	 * Returns the number of workers waiting for a thread.
+	 * @return The number of workers waiting.
+	 */
+	public int getPendingWorkers();
+
+	/**
+	 * Returns the number of workers the loader may run concurrently.
+	 * @return The worker-quota of the loader.
+	 */
+	public int getWorkerQuota();
+
+	/**
+	 * Returns the dispatch-lag of the batch delivered last to the listeners.
+	 * @return The dispatch-lag in milliseconds.
+	 */
+	public double getLastDispatchLagMillis();
+
+	/**
+	 * Returns the highest dispatch-lag recorded.
+	 * @return The highest dispatch-lag in milliseconds.
+	 */
+	public double getMaxDispatchLagMillis();
+}
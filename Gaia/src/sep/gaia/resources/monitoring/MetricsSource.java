@@ -0,0 +1,21 @@
+package sep.gaia.resources.monitoring;
+
+/**
+ * An interface for objects providing metrics about a part of the application.
+ * Sources are registered at the <code>Monitor</code>, which publishes them as MBeans
+ * and in Prometheus text-format. Implementations must therefore also implement an
+ * MBean-interface named after their class.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public interface MetricsSource {
+
+	/**
+	 * Adds the current values of all metrics of this source to <code>writer</code>.
+	 * @param writer The writer collecting the metrics.
+	 * @param labels The labels identifying this source, formatted as
+	 * <code>key="value"</code> pairs separated by commas.
+	 */
+	public void collect(MetricsWriter writer, String labels);
+}
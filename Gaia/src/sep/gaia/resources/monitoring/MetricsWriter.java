@@ -0,0 +1,170 @@
+package sep.gaia.resources.monitoring;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects samples of metrics and renders them in the Prometheus text-format.
+ * Samples of the same metric are grouped, no matter in which order they were added,
+ * so that several sources may report the same metric with different labels.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class MetricsWriter {
+
+	/**
+	 * The prefix of the names of all metrics.
+	 */
+	public static final String PREFIX = "gaia_";
+
+	/**
+	 * The types of metrics known to Prometheus.
+	 */
+	public enum Type {COUNTER, // A value only increasing
+					  GAUGE, // A value increasing and decreasing
+					  HISTOGRAM // A distribution of observed values
+					  };
+
+	/**
+	 * A metric and all samples reported for it.
+	 * @author Matthias Fisch
+	 *
+	 */
+	private static class Family {
+
+		/**
+		 * The type of the metric.
+		 */
+		private Type type;
+
+		/**
+		 * The description of the metric.
+		 */
+		private String help;
+
+		/**
+		 * The lines of the samples, already formatted.
+		 */
+		private List<String> samples = new LinkedList<>();
+	}
+
+	/**
+	 * The metrics reported mapped by their names.
+	 */
+	private Map<String, Family> families = new LinkedHashMap<>();
+
+	/**
+	 * Adds a sample of a metric.
+	 * @param name The name of the metric without <code>PREFIX</code>.
+	 * @param type The type of the metric.
+	 * @param help The description of the metric.
+	 * @param labels The labels of the sample, formatted as <code>key="value"</code>
+	 * pairs separated by commas, or an empty string.
+	 * @param value The value of the sample.
+	 */
+	public void add(String name, Type type, String help, String labels, double value) {
+		addSample(name, type, help, PREFIX + name, labels, value);
+	}
+
+	/**
+	 * Adds a sample belonging to a metric but having an own name, e.g.
+	 * the buckets of a histogram.
+	 * @param name The name of the metric without <code>PREFIX</code>.
+	 * @param type The type of the metric.
+	 * @param help The description of the metric.
+	 * @param sampleName The name of the sample without <code>PREFIX</code>.
+	 * @param labels The labels of the sample, formatted as <code>key="value"</code>
+	 * pairs separated by commas, or an empty string.
+	 * @param value The value of the sample.
+	 */
+	public void add(String name, Type type, String help, String sampleName, String labels, double value) {
+		addSample(name, type, help, PREFIX + sampleName, labels, value);
+	}
+
+	/**
+	 * Formats and stores a sample.
+	 */
+	private void addSample(String name, Type type, String help, String sampleName, String labels, double value) {
+		Family family = families.get(name);
+		if(family == null) {
+			family = new Family();
+			family.type = type;
+			family.help = help;
+			families.put(name, family);
+		}
+
+		StringBuilder sample = new StringBuilder(sampleName);
+		if(labels != null && !labels.isEmpty()) {
+			sample.append('{').append(labels).append('}');
+		}
+		sample.append(' ').append(formatValue(value));
+		family.samples.add(sample.toString());
+	}
+
+	/**
+	 * Formats a value as expected by Prometheus.
+	 * @param value The value to format.
+	 * @return The formatted value.
+	 */
+	private static String formatValue(double value) {
+		if(Double.isInfinite(value)) {
+			return value > 0 ? "+Inf" : "-Inf";
+		} else if(value == Math.rint(value) && Math.abs(value) < 1e15) {
+			return Long.toString((long) value);
+		} else {
+			return Double.toString(value);
+		}
+	}
+
+	/**
+	 * Formats a label-pair, escaping the value as required.
+	 * @param key The name of the label.
+	 * @param value The value of the label.
+	 * @return The pair formatted as <code>key="value"</code>.
+	 */
+	public static String label(String key, String value) {
+		String escaped = value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+		return key + "=\"" + escaped + "\"";
+	}
+
+	/**
+	 * Joins label-pairs formatted by <code>label()</code>, ignoring empty ones.
+	 * @param labels The label-pairs to join.
+	 * @return The pairs separated by commas.
+	 */
+	public static String join(String... labels) {
+		StringBuilder joined = new StringBuilder();
+		for(String current : labels) {
+			if(current != null && !current.isEmpty()) {
+				if(joined.length() > 0) {
+					joined.append(',');
+				}
+				joined.append(current);
+			}
+		}
+		return joined.toString();
+	}
+
+	/**
+	 * Renders all samples added in the Prometheus text-format.
+	 * @return The samples in Prometheus text-format.
+	 */
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+		for(Map.Entry<String, Family> entry : families.entrySet()) {
+			Family family = entry.getValue();
+			String name = PREFIX + entry.getKey();
+			text.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+			text.append("# TYPE ").append(name).append(' ')
+				.append(family.type.name().toLowerCase()).append('\n');
+			for(String sample : family.samples) {
+				text.append(sample).append('\n');
+			}
+		}
+		return text.toString();
+	}
+}
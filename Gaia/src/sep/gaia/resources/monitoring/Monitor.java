@@ -0,0 +1,286 @@
+package sep.gaia.resources.monitoring;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import sep.gaia.util.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Singleton-class publishing the metrics of the resource-loading subsystem.
+ * Each <code>MetricsSource</code> registered is published as MBean in the domain
+ * <code>DOMAIN</code> of the platform MBean-server. Optionally all metrics
+ * are served in the Prometheus text-format by a HTTP-endpoint only accessible
+ * from the local machine.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class Monitor {
+
+	/**
+	 * The domain of the MBeans registered.
+	 */
+	public static final String DOMAIN = "sep.gaia";
+
+	/**
+	 * The path of the metrics on the HTTP-endpoint.
+	 */
+	public static final String ENDPOINT_PATH = "/metrics";
+
+	/**
+	 * The type of the MBeans holding the fetch-latencies.
+	 */
+	private static final String FETCH_LATENCY_TYPE = "FetchLatency";
+
+	/**
+	 * A source registered and how it is identified.
+	 * @author Matthias Fisch
+	 *
+	 */
+	private static class Registration {
+
+		/**
+		 * The source registered.
+		 */
+		private MetricsSource source;
+
+		/**
+		 * The labels identifying the source in the Prometheus text-format.
+		 */
+		private String labels;
+
+		/**
+		 * The name of the MBean or <code>null</code> if it could not be registered.
+		 */
+		private ObjectName objectName;
+	}
+
+	/**
+	 * The one instance of this class existing.
+	 */
+	private static Monitor instance;
+
+	/**
+	 * The sources registered in the order of their registration.
+	 */
+	private List<Registration> registrations = new LinkedList<>();
+
+	/**
+	 * The latencies of the fetches mapped by the server fetched from.
+	 */
+	private Map<String, FetchLatencyStats> fetchLatencies = new HashMap<>();
+
+	/**
+	 * Lock guarding <code>registrations</code> and <code>fetchLatencies</code>.
+	 */
+	private Lock registrationsLock = new ReentrantLock();
+
+	/**
+	 * The HTTP-endpoint or <code>null</code> if it is not started.
+	 */
+	private HttpServer endpoint;
+
+	/**
+	 * Hided because only a single instance should be existent.
+	 * The statistics of the <code>HttpDownloader</code> are always registered.
+	 */
+	private Monitor() {
+		register("Transfer", "http", new TransferStats());
+	}
+
+	/**
+	 * Returns the one instance of the class.
+	 * @return The one instance of the class.
+	 */
+	public static synchronized Monitor getInstance() {
+		if(instance == null) {
+			instance = new Monitor();
+		}
+		return instance;
+	}
+
+	/**
+	 * Registers a source of metrics. The source is published as MBean named
+	 * <code>DOMAIN:type=&lt;type&gt;,name=&lt;name&gt;</code>. A MBean already
+	 * registered with this name is replaced.
+	 * @param type The kind of the source, e.g. <code>"Loader"</code>.
+	 * @param name The name of the source, e.g. the label of the manager it belongs to.
+	 * @param source The source to register.
+	 */
+	public void register(String type, String name, MetricsSource source) {
+		register(type, name, MetricsWriter.label("name", name), source);
+	}
+
+	/**
+	 * Registers a source with the labels it is identified with in Prometheus text-format.
+	 */
+	private void register(String type, String name, String labels, MetricsSource source) {
+		Registration registration = new Registration();
+		registration.source = source;
+		registration.labels = labels;
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			ObjectName objectName = new ObjectName(DOMAIN + ":type=" + type
+					+ ",name=" + ObjectName.quote(name));
+			if(server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			server.registerMBean(source, objectName);
+			registration.objectName = objectName;
+
+		} catch (JMException e) {
+			Logger.getInstance().warning("Cannot register MBean for " + type + " "
+					+ name + ": " + e.getMessage());
+		}
+
+		registrationsLock.lock();
+		try {
+			// Replace a registration with the same name:
+			if(registration.objectName != null) {
+				for(Registration current : registrations) {
+					if(registration.objectName.equals(current.objectName)) {
+						registrations.remove(current);
+						break;
+					}
+				}
+			}
+			registrations.add(registration);
+		} finally {
+			registrationsLock.unlock();
+		}
+	}
+
+	/**
+	 * Removes a source registered before and its MBean.
+	 * @param source The source to remove.
+	 */
+	public void unregister(MetricsSource source) {
+		Registration removed = null;
+		registrationsLock.lock();
+		try {
+			for(Registration current : registrations) {
+				if(current.source == source) {
+					removed = current;
+					registrations.remove(current);
+					break;
+				}
+			}
+		} finally {
+			registrationsLock.unlock();
+		}
+
+		if(removed != null && removed.objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(removed.objectName);
+			} catch (JMException e) {
+				// Already removed.
+			}
+		}
+	}
+
+	/**
+	 * Returns the latencies of the fetches from <code>server</code>. If no fetch from
+	 * this server was recorded yet, the statistics are created and registered.
+	 * @param server The host-name of the server, e.g. of a subserver of a tile-style.
+	 * @return The latencies of the fetches from <code>server</code>.
+	 */
+	public FetchLatencyStats getFetchLatency(String server) {
+		FetchLatencyStats stats;
+		registrationsLock.lock();
+		try {
+			stats = fetchLatencies.get(server);
+			if(stats != null) {
+				return stats;
+			}
+			stats = new FetchLatencyStats();
+			fetchLatencies.put(server, stats);
+		} finally {
+			registrationsLock.unlock();
+		}
+		register(FETCH_LATENCY_TYPE, server, MetricsWriter.label("server", server), stats);
+		return stats;
+	}
+
+	/**
+	 * Returns the current values of the metrics of all sources registered
+	 * in the Prometheus text-format.
+	 * @return The metrics in Prometheus text-format.
+	 */
+	public String renderPrometheus() {
+		List<Registration> current;
+		registrationsLock.lock();
+		try {
+			current = new LinkedList<>(registrations);
+		} finally {
+			registrationsLock.unlock();
+		}
+
+		MetricsWriter writer = new MetricsWriter();
+		for(Registration registration : current) {
+			registration.source.collect(writer, registration.labels);
+		}
+		return writer.toString();
+	}
+
+	/**
+	 * Starts serving the metrics in the Prometheus text-format at <code>ENDPOINT_PATH</code>.
+	 * The endpoint is bound to the loopback-interface only. If the endpoint is already
+	 * started, it is restarted at <code>port</code>.
+	 * @param port The port to listen on.
+	 * @throws IOException Thrown if the endpoint could not be bound to <code>port</code>.
+	 */
+	public synchronized void startEndpoint(int port) throws IOException {
+		stopEndpoint();
+
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.createContext(ENDPOINT_PATH, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				byte[] body = renderPrometheus().getBytes("UTF-8");
+				exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			}
+		});
+		server.start();
+		endpoint = server;
+	}
+
+	/**
+	 * Stops the HTTP-endpoint if it is started.
+	 */
+	public synchronized void stopEndpoint() {
+		if(endpoint != null) {
+			endpoint.stop(0);
+			endpoint = null;
+		}
+	}
+
+	/**
+	 * Returns the port the HTTP-endpoint listens on.
+	 * @return The port of the endpoint or <code>-1</code> if it is not started.
+	 */
+	public synchronized int getEndpointPort() {
+		return endpoint != null ? endpoint.getAddress().getPort() : -1;
+	}
+}
@@ -0,0 +1,37 @@
+package sep.gaia.resources.monitoring;
+
+import sep.gaia.resources.HttpDownloader;
+
+/**
+ * Provides the metrics of the <code>HttpDownloader</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class TransferStats implements TransferStatsMBean, MetricsSource {
+
+	@Override
+	public long getBytesReceived() {
+		return HttpDownloader.getInstance().getBytesReceived();
+	}
+
+	@Override
+	public long getBytesSaved() {
+		return HttpDownloader.getInstance().getBytesSaved();
+	}
+
+	@Override
+	public long getCancelledDownloads() {
+		return HttpDownloader.getInstance().getCancelledCount();
+	}
+
+	@Override
+	public void collect(MetricsWriter writer, String labels) {
+		writer.add("http_received_bytes_total", MetricsWriter.Type.COUNTER,
+				"Bytes received by downloads completed.", labels, getBytesReceived());
+		writer.add("http_saved_bytes_total", MetricsWriter.Type.COUNTER,
+				"Bytes not transferred because downloads were aborted.", labels, getBytesSaved());
+		writer.add("http_cancelled_downloads_total", MetricsWriter.Type.COUNTER,
+				"Downloads aborted while in progress.", labels, getCancelledDownloads());
+	}
+}
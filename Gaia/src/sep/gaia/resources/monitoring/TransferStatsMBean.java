@@ -0,0 +1,28 @@
+package sep.gaia.resources.monitoring;
+
+/**
+ * Management-interface of <code>TransferStats</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public interface TransferStatsMBean {
+
+	/**
+	 * Returns the number of bytes received by downloads completed.
+	 * @return The number of bytes received.
+	 */
+	public long getBytesReceived();
+
+	/**
+	 * Returns the number of bytes not transferred because downloads were aborted.
+	 * @return The number of bytes saved.
+	 */
+	public long getBytesSaved();
+
+	/**
+	 * Returns the number of downloads aborted while in progress.
+	 * @return The number of downloads aborted.
+	 */
+	public long getCancelledDownloads();
+}
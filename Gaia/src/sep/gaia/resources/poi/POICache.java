@@ -69,10 +69,12 @@ public class POICache extends Cache<PointOfInterest> {
 				
 				if (attributeMatch && boxContained) {
 					
+					recordHit();
 					return entry.getPois();
 				}
 			}
 		}
+		recordMiss();
 		return null;
 	}
 
@@ -29,6 +29,7 @@ import sep.gaia.resources.Cache;
 import sep.gaia.resources.DataResourceManager;
 import sep.gaia.resources.Loader;
 import sep.gaia.resources.LoaderEventListener;
+import sep.gaia.resources.WorkerPool.ExecutionMode;
 import sep.gaia.resources.ResourceMaster;
 import sep.gaia.resources.ResourceObserver;
 import sep.gaia.resources.WorkerFactory;
@@ -98,11 +99,12 @@ public class POIManager extends DataResourceManager<PointOfInterest> implements
 		WorkerFactory<POIQuery, PointOfInterest> factory = new POIWorkerFactory();
 
 		// Create the loader itself and pass the created objects
-		loader = new Loader<>(cache, factory, null); // Create the loader itself and pass the created objects
+		loader = new Loader<>(MANAGER_LABEL, cache, factory, null, Loader.DEFAULT_WORKER_QUOTA); // Create the loader itself and pass the created objects
 		
 		loader.addListener(this);
 		
 		loader.start();
+		registerMetrics(loader);
 		
 		loadFromXML();
 	}
@@ -337,6 +339,13 @@ public class POIManager extends DataResourceManager<PointOfInterest> implements
 		}
 	}
 
+	@Override
+	protected void applyExecutionMode(ExecutionMode executionMode) {
+		if(loader != null) {
+			loader.setExecutionMode(executionMode);
+		}
+	}
+
 	/**
 	 * Returns the sub-category from <code>categoriesByName</code> with an identifier <code>id</code>.
 	 * @param id The identifier to check for.
@@ -0,0 +1,347 @@
+package sep.gaia.resources.tiles2d;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import sep.gaia.resources.eviction.EvictionPolicy;
+import sep.gaia.resources.eviction.SegmentedLruEvictionPolicy;
+
+import com.jogamp.opengl.util.texture.TextureData;
+
+/**
+ * Keeps the decoded image-data of recently used tiles in memory, so that showing a
+ * tile again neither reads nor decodes its image-file.
+ * <p>
+ * The tier is the upper level in front of the <code>TileCache</code> on disk: A tile read
+ * from disk or newly cached is promoted into the tier. When the decoded data of all tiles
+ * exceeds the budget in bytes, tiles are demoted by removing them from the tier only.
+ * They remain on disk. Which tiles are demoted is chosen by a segmented LRU, so that
+ * a single pan across the map does not displace the tiles viewed repeatedly.
+ * <p>
+ * The image-data handed out is a view of the one kept, sharing the pixels but not the
+ * position of the buffer. It must therefore not be modified or destroyed. Pooled
+ * image-data handed out is a reference of its own, which the caller should release
+ * after use. The tier releases its references when demoting tiles.
+ * <p>
+ * The tier is thread-safe.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class DecodedTileTier {
+
+	/**
+	 * The size of the decoded data of a common tile of 256x256 RGBA-pixels in bytes.
+	 */
+	public static final int TILE_BYTES = 256 * 256 * 4;
+
+	/**
+	 * The decoded data of the tiles kept mapped by their key.
+	 */
+	private Map<String, TextureData> tiles = new HashMap<>();
+
+	/**
+	 * The sizes of the decoded data of the tiles kept mapped by their key.
+	 */
+	private Map<String, Integer> sizes = new HashMap<>();
+
+	/**
+	 * The strategy choosing the tiles to be demoted.
+	 */
+	private EvictionPolicy evictionPolicy = new SegmentedLruEvictionPolicy();
+
+	/**
+	 * The maximum size of all decoded data kept in bytes.
+	 */
+	private long budget;
+
+	/**
+	 * The size of all decoded data kept in bytes.
+	 */
+	private long usedBytes;
+
+	/**
+	 * Lock guarding all members except the counters.
+	 */
+	private Lock tierLock = new ReentrantLock();
+
+	/**
+	 * Number of requests answered from memory.
+	 */
+	private AtomicLong hitCount = new AtomicLong();
+
+	/**
+	 * Number of requests not answered from memory.
+	 */
+	private AtomicLong missCount = new AtomicLong();
+
+	/**
+	 * Number of tiles demoted because the budget was exceeded.
+	 */
+	private AtomicLong demotionCount = new AtomicLong();
+
+	/**
+	 * Initializes an empty tier.
+	 * @param budget The maximum size of all decoded data kept in bytes.
+	 */
+	public DecodedTileTier(long budget) {
+		setBudget(budget);
+	}
+
+	/**
+	 * Returns the decoded data of a tile kept in memory.
+	 * @param key The key of the tile (see <code>TileResource.getKey()</code>).
+	 * @return A view of the decoded data or <code>null</code> if the tile is not kept.
+	 */
+	public TextureData get(String key) {
+		TextureData data;
+		tierLock.lock();
+		try {
+			data = tiles.get(key);
+			if(data != null) {
+				evictionPolicy.recordAccess(key);
+			}
+		} finally {
+			tierLock.unlock();
+		}
+
+		if(data != null) {
+			hitCount.incrementAndGet();
+			return share(data);
+
+		} else {
+			missCount.incrementAndGet();
+			return null;
+		}
+	}
+
+	/**
+	 * Checks whether the decoded data of a tile is kept, without counting it as use.
+	 * @param key The key of the tile (see <code>TileResource.getKey()</code>).
+	 * @return <code>true</code> if the tile is kept.
+	 */
+	public boolean contains(String key) {
+		tierLock.lock();
+		try {
+			return tiles.containsKey(key);
+		} finally {
+			tierLock.unlock();
+		}
+	}
+
+	/**
+	 * Promotes the decoded data of a tile into memory, replacing the data kept before.
+	 * Tiles are demoted until the budget is kept. Data larger than the budget is not kept.
+	 * @param key The key of the tile (see <code>TileResource.getKey()</code>).
+	 * @param data The decoded data of the tile. Its pixels must not be modified afterwards.
+	 */
+	public void put(String key, TextureData data) {
+		int size = sizeOf(data);
+		// Keep a view of its own, so that the caller may keep using the data:
+		TextureData kept = share(data);
+		if(kept == null) {
+			// The pixels were already returned to their pool:
+			return;
+		}
+		tierLock.lock();
+		try {
+			removeLocked(key);
+			if(size > budget) {
+				release(kept);
+				return;
+			}
+
+			tiles.put(key, kept);
+			sizes.put(key, size);
+			usedBytes += size;
+			evictionPolicy.recordInsertion(key);
+
+			// Demote until the budget is kept:
+			while(usedBytes > budget) {
+				String victim = evictionPolicy.evict();
+				if(victim == null) {
+					break;
+				}
+				TextureData demoted = tiles.remove(victim);
+				if(demoted != null) {
+					usedBytes -= sizes.remove(victim);
+					demotionCount.incrementAndGet();
+					release(demoted);
+				}
+			}
+		} finally {
+			tierLock.unlock();
+		}
+	}
+
+	/**
+	 * Removes a tile from memory, e.g. because it was removed from disk.
+	 * @param key The key of the tile (see <code>TileResource.getKey()</code>).
+	 */
+	public void remove(String key) {
+		tierLock.lock();
+		try {
+			removeLocked(key);
+		} finally {
+			tierLock.unlock();
+		}
+	}
+
+	/**
+	 * Removes a tile. The caller must hold <code>tierLock</code>.
+	 */
+	private void removeLocked(String key) {
+		TextureData removed = tiles.remove(key);
+		if(removed != null) {
+			usedBytes -= sizes.remove(key);
+			evictionPolicy.recordRemoval(key);
+			release(removed);
+		}
+	}
+
+	/**
+	 * Removes all tiles from memory.
+	 */
+	public void clear() {
+		tierLock.lock();
+		try {
+			for(TextureData data : tiles.values()) {
+				release(data);
+			}
+			tiles.clear();
+			sizes.clear();
+			evictionPolicy.clear();
+			usedBytes = 0;
+		} finally {
+			tierLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the maximum size of all decoded data kept.
+	 * @return The budget in bytes.
+	 */
+	public long getBudget() {
+		tierLock.lock();
+		try {
+			return budget;
+		} finally {
+			tierLock.unlock();
+		}
+	}
+
+	/**
+	 * Sets the maximum size of all decoded data kept. Tiles exceeding a lowered budget
+	 * are demoted with the next promotion.
+	 * @param budget The budget in bytes.
+	 */
+	public void setBudget(long budget) {
+		tierLock.lock();
+		try {
+			this.budget = budget;
+			// The policy sizes its segments by the number of tiles:
+			evictionPolicy.setCapacity((int) Math.min(Integer.MAX_VALUE, Math.max(1, budget / TILE_BYTES)));
+		} finally {
+			tierLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the size of all decoded data kept.
+	 * @return The size in bytes.
+	 */
+	public long getUsedBytes() {
+		tierLock.lock();
+		try {
+			return usedBytes;
+		} finally {
+			tierLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of tiles kept.
+	 * @return The number of tiles kept.
+	 */
+	public int size() {
+		tierLock.lock();
+		try {
+			return tiles.size();
+		} finally {
+			tierLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of requests answered from memory.
+	 * @return The number of hits.
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * Returns the number of requests not answered from memory.
+	 * @return The number of misses.
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/**
+	 * Returns the number of tiles demoted because the budget was exceeded.
+	 * @return The number of demotions.
+	 */
+	public long getDemotionCount() {
+		return demotionCount.get();
+	}
+
+	/**
+	 * Returns the size of decoded data in bytes.
+	 */
+	private static int sizeOf(TextureData data) {
+		int size = data.getEstimatedMemorySize();
+		if(size <= 0) {
+			size = data.getWidth() * data.getHeight() * 4;
+		}
+		return size;
+	}
+
+	/**
+	 * Returns the pixels of decoded data kept to their pool, if they are pooled.
+	 */
+	private static void release(TextureData data) {
+		if(data instanceof PooledTextureData) {
+			((PooledTextureData) data).release();
+		}
+	}
+
+	/**
+	 * Creates a view of decoded data sharing its pixels, so that the position of the
+	 * buffer is not shared by the users of the data. Views of pooled data are references
+	 * of their own.
+	 * @param data The data to share.
+	 * @return The view or <code>null</code> if the pooled pixels were already released.
+	 */
+	static TextureData share(TextureData data) {
+		if(data instanceof PooledTextureData) {
+			return ((PooledTextureData) data).share();
+		}
+		Buffer buffer = data.getBuffer();
+		if(!(buffer instanceof ByteBuffer)) {
+			return data;
+		}
+		TextureData view = new TextureData(data.getGLProfile(), data.getInternalFormat(), data.getWidth(),
+				data.getHeight(), data.getBorder(), data.getPixelAttributes(), data.getMipmap(),
+				data.isDataCompressed(), data.getMustFlipVertically(), ((ByteBuffer) buffer).duplicate(), null);
+		view.setAlignment(data.getAlignment());
+		view.setRowLength(data.getRowLength());
+		view.setColorSpace(data.getColorSpace());
+		return view;
+	}
+}
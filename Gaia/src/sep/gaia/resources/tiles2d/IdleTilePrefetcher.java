@@ -0,0 +1,535 @@
+package sep.gaia.resources.tiles2d;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.media.opengl.GLProfile;
+
+import sep.gaia.environment.Environment;
+import sep.gaia.environment.Environment.EnvVariable;
+import sep.gaia.resources.AbstractLoaderWorker;
+import sep.gaia.resources.DataResource;
+import sep.gaia.resources.Loader;
+import sep.gaia.resources.WorkerPool;
+import sep.gaia.resources.tiles2d.Style.SubServer;
+import sep.gaia.util.IntegerBoundingBox;
+import sep.gaia.util.IntegerVector3D;
+import sep.gaia.util.Logger;
+
+/**
+ * Loads the tiles around the view into the <code>TileCache</code> while the view stands
+ * still, so that a small pan or a change of the zoom-level by one is served from the cache.
+ * <p>
+ * When no activity was reported for <code>IDLE_DELAY</code> milliseconds and the loader
+ * of the visible tiles is idle, the tiles of a ring around the visible ones, the parents
+ * and the children of the visible tiles are fetched one after another at the lowest
+ * priority: The scheduling thread has the minimum priority and a single worker runs in a
+ * share of the <code>WorkerPool</code> of its own. The bytes downloaded are paced to a
+ * bandwidth-budget. Any activity reported cancels the load in progress immediately and
+ * starts waiting for the view to stand still again.
+ * <p>
+ * The tiles are added to the cache like seeded ones, i.e. without occupying the memory
+ * reserved for tiles viewed.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class IdleTilePrefetcher {
+
+	/**
+	 * The time in milliseconds after the last activity the view is considered to stand still.
+	 */
+	public static final long IDLE_DELAY = 500;
+
+	/**
+	 * The interval in milliseconds in which is checked whether the loader became idle.
+	 */
+	private static final long LOADER_CHECK_INTERVAL = 100;
+
+	/**
+	 * The number of tiles around the visible ones used if the configuration is invalid.
+	 */
+	private static final int DEFAULT_RING_SIZE = 2;
+
+	/**
+	 * The bandwidth-budget in bytes per second used if the configuration is invalid.
+	 */
+	private static final long DEFAULT_BANDWIDTH = 128 * 1024;
+
+	/**
+	 * The cache the tiles are loaded into.
+	 */
+	private TileCache cache;
+
+	/**
+	 * The OpenGL-profile to use when decoding tiles.
+	 */
+	private GLProfile profile;
+
+	/**
+	 * The loader of the visible tiles, which must be idle before prefetching.
+	 */
+	private Loader<?, ?> loader;
+
+	/**
+	 * The number of tiles around the visible ones in each direction to prefetch.
+	 */
+	private int ringSize;
+
+	/**
+	 * The maximum number of bytes downloaded per second.
+	 */
+	private long bandwidth;
+
+	/**
+	 * The share of the <code>WorkerPool</code> the workers are executed in.
+	 */
+	private WorkerPool.Share workerShare;
+
+	/**
+	 * The thread scheduling the loads.
+	 */
+	private Thread prefetchThread;
+
+	/**
+	 * Lock guarding the view, the tiles pending and the worker in progress.
+	 */
+	private Lock prefetchLock = new ReentrantLock();
+
+	/**
+	 * Signalled when activity was reported or the prefetcher was closed.
+	 */
+	private Condition changed = prefetchLock.newCondition();
+
+	/**
+	 * The tiles visible or <code>null</code> if there is nothing to prefetch.
+	 */
+	private IntegerBoundingBox visible;
+
+	/**
+	 * The zoom-level of the visible tiles.
+	 */
+	private int zoom;
+
+	/**
+	 * The style of the visible tiles.
+	 */
+	private Style style;
+
+	/**
+	 * The number of activities reported, so that loads scheduled before can be recognized.
+	 */
+	private long generation;
+
+	/**
+	 * The time by <code>System.nanoTime()</code> from which the view is considered to stand still.
+	 */
+	private long idleTime = System.nanoTime();
+
+	/**
+	 * The time by <code>System.nanoTime()</code> from which the next load is within the
+	 * bandwidth-budget.
+	 */
+	private long budgetTime = System.nanoTime();
+
+	/**
+	 * The tiles still to prefetch for the current view or <code>null</code> if they were not
+	 * determined yet.
+	 */
+	private LinkedList<TileResource> pending;
+
+	/**
+	 * The worker loading a tile currently or <code>null</code> if there is none.
+	 */
+	private TileLoaderWorker currentWorker;
+
+	/**
+	 * The index of the subserver to use next.
+	 */
+	private int nextSubServer;
+
+	/**
+	 * Flag if the prefetcher was closed.
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * Number of tiles loaded into the cache.
+	 */
+	private AtomicLong prefetchedCount = new AtomicLong();
+
+	/**
+	 * Number of bytes downloaded.
+	 */
+	private AtomicLong prefetchedBytes = new AtomicLong();
+
+	/**
+	 * Number of loads cancelled because activity was reported.
+	 */
+	private AtomicLong yieldedCount = new AtomicLong();
+
+	/**
+	 * Initializes the prefetcher with the ring-size set by <code>EnvVariable.TILE_IDLE_PREFETCH_RING</code>
+	 * and the bandwidth-budget set by <code>EnvVariable.TILE_IDLE_PREFETCH_BANDWIDTH</code>.
+	 * It does not run before <code>start()</code> is called.
+	 * @param name The name of the share of the <code>WorkerPool</code> used.
+	 * @param cache The cache to load the tiles into.
+	 * @param profile The OpenGL-profile to use when decoding tiles.
+	 * @param loader The loader of the visible tiles.
+	 */
+	public IdleTilePrefetcher(String name, TileCache cache, GLProfile profile, Loader<?, ?> loader) {
+		this(name, cache, profile, loader, getConfiguredRingSize(), getConfiguredBandwidth());
+	}
+
+	/**
+	 * Initializes the prefetcher. It does not run before <code>start()</code> is called.
+	 * @param name The name of the share of the <code>WorkerPool</code> used.
+	 * @param cache The cache to load the tiles into.
+	 * @param profile The OpenGL-profile to use when decoding tiles.
+	 * @param loader The loader of the visible tiles.
+	 * @param ringSize The number of tiles around the visible ones in each direction to prefetch.
+	 * @param bandwidth The maximum number of bytes downloaded per second. Nothing is prefetched
+	 * if not positive.
+	 */
+	public IdleTilePrefetcher(String name, TileCache cache, GLProfile profile, Loader<?, ?> loader,
+			int ringSize, long bandwidth) {
+		this.cache = cache;
+		this.profile = profile;
+		this.loader = loader;
+		this.ringSize = Math.max(0, ringSize);
+		this.bandwidth = bandwidth;
+		this.workerShare = WorkerPool.getInstance().createShare(name, 1);
+	}
+
+	/**
+	 * Returns the ring-size set by <code>EnvVariable.TILE_IDLE_PREFETCH_RING</code>.
+	 * @return The number of tiles around the visible ones or 2 if the configuration is invalid.
+	 */
+	private static int getConfiguredRingSize() {
+		String ringSize = Environment.getInstance().getString(EnvVariable.TILE_IDLE_PREFETCH_RING);
+		try {
+			return Integer.parseInt(ringSize);
+
+		} catch (NumberFormatException e) {
+			Logger.getInstance().warning("Invalid ring-size for prefetching tiles " + ringSize + ", using "
+					+ DEFAULT_RING_SIZE + ".");
+			return DEFAULT_RING_SIZE;
+		}
+	}
+
+	/**
+	 * Returns the bandwidth-budget set by <code>EnvVariable.TILE_IDLE_PREFETCH_BANDWIDTH</code>.
+	 * @return The bytes per second or 128 KiB if the configuration is invalid.
+	 */
+	private static long getConfiguredBandwidth() {
+		String bandwidth = Environment.getInstance().getString(EnvVariable.TILE_IDLE_PREFETCH_BANDWIDTH);
+		try {
+			return Long.parseLong(bandwidth);
+
+		} catch (NumberFormatException e) {
+			Logger.getInstance().warning("Invalid bandwidth for prefetching tiles " + bandwidth + ", using 128 KiB/s.");
+			return DEFAULT_BANDWIDTH;
+		}
+	}
+
+	/**
+	 * Starts the thread of the prefetcher, unless the bandwidth-budget is not positive.
+	 */
+	public void start() {
+		if(bandwidth <= 0) {
+			Logger.getInstance().message("Prefetching tiles while idle is disabled.");
+			return;
+		}
+		prefetchThread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					prefetch();
+
+				} catch (InterruptedException e) {
+					// Closed:
+				}
+			}
+		}, "IdleTilePrefetcher");
+		prefetchThread.setDaemon(true);
+		prefetchThread.setPriority(Thread.MIN_PRIORITY);
+		prefetchThread.start();
+	}
+
+	/**
+	 * Loads the tiles pending one after another until the prefetcher is closed.
+	 * @throws InterruptedException Thrown if the thread was interrupted.
+	 */
+	private void prefetch() throws InterruptedException {
+		BlockingQueue<AbstractLoaderWorker<?, ?>> finishedWorkers = new LinkedBlockingQueue<>();
+		final AtomicLong loadedBytes = new AtomicLong();
+		TileCacheSink sink = new TileCacheSink(cache, false) {
+			@Override
+			protected void onLoaded(TileResource tile, long imageSize, boolean cached) {
+				loadedBytes.addAndGet(imageSize);
+				if(cached) {
+					prefetchedCount.incrementAndGet();
+				}
+			}
+		};
+
+		while(!closed) {
+			TileResource tile;
+			long tileGeneration;
+			prefetchLock.lock();
+			try {
+				tile = awaitNextTile();
+				tileGeneration = generation;
+			} finally {
+				prefetchLock.unlock();
+			}
+			if(tile == null) {
+				return;
+			}
+			String key = tile.getKey();
+			List<SubServer> subServers = tile.getStyle().getSubServers();
+			if(cache.isCached(key) || TileLoaderWorker.getFailedTiles().isFailed(key) || subServers.isEmpty()) {
+				continue;
+			}
+			SubServer subServer = subServers.get(nextSubServer % subServers.size());
+			nextSubServer = (nextSubServer + 1) % subServers.size();
+
+			TileLoaderWorker worker = TileLoaderWorker.createUncached(
+					new TileQuery(Collections.<DataResource>singletonList(tile), subServer), profile, finishedWorkers, sink);
+
+			long start = System.nanoTime();
+			loadedBytes.set(0);
+			prefetchLock.lock();
+			try {
+				if(closed || tileGeneration != generation) {
+					// Activity was reported meanwhile:
+					continue;
+				}
+				currentWorker = worker;
+			} finally {
+				prefetchLock.unlock();
+			}
+			workerShare.submit(worker);
+			finishedWorkers.take();
+
+			prefetchLock.lock();
+			try {
+				currentWorker = null;
+				long bytes = loadedBytes.get();
+				prefetchedBytes.addAndGet(bytes);
+				// The next load waits until the bytes of this one are within the budget:
+				long base = budgetTime - start > 0 ? budgetTime : start;
+				budgetTime = base + TimeUnit.SECONDS.toNanos(bytes) / bandwidth;
+			} finally {
+				prefetchLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Waits until the view stands still, the loader is idle and the bandwidth-budget permits
+	 * another load. Must be called with <code>prefetchLock</code> held.
+	 * @return The next tile to prefetch or <code>null</code> if the prefetcher was closed.
+	 * @throws InterruptedException Thrown if the thread was interrupted.
+	 */
+	private TileResource awaitNextTile() throws InterruptedException {
+		while(!closed) {
+			long now = System.nanoTime();
+			if(visible == null) {
+				changed.await();
+
+			} else if(idleTime - now > 0) {
+				changed.awaitNanos(idleTime - now);
+
+			} else if(budgetTime - now > 0) {
+				changed.awaitNanos(budgetTime - now);
+
+			} else if(loader.getActiveWorkerCount() > 0 || !loader.getQueueDepths().isEmpty()) {
+				changed.await(LOADER_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+
+			} else {
+				if(pending == null) {
+					pending = new LinkedList<>();
+					for(IntegerVector3D coord : getTiles(visible, zoom, ringSize,
+							style.getMinZoom(), style.getMaxZoom())) {
+						TileResource tile = new TileResource(coord.getX(), coord.getY(), coord.getZ());
+						tile.setDummy(true);
+						tile.setStyle(style);
+						pending.add(tile);
+					}
+				}
+				if(!pending.isEmpty()) {
+					return pending.removeFirst();
+				}
+				// All tiles of this view were prefetched:
+				changed.await();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reports activity, e.g. because the view changed and the visible tiles are requested.
+	 * The load in progress is cancelled immediately and the tiles around <code>visible</code>
+	 * are prefetched once the view stands still.
+	 * @param visible The tiles visible or <code>null</code> if nothing should be prefetched,
+	 * e.g. because the tiles can't be loaded.
+	 * @param zoom The zoom-level of the visible tiles.
+	 * @param style The style of the visible tiles.
+	 */
+	public void onActivity(IntegerBoundingBox visible, int zoom, Style style) {
+		prefetchLock.lock();
+		try {
+			generation++;
+			idleTime = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(IDLE_DELAY);
+			this.visible = style != null ? visible : null;
+			this.zoom = zoom;
+			this.style = style;
+			pending = null;
+			if(currentWorker != null) {
+				currentWorker.interrupt();
+				currentWorker = null;
+				yieldedCount.incrementAndGet();
+			}
+			changed.signalAll();
+
+		} finally {
+			prefetchLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the tiles to prefetch around visible tiles in the order they are loaded:
+	 * The parents first, as they are few and cover the view when zooming out, then the
+	 * tiles around the visible ones by their distance, the children last, as they are
+	 * four times as many as the visible tiles.
+	 * @param visible The tiles visible.
+	 * @param zoom The zoom-level of the visible tiles.
+	 * @param ringSize The number of tiles around the visible ones in each direction.
+	 * @param minZoom The minimum zoom-level of tiles available.
+	 * @param maxZoom The maximum zoom-level of tiles available.
+	 * @return The coordinates of the tiles, all within the map.
+	 */
+	public static List<IntegerVector3D> getTiles(IntegerBoundingBox visible, int zoom, int ringSize,
+			int minZoom, int maxZoom) {
+		int minX = visible.getUpperLeft().getX();
+		int minY = visible.getUpperLeft().getY();
+		int maxX = visible.getUpperRight().getX();
+		int maxY = visible.getLowerLeft().getY();
+		List<IntegerVector3D> tiles = new ArrayList<>();
+
+		if(zoom - 1 >= Math.max(0, minZoom)) {
+			addTiles(tiles, minX >> 1, minY >> 1, maxX >> 1, maxY >> 1, zoom - 1);
+		}
+
+		int maxTile = (1 << zoom) - 1;
+		for(int distance = 1; distance <= ringSize; distance++) {
+			int left = minX - distance;
+			int right = maxX + distance;
+			int top = minY - distance;
+			int bottom = maxY + distance;
+			// The rows above and below, the columns left and right without the corners:
+			for(int x = left; x <= right; x++) {
+				addTile(tiles, x, top, zoom, maxTile);
+				addTile(tiles, x, bottom, zoom, maxTile);
+			}
+			for(int y = top + 1; y < bottom; y++) {
+				addTile(tiles, left, y, zoom, maxTile);
+				addTile(tiles, right, y, zoom, maxTile);
+			}
+		}
+
+		if(zoom + 1 <= maxZoom) {
+			addTiles(tiles, 2 * minX, 2 * minY, 2 * maxX + 1, 2 * maxY + 1, zoom + 1);
+		}
+		return tiles;
+	}
+
+	/**
+	 * Adds the tiles of a range to <code>tiles</code>.
+	 * @param tiles The list to add the coordinates to.
+	 * @param minX The minimum x-coordinate of the range.
+	 * @param minY The minimum y-coordinate of the range.
+	 * @param maxX The maximum x-coordinate of the range.
+	 * @param maxY The maximum y-coordinate of the range.
+	 * @param zoom The zoom-level of the tiles.
+	 */
+	private static void addTiles(List<IntegerVector3D> tiles, int minX, int minY, int maxX, int maxY, int zoom) {
+		int maxTile = (1 << zoom) - 1;
+		for(int y = minY; y <= maxY; y++) {
+			for(int x = minX; x <= maxX; x++) {
+				addTile(tiles, x, y, zoom, maxTile);
+			}
+		}
+	}
+
+	/**
+	 * Adds a tile to <code>tiles</code> if it is within the map.
+	 * @param tiles The list to add the coordinates to.
+	 * @param x The x-coordinate of the tile.
+	 * @param y The y-coordinate of the tile.
+	 * @param zoom The zoom-level of the tile.
+	 * @param maxTile The maximum coordinate of tiles of the zoom-level.
+	 */
+	private static void addTile(List<IntegerVector3D> tiles, int x, int y, int zoom, int maxTile) {
+		if(x >= 0 && y >= 0 && x <= maxTile && y <= maxTile) {
+			tiles.add(new IntegerVector3D(x, y, zoom));
+		}
+	}
+
+	/**
+	 * Stops the prefetcher. The load in progress is cancelled.
+	 */
+	public void close() {
+		prefetchLock.lock();
+		try {
+			closed = true;
+			if(currentWorker != null) {
+				currentWorker.interrupt();
+				currentWorker = null;
+			}
+			changed.signalAll();
+
+		} finally {
+			prefetchLock.unlock();
+		}
+		if(prefetchThread != null) {
+			prefetchThread.interrupt();
+		}
+		workerShare.release();
+	}
+
+	/**
+	 * Returns the number of tiles loaded into the cache.
+	 * @return The number of tiles prefetched.
+	 */
+	public long getPrefetchedCount() {
+		return prefetchedCount.get();
+	}
+
+	/**
+	 * Returns the number of bytes downloaded.
+	 * @return The bytes of the tiles prefetched.
+	 */
+	public long getPrefetchedBytes() {
+		return prefetchedBytes.get();
+	}
+
+	/**
+	 * Returns the number of loads cancelled because activity was reported.
+	 * @return The number of loads cancelled.
+	 */
+	public long getYieldedCount() {
+		return yieldedCount.get();
+	}
+}
@@ -0,0 +1,171 @@
+package sep.gaia.resources.tiles2d;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import sep.gaia.util.FloatVector3D;
+
+/**
+ * Follows the position and the zoom of the view over time and extrapolates where
+ * the view will be shortly, e.g. to load the tiles there before they are visible.
+ * <p>
+ * The velocity is fitted by least squares to the positions recorded within the last
+ * <code>SAMPLE_WINDOW</code> milliseconds. The zoom is extrapolated logarithmically,
+ * as zooming scales the view by a constant factor per step. If only one position
+ * was recorded within the window, the view is considered to stand still.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class MotionPredictor {
+
+	/**
+	 * The time in milliseconds the positions the velocity is fitted to were recorded within.
+	 */
+	public static final long SAMPLE_WINDOW = 300;
+
+	/**
+	 * The maximum number of positions kept.
+	 */
+	private static final int MAX_SAMPLES = 16;
+
+	/**
+	 * A position of the view recorded.
+	 *
+	 * @author Matthias Fisch
+	 *
+	 */
+	private static class Sample {
+
+		/**
+		 * The time the position was recorded in milliseconds.
+		 */
+		private final long time;
+
+		/**
+		 * The x-coordinate of the center of the view in GL-coordinates.
+		 */
+		private final float x;
+
+		/**
+		 * The y-coordinate of the center of the view in GL-coordinates.
+		 */
+		private final float y;
+
+		/**
+		 * The binary logarithm of the zoom in GL-coordinates.
+		 */
+		private final double logZoom;
+
+		/**
+		 * Initializes the sample.
+		 */
+		private Sample(long time, float x, float y, float zoom) {
+			this.time = time;
+			this.x = x;
+			this.y = y;
+			this.logZoom = Math.log(zoom) / Math.log(2);
+		}
+	}
+
+	/**
+	 * The positions recorded, the latest last.
+	 */
+	private LinkedList<Sample> samples = new LinkedList<>();
+
+	/**
+	 * Records the current position of the view.
+	 * @param time The current time in milliseconds.
+	 * @param x The x-coordinate of the center of the view in GL-coordinates.
+	 * @param y The y-coordinate of the center of the view in GL-coordinates.
+	 * @param zoom The zoom in GL-coordinates, which must be positive.
+	 */
+	public synchronized void record(long time, float x, float y, float zoom) {
+		if(zoom <= 0) {
+			return;
+		}
+		if(!samples.isEmpty() && samples.getLast().time > time) {
+			// The clock went backwards, so the samples can't be compared:
+			samples.clear();
+		}
+		samples.addLast(new Sample(time, x, y, zoom));
+		while(samples.size() > MAX_SAMPLES) {
+			samples.removeFirst();
+		}
+	}
+
+	/**
+	 * Extrapolates the position of the view.
+	 * @param horizon The time in milliseconds after the latest position recorded to
+	 * extrapolate the position for.
+	 * @return The center of the view in GL-coordinates and the zoom in GL-coordinates as
+	 * z-coordinate, or <code>null</code> if no position was recorded yet.
+	 */
+	public synchronized FloatVector3D predict(long horizon) {
+		if(samples.isEmpty()) {
+			return null;
+		}
+		Sample latest = samples.getLast();
+
+		// Fit the velocities to the samples within the window:
+		int count = 0;
+		double sumT = 0, sumTT = 0, sumX = 0, sumTX = 0, sumY = 0, sumTY = 0, sumZ = 0, sumTZ = 0;
+		for(Iterator<Sample> iter = samples.descendingIterator(); iter.hasNext(); ) {
+			Sample sample = iter.next();
+			if(latest.time - sample.time > SAMPLE_WINDOW) {
+				break;
+			}
+			// Times relative to the latest sample for precision:
+			double t = sample.time - latest.time;
+			count++;
+			sumT += t;
+			sumTT += t * t;
+			sumX += sample.x;
+			sumTX += t * sample.x;
+			sumY += sample.y;
+			sumTY += t * sample.y;
+			sumZ += sample.logZoom;
+			sumTZ += t * sample.logZoom;
+		}
+
+		double denominator = count * sumTT - sumT * sumT;
+		if(count < 2 || denominator <= 0) {
+			return new FloatVector3D(latest.x, latest.y, (float) Math.pow(2, latest.logZoom));
+		}
+		double velocityX = (count * sumTX - sumT * sumX) / denominator;
+		double velocityY = (count * sumTY - sumT * sumY) / denominator;
+		double velocityZ = (count * sumTZ - sumT * sumZ) / denominator;
+
+		return new FloatVector3D((float) (latest.x + velocityX * horizon),
+				(float) (latest.y + velocityY * horizon),
+				(float) Math.pow(2, latest.logZoom + velocityZ * horizon));
+	}
+
+	/**
+	 * Checks whether the view moved within the window before the latest position recorded.
+	 * @return <code>true</code> if the position or the zoom changed.
+	 */
+	public synchronized boolean isMoving() {
+		if(samples.size() < 2) {
+			return false;
+		}
+		Sample latest = samples.getLast();
+		for(Iterator<Sample> iter = samples.descendingIterator(); iter.hasNext(); ) {
+			Sample sample = iter.next();
+			if(latest.time - sample.time > SAMPLE_WINDOW) {
+				break;
+			}
+			if(sample.x != latest.x || sample.y != latest.y || sample.logZoom != latest.logZoom) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Forgets all positions recorded, e.g. when the view jumped to another place.
+	 */
+	public synchronized void reset() {
+		samples.clear();
+	}
+}
@@ -0,0 +1,1333 @@
+package sep.gaia.resources.tiles2d;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import sep.gaia.util.Logger;
+
+/**
+ * Stores the image-data of tiles packed into few large files instead of one file per tile.
+ * <p>
+ * The data is appended to segment-files of at most <code>SEGMENT_SIZE</code> bytes. Each record
+ * in a segment starts with a header naming the tile it belongs to, so the segments alone
+ * suffice to restore all tiles. A removed tile is marked by a record without data.
+ * <p>
+ * The location of each tile is looked up in an index-file, which is memory-mapped and organized
+ * as open-addressing hash-table keyed by (style, zoom, x, y). The index is only trusted if the
+ * store was closed properly before. Otherwise it is rebuilt from the segments on opening.
+ * <p>
+ * Records of removed or replaced tiles remain in their segment as garbage. When the garbage of
+ * a segment no longer written to exceeds <code>COMPACTION_GARBAGE_PERC</code> percent, the
+ * records still used are copied to the end of the store in the background and the segment is
+ * deleted.
+ * <p>
+ * The store is thread-safe. Any number of threads may read concurrently.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class PackedTileStore {
+
+	/**
+	 * The maximum size of a segment-file in bytes if not set otherwise.
+	 */
+	public static final long SEGMENT_SIZE = 64L * 1024 * 1024;
+
+	/**
+	 * The percentage of garbage in a segment at which it is compacted.
+	 */
+	public static final int COMPACTION_GARBAGE_PERC = 50;
+
+	/**
+	 * Visits the tiles in a store (see <code>forEach()</code>).
+	 * @author Matthias Fisch
+	 *
+	 */
+	public interface Visitor {
+
+		/**
+		 * Called for each tile stored.
+		 * @param style The label of the style of the tile.
+		 * @param zoom The zoom-level of the tile.
+		 * @param x The x-coordinate of the tile.
+		 * @param y The y-coordinate of the tile.
+		 * @param length The size of the data of the tile in bytes.
+		 */
+		public void visit(String style, int zoom, int x, int y, int length);
+	}
+
+	/**
+	 * The first bytes of each record in a segment ("GTL1").
+	 */
+	private static final int RECORD_MAGIC = 0x47544c31;
+
+	/**
+	 * The size of the header of each record: magic, style, zoom, x, y and length.
+	 */
+	private static final int RECORD_HEADER_SIZE = 24;
+
+	/**
+	 * The length in the header of records marking the removal of a tile.
+	 */
+	private static final int REMOVAL_LENGTH = -1;
+
+	/**
+	 * The first bytes of the index-file ("GTIX").
+	 */
+	private static final int INDEX_MAGIC = 0x47544958;
+
+	/**
+	 * The version of the format of the index-file.
+	 */
+	private static final int INDEX_VERSION = 1;
+
+	/**
+	 * The size of the header of the index-file: magic, version, capacity, count,
+	 * removed slots, clean-flag and reserved space.
+	 */
+	private static final int INDEX_HEADER_SIZE = 32;
+
+	/**
+	 * The position of the clean-flag in the header of the index-file.
+	 */
+	private static final int CLEAN_FLAG_POSITION = 20;
+
+	/**
+	 * The size of a slot of the index: style, zoom, x, y, segment, length and offset.
+	 */
+	private static final int SLOT_SIZE = 32;
+
+	/**
+	 * The number of slots of a new index. Must be a power of two.
+	 */
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/**
+	 * The style-id of slots never used.
+	 */
+	private static final int EMPTY_SLOT = 0;
+
+	/**
+	 * The style-id of slots of removed tiles.
+	 */
+	private static final int REMOVED_SLOT = -1;
+
+	/**
+	 * The name of the file listing the labels of the styles stored.
+	 */
+	private static final String STYLES_FILE = "styles.lst";
+
+	/**
+	 * The pattern of the names of segment-files.
+	 */
+	private static final Pattern SEGMENT_PATTERN = Pattern.compile("segment-(\\d+)\\.dat");
+
+	/**
+	 * The pattern of the names of index-files.
+	 */
+	private static final Pattern INDEX_PATTERN = Pattern.compile("index-(\\d+)\\.idx");
+
+	/**
+	 * The charset of the styles-file.
+	 */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * The stores shared by <code>open()</code> mapped by their directory.
+	 */
+	private static Map<File, PackedTileStore> sharedStores = new HashMap<>();
+
+	/**
+	 * The directory containing all files of the store.
+	 */
+	private File directory;
+
+	/**
+	 * The maximum size of a segment-file in bytes.
+	 */
+	private long segmentSize;
+
+	/**
+	 * The labels of the styles stored. The id of a style is its position plus one.
+	 */
+	private List<String> styles = new ArrayList<>();
+
+	/**
+	 * The ids of the styles stored mapped by their label.
+	 */
+	private Map<String, Integer> styleIds = new HashMap<>();
+
+	/**
+	 * The channels of all segment-files mapped by their number.
+	 */
+	private TreeMap<Integer, FileChannel> segments = new TreeMap<>();
+
+	/**
+	 * The bytes of the records of each segment still referenced by the index.
+	 */
+	private Map<Integer, Long> liveBytes = new HashMap<>();
+
+	/**
+	 * The number of the segment appended to.
+	 */
+	private int activeSegment;
+
+	/**
+	 * The size of the segment appended to.
+	 */
+	private long activeSize;
+
+	/**
+	 * The channel of the index-file.
+	 */
+	private FileChannel indexChannel;
+
+	/**
+	 * The memory-mapped index-file.
+	 */
+	private MappedByteBuffer index;
+
+	/**
+	 * The number of the current index-file. Incremented whenever the index is rebuilt or resized.
+	 */
+	private int indexGeneration;
+
+	/**
+	 * The number of slots of the index.
+	 */
+	private int capacity;
+
+	/**
+	 * The number of tiles in the index.
+	 */
+	private int count;
+
+	/**
+	 * The number of slots of removed tiles.
+	 */
+	private int removedSlots;
+
+	/**
+	 * The sum of the sizes of the data of all tiles in bytes.
+	 */
+	private long dataBytes;
+
+	/**
+	 * Flag if the store was closed.
+	 */
+	private boolean closed;
+
+	/**
+	 * Lock guarding all members. Reading tiles only requires the read-lock.
+	 */
+	private ReadWriteLock storeLock = new ReentrantReadWriteLock();
+
+	/**
+	 * Executes the compaction in the background.
+	 */
+	private ExecutorService compactor;
+
+	/**
+	 * Lock allowing only one compaction at a time.
+	 */
+	private Lock compactionLock = new ReentrantLock();
+
+	/**
+	 * Flag if a compaction is scheduled or running. Guarded by <code>storeLock</code>.
+	 */
+	private boolean compactionScheduled;
+
+	/**
+	 * Returns the store in <code>directory</code>, opening it if it is not open yet.
+	 * All callers share the same instance until it is closed.
+	 * @param directory The directory containing the store. Created if not existent.
+	 * @return The store in <code>directory</code>.
+	 * @throws IOException Thrown if the files of the store cannot be read or created.
+	 */
+	public static synchronized PackedTileStore open(File directory) throws IOException {
+		File key = directory.getCanonicalFile();
+		PackedTileStore store = sharedStores.get(key);
+		if(store == null) {
+			store = new PackedTileStore(key, SEGMENT_SIZE);
+			sharedStores.put(key, store);
+		}
+		return store;
+	}
+
+	/**
+	 * Opens a store independent of the shared ones, e.g. for tests.
+	 * Use <code>open()</code> to share the store with others.
+	 * @param directory The directory containing the store. Created if not existent.
+	 * @param segmentSize The maximum size of a segment-file in bytes.
+	 * @throws IOException Thrown if the files of the store cannot be read or created.
+	 */
+	public PackedTileStore(File directory, long segmentSize) throws IOException {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create tile-store at " + directory);
+		}
+
+		loadStyles();
+		openSegments();
+		if(!openIndex()) {
+			rebuildIndex();
+		}
+
+		// Until closed properly the index is not trusted:
+		index.putInt(CLEAN_FLAG_POSITION, 0);
+		index.force();
+
+		countLiveBytes();
+		compactor = new ThreadPoolExecutor(0, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "TileStoreCompactor");
+						thread.setDaemon(true);
+						thread.setPriority(Thread.MIN_PRIORITY);
+						return thread;
+					}
+				});
+	}
+
+	// //////////////////////////////////////////////////////////////////////
+	// // OPENING ////
+	// //////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Reads the labels of the styles stored.
+	 */
+	private void loadStyles() throws IOException {
+		File stylesFile = new File(directory, STYLES_FILE);
+		if(stylesFile.exists()) {
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(stylesFile), UTF8))) {
+				String line;
+				while((line = reader.readLine()) != null) {
+					styles.add(line);
+					styleIds.put(line, styles.size());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Opens all segment-files and creates the first one if there is none.
+	 */
+	private void openSegments() throws IOException {
+		File[] files = directory.listFiles();
+		if(files != null) {
+			for(File file : files) {
+				Matcher matcher = SEGMENT_PATTERN.matcher(file.getName());
+				if(matcher.matches()) {
+					int number = Integer.parseInt(matcher.group(1));
+					segments.put(number, new RandomAccessFile(file, "rw").getChannel());
+				}
+			}
+		}
+		if(segments.isEmpty()) {
+			createSegment(1);
+		}
+		activeSegment = segments.lastKey();
+		activeSize = segments.get(activeSegment).size();
+	}
+
+	/**
+	 * Creates a new, empty segment and appends to it from now on.
+	 * @param number The number of the segment.
+	 */
+	private void createSegment(int number) throws IOException {
+		File file = new File(directory, "segment-" + number + ".dat");
+		segments.put(number, new RandomAccessFile(file, "rw").getChannel());
+		activeSegment = number;
+		activeSize = 0;
+	}
+
+	/**
+	 * Maps the newest index-file and deletes older ones.
+	 * @return <code>true</code> if the index is valid and was closed properly.
+	 * <code>false</code> if it must be rebuilt.
+	 */
+	private boolean openIndex() throws IOException {
+		File newest = null;
+		File[] files = directory.listFiles();
+		if(files != null) {
+			for(File file : files) {
+				Matcher matcher = INDEX_PATTERN.matcher(file.getName());
+				if(matcher.matches()) {
+					int generation = Integer.parseInt(matcher.group(1));
+					if(newest == null || generation > indexGeneration) {
+						if(newest != null) {
+							newest.delete();
+						}
+						newest = file;
+						indexGeneration = generation;
+					} else {
+						file.delete();
+					}
+				}
+			}
+		}
+		if(newest == null || newest.length() < INDEX_HEADER_SIZE) {
+			return false;
+		}
+
+		indexChannel = new RandomAccessFile(newest, "rw").getChannel();
+		index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexChannel.size());
+		capacity = index.getInt(8);
+		count = index.getInt(12);
+		removedSlots = index.getInt(16);
+		boolean valid = index.getInt(0) == INDEX_MAGIC && index.getInt(4) == INDEX_VERSION
+				&& Integer.bitCount(capacity) == 1
+				&& indexChannel.size() == INDEX_HEADER_SIZE + (long) capacity * SLOT_SIZE;
+		if(!valid || index.getInt(CLEAN_FLAG_POSITION) != 1) {
+			Logger.getInstance().warning("Tile-store at " + directory + " was not closed properly. Rebuilding index.");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Creates a new, empty index-file of the next generation and maps it.
+	 * The previous index-file is deleted.
+	 * @param newCapacity The number of slots of the new index.
+	 */
+	private void createIndex(int newCapacity) throws IOException {
+		File oldFile = new File(directory, "index-" + indexGeneration + ".idx");
+		FileChannel oldChannel = indexChannel;
+
+		indexGeneration++;
+		File file = new File(directory, "index-" + indexGeneration + ".idx");
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(0);
+		raf.setLength(INDEX_HEADER_SIZE + (long) newCapacity * SLOT_SIZE);
+		indexChannel = raf.getChannel();
+		index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexChannel.size());
+		index.putInt(0, INDEX_MAGIC);
+		index.putInt(4, INDEX_VERSION);
+		index.putInt(8, newCapacity);
+		capacity = newCapacity;
+		count = 0;
+		removedSlots = 0;
+		writeCounters();
+
+		if(oldChannel != null) {
+			oldChannel.close();
+		}
+		// The old file may still be mapped on some platforms:
+		if(oldFile.exists() && !oldFile.delete()) {
+			oldFile.deleteOnExit();
+		}
+	}
+
+	/**
+	 * Rebuilds the index by reading all records of all segments. Incomplete records
+	 * at the end of a segment, e.g. after a crash while writing, are cut off.
+	 */
+	private void rebuildIndex() throws IOException {
+		createIndex(INITIAL_CAPACITY);
+		ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+
+		for(Map.Entry<Integer, FileChannel> segment : segments.entrySet()) {
+			FileChannel channel = segment.getValue();
+			long size = channel.size();
+			long position = 0;
+			while(position + RECORD_HEADER_SIZE <= size) {
+				header.clear();
+				readFully(channel, header, position);
+				header.flip();
+				int magic = header.getInt();
+				int styleId = header.getInt();
+				int zoom = header.getInt();
+				int x = header.getInt();
+				int y = header.getInt();
+				int length = header.getInt();
+
+				boolean complete = magic == RECORD_MAGIC && styleId > 0 && styleId <= styles.size()
+						&& (length == REMOVAL_LENGTH || (length >= 0 && position + RECORD_HEADER_SIZE + length <= size));
+				if(!complete) {
+					break;
+				}
+
+				if(length == REMOVAL_LENGTH) {
+					int slot = findSlot(styleId, zoom, x, y);
+					if(slot != -1) {
+						markRemoved(slot);
+					}
+					position += RECORD_HEADER_SIZE;
+				} else {
+					putSlot(styleId, zoom, x, y, segment.getKey(), position, length);
+					position += RECORD_HEADER_SIZE + length;
+				}
+			}
+
+			if(position < size) {
+				Logger.getInstance().warning("Cutting off " + (size - position) + " damaged bytes of tile-segment " + segment.getKey());
+				channel.truncate(position);
+			}
+		}
+		activeSize = segments.get(activeSegment).size();
+	}
+
+	/**
+	 * Sums up the bytes of the records referenced by the index per segment.
+	 */
+	private void countLiveBytes() {
+		liveBytes.clear();
+		dataBytes = 0;
+		for(int slot = 0; slot < capacity; slot++) {
+			if(getSlotStyle(slot) > 0) {
+				int length = getSlotLength(slot);
+				addLiveBytes(getSlotSegment(slot), RECORD_HEADER_SIZE + length);
+				dataBytes += length;
+			}
+		}
+	}
+
+	// //////////////////////////////////////////////////////////////////////
+	// // ACCESS ////
+	// //////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Checks whether a tile is stored. This only looks up the index.
+	 * @param style The label of the style of the tile.
+	 * @param zoom The zoom-level of the tile.
+	 * @param x The x-coordinate of the tile.
+	 * @param y The y-coordinate of the tile.
+	 * @return <code>true</code> if the tile is stored.
+	 */
+	public boolean contains(String style, int zoom, int x, int y) {
+		return getLength(style, zoom, x, y) != -1;
+	}
+
+	/**
+	 * Returns the size of the data of a tile. This only looks up the index.
+	 * @param style The label of the style of the tile.
+	 * @param zoom The zoom-level of the tile.
+	 * @param x The x-coordinate of the tile.
+	 * @param y The y-coordinate of the tile.
+	 * @return The size of the data in bytes or <code>-1</code> if the tile is not stored.
+	 */
+	public int getLength(String style, int zoom, int x, int y) {
+		storeLock.readLock().lock();
+		try {
+			Integer styleId = styleIds.get(style);
+			if(closed || styleId == null) {
+				return -1;
+			}
+			int slot = findSlot(styleId, zoom, x, y);
+			return slot != -1 ? getSlotLength(slot) : -1;
+		} finally {
+			storeLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Reads the data of a tile.
+	 * @param style The label of the style of the tile.
+	 * @param zoom The zoom-level of the tile.
+	 * @param x The x-coordinate of the tile.
+	 * @param y The y-coordinate of the tile.
+	 * @return The data of the tile or <code>null</code> if the tile is not stored.
+	 * @throws IOException Thrown if the data cannot be read or is damaged.
+	 */
+	public byte[] read(String style, int zoom, int x, int y) throws IOException {
+		storeLock.readLock().lock();
+		try {
+			Integer styleId = styleIds.get(style);
+			if(closed || styleId == null) {
+				return null;
+			}
+			int slot = findSlot(styleId, zoom, x, y);
+			if(slot == -1) {
+				return null;
+			}
+
+			FileChannel channel = segments.get(getSlotSegment(slot));
+			int length = getSlotLength(slot);
+			ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+			readFully(channel, record, getSlotOffset(slot));
+			record.flip();
+
+			// The record must belong to the tile:
+			if(record.getInt() != RECORD_MAGIC || record.getInt() != styleId || record.getInt() != zoom
+					|| record.getInt() != x || record.getInt() != y || record.getInt() != length) {
+				throw new IOException("Damaged record of tile " + style + "/" + zoom + "/" + x + "/" + y);
+			}
+			byte[] data = new byte[length];
+			record.get(data);
+			return data;
+
+		} finally {
+			storeLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Stores the data of a tile, replacing the data stored before.
+	 * @param style The label of the style of the tile.
+	 * @param zoom The zoom-level of the tile.
+	 * @param x The x-coordinate of the tile.
+	 * @param y The y-coordinate of the tile.
+	 * @param data The data of the tile, e.g. its image-file.
+	 * @return The size of the data replaced or <code>-1</code> if the tile was not stored before.
+	 * @throws IOException Thrown if the data cannot be written.
+	 */
+	public int write(String style, int zoom, int x, int y, byte[] data) throws IOException {
+		storeLock.writeLock().lock();
+		try {
+			checkOpen();
+			int styleId = getOrCreateStyleId(style);
+
+			ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + data.length);
+			record.putInt(RECORD_MAGIC).putInt(styleId).putInt(zoom).putInt(x).putInt(y).putInt(data.length);
+			record.put(data);
+			record.flip();
+			long offset = append(record);
+
+			int replaced = -1;
+			int slot = findSlot(styleId, zoom, x, y);
+			if(slot != -1) {
+				replaced = getSlotLength(slot);
+				addLiveBytes(getSlotSegment(slot), -(RECORD_HEADER_SIZE + replaced));
+				dataBytes -= replaced;
+			}
+			putSlot(styleId, zoom, x, y, activeSegment, offset, data.length);
+			addLiveBytes(activeSegment, RECORD_HEADER_SIZE + data.length);
+			dataBytes += data.length;
+
+			scheduleCompactionIfNeeded();
+			return replaced;
+
+		} finally {
+			storeLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes a tile. Its data remains in the store until its segment is compacted.
+	 * @param style The label of the style of the tile.
+	 * @param zoom The zoom-level of the tile.
+	 * @param x The x-coordinate of the tile.
+	 * @param y The y-coordinate of the tile.
+	 * @return The size of the data of the tile removed or <code>-1</code> if it was not stored.
+	 * @throws IOException Thrown if the removal cannot be recorded.
+	 */
+	public int remove(String style, int zoom, int x, int y) throws IOException {
+		storeLock.writeLock().lock();
+		try {
+			Integer styleId = styleIds.get(style);
+			if(closed || styleId == null) {
+				return -1;
+			}
+			int slot = findSlot(styleId, zoom, x, y);
+			if(slot == -1) {
+				return -1;
+			}
+
+			// Record the removal, so that it survives rebuilding the index:
+			ByteBuffer marker = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+			marker.putInt(RECORD_MAGIC).putInt(styleId).putInt(zoom).putInt(x).putInt(y).putInt(REMOVAL_LENGTH);
+			marker.flip();
+			append(marker);
+
+			int length = getSlotLength(slot);
+			addLiveBytes(getSlotSegment(slot), -(RECORD_HEADER_SIZE + length));
+			dataBytes -= length;
+			markRemoved(slot);
+
+			scheduleCompactionIfNeeded();
+			return length;
+
+		} finally {
+			storeLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Calls <code>visitor</code> for each tile stored. The store must not be modified by the visitor.
+	 * @param visitor The visitor to call.
+	 */
+	public void forEach(Visitor visitor) {
+		storeLock.readLock().lock();
+		try {
+			if(closed) {
+				return;
+			}
+			for(int slot = 0; slot < capacity; slot++) {
+				int styleId = getSlotStyle(slot);
+				if(styleId > 0) {
+					int base = slotBase(slot);
+					visitor.visit(styles.get(styleId - 1), index.getInt(base + 4), index.getInt(base + 8),
+							index.getInt(base + 12), getSlotLength(slot));
+				}
+			}
+		} finally {
+			storeLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes all tiles and deletes the segment-files.
+	 * @throws IOException Thrown if the store cannot be reset.
+	 */
+	public void clear() throws IOException {
+		storeLock.writeLock().lock();
+		try {
+			checkOpen();
+			for(Map.Entry<Integer, FileChannel> segment : segments.entrySet()) {
+				segment.getValue().close();
+				new File(directory, "segment-" + segment.getKey() + ".dat").delete();
+			}
+			segments.clear();
+			liveBytes.clear();
+			dataBytes = 0;
+			createSegment(activeSegment + 1);
+			createIndex(INITIAL_CAPACITY);
+			index.putInt(CLEAN_FLAG_POSITION, 0);
+
+		} finally {
+			storeLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Writes all data to disk.
+	 * @throws IOException Thrown if the data cannot be written.
+	 */
+	public void flush() throws IOException {
+		storeLock.writeLock().lock();
+		try {
+			if(!closed) {
+				writeCounters();
+				segments.get(activeSegment).force(false);
+				index.force();
+			}
+		} finally {
+			storeLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Writes all data to disk and closes the store. The index will be trusted on the
+	 * next opening. A running compaction is finished before.
+	 * @throws IOException Thrown if the data cannot be written.
+	 */
+	public void close() throws IOException {
+		compactor.shutdown();
+		try {
+			compactor.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		storeLock.writeLock().lock();
+		try {
+			if(closed) {
+				return;
+			}
+			closed = true;
+			for(FileChannel channel : segments.values()) {
+				channel.force(false);
+				channel.close();
+			}
+			writeCounters();
+			index.putInt(CLEAN_FLAG_POSITION, 1);
+			index.force();
+			indexChannel.close();
+
+		} finally {
+			storeLock.writeLock().unlock();
+		}
+
+		synchronized (PackedTileStore.class) {
+			if(sharedStores.get(directory) == this) {
+				sharedStores.remove(directory);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of tiles stored.
+	 * @return The number of tiles stored.
+	 */
+	public int getTileCount() {
+		storeLock.readLock().lock();
+		try {
+			return count;
+		} finally {
+			storeLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the sum of the sizes of the data of all tiles stored.
+	 * @return The size of all data stored in bytes, without headers and garbage.
+	 */
+	public long getDataBytes() {
+		storeLock.readLock().lock();
+		try {
+			return dataBytes;
+		} finally {
+			storeLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the size of all segment-files.
+	 * @return The size of all segments in bytes, including garbage.
+	 */
+	public long getSegmentBytes() {
+		storeLock.readLock().lock();
+		try {
+			long size = 0;
+			for(FileChannel channel : segments.values()) {
+				size += channel.size();
+			}
+			return size;
+		} catch (IOException e) {
+			return 0;
+		} finally {
+			storeLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of segment-files.
+	 * @return The number of segments.
+	 */
+	public int getSegmentCount() {
+		storeLock.readLock().lock();
+		try {
+			return segments.size();
+		} finally {
+			storeLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the directory containing the files of the store.
+	 * @return The directory of the store.
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	// //////////////////////////////////////////////////////////////////////
+	// // COMPACTION ////
+	// //////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Compacts all segments not written to anymore whose garbage exceeds
+	 * <code>COMPACTION_GARBAGE_PERC</code>. Readers and writers are only blocked
+	 * while a single record is moved.
+	 * @throws IOException Thrown if a record cannot be moved.
+	 */
+	public void compact() throws IOException {
+		compactionLock.lock();
+		try {
+			Integer segment;
+			while((segment = nextCompactionCandidate()) != null) {
+				compactSegment(segment);
+			}
+		} finally {
+			compactionLock.unlock();
+		}
+	}
+
+	/**
+	 * Compacts the segments not written to anymore, the ones with the most garbage first,
+	 * until the size of all segments is at most <code>targetBytes</code>. Unlike
+	 * <code>compact()</code>, segments with less garbage than <code>COMPACTION_GARBAGE_PERC</code>
+	 * are compacted too, so that the store can be shrunk to a quota.
+	 * @param targetBytes The size of all segments to reach in bytes.
+	 * @return The number of bytes freed.
+	 * @throws IOException Thrown if a record cannot be moved.
+	 */
+	public long compactTo(long targetBytes) throws IOException {
+		compactionLock.lock();
+		try {
+			long sizeBefore = getSegmentBytes();
+			Set<Integer> compacted = new HashSet<>();
+			Integer segment;
+			while(getSegmentBytes() > targetBytes && (segment = nextGarbageSegment(compacted)) != null) {
+				// Each segment only once, even if it is still in use afterwards:
+				compacted.add(segment);
+				compactSegment(segment);
+			}
+			return Math.max(0, sizeBefore - getSegmentBytes());
+		} finally {
+			compactionLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the segment not written to anymore with the most garbage.
+	 * @param excluded The segments not to return.
+	 * @return The number of the segment or <code>null</code> if no segment has garbage.
+	 */
+	private Integer nextGarbageSegment(Set<Integer> excluded) throws IOException {
+		storeLock.readLock().lock();
+		try {
+			if(closed) {
+				return null;
+			}
+			Integer result = null;
+			long maximumGarbage = 0;
+			for(Map.Entry<Integer, FileChannel> segment : segments.entrySet()) {
+				if(segment.getKey() == activeSegment || excluded.contains(segment.getKey())) {
+					continue;
+				}
+				Long live = liveBytes.get(segment.getKey());
+				long garbage = segment.getValue().size() - (live != null ? live : 0);
+				if(garbage > maximumGarbage) {
+					result = segment.getKey();
+					maximumGarbage = garbage;
+				}
+			}
+			return result;
+		} finally {
+			storeLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns a segment to compact.
+	 * @return The number of the segment or <code>null</code> if none must be compacted.
+	 */
+	private Integer nextCompactionCandidate() throws IOException {
+		storeLock.readLock().lock();
+		try {
+			if(closed) {
+				return null;
+			}
+			for(Map.Entry<Integer, FileChannel> segment : segments.entrySet()) {
+				if(segment.getKey() != activeSegment && isGarbage(segment.getKey(), segment.getValue().size())) {
+					return segment.getKey();
+				}
+			}
+			return null;
+		} finally {
+			storeLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Checks whether the garbage of a segment exceeds <code>COMPACTION_GARBAGE_PERC</code>.
+	 * The caller must hold a lock.
+	 */
+	private boolean isGarbage(int segment, long size) {
+		Long live = liveBytes.get(segment);
+		long garbage = size - (live != null ? live : 0);
+		return size > 0 && garbage * 100 >= size * COMPACTION_GARBAGE_PERC;
+	}
+
+	/**
+	 * Schedules the compaction in the background if a segment has too much garbage.
+	 * The caller must hold the write-lock.
+	 */
+	private void scheduleCompactionIfNeeded() throws IOException {
+		if(compactionScheduled) {
+			return;
+		}
+		for(Map.Entry<Integer, FileChannel> segment : segments.entrySet()) {
+			if(segment.getKey() != activeSegment && isGarbage(segment.getKey(), segment.getValue().size())) {
+				if(compactor.isShutdown()) {
+					return;
+				}
+				compactionScheduled = true;
+				compactor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							compact();
+						} catch (IOException e) {
+							Logger.getInstance().error("Cannot compact tile-store: " + e.getMessage());
+						} finally {
+							storeLock.writeLock().lock();
+							compactionScheduled = false;
+							storeLock.writeLock().unlock();
+						}
+					}
+				});
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Moves the records of a segment still referenced to the active segment and deletes it.
+	 * The segment is not written to anymore, so it can be read without holding the lock.
+	 */
+	private void compactSegment(int segment) throws IOException {
+		FileChannel channel;
+		storeLock.readLock().lock();
+		try {
+			channel = segments.get(segment);
+		} finally {
+			storeLock.readLock().unlock();
+		}
+		if(channel == null) {
+			return;
+		}
+
+		try {
+			if(!moveLiveRecords(segment, channel)) {
+				return;
+			}
+		} catch (ClosedChannelException e) {
+			// The store was cleared or closed meanwhile.
+			return;
+		}
+
+		storeLock.writeLock().lock();
+		try {
+			if(closed || !segments.containsKey(segment)) {
+				return;
+			}
+			Long live = liveBytes.get(segment);
+			if(live != null && live > 0) {
+				Logger.getInstance().warning("Tile-segment " + segment + " still in use after compaction.");
+				return;
+			}
+			// The moved records must be on disk before their old copies are gone:
+			segments.get(activeSegment).force(false);
+			writeCounters();
+			index.force();
+
+			segments.remove(segment).close();
+			liveBytes.remove(segment);
+			new File(directory, "segment-" + segment + ".dat").delete();
+
+		} finally {
+			storeLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Copies the records of a segment still referenced to the active segment.
+	 * @return <code>false</code> if the store was cleared or closed meanwhile.
+	 */
+	private boolean moveLiveRecords(int segment, FileChannel channel) throws IOException {
+		long size = channel.size();
+		long position = 0;
+		ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+		while(position + RECORD_HEADER_SIZE <= size) {
+			header.clear();
+			readFully(channel, header, position);
+			header.flip();
+			if(header.getInt() != RECORD_MAGIC) {
+				break;
+			}
+			int styleId = header.getInt();
+			int zoom = header.getInt();
+			int x = header.getInt();
+			int y = header.getInt();
+			int length = header.getInt();
+
+			if(length == REMOVAL_LENGTH) {
+				// The marker is still needed while older segments may contain the tile:
+				storeLock.writeLock().lock();
+				try {
+					if(closed || !segments.containsKey(segment)) {
+						return false;
+					}
+					if(segments.firstKey() < segment && findSlot(styleId, zoom, x, y) == -1) {
+						header.rewind();
+						append(header);
+					}
+				} finally {
+					storeLock.writeLock().unlock();
+				}
+				position += RECORD_HEADER_SIZE;
+				continue;
+			}
+
+			ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + length);
+			readFully(channel, record, position);
+			record.flip();
+
+			storeLock.writeLock().lock();
+			try {
+				if(closed || !segments.containsKey(segment)) {
+					return false;
+				}
+				// Only move the record if it is still the current data of its tile:
+				int slot = findSlot(styleId, zoom, x, y);
+				if(slot != -1 && getSlotSegment(slot) == segment && getSlotOffset(slot) == position) {
+					long offset = append(record);
+					addLiveBytes(segment, -(RECORD_HEADER_SIZE + length));
+					writeSlotLocation(slot, activeSegment, offset);
+					addLiveBytes(activeSegment, RECORD_HEADER_SIZE + length);
+				}
+			} finally {
+				storeLock.writeLock().unlock();
+			}
+			position += RECORD_HEADER_SIZE + length;
+		}
+		return true;
+	}
+
+	// //////////////////////////////////////////////////////////////////////
+	// // HELPERS ////
+	// //////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Throws if the store was closed. The caller must hold a lock.
+	 */
+	private void checkOpen() throws IOException {
+		if(closed) {
+			throw new IOException("Tile-store at " + directory + " is closed.");
+		}
+	}
+
+	/**
+	 * Returns the id of a style, adding it to the styles-file if it is new.
+	 * The caller must hold the write-lock.
+	 */
+	private int getOrCreateStyleId(String style) throws IOException {
+		Integer id = styleIds.get(style);
+		if(id == null) {
+			if(style.indexOf('\n') != -1 || style.indexOf('\r') != -1) {
+				throw new IOException("Style-labels must not contain line-breaks.");
+			}
+			try (RandomAccessFile stylesFile = new RandomAccessFile(new File(directory, STYLES_FILE), "rw")) {
+				stylesFile.seek(stylesFile.length());
+				stylesFile.write((style + "\n").getBytes(UTF8));
+				// Records must never refer to a style not on disk:
+				stylesFile.getChannel().force(false);
+			}
+			styles.add(style);
+			id = styles.size();
+			styleIds.put(style, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Appends a record to the active segment, starting a new segment if it is full.
+	 * The caller must hold the write-lock.
+	 * @return The offset of the record in the active segment.
+	 */
+	private long append(ByteBuffer record) throws IOException {
+		if(activeSize > 0 && activeSize + record.remaining() > segmentSize) {
+			createSegment(activeSegment + 1);
+		}
+		FileChannel channel = segments.get(activeSegment);
+		long offset = activeSize;
+		long position = offset;
+		while(record.hasRemaining()) {
+			position += channel.write(record, position);
+		}
+		activeSize = position;
+		return offset;
+	}
+
+	/**
+	 * Reads from a channel until <code>buffer</code> is full.
+	 */
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while(buffer.hasRemaining()) {
+			int read = channel.read(buffer, position);
+			if(read < 0) {
+				throw new IOException("Unexpected end of tile-segment.");
+			}
+			position += read;
+		}
+	}
+
+	/**
+	 * Adds to the bytes referenced in a segment. The caller must hold the write-lock.
+	 */
+	private void addLiveBytes(int segment, long bytes) {
+		Long live = liveBytes.get(segment);
+		liveBytes.put(segment, (live != null ? live : 0) + bytes);
+	}
+
+	/**
+	 * Writes the number of tiles and removed slots to the header of the index.
+	 */
+	private void writeCounters() {
+		index.putInt(12, count);
+		index.putInt(16, removedSlots);
+	}
+
+	/**
+	 * Returns the position of a slot in the index.
+	 */
+	private static int slotBase(int slot) {
+		return INDEX_HEADER_SIZE + slot * SLOT_SIZE;
+	}
+
+	/**
+	 * Returns the style-id of a slot.
+	 */
+	private int getSlotStyle(int slot) {
+		return index.getInt(slotBase(slot));
+	}
+
+	/**
+	 * Returns the segment of the data of a slot.
+	 */
+	private int getSlotSegment(int slot) {
+		return index.getInt(slotBase(slot) + 16);
+	}
+
+	/**
+	 * Returns the size of the data of a slot.
+	 */
+	private int getSlotLength(int slot) {
+		return index.getInt(slotBase(slot) + 20);
+	}
+
+	/**
+	 * Returns the offset of the record of a slot in its segment.
+	 */
+	private long getSlotOffset(int slot) {
+		return index.getLong(slotBase(slot) + 24);
+	}
+
+	/**
+	 * Sets the location of the record of a slot.
+	 */
+	private void writeSlotLocation(int slot, int segment, long offset) {
+		int base = slotBase(slot);
+		index.putInt(base + 16, segment);
+		index.putLong(base + 24, offset);
+	}
+
+	/**
+	 * Marks a slot as removed.
+	 */
+	private void markRemoved(int slot) {
+		index.putInt(slotBase(slot), REMOVED_SLOT);
+		count--;
+		removedSlots++;
+		writeCounters();
+	}
+
+	/**
+	 * Returns the first slot to probe for a tile.
+	 */
+	private int hash(int styleId, int zoom, int x, int y) {
+		int h = styleId;
+		h = h * 31 + zoom;
+		h = h * 0x9e3779b9 + x;
+		h = h * 0x9e3779b9 + y;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		return h & (capacity - 1);
+	}
+
+	/**
+	 * Returns the slot of a tile. The caller must hold a lock.
+	 * @return The slot of the tile or <code>-1</code> if it is not in the index.
+	 */
+	private int findSlot(int styleId, int zoom, int x, int y) {
+		int slot = hash(styleId, zoom, x, y);
+		for(int probes = 0; probes < capacity; probes++) {
+			int base = slotBase(slot);
+			int current = index.getInt(base);
+			if(current == EMPTY_SLOT) {
+				return -1;
+			}
+			if(current == styleId && index.getInt(base + 4) == zoom && index.getInt(base + 8) == x
+					&& index.getInt(base + 12) == y) {
+				return slot;
+			}
+			slot = (slot + 1) & (capacity - 1);
+		}
+		return -1;
+	}
+
+	/**
+	 * Sets the location of a tile in the index, adding it if it is not contained yet.
+	 * The index is resized if it becomes too full. The caller must hold the write-lock.
+	 */
+	private void putSlot(int styleId, int zoom, int x, int y, int segment, long offset, int length) throws IOException {
+		int slot = findSlot(styleId, zoom, x, y);
+		if(slot == -1) {
+			// Keep probe-sequences short:
+			if((long) (count + removedSlots + 1) * 10 > (long) capacity * 7) {
+				resizeIndex();
+			}
+			slot = hash(styleId, zoom, x, y);
+			while(getSlotStyle(slot) > 0) {
+				slot = (slot + 1) & (capacity - 1);
+			}
+			if(getSlotStyle(slot) == REMOVED_SLOT) {
+				removedSlots--;
+			}
+			count++;
+			int base = slotBase(slot);
+			index.putInt(base, styleId);
+			index.putInt(base + 4, zoom);
+			index.putInt(base + 8, x);
+			index.putInt(base + 12, y);
+			writeCounters();
+		}
+		index.putInt(slotBase(slot) + 20, length);
+		writeSlotLocation(slot, segment, offset);
+	}
+
+	/**
+	 * Copies all tiles to a new index-file, dropping removed slots. The capacity is
+	 * doubled until the index is at most half full.
+	 */
+	private void resizeIndex() throws IOException {
+		int newCapacity = capacity;
+		while((long) (count + 1) * 2 > newCapacity) {
+			newCapacity *= 2;
+		}
+
+		// Read all tiles of the old index:
+		int[] keys = new int[count * 6];
+		long[] offsets = new long[count];
+		int tiles = 0;
+		for(int slot = 0; slot < capacity; slot++) {
+			int base = slotBase(slot);
+			if(index.getInt(base) > 0) {
+				for(int i = 0; i < 6; i++) {
+					keys[tiles * 6 + i] = index.getInt(base + 4 * i);
+				}
+				offsets[tiles] = index.getLong(base + 24);
+				tiles++;
+			}
+		}
+
+		createIndex(newCapacity);
+		index.putInt(CLEAN_FLAG_POSITION, 0);
+		for(int i = 0; i < tiles; i++) {
+			int k = i * 6;
+			putSlot(keys[k], keys[k + 1], keys[k + 2], keys[k + 3], keys[k + 4], offsets[i], keys[k + 5]);
+		}
+	}
+}
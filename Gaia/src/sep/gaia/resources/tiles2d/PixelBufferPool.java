@@ -0,0 +1,214 @@
+package sep.gaia.resources.tiles2d;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import sep.gaia.environment.Environment;
+import sep.gaia.environment.Environment.EnvVariable;
+import sep.gaia.util.Logger;
+
+/**
+ * Pool of direct buffers holding the decoded pixels of a tile each.
+ * <p>
+ * Buffers are cut from slabs of <code>BUFFERS_PER_SLAB</code> buffers, which are allocated
+ * outside the heap when no free buffer is left. Buffers released are reused by later
+ * decodes, so that decoding tiles does not create garbage once enough slabs are allocated.
+ * Slabs are never freed. If the maximum size of the pool is reached, <code>acquire()</code>
+ * fails and the caller has to allocate the pixels by itself.
+ * <p>
+ * The pool is thread-safe.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class PixelBufferPool {
+
+	/**
+	 * The size of a buffer in bytes, fitting a tile of 256x256 RGBA-pixels.
+	 */
+	public static final int BUFFER_SIZE = 256 * 256 * 4;
+
+	/**
+	 * The number of buffers allocated at once.
+	 */
+	public static final int BUFFERS_PER_SLAB = 16;
+
+	/**
+	 * The one instance of the class shared by all decoders.
+	 */
+	private static PixelBufferPool instance;
+
+	/**
+	 * The buffers not in use.
+	 */
+	private Deque<ByteBuffer> freeBuffers = new ArrayDeque<>();
+
+	/**
+	 * The number of slabs allocated.
+	 */
+	private int slabCount;
+
+	/**
+	 * The maximum number of slabs to allocate.
+	 */
+	private int maximumSlabCount;
+
+	/**
+	 * Lock guarding <code>freeBuffers</code> and <code>slabCount</code>.
+	 */
+	private Lock poolLock = new ReentrantLock();
+
+	/**
+	 * Number of buffers handed out.
+	 */
+	private AtomicLong acquireCount = new AtomicLong();
+
+	/**
+	 * Number of requests failing because the maximum size was reached.
+	 */
+	private AtomicLong exhaustedCount = new AtomicLong();
+
+	/**
+	 * Initializes an empty pool, e.g. for tests. Use <code>getInstance()</code> to share
+	 * the buffers across the application.
+	 * @param maximumSize The maximum size of all buffers in bytes. At least one slab is allocated.
+	 */
+	public PixelBufferPool(long maximumSize) {
+		long slabSize = (long) BUFFER_SIZE * BUFFERS_PER_SLAB;
+		maximumSlabCount = (int) Math.min(Integer.MAX_VALUE, Math.max(1, maximumSize / slabSize));
+	}
+
+	/**
+	 * Returns the one instance of the class with the size set by
+	 * <code>EnvVariable.TILE_PIXEL_POOL_SIZE</code>.
+	 * @return The one instance of the class.
+	 */
+	public static synchronized PixelBufferPool getInstance() {
+		if(instance == null) {
+			String size = Environment.getInstance().getString(EnvVariable.TILE_PIXEL_POOL_SIZE);
+			try {
+				instance = new PixelBufferPool(Long.parseLong(size));
+
+			} catch (NumberFormatException e) {
+				Logger.getInstance().warning("Invalid size of the pixel-pool " + size + ", using 128 MiB.");
+				instance = new PixelBufferPool(128L * 1024 * 1024);
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Hands out a buffer of <code>BUFFER_SIZE</code> bytes. Its content is undefined.
+	 * @return The buffer with position zero and limit <code>BUFFER_SIZE</code> or
+	 * <code>null</code> if the maximum size of the pool is reached.
+	 */
+	public ByteBuffer acquire() {
+		ByteBuffer buffer;
+		poolLock.lock();
+		try {
+			if(freeBuffers.isEmpty() && slabCount < maximumSlabCount) {
+				allocateSlab();
+			}
+			buffer = freeBuffers.pollFirst();
+
+		} finally {
+			poolLock.unlock();
+		}
+
+		if(buffer != null) {
+			acquireCount.incrementAndGet();
+			buffer.clear();
+		} else {
+			exhaustedCount.incrementAndGet();
+		}
+		return buffer;
+	}
+
+	/**
+	 * Cuts a new slab into buffers. The caller must hold <code>poolLock</code>.
+	 */
+	private void allocateSlab() {
+		ByteBuffer slab = ByteBuffer.allocateDirect(BUFFER_SIZE * BUFFERS_PER_SLAB);
+		slab.order(ByteOrder.nativeOrder());
+		for(int i = 0; i < BUFFERS_PER_SLAB; i++) {
+			slab.limit((i + 1) * BUFFER_SIZE);
+			slab.position(i * BUFFER_SIZE);
+			freeBuffers.addLast(slab.slice().order(ByteOrder.nativeOrder()));
+		}
+		slabCount++;
+	}
+
+	/**
+	 * Returns a buffer handed out by <code>acquire()</code> to the pool. The buffer must
+	 * not be used afterwards and must not be returned twice.
+	 * @param buffer The buffer to return.
+	 */
+	public void release(ByteBuffer buffer) {
+		if(buffer == null || !buffer.isDirect() || buffer.capacity() != BUFFER_SIZE) {
+			return;
+		}
+		poolLock.lock();
+		try {
+			// Reusing the buffer released last keeps it in the CPU-caches:
+			freeBuffers.addFirst(buffer);
+
+		} finally {
+			poolLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of buffers allocated, whether in use or not.
+	 * @return The number of buffers allocated.
+	 */
+	public int getAllocatedCount() {
+		poolLock.lock();
+		try {
+			return slabCount * BUFFERS_PER_SLAB;
+		} finally {
+			poolLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of buffers allocated but not in use.
+	 * @return The number of free buffers.
+	 */
+	public int getFreeCount() {
+		poolLock.lock();
+		try {
+			return freeBuffers.size();
+		} finally {
+			poolLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the maximum number of buffers the pool allocates.
+	 * @return The capacity of the pool in buffers.
+	 */
+	public int getCapacity() {
+		return maximumSlabCount * BUFFERS_PER_SLAB;
+	}
+
+	/**
+	 * Returns the number of buffers handed out.
+	 * @return The number of successful calls of <code>acquire()</code>.
+	 */
+	public long getAcquireCount() {
+		return acquireCount.get();
+	}
+
+	/**
+	 * Returns the number of requests failing because the maximum size was reached.
+	 * @return The number of failed calls of <code>acquire()</code>.
+	 */
+	public long getExhaustedCount() {
+		return exhaustedCount.get();
+	}
+}
@@ -0,0 +1,255 @@
+package sep.gaia.resources.tiles2d;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.media.opengl.GL;
+import javax.media.opengl.GLProfile;
+
+import com.jogamp.opengl.util.texture.TextureData;
+
+/**
+ * Texture-data of RGBA-pixels held in a buffer of a <code>PixelBufferPool</code>.
+ * <p>
+ * Several instances may share the same pixels, each created by <code>share()</code>.
+ * Every instance is a reference to the pixels, which must be given up by <code>release()</code>
+ * when the instance is not needed any more, e.g. after the texture was created from it.
+ * The buffer returns to the pool when the last reference is released. References that
+ * are not released are given up when the instance is garbage-collected, so that buffers
+ * are not lost by instances dropped, e.g. of cancelled queries.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class PooledTextureData extends TextureData {
+
+	/**
+	 * The pixels shared by all instances created from the same buffer.
+	 *
+	 * @author Matthias Fisch
+	 *
+	 */
+	private static class Pixels {
+
+		/**
+		 * The buffer handed out by <code>pool</code>.
+		 */
+		private final ByteBuffer buffer;
+
+		/**
+		 * The pool to return the buffer to.
+		 */
+		private final PixelBufferPool pool;
+
+		/**
+		 * The number of references not released yet.
+		 */
+		private final AtomicInteger referenceCount = new AtomicInteger(1);
+
+		/**
+		 * Initializes the pixels with one reference.
+		 * @param buffer The buffer handed out by <code>pool</code>.
+		 * @param pool The pool to return the buffer to.
+		 */
+		public Pixels(ByteBuffer buffer, PixelBufferPool pool) {
+			this.buffer = buffer;
+			this.pool = pool;
+		}
+
+		/**
+		 * Adds a reference unless the buffer has already been returned.
+		 * @return <code>true</code> if the reference was added.
+		 */
+		public boolean retain() {
+			while(true) {
+				int count = referenceCount.get();
+				if(count <= 0) {
+					return false;
+				}
+				if(referenceCount.compareAndSet(count, count + 1)) {
+					return true;
+				}
+			}
+		}
+
+		/**
+		 * Gives up a reference and returns the buffer to the pool if it was the last one.
+		 */
+		public void release() {
+			if(referenceCount.decrementAndGet() == 0) {
+				pool.release(buffer);
+			}
+		}
+	}
+
+	/**
+	 * A reference to pixels, released when its instance is garbage-collected.
+	 *
+	 * @author Matthias Fisch
+	 *
+	 */
+	private static class Lease extends PhantomReference<PooledTextureData> {
+
+		/**
+		 * The pixels referred to.
+		 */
+		private final Pixels pixels;
+
+		/**
+		 * Flag if the reference was given up.
+		 */
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		/**
+		 * Initializes the reference of <code>data</code> to <code>pixels</code>.
+		 * @param data The instance referring to the pixels.
+		 * @param pixels The pixels referred to.
+		 */
+		public Lease(PooledTextureData data, Pixels pixels) {
+			super(data, abandoned);
+			this.pixels = pixels;
+		}
+
+		/**
+		 * Gives up the reference if not done yet.
+		 * @return <code>true</code> if the reference was given up by this call.
+		 */
+		public boolean release() {
+			if(released.compareAndSet(false, true)) {
+				leases.remove(this);
+				pixels.release();
+				return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * The leases of instances garbage-collected without being released.
+	 */
+	private static ReferenceQueue<PooledTextureData> abandoned = new ReferenceQueue<>();
+
+	/**
+	 * All leases not released, so that they are not garbage-collected before their instance.
+	 */
+	private static Set<Lease> leases = Collections.newSetFromMap(new ConcurrentHashMap<Lease, Boolean>());
+
+	/**
+	 * Number of references given up by garbage-collection instead of <code>release()</code>.
+	 */
+	private static AtomicLong reclaimedCount = new AtomicLong();
+
+	/**
+	 * The reference of this instance to its pixels.
+	 */
+	private Lease lease;
+
+	/**
+	 * Initializes the texture-data holding a reference to <code>pixels</code>.
+	 * @param profile The OpenGL-profile to use for the texture.
+	 * @param width The width of the image in pixels.
+	 * @param height The height of the image in pixels.
+	 * @param pixels The pixels referred to. A reference must already be added.
+	 */
+	private PooledTextureData(GLProfile profile, int width, int height, Pixels pixels) {
+		super(profile, GL.GL_RGBA, width, height, 0, GL.GL_RGBA, GL.GL_UNSIGNED_BYTE,
+				false, false, false, view(pixels.buffer, width, height), null);
+		lease = new Lease(this, pixels);
+		leases.add(lease);
+	}
+
+	/**
+	 * Creates a view of the part of <code>buffer</code> holding an image.
+	 */
+	private static ByteBuffer view(ByteBuffer buffer, int width, int height) {
+		ByteBuffer view = buffer.duplicate();
+		view.clear();
+		view.limit(width * height * 4);
+		return view;
+	}
+
+	/**
+	 * Creates texture-data with pixels from <code>pool</code>. The pixels must be filled by
+	 * the caller, beginning with the lowest row, as OpenGL expects them.
+	 * @param profile The OpenGL-profile to use for the texture.
+	 * @param width The width of the image in pixels.
+	 * @param height The height of the image in pixels.
+	 * @param pool The pool to take the buffer from.
+	 * @return The texture-data or <code>null</code> if the image does not fit into a buffer
+	 * of the pool or the pool is exhausted.
+	 */
+	public static PooledTextureData allocate(GLProfile profile, int width, int height, PixelBufferPool pool) {
+		if(width <= 0 || height <= 0 || (long) width * height * 4 > PixelBufferPool.BUFFER_SIZE) {
+			return null;
+		}
+		// Take back the buffers of dropped instances first:
+		reclaimAbandoned();
+
+		ByteBuffer buffer = pool.acquire();
+		if(buffer == null) {
+			return null;
+		}
+		return new PooledTextureData(profile, width, height, new Pixels(buffer, pool));
+	}
+
+	/**
+	 * Gives up the references of all instances garbage-collected without being released.
+	 * @return The number of references given up.
+	 */
+	public static int reclaimAbandoned() {
+		int reclaimed = 0;
+		Lease lease;
+		while((lease = (Lease) abandoned.poll()) != null) {
+			if(lease.release()) {
+				reclaimed++;
+			}
+		}
+		reclaimedCount.addAndGet(reclaimed);
+		return reclaimed;
+	}
+
+	/**
+	 * Returns the number of references given up by garbage-collection instead of <code>release()</code>.
+	 * @return The number of references reclaimed.
+	 */
+	public static long getReclaimedCount() {
+		return reclaimedCount.get();
+	}
+
+	/**
+	 * Creates another reference to the pixels of this instance with a position of its own.
+	 * @return The new reference or <code>null</code> if this instance was already released.
+	 */
+	public PooledTextureData share() {
+		Pixels pixels = lease.pixels;
+		if(lease.released.get() || !pixels.retain()) {
+			return null;
+		}
+		return new PooledTextureData(getGLProfile(), getWidth(), getHeight(), pixels);
+	}
+
+	/**
+	 * Gives up the reference of this instance to its pixels. The texture-data must not
+	 * be used afterwards. Releasing more than once has no effect.
+	 */
+	public void release() {
+		if(lease.release()) {
+			setBuffer(null);
+		}
+	}
+
+	/**
+	 * Checks whether the reference of this instance to its pixels was given up.
+	 * @return <code>true</code> if the instance was released.
+	 */
+	public boolean isReleased() {
+		return lease.released.get();
+	}
+}
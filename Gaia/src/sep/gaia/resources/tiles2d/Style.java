@@ -7,6 +7,8 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.List;
 
+import sep.gaia.resources.CircuitBreaker;
+
 /**
  * <code>TileResource</code> objects gets their content by openstreetmap.org
  * tile servers. There are many different server with different styled tiles. To
@@ -36,6 +38,11 @@ public class Style {
 		 */
 		private int maxConnections;
 
+		/**
+		 * The breaker stopping requests to the subserver while it is down.
+		 */
+		private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
 		/**
 		 * Initializes the subserver.
 		 * @param hostname The hostname of the subserver.
@@ -78,6 +85,14 @@ public class Style {
 		public void setMaxConnections(int maxConnections) {
 			this.maxConnections = maxConnections;
 		}
+
+		/**
+		 * Returns the breaker stopping requests to the subserver while it is down.
+		 * @return The circuit-breaker of the subserver.
+		 */
+		public CircuitBreaker getCircuitBreaker() {
+			return circuitBreaker;
+		}
 	}
 	
 	/**
@@ -168,6 +183,28 @@ public class Style {
 		return subServers;
 	}
 
+	/**
+	 * Selects the subserver to send a request to, routing around subservers that are down.
+	 * The request is let through the circuit-breaker of the subserver returned, so its
+	 * outcome must be recorded there.
+	 * 
+	 * @param preferred
+	 *            The subserver to use if it is healthy or <code>null</code> to start with
+	 *            the first one.
+	 * @return The subserver to use or <code>null</code> if all are down and none is due
+	 *         to be probed.
+	 */
+	public SubServer selectSubServer(SubServer preferred) {
+		int start = preferred != null ? Math.max(0, subServers.indexOf(preferred)) : 0;
+		for (int i = 0; i < subServers.size(); i++) {
+			SubServer subServer = subServers.get((start + i) % subServers.size());
+			if (subServer.getCircuitBreaker().allowRequest()) {
+				return subServer;
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * Returns the <code>label</code> of this <code>Style</code> object.
 	 * 
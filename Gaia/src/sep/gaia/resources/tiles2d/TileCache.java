@@ -6,28 +6,31 @@ package sep.gaia.resources.tiles2d;
 import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
+import java.net.URLDecoder;
+import java.nio.file.Files;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.media.opengl.GLProfile;
 import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 import javax.xml.validation.Validator;
 
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
@@ -36,6 +39,8 @@ import sep.gaia.controller.settings.SliderListener;
 import sep.gaia.environment.Environment;
 import sep.gaia.environment.Environment.EnvVariable;
 import sep.gaia.resources.Cache;
+import sep.gaia.resources.CacheValidators;
+import sep.gaia.resources.eviction.EvictionPolicy;
 import sep.gaia.util.IntegerVector3D;
 import sep.gaia.util.Logger;
 
@@ -52,14 +57,15 @@ import com.jogamp.opengl.util.texture.TextureIO;
  * At this point, the strategy is planed as a mix of LRU (Least recently used)
  * and LFU (Least frequently used).
  * 
- * For each <code>Style</code> a directory will be created. The single
- * <code>TileResource</code> files will be stored accoring to their coordinates.
+ * The image-files of the tiles are packed into a <code>PackedTileStore</code> in
+ * <code>EnvVariable.TILE_STORE_DIR</code>, so that no file has to be created per tile.
+ * The decoded image-data of recently used tiles is additionally kept in memory by a
+ * <code>DecodedTileTier</code>, so that repeated views are not decoded again.
+ * Newly cached tiles are written by a <code>TileWriteQueue</code> on a thread of its own.
  * 
- * For example: <code>TileResource</code> tileA with <code>Style</code> styleB
- * and coordinates x and y and zoom z. The file tree will loke like this:
- * "styleA" |-> "z" -> "x" -> "y.gtr" "y.gtr" is the serialized
- * <code>TileResource</code> object, "gtr" is the file ending and stands for
- * "GAIA Tile Resource".
+ * Earlier versions stored each tile in a file of its own. The path of such a file is:
+ * <i>&lt;CACHE_ROOT_DIR&gt;/&lt;URL-encoded style&gt;/z/x/y.&lt;style image-suffix&gt;</i>.
+ * These files are still read, but moved into the store in the background.
  * 
  * @author Johannes Bauer (specification), Matthias Fisch (implementation)
  */
@@ -68,7 +74,8 @@ public class TileCache extends Cache<TileResource> {
 	/**
 	 * Represents a tile persistantly cached.
 	 * Additionally to the attributes of a common tile-resource (see <code>TileResource</code>)
-	 * instances of this class hold the file where the tile image-information is stored.
+	 * instances of this class hold the file where the tile image-information is stored,
+	 * if it is not in the tile-store.
 	 * @author Matthias Fisch
 	 *
 	 */
@@ -76,14 +83,20 @@ public class TileCache extends Cache<TileResource> {
 		private static final long serialVersionUID = -3505995907161115884L;
 
 		/**
-		 * The file where the tiles image-information is stored.
+		 * The file where the tiles image-information is stored or <code>null</code>
+		 * if it is stored in the tile-store.
 		 */
-		private File file;
+		private volatile File file;
+		
+		/**
+		 * The size of <code>file</code> counted in the size on disk. Guarded by <code>migrationLock</code>.
+		 */
+		private long fileLength;
 		
 		/**
 		 * How often the tile was used yet.
 		 */
-		private int useCount;
+		private AtomicInteger useCount;
 		
 		/**
 		 * Initializes the description for a cached tile.
@@ -91,14 +104,15 @@ public class TileCache extends Cache<TileResource> {
 		 * @param y The y-coordinate of the tile.
 		 * @param zoom The zoom-level of the tile.
 		 * @param useCount How often this resource was used in the past.
-		 * @param file The file where the image-information is stored.
+		 * @param file The file where the image-information is stored or <code>null</code>
+		 * if it is stored in the tile-store.
 		 * @throws IllegalArgumentException Thrown if the x- or y-coordinate is not in
 		 * range [1, 2^<code>zoom</code>]. Also <code>zoom</code> must be in range [0, 18].
 		 */
 		public CachedTile(int x, int y, int zoom, int useCount, File file)
 				throws IllegalArgumentException {
 			super(x, y, zoom);
-			this.useCount = useCount;
+			this.useCount = new AtomicInteger(useCount);
 			this.file = file;
 		}
 		
@@ -115,13 +129,14 @@ public class TileCache extends Cache<TileResource> {
 		public CachedTile(int x, int y, int zoom, int useCount, String filePath)
 				throws IllegalArgumentException {
 			super(x, y, zoom);
-			this.useCount = useCount;
+			this.useCount = new AtomicInteger(useCount);
 			this.file = new File(filePath);
 		}
 
 		/**
 		 * Returns the file where the tiles image-information is stored.
-		 * @return The file where the tiles image-information is stored.
+		 * @return The file where the tiles image-information is stored or <code>null</code>
+		 * if it is stored in the tile-store.
 		 */
 		public File getFile() {
 			return file;
@@ -129,18 +144,35 @@ public class TileCache extends Cache<TileResource> {
 
 		/**
 		 * Sets the file where the tiles image-information is stored.
-		 * @param file The file where the tiles image-information is stored.
+		 * @param file The file where the tiles image-information is stored or <code>null</code>
+		 * if it is stored in the tile-store.
 		 */
 		public void setFile(File file) {
 			this.file = file;
 		}
+
+		/**
+		 * Returns the size of the file counted in the size on disk.
+		 * @return The size in bytes or 0 if the tile is in the tile-store.
+		 */
+		public long getFileLength() {
+			return fileLength;
+		}
+
+		/**
+		 * Sets the size of the file counted in the size on disk.
+		 * @param fileLength The size in bytes or 0 if the tile is in the tile-store.
+		 */
+		public void setFileLength(long fileLength) {
+			this.fileLength = fileLength;
+		}
 		
 		/**
 		 * Returns how often the tile was used yet.
 		 * @return How often the tile was used yet.
 		 */
 		public int getUseCount() {
-			return useCount;
+			return useCount.get();
 		}
 
 		/**
@@ -148,7 +180,14 @@ public class TileCache extends Cache<TileResource> {
 		 * @param useCount How often the tile was used yet.
 		 */
 		public void setUseCount(int useCount) {
-			this.useCount = useCount;
+			this.useCount.set(useCount);
+		}
+
+		/**
+		 * Notes that the tile was used once more. May be called concurrently.
+		 */
+		public void incrementUseCount() {
+			useCount.incrementAndGet();
 		}
 	}
 	
@@ -163,14 +202,107 @@ public class TileCache extends Cache<TileResource> {
 	private GLProfile profile;
 	
 	/**
-	 * Current size of the image-files of all styles in bytes.
+	 * Size of the image-files of tiles not moved into the tile-store yet in bytes.
 	 */
-	private long currentSizeOnDisk;
+	private AtomicLong legacyFileBytes = new AtomicLong();
 	
 	/**
 	 * The maximum size of image-files of all styles in bytes.
 	 */
-	private long maximumSizeOnDisk = SliderListener.getMaximum();
+	private volatile long maximumSizeOnDisk = SliderListener.getMaximum();
+	
+	/**
+	 * The store holding the image-files of the cached tiles. <code>null</code> if it cannot be opened.
+	 */
+	private PackedTileStore store;
+	
+	/**
+	 * Lock guarding the moving of image-files into the store against the removal of their tiles.
+	 */
+	private Lock migrationLock = new ReentrantLock();
+	
+	/**
+	 * The decoded image-data of recently used tiles.
+	 */
+	private DecodedTileTier memoryTier = createConfiguredMemoryTier();
+	
+	/**
+	 * The queue writing the image-files of newly cached tiles to the store.
+	 */
+	private TileWriteQueue writeQueue = new TileWriteQueue(new TileWriteQueue.Writer() {
+		
+		@Override
+		public void write(TileResource tile) {
+			persist(tile);
+		}
+	});
+	
+	/**
+	 * The journal recording the changes of the index. <code>null</code> if it cannot be opened.
+	 */
+	private TileCacheJournal journal;
+	
+	/**
+	 * Flag if a checkpoint of the journal is being written in the background.
+	 */
+	private AtomicBoolean checkpointScheduled = new AtomicBoolean();
+	
+	/**
+	 * The janitor evicting tiles when the size on disk exceeds its maximum.
+	 */
+	private TileCacheJanitor janitor = new TileCacheJanitor(new TileCacheJanitor.Quota() {
+		
+		@Override
+		public long getSizeOnDisk() {
+			return TileCache.this.getSizeOnDisk();
+		}
+		
+		@Override
+		public long getDataSizeOnDisk() {
+			return (store != null ? store.getDataBytes() : 0) + legacyFileBytes.get();
+		}
+		
+		@Override
+		public long compact(long targetSize) {
+			return compactStore(targetSize);
+		}
+		
+		@Override
+		public long getMaximumSizeOnDisk() {
+			return maximumSizeOnDisk;
+		}
+		
+		@Override
+		public long evict(int count) {
+			return evictTiles(count);
+		}
+	}, getConfiguredDeletionRate());
+	
+	/**
+	 * The revalidator asking the servers whether expiring tiles were modified.
+	 */
+	private TileRevalidator revalidator = new TileRevalidator(new TileRevalidator.Tiles() {
+		
+		@Override
+		public boolean isOnline() {
+			return manager != null && manager.isOnline();
+		}
+		
+		@Override
+		public List<TileResource> getExpiringTiles(long time, int count, Collection<String> excluded) {
+			return TileCache.this.getExpiringTiles(time, count, excluded);
+		}
+		
+		@Override
+		public void refresh(TileResource tile, CacheValidators validators) {
+			refreshTile(tile, validators);
+		}
+		
+		@Override
+		public void replace(TileResource tile, byte[] image, CacheValidators validators) {
+			replaceTile(tile, image, validators);
+		}
+	});
 
 	/**
 	 * Initializes the cache with the management-objects for the tiles to cache, as well
@@ -182,9 +314,16 @@ public class TileCache extends Cache<TileResource> {
 	public TileCache(TileManager manager, GLProfile profile) {
 		this.manager = manager;
 		this.profile = profile;
+		setEvictionPolicy(createConfiguredPolicy());
+		openStore();
 		if(!load()) {
 			Logger.getInstance().error("Failed to load cache-index!");
 		}
+		adoptStoredTiles();
+		startMigration();
+		janitor.start();
+		janitor.check();
+		revalidator.start();
 	}
 	
 	/**
@@ -198,9 +337,74 @@ public class TileCache extends Cache<TileResource> {
 		this.maximumSizeOnDisk = maximumSizeOnDisk;
 		this.manager = manager;
 		this.profile = profile;
+		setEvictionPolicy(createConfiguredPolicy());
+		openStore();
 		if(!load()) {
 			Logger.getInstance().error("Failed to load cache-index!");
 		}
+		adoptStoredTiles();
+		startMigration();
+		janitor.start();
+		janitor.check();
+		revalidator.start();
+	}
+	
+	/**
+	 * Opens the tile-store in <code>EnvVariable.TILE_STORE_DIR</code>.
+	 */
+	private void openStore() {
+		String path = Environment.getInstance().getString(EnvVariable.TILE_STORE_DIR);
+		try {
+			store = PackedTileStore.open(new File(path));
+			
+		} catch (IOException e) {
+			Logger.getInstance().error("Cannot open tile-store at " + path + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Creates the eviction-policy set by <code>EnvVariable.TILE_CACHE_EVICTION_POLICY</code>.
+	 * @return The policy configured or W-TinyLFU if the configuration is invalid.
+	 */
+	private static EvictionPolicy createConfiguredPolicy() {
+		String name = Environment.getInstance().getString(EnvVariable.TILE_CACHE_EVICTION_POLICY);
+		try {
+			return EvictionPolicy.Type.valueOf(name).createPolicy();
+			
+		} catch (IllegalArgumentException e) {
+			Logger.getInstance().warning("Unknown eviction-policy " + name + ", using W_TINY_LFU.");
+			return EvictionPolicy.Type.W_TINY_LFU.createPolicy();
+		}
+	}
+
+	/**
+	 * Returns the deletion-rate of the janitor set by <code>EnvVariable.TILE_CACHE_DELETION_RATE</code>.
+	 * @return The maximum number of tiles deleted per second or 500 if the configuration is invalid.
+	 */
+	private static int getConfiguredDeletionRate() {
+		String rate = Environment.getInstance().getString(EnvVariable.TILE_CACHE_DELETION_RATE);
+		try {
+			return Integer.parseInt(rate);
+			
+		} catch (NumberFormatException e) {
+			Logger.getInstance().warning("Invalid deletion-rate of the tile-cache " + rate + ", using 500.");
+			return 500;
+		}
+	}
+
+	/**
+	 * Creates the memory-tier with the budget set by <code>EnvVariable.TILE_MEMORY_CACHE_SIZE</code>.
+	 * @return The memory-tier with the budget configured or a budget of 64 MiB if the configuration is invalid.
+	 */
+	private static DecodedTileTier createConfiguredMemoryTier() {
+		String budget = Environment.getInstance().getString(EnvVariable.TILE_MEMORY_CACHE_SIZE);
+		try {
+			return new DecodedTileTier(Long.parseLong(budget));
+			
+		} catch (NumberFormatException e) {
+			Logger.getInstance().warning("Invalid memory-budget for tiles " + budget + ", using 64 MiB.");
+			return new DecodedTileTier(64L * 1024 * 1024);
+		}
 	}
 
 	@Override
@@ -210,6 +414,8 @@ public class TileCache extends Cache<TileResource> {
 		
 		if(result != null && result instanceof CachedTile) {
 			CachedTile entry = (CachedTile) result;
+			// Count the use, so that it is persisted in the index-file:
+			entry.incrementUseCount();
 			// Create the new tile-resource:
 			IntegerVector3D coords = entry.getCoord();
 			TileResource tile = new TileResource(coords.getX(), coords.getY(), coords.getZ());
@@ -220,14 +426,39 @@ public class TileCache extends Cache<TileResource> {
 			Style style = entry.getStyle();
 			tile.setStyle(style); // Apply the style
 			
-			// Set the tiles image-data:
-			String suffix = style.getImageSuffix();
-			TextureData texData;
-			try {
-				texData = TextureIO.newTextureData(profile, entry.getFile(), false, suffix);
-				
-			} catch (IOException e) {
-				return null;
+			// Repeated views are answered from memory:
+			TextureData texData = memoryTier.get(key);
+			
+			byte[] image = null;
+			if(texData == null) {
+				// The tile may not be written yet:
+				TileResource pending = writeQueue.getPending(key);
+				if(pending != null) {
+					if(pending.getTextureData() != null) {
+						texData = DecodedTileTier.share(pending.getTextureData());
+					}
+					// If the pixels were released meanwhile, the encoded image is decoded:
+					image = pending.getEncodedImage();
+				}
+			}
+			
+			if(texData == null) {
+				// Read and decode the image-file:
+				if(image == null) {
+					image = readImage(entry);
+				}
+				if(image == null) {
+					return null;
+				}
+				String suffix = style.getImageSuffix();
+				try {
+					texData = TileImageDecoder.decode(profile, image, suffix);
+					
+				} catch (IOException e) {
+					return null;
+				}
+				// Promote the tile into memory:
+				memoryTier.put(key, texData);
 			}
 			tile.setTextureData(texData);
 			
@@ -242,151 +473,513 @@ public class TileCache extends Cache<TileResource> {
 	}
 
 	/**
-	 * Adds an tile to the cache and writes its image-data to a file.
+	 * Reads the image-file of a cached tile from the store or from its own file.
+	 * @param entry The tile to read the image-file of.
+	 * @return The content of the image-file or <code>null</code> if it cannot be read.
+	 */
+	private byte[] readImage(CachedTile entry) {
+		File file = entry.getFile();
+		if(file != null) {
+			try {
+				return Files.readAllBytes(file.toPath());
+				
+			} catch (IOException e) {
+				// The file may just have been moved into the store.
+			}
+		}
+		
+		if(store != null) {
+			IntegerVector3D coords = entry.getCoord();
+			try {
+				return store.read(entry.getStyle().getLabel(), coords.getZ(), coords.getX(), coords.getY());
+				
+			} catch (IOException e) {
+				Logger.getInstance().warning("Cannot read cached tile " + entry.getKey() + ": " + e.getMessage());
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Adds an tile to the cache and queues its image-file for being written to the tile-store.
+	 * The image-file as received from the server is written, so that no encoding is necessary.
 	 * @param tile The tile to be cached.
 	 * @return <code>true</code> if <code>tile</code> was successfully added or already present.
 	 * <code>false</code> otherwise.
 	 */
 	@Override
 	public boolean add(TileResource tile) {
+		return add(tile, true);
+	}
+	
+	/**
+	 * Adds a tile to the cache without keeping its decoded image-data in memory, e.g. because
+	 * it is seeded for offline use and not viewed now. Its image-file is queued for being
+	 * written to the tile-store.
+	 * @param tile The tile to be cached.
+	 * @return <code>true</code> if <code>tile</code> was successfully added or already present.
+	 * <code>false</code> otherwise.
+	 */
+	public boolean addUnviewed(TileResource tile) {
+		return add(tile, false);
+	}
+	
+	/**
+	 * Adds a tile to the cache and queues its image-file for being written to the tile-store.
+	 * @param tile The tile to be cached.
+	 * @param viewed Flag if the decoded image-data should be kept in the memory-tier.
+	 * @return <code>true</code> if <code>tile</code> was successfully added or already present.
+	 * <code>false</code> otherwise.
+	 */
+	private boolean add(TileResource tile, boolean viewed) {
 		
-		// If not already in cache:
-		if(get(tile.getKey()) == null) {
-			
-			// Try to write the image-data:
-			File cachedFile = writeCacheFile(tile);
-			
-			if(cachedFile != null) {
-				// Add the written files size the the counter:
-				currentSizeOnDisk += cachedFile.length();
-				
-				// Create a new entry and add it:
-				IntegerVector3D coords = tile.getCoord();
-				// When inserted into the cache the resource was used once:
-				CachedTile entry = new CachedTile(coords.getX(), coords.getY(), coords.getZ(), 1, cachedFile);
-				entry.setTimestamp(tile.getTimestamp());
-				entry.setStyle(tile.getStyle());
-				return super.add(entry);
-				
-			} else {
-				return false;
+		// If already in cache nothing has to be decoded or written:
+		if(contains(tile.getKey())) {
+			return true;
+		}
+		
+		if(tile.getTextureData() == null || store == null) {
+			return false;
+		}
+		
+		// The caller may release its tile after adding, so a reference of its own is queued:
+		TileResource queued = createPendingTile(tile);
+		if(queued == null) {
+			return false;
+		}
+		
+		// Create a new entry and add it:
+		IntegerVector3D coords = tile.getCoord();
+		// When inserted into the cache the resource was used once:
+		CachedTile entry = new CachedTile(coords.getX(), coords.getY(), coords.getZ(), 1, (File) null);
+		entry.setTimestamp(tile.getTimestamp());
+		entry.setStyle(tile.getStyle());
+		entry.setValidators(tile.getValidators());
+		if(super.add(entry)) {
+			recordAdd(entry);
+			if(viewed) {
+				// The tile was just loaded, so it is likely viewed again soon:
+				memoryTier.put(entry.getKey(), tile.getTextureData());
 			}
+			writeQueue.enqueue(queued);
 			
 		} else {
-			return true;
+			releaseTextureData(queued);
 		}
-		
+		return true;
 	}
 	
 	/**
-	 * Writes the image-data of a tile-resource to a file. The path to the file is:
-	 * <i>&lt;CACHE_ROOT_DIR&gt;/&lt;URL-encoded style&gt;/z/x/y.&lt;style image-suffix&gt;</i>.
-	 * If any of the directories is not existent it will be created.
-	 * @param tile The tile which data should be written.
-	 * @return The file written to or <code>null</code> if an error occured.
+	 * Creates the tile queued for being written. It owns a reference of its own to the
+	 * decoded pixels, which is released by <code>persist()</code> after writing.
+	 * @param tile The tile added to the cache.
+	 * @return The tile to queue or <code>null</code> if the pixels of <code>tile</code> were
+	 * already released.
 	 */
-	private File writeCacheFile(TileResource tile) {
-		if(tile != null && tile.getTextureData() != null) {
-			// Generate the path were the file must be stored:
-			String separator = System.getProperty("file.separator");
-			StringBuilder path = new StringBuilder();
-			path.append(Environment.getInstance().getString(EnvVariable.CACHE_ROOT_DIR));
-			path.append(separator);
-			try {
-				path.append(URLEncoder.encode(tile.getStyle().getLabel(), "UTF-8"));
-				
-			} catch (UnsupportedEncodingException e) {
-				return null;
-			}
-			path.append(separator);
-			// Sub-directory for all tiles in the respective zoom-level:
-			path.append(Integer.toString(tile.getCoord().getZ()));
-			path.append(separator);
-			// Sub-directory for all tiles in the respective x-coordiante:
-			path.append(Integer.toString(tile.getCoord().getX()));
-			path.append(separator);
-			
-			File folder = new File(path.toString());
-			// Create any not existent directories:
-			if(!folder.exists()) {
-				folder.mkdirs();
-			}
-			
-			// Complete the path by adding the files name:
-			String suffix = "." + tile.getStyle().getImageSuffix();
-			path.append(tile.getCoord().getY());
-			path.append(suffix);
-			
-			// Create the file and write data:
-			File cacheFile = new File(path.toString());
+	private static TileResource createPendingTile(TileResource tile) {
+		TextureData shared = DecodedTileTier.share(tile.getTextureData());
+		if(shared == null) {
+			return null;
+		}
+		TileResource queued = new TileResource(tile.getCoord());
+		queued.setStyle(tile.getStyle());
+		queued.setTextureData(shared);
+		queued.setEncodedImage(tile.getEncodedImage());
+		queued.setValidators(tile.getValidators());
+		queued.setTimestamp(tile.getTimestamp());
+		queued.setDummy(tile.isDummy());
+		return queued;
+	}
+	
+	/**
+	 * Releases the reference of a tile to its decoded pixels if they are pooled.
+	 * @param tile The tile which pixels are not needed any more.
+	 */
+	private static void releaseTextureData(TileResource tile) {
+		TextureData data = tile.getTextureData();
+		if(data instanceof PooledTextureData) {
+			((PooledTextureData) data).release();
+		}
+	}
+	
+	/**
+	 * Checks whether a tile is cached without reading or decoding its image-file.
+	 * @param key The key of the tile.
+	 * @return <code>true</code> if the tile is cached.
+	 */
+	public boolean isCached(String key) {
+		return contains(key);
+	}
+	
+	/**
+	 * Writes the image-file of a tile queued by <code>add()</code> to the store. If it cannot
+	 * be written, the tile is removed from the cache again, so that it is loaded anew.
+	 * The reference of the queued tile to its pixels is released afterwards.
+	 * @param tile The tile to write.
+	 */
+	private void persist(TileResource tile) {
+		try {
+			writeImageFile(tile);
 			
-			// Create the file if does not exist yet:
-			try {
-				cacheFile.createNewFile();
-			} catch (IOException e) {
-				return null;
+		} finally {
+			// Released only after writing, so that readers failing to share the pixels find the image-file:
+			releaseTextureData(tile);
+		}
+	}
+	
+	/**
+	 * Writes the image-file of a tile queued by <code>add()</code> to the store.
+	 * @param tile The tile to write.
+	 */
+	private void writeImageFile(TileResource tile) {
+		byte[] image = tile.getEncodedImage();
+		if(image == null) {
+			// Tiles not received from a server have to be encoded:
+			image = encodeImage(tile);
+		}
+		
+		String key = tile.getKey();
+		migrationLock.lock();
+		try {
+			// The tile may have been removed meanwhile:
+			if(!contains(key)) {
+				return;
 			}
 			
-			if(!cacheFile.canWrite()) {
-				return null;
+			if(image == null || !writeToStore(tile, image)) {
+				CacheEntry removed = remove(key);
+				memoryTier.remove(key);
+				if(removed != null && removed.get() instanceof CachedTile) {
+					recordRemove((CachedTile) removed.get());
+				}
 			}
+		} finally {
+			migrationLock.unlock();
+		}
+	}
+	
+	/**
+	 * Encodes the image-data of a tile-resource to an image-file in the format of its style.
+	 * @param tile The tile which data should be encoded.
+	 * @return The content of the image-file or <code>null</code> if an error occured.
+	 */
+	private byte[] encodeImage(TileResource tile) {
+		if(tile != null && tile.getTextureData() != null && store != null) {
+			File tempFile = null;
 			try {
-				TextureIO.write(tile.getTextureData(), cacheFile);
+				// TextureIO can only encode to files, so encode to a temporary one:
+				String suffix = "." + tile.getStyle().getImageSuffix();
+				tempFile = File.createTempFile("tile", suffix, store.getDirectory());
+				TextureIO.write(tile.getTextureData(), tempFile);
+				return Files.readAllBytes(tempFile.toPath());
 				
 			} catch (IOException e) {
 				return null;
+				
+			} finally {
+				if(tempFile != null) {
+					tempFile.delete();
+				}
 			}
-			return cacheFile;
 			
 		} else {
 			return null;
 		}
 	}
 	
+	/**
+	 * Writes the image-file of a tile to the store.
+	 * @param tile The tile the image-file belongs to.
+	 * @param image The content of the image-file.
+	 * @return <code>true</code> if the image-file was written.
+	 */
+	private boolean writeToStore(TileResource tile, byte[] image) {
+		IntegerVector3D coords = tile.getCoord();
+		try {
+			store.write(tile.getStyle().getLabel(), coords.getZ(), coords.getX(), coords.getY(), image);
+			return true;
+			
+		} catch (IOException e) {
+			Logger.getInstance().error("Cannot write tile to tile-store: " + e.getMessage());
+			return false;
+		}
+	}
+	
+	/**
+	 * Removes the image-file of a tile from the store.
+	 * @param tile The tile the image-file belongs to.
+	 * @return The size of the image-file removed in bytes or 0 if there was none.
+	 */
+	private long removeFromStore(TileResource tile) {
+		IntegerVector3D coords = tile.getCoord();
+		try {
+			int removed = store.remove(tile.getStyle().getLabel(), coords.getZ(), coords.getX(), coords.getY());
+			return Math.max(0, removed);
+			
+		} catch (IOException e) {
+			Logger.getInstance().error("Cannot remove tile from tile-store: " + e.getMessage());
+			return 0;
+		}
+	}
+	
+	/**
+	 * Asks the janitor to evict tiles if the size on disk reached its maximum. The tiles
+	 * are evicted in the background, so this method never blocks.
+	 * @return An empty collection, as no tile is removed by the caller.
+	 */
 	@Override
 	public Collection<CacheEntry> manage() {
+		janitor.check();
+		return new LinkedList<>();
+	}
+	
+	/**
+	 * Removes up to <code>count</code> tiles chosen by the eviction-policy and deletes
+	 * their image-files. Called by the janitor. The space of tiles in the store is only
+	 * freed by compacting it (see <code>compactStore()</code>).
+	 * @param count The maximum number of tiles to evict.
+	 * @return The number of bytes freed at once or -1 if there was no tile to evict.
+	 */
+	private long evictTiles(int count) {
+		Collection<CacheEntry> removed = evictEntries(count);
+		if(removed.isEmpty()) {
+			return -1;
+		}
+		long reclaimed = 0;
 		
-		if(currentSizeOnDisk >= maximumSizeOnDisk) {
-			// Synchronously clean memory-index and get all entries removed there:
-			final Collection<CacheEntry> removed = super.purge();
-			
-			Runnable deleteFilesRoutine = new Runnable() {
+		migrationLock.lock();
+		try {
+			for(CacheEntry entry : removed) {
+				TileResource resource = entry.get();
 				
-				@Override
-				public void run() {
-					// Remove the correspondent file for each entry:
-					for(CacheEntry entry : removed) {
-						TileResource resource = entry.get();
+				if(resource instanceof CachedTile) {
+					CachedTile cachedTile = (CachedTile) resource;
+					memoryTier.remove(cachedTile.getKey());
+					
+					File file = cachedTile.getFile();
+					if(file != null) {
+						// The tile was not moved into the store yet:
+						file.delete();
+						reclaimed += cachedTile.getFileLength();
+						legacyFileBytes.addAndGet(-cachedTile.getFileLength());
+						cachedTile.setFileLength(0);
 						
-						if(resource instanceof CachedTile) {
-							CachedTile cachedTile = (CachedTile) resource;
-							
-							File cacheFile = cachedTile.getFile();
-							// Substract the freed size from counter:
-							currentSizeOnDisk -= cacheFile.length();
-							
-							cacheFile.delete();
-						}
+					} else if(store != null) {
+						// Removing from the store only updates its index, the data remains as garbage:
+						removeFromStore(cachedTile);
 					}
+					recordRemove(cachedTile);
 				}
-			};
+			}
+		} finally {
+			migrationLock.unlock();
+		}
+		return reclaimed;
+	}
+	
+	/**
+	 * Compacts the tile-store until the size on disk is at most <code>targetSize</code>.
+	 * Called by the janitor after evicting.
+	 * @param targetSize The size on disk to reach in bytes.
+	 * @return The number of bytes freed.
+	 */
+	private long compactStore(long targetSize) {
+		if(store == null) {
+			return 0;
+		}
+		try {
+			return store.compactTo(targetSize - legacyFileBytes.get());
 			
-			// Asynchronously delete files:
-			new Thread(deleteFilesRoutine).start();
+		} catch (IOException e) {
+			Logger.getInstance().error("Cannot compact tile-store: " + e.getMessage());
+			return 0;
+		}
+	}
+	
+	/**
+	 * Returns the tiles in the store expiring first. Called by the revalidator.
+	 * @param time The time the tiles must expire before in milliseconds since epoch.
+	 * @param count The maximum number of tiles to return.
+	 * @param excluded The keys of tiles not to return.
+	 * @return Descriptions of the tiles, the ones expiring first first.
+	 */
+	private List<TileResource> getExpiringTiles(long time, int count, Collection<String> excluded) {
+		// The tile expiring last on top, so that it is dropped first:
+		PriorityQueue<TileResource> expiring = new PriorityQueue<>(count + 1, new Comparator<TileResource>() {
+			@Override
+			public int compare(TileResource a, TileResource b) {
+				return Long.compare(TileRevalidator.getExpiry(b), TileRevalidator.getExpiry(a));
+			}
+		});
+		for(CacheEntry entry : getEntries()) {
+			TileResource resource = entry.get();
+			// Tiles not moved into the store yet are left to the migration:
+			if(resource instanceof CachedTile && ((CachedTile) resource).getFile() == null
+					&& TileRevalidator.getExpiry(resource) <= time && !excluded.contains(resource.getKey())) {
+				expiring.add(resource);
+				if(expiring.size() > count) {
+					expiring.poll();
+				}
+			}
+		}
+		
+		LinkedList<TileResource> result = new LinkedList<>();
+		while(!expiring.isEmpty()) {
+			TileResource cached = expiring.poll();
+			IntegerVector3D coords = cached.getCoord();
+			TileResource tile = new TileResource(coords.getX(), coords.getY(), coords.getZ());
+			tile.setStyle(cached.getStyle());
+			tile.setTimestamp(cached.getTimestamp());
+			tile.setValidators(cached.getValidators());
+			result.addFirst(tile);
+		}
+		return result;
+	}
+	
+	/**
+	 * Notes that a cached tile was not modified on the server. Called by the revalidator.
+	 * @param tile The description of the tile.
+	 * @param validators The validators and the expiry of the tile from now on.
+	 */
+	private void refreshTile(TileResource tile, CacheValidators validators) {
+		migrationLock.lock();
+		try {
+			TileResource resource = peek(tile.getKey());
+			if(resource instanceof CachedTile) {
+				CachedTile cachedTile = (CachedTile) resource;
+				cachedTile.setValidators(validators);
+				cachedTile.setTimestamp(System.currentTimeMillis());
+				recordAdd(cachedTile);
+			}
+		} finally {
+			migrationLock.unlock();
+		}
+	}
+	
+	/**
+	 * Replaces the image-file of a cached tile modified on the server. Called by the revalidator.
+	 * @param tile The description of the tile.
+	 * @param image The image-file received.
+	 * @param validators The validators and the expiry of the image-file.
+	 */
+	private void replaceTile(TileResource tile, byte[] image, CacheValidators validators) {
+		migrationLock.lock();
+		try {
+			TileResource resource = peek(tile.getKey());
+			if(resource instanceof CachedTile && ((CachedTile) resource).getFile() == null
+					&& store != null && writeToStore(resource, image)) {
+				CachedTile cachedTile = (CachedTile) resource;
+				cachedTile.setValidators(validators);
+				cachedTile.setTimestamp(System.currentTimeMillis());
+				// The decoded image is outdated:
+				memoryTier.remove(cachedTile.getKey());
+				recordAdd(cachedTile);
+			}
+		} finally {
+			migrationLock.unlock();
+		}
+	}
+	
+	/**
+	 * Returns the size of the image-files of all cached tiles. The size of tiles in the store
+	 * is taken from the store itself, so that it is exact regardless of concurrent changes.
+	 * It includes the space of removed tiles not freed by compacting yet.
+	 * @return The size in bytes.
+	 */
+	@Override
+	public long getSizeOnDisk() {
+		return (store != null ? store.getSegmentBytes() : 0) + legacyFileBytes.get();
+	}
+	
+	/**
+	 * Restores the index of the cache from its journal. If there is no journal yet,
+	 * the index-file of earlier versions is imported.
+	 * @return <code>true</code> if the index was restored or there is none yet.
+	 */
+	private boolean load() {
+		Environment environment = Environment.getInstance();
+		journal = new TileCacheJournal(new File(environment.getString(EnvVariable.TILE_CACHE_JOURNAL_FILE)),
+				new File(environment.getString(EnvVariable.TILE_CACHE_CHECKPOINT_FILE)));
+		boolean firstStart = !journal.exists();
+		
+		try {
+			// Checkpoint and journal are read as streams instead of building a document:
+			for(TileCacheJournal.Entry entry : journal.load()) {
+				restore(entry);
+			}
 			
-			return removed;
+		} catch (IOException e) {
+			Logger.getInstance().error("Cannot open tile-cache journal: " + e.getMessage());
+			journal = null;
+			return false;
+		}
+		
+		File legacyIndex = new File(environment.getString(EnvVariable.TILE_CACHE_INDEX_FILE));
+		if(firstStart && legacyIndex.exists()) {
+			if(!loadLegacyIndex()) {
+				return false;
+			}
+			// From now on the journal is used:
+			writeBack();
+			legacyIndex.delete();
+			Logger.getInstance().message("Imported " + size() + " tiles from " + legacyIndex);
+		}
+		return true;
+	}
+	
+	/**
+	 * Adds a tile restored from disk to the cache.
+	 * @param restored The description of the tile.
+	 */
+	private void restore(TileCacheJournal.Entry restored) {
+		// Get the style-object with the label stored:
+		Style matchingStyle = findStyle(restored.getStyle());
+		if(matchingStyle == null) {
+			return;
+		}
+		int x = restored.getX();
+		int y = restored.getY();
+		int zoom = restored.getZoom();
+		
+		// Tiles in the store have no file of their own:
+		File file = restored.getFile() != null ? new File(restored.getFile()) : null;
+		long length;
+		if(file != null) {
+			length = file.length();
 			
 		} else {
-			// If nothing had to be removed return an empty collection:
-			return new LinkedList<>();
+			length = store != null ? store.getLength(restored.getStyle(), zoom, x, y) : -1;
+			if(length == -1) {
+				// The image-file is lost:
+				return;
+			}
+		}
+		
+		// Create a resource from the read variables:
+		CachedTile entry;
+		try {
+			entry = new CachedTile(x, y, zoom, restored.getUseCount(), file);
+			
+		} catch (IllegalArgumentException e) {
+			return;
+		}
+		entry.setStyle(matchingStyle);
+		entry.setTimestamp(restored.getTimestamp());
+		entry.setValidators(restored.getValidators());
+		
+		// Add the resource to memory index. The insertion itself was counted as use:
+		if(super.add(entry, Math.max(0, restored.getUseCount() - 1)) && file != null) {
+			// Tiles in the store are counted by the store:
+			entry.setFileLength(length);
+			legacyFileBytes.addAndGet(length);
 		}
 	}
 	
 	/**
-	 * Reads information about the currently avaliable files from a index-file.
+	 * Reads information about the cached tiles from the index-file of earlier versions.
 	 * For the format of the file see tilecache.xsd.
 	 */
-	private boolean load() {
+	private boolean loadLegacyIndex() {
 		// Get the application-environment:
 		Environment environment = Environment.getInstance();
 		// Get the XML-file containing the cached tiles:
@@ -486,130 +1079,397 @@ public class TileCache extends Cache<TileResource> {
 				}
 			}
 			
-			// Get the style-object with the read tag:
-			Style matchingStyle = null;
-			if(style != null) {
-				List<Style> styles = manager.getAvailableStyles();
-				for(Iterator<Style> styleIter = styles.iterator(); styleIter.hasNext() && matchingStyle == null; ) {
-					Style current = styleIter.next();
-					if(current.getLabel().equals(style)) {
-						matchingStyle = current;
-					}
-				}
-			}
-			
 			// Check the validity of all read variables:
 			boolean coordsValid = x != -1 && y != -1 && zoom != -1;
 			boolean countersValid = useCount != -1 && timeStamp != -1;
 			boolean fileValid = fileName != null;
 			
-			if(matchingStyle != null && coordsValid && countersValid && fileValid) {
-				File file = new File(fileName);
-				
-				// Add the size of the file the current sum:
-				currentSizeOnDisk += file.length();
-				
-				// Create a resource from the read variables:
-				CachedTile entry = new CachedTile(x, y, zoom, useCount, file);
-				entry.setStyle(matchingStyle);
-				entry.setTimestamp(timeStamp);
-				
-				// Add the resource to memory index:
-				return super.add(entry);
+			if(style != null && coordsValid && countersValid && fileValid) {
+				String file = fileName.isEmpty() ? null : fileName;
+				restore(new TileCacheJournal.Entry(style, zoom, x, y, useCount, timeStamp, file));
 			}
 		}
 		
 		return true;
 	}
 	
-	private void addTileTagChilds(CachedTile tile, Document doc, Element tag) {
-		
-		// Temporarily store the tiles coordinates. The format is (x, y, zoom):
-		IntegerVector3D coords = tile.getCoord();
-		
-		// Add the x-tag:
-		Element xTag = doc.createElement("x");
-		xTag.appendChild(doc.createTextNode(Integer.toString(coords.getX())));
-		tag.appendChild(xTag);
-		
-		// Add the y-tag_
-		Element yTag = doc.createElement("y");
-		yTag.appendChild(doc.createTextNode(Integer.toString(coords.getY())));
-		tag.appendChild(yTag);
+	/**
+	 * Adds the tiles in the store missing in the index, e.g. because the index was not
+	 * written back before the application terminated.
+	 */
+	private void adoptStoredTiles() {
+		if(store == null) {
+			return;
+		}
+		final List<CachedTile> missing = new LinkedList<>();
+		store.forEach(new PackedTileStore.Visitor() {
+			@Override
+			public void visit(String style, int zoom, int x, int y, int length) {
+				Style matchingStyle = findStyle(style);
+				if(matchingStyle != null) {
+					CachedTile entry = new CachedTile(x, y, zoom, 0, (File) null);
+					entry.setStyle(matchingStyle);
+					if(!contains(entry.getKey())) {
+						missing.add(entry);
+					}
+				}
+			}
+		});
 		
-		// Add the zoom-tag:
-		Element zoomTag = doc.createElement("zoom");
-		zoomTag.appendChild(doc.createTextNode(Integer.toString(coords.getZ())));
-		tag.appendChild(zoomTag);
+		for(CachedTile entry : missing) {
+			// The time of loading is unknown:
+			entry.setTimestamp(0);
+			if(super.add(entry, 0)) {
+				recordAdd(entry);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the available style with the label <code>label</code>.
+	 * @param label The label of the style.
+	 * @return The style found or <code>null</code> if there is none with this label.
+	 */
+	private Style findStyle(String label) {
+		Style matchingStyle = null;
+		if(label != null) {
+			List<Style> styles = manager.getAvailableStyles();
+			for(Iterator<Style> styleIter = styles.iterator(); styleIter.hasNext() && matchingStyle == null; ) {
+				Style current = styleIter.next();
+				if(current.getLabel().equals(label)) {
+					matchingStyle = current;
+				}
+			}
+		}
+		return matchingStyle;
+	}
+	
+	/**
+	 * Moves the image-files of tiles cached by earlier versions into the store in the background.
+	 * Files in the caches root-directory missing in the index are adopted as well.
+	 */
+	private void startMigration() {
+		if(store == null) {
+			return;
+		}
+		final File cacheRoot = new File(Environment.getInstance().getString(EnvVariable.CACHE_ROOT_DIR));
+		File[] styleDirs = cacheRoot.listFiles();
+		if(styleDirs == null || styleDirs.length == 0) {
+			return;
+		}
 		
-		// Add the style-tag:
-		Element styleTag = doc.createElement("style");
-		styleTag.appendChild(doc.createTextNode(tile.getStyle().getLabel()));
-		tag.appendChild(styleTag);
+		Runnable migrationRoutine = new Runnable() {
+			
+			@Override
+			public void run() {
+				// First move the files of the tiles in the index:
+				for(CacheEntry entry : getEntries()) {
+					TileResource resource = entry.get();
+					if(resource instanceof CachedTile && ((CachedTile) resource).getFile() != null) {
+						migrateTile((CachedTile) resource);
+					}
+				}
+				
+				// Then adopt the remaining files:
+				File[] styleDirs = cacheRoot.listFiles();
+				if(styleDirs != null) {
+					for(File styleDir : styleDirs) {
+						migrateStyleDirectory(styleDir);
+					}
+				}
+			}
+		};
 		
-		// Add the usecount-tag:
-		Element useCountTag = doc.createElement("usecount");
-		useCountTag.appendChild(doc.createTextNode(Integer.toString(tile.getUseCount())));
-		tag.appendChild(useCountTag);
+		Thread migrationThread = new Thread(migrationRoutine, "TileCacheMigration");
+		migrationThread.setDaemon(true);
+		migrationThread.setPriority(Thread.MIN_PRIORITY);
+		migrationThread.start();
+	}
+	
+	/**
+	 * Moves the image-file of a cached tile into the store and deletes the file.
+	 * @param tile The tile to move the image-file of.
+	 */
+	private void migrateTile(CachedTile tile) {
+		File file = tile.getFile();
+		byte[] image;
+		try {
+			image = Files.readAllBytes(file.toPath());
+			
+		} catch (IOException e) {
+			Logger.getInstance().warning("Cannot move cached tile " + file + " into the tile-store.");
+			return;
+		}
 		
-		// Add the timestamp-tag_
-		Element timestampTag = doc.createElement("timestamp");
-		timestampTag.appendChild(doc.createTextNode(Long.toString(tile.getTimestamp())));
-		tag.appendChild(timestampTag);
+		boolean moved = false;
+		migrationLock.lock();
+		try {
+			// The tile may have been removed meanwhile:
+			if(contains(tile.getKey()) && tile.getFile() == file && writeToStore(tile, image)) {
+				tile.setFile(null);
+				// The image-file is counted by the store from now on:
+				legacyFileBytes.addAndGet(-tile.getFileLength());
+				tile.setFileLength(0);
+				recordAdd(tile);
+				moved = true;
+			}
+		} finally {
+			migrationLock.unlock();
+		}
 		
-		// Add the file-tag:
-		Element fileTag = doc.createElement("file");
-		fileTag.appendChild(doc.createTextNode(tile.getFile().getAbsolutePath()));
-		tag.appendChild(fileTag);
+		if(moved) {
+			file.delete();
+		}
 	}
 	
 	/**
-	 * Writes the information about all cached tiles to a index-file.
-	 * For the format of the file see tilecache.xsd.
+	 * Moves the image-files in the directory of a style into the store. Files of tiles not
+	 * cached are added to the cache. Directories are deleted when they are empty.
+	 * @param styleDir The directory of the style: <i>&lt;URL-encoded style&gt;/z/x/y.&lt;style image-suffix&gt;</i>
 	 */
-	public void writeBack() {
+	private void migrateStyleDirectory(File styleDir) {
+		Style style;
 		try {
-			DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
-			DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
-			
-			Document doc = docBuilder.newDocument();
-			Element rootElement = doc.createElement("cache");
-			doc.appendChild(rootElement);
+			style = findStyle(URLDecoder.decode(styleDir.getName(), "UTF-8"));
 			
-			Collection<CacheEntry> entries = getEntries();
-			for(CacheEntry entry : entries) {
-				Element currentTileTag = doc.createElement("tile");
-				rootElement.appendChild(currentTileTag);
-				
-				TileResource result = entry.get();
-				if(result != null && result instanceof CachedTile) {
-					CachedTile tile = (CachedTile) result;
-					addTileTagChilds(tile, doc, currentTileTag);
+		} catch (UnsupportedEncodingException e) {
+			return;
+		}
+		File[] zoomDirs = styleDir.listFiles();
+		if(style == null || zoomDirs == null) {
+			return;
+		}
+		
+		for(File zoomDir : zoomDirs) {
+			File[] xDirs = zoomDir.listFiles();
+			if(xDirs == null) {
+				continue;
+			}
+			for(File xDir : xDirs) {
+				File[] yFiles = xDir.listFiles();
+				if(yFiles == null) {
+					continue;
+				}
+				for(File yFile : yFiles) {
+					String name = yFile.getName();
+					int dot = name.indexOf('.');
+					try {
+						int zoom = Integer.parseInt(zoomDir.getName());
+						int x = Integer.parseInt(xDir.getName());
+						int y = Integer.parseInt(dot != -1 ? name.substring(0, dot) : name);
+						migrateFile(style, zoom, x, y, yFile);
+						
+					} catch (IllegalArgumentException e) {
+						// Not the file of a tile.
+					}
 				}
+				// Only succeeds if the directory is empty:
+				xDir.delete();
 			}
+			zoomDir.delete();
+		}
+		styleDir.delete();
+	}
+	
+	/**
+	 * Moves an image-file not in the index into the store and adds its tile to the cache,
+	 * unless the tile is already cached.
+	 * @param style The style of the tile.
+	 * @param zoom The zoom-level of the tile.
+	 * @param x The x-coordinate of the tile.
+	 * @param y The y-coordinate of the tile.
+	 * @param file The image-file of the tile.
+	 * @throws IllegalArgumentException Thrown if the coordinates are not valid.
+	 */
+	private void migrateFile(Style style, int zoom, int x, int y, File file) throws IllegalArgumentException {
+		CachedTile entry = new CachedTile(x, y, zoom, 0, (File) null);
+		entry.setStyle(style);
+		entry.setTimestamp(file.lastModified());
+		
+		byte[] image;
+		try {
+			image = Files.readAllBytes(file.toPath());
 			
-			// write the content into xml file:
-			String cacheIndexPath = Environment.getInstance().getString(EnvVariable.TILE_CACHE_INDEX_FILE);
-			
-			File cacheIndexFile = new File(cacheIndexPath);
-			if(!cacheIndexFile.exists()) {
-				try {
-					cacheIndexFile.createNewFile();
-				} catch (IOException e) {
-					Logger.getInstance().error("Cannot create cache-index at " + cacheIndexPath);
-					return;
+		} catch (IOException e) {
+			return;
+		}
+		
+		boolean obsolete = false;
+		migrationLock.lock();
+		try {
+			if(!contains(entry.getKey())) {
+				obsolete = writeToStore(entry, image) && super.add(entry, 0);
+				if(obsolete) {
+					recordAdd(entry);
 				}
+				
+			} else {
+				// The file is obsolete if the tile was moved into the store already:
+				obsolete = store.contains(style.getLabel(), zoom, x, y);
+			}
+		} finally {
+			migrationLock.unlock();
+		}
+		
+		if(obsolete) {
+			file.delete();
+		}
+	}
+	
+	/**
+	 * Writes a checkpoint of the index, so that the journal can be emptied, and writes all
+	 * image-files to disk. Changes of the cache are journaled anyway, so calling this is optional.
+	 */
+	public void writeBack() {
+		// Write the image-files of the tiles not written yet:
+		writeQueue.flush();
+		
+		if(journal != null) {
+			try {
+				journal.checkpoint(getJournalView());
+				
+			} catch(IOException e) {
+				Logger.getInstance().error("Cannot write cache-index: " + e.getMessage());
+			}
+		}
+		
+		if(store != null) {
+			try {
+				store.flush();
+				
+			} catch(IOException e) {
+				Logger.getInstance().error("Cannot flush tile-store: " + e.getMessage());
 			}
+		}
+	}
+	
+	/**
+	 * Returns a view of the entries of the cache as described in the journal.
+	 * @return The entries of the cache, converted while iterating.
+	 */
+	private Iterable<TileCacheJournal.Entry> getJournalView() {
+		return new Iterable<TileCacheJournal.Entry>() {
 			
-			TransformerFactory transformerFactory = TransformerFactory.newInstance();
-			Transformer transformer = transformerFactory.newTransformer();
-			DOMSource source = new DOMSource(doc);
-			StreamResult result = new StreamResult(new File(cacheIndexPath));
-	 
-			transformer.transform(source, result);
+			@Override
+			public Iterator<TileCacheJournal.Entry> iterator() {
+				final Iterator<CacheEntry> entries = getEntries().iterator();
+				return new Iterator<TileCacheJournal.Entry>() {
+					
+					@Override
+					public boolean hasNext() {
+						return entries.hasNext();
+					}
+					
+					@Override
+					public TileCacheJournal.Entry next() {
+						return toJournalEntry((CachedTile) entries.next().get());
+					}
+					
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
+	
+	/**
+	 * Describes a cached tile as stored in the journal.
+	 * @param tile The tile to describe.
+	 * @return The description of <code>tile</code>.
+	 */
+	private static TileCacheJournal.Entry toJournalEntry(CachedTile tile) {
+		IntegerVector3D coords = tile.getCoord();
+		File file = tile.getFile();
+		return new TileCacheJournal.Entry(tile.getStyle().getLabel(), coords.getZ(), coords.getX(), coords.getY(),
+				tile.getUseCount(), tile.getTimestamp(), file != null ? file.getPath() : null, tile.getValidators());
+	}
+	
+	/**
+	 * Records in the journal that a tile was added or changed.
+	 * @param tile The tile added or changed.
+	 */
+	private void recordAdd(CachedTile tile) {
+		if(journal != null) {
+			try {
+				journal.recordAdd(toJournalEntry(tile));
+				
+			} catch(IOException e) {
+				Logger.getInstance().error("Cannot journal tile-cache: " + e.getMessage());
+			}
+			scheduleCheckpointIfNeeded();
+		}
+	}
+	
+	/**
+	 * Records in the journal that a tile was removed.
+	 * @param tile The tile removed.
+	 */
+	private void recordRemove(CachedTile tile) {
+		if(journal != null) {
+			IntegerVector3D coords = tile.getCoord();
+			try {
+				journal.recordRemove(tile.getStyle().getLabel(), coords.getZ(), coords.getX(), coords.getY());
+				
+			} catch(IOException e) {
+				Logger.getInstance().error("Cannot journal tile-cache: " + e.getMessage());
+			}
+			scheduleCheckpointIfNeeded();
+		}
+	}
+	
+	/**
+	 * Writes a checkpoint in the background if the journal has grown too large.
+	 */
+	private void scheduleCheckpointIfNeeded() {
+		if(journal.needsCheckpoint(size()) && checkpointScheduled.compareAndSet(false, true)) {
+			Runnable checkpointRoutine = new Runnable() {
+				
+				@Override
+				public void run() {
+					try {
+						journal.checkpoint(getJournalView());
+						
+					} catch(IOException e) {
+						Logger.getInstance().error("Cannot write cache-index: " + e.getMessage());
+						
+					} finally {
+						checkpointScheduled.set(false);
+					}
+				}
+			};
 			
-		} catch(ParserConfigurationException | TransformerException e) {
-			Logger.getInstance().error("Cannot write cache-index: " + e.getMessage());
+			Thread checkpointThread = new Thread(checkpointRoutine, "TileCacheCheckpoint");
+			checkpointThread.setDaemon(true);
+			checkpointThread.start();
+		}
+	}
+	
+	/**
+	 * Writes all tiles queued and closes the journal and the tile-store. The cache must not
+	 * be used afterwards.
+	 */
+	public void close() {
+		revalidator.close();
+		janitor.close();
+		writeQueue.close();
+		
+		if(journal != null) {
+			try {
+				journal.close();
+				
+			} catch (IOException e) {
+				Logger.getInstance().error("Cannot close tile-cache journal: " + e.getMessage());
+			}
+		}
+		if(store != null) {
+			try {
+				store.close();
+				
+			} catch (IOException e) {
+				Logger.getInstance().error("Cannot close tile-store: " + e.getMessage());
+			}
 		}
 	}
 
@@ -633,19 +1493,77 @@ public class TileCache extends Cache<TileResource> {
 	
 	@Override
 	public void clear() {
+		// No queued tile must be written into the cleared store:
+		writeQueue.flush();
 		super.clear();
 		
 		// Delete all files in the caches root-directory:
 		Environment environment = Environment.getInstance();
 		File cacheRoot = new File(environment.getString(EnvVariable.CACHE_ROOT_DIR));
-		for(File current : cacheRoot.listFiles()) {
-			deleteFile(current);
+		File[] files = cacheRoot.listFiles();
+		if(files != null) {
+			for(File current : files) {
+				deleteFile(current);
+			}
+		}
+		
+		// Remove all tiles from the store:
+		if(store != null) {
+			try {
+				store.clear();
+				
+			} catch (IOException e) {
+				Logger.getInstance().error("Cannot clear tile-store: " + e.getMessage());
+			}
 		}
 		
-		currentSizeOnDisk = 0;
+		legacyFileBytes.set(0);
 		
-		// Clear the memory index:
+		// Clear the memory index and the decoded tiles:
 		super.clear();
+		memoryTier.clear();
+		
+		// An empty checkpoint replaces the journal:
+		if(journal != null) {
+			try {
+				journal.checkpoint(getJournalView());
+				
+			} catch(IOException e) {
+				Logger.getInstance().error("Cannot write cache-index: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Returns the tier keeping the decoded image-data of recently used tiles in memory.
+	 * @return The memory-tier of the cache.
+	 */
+	public DecodedTileTier getMemoryTier() {
+		return memoryTier;
+	}
+
+	/**
+	 * Returns the queue writing the image-files of newly cached tiles.
+	 * @return The write-queue of the cache.
+	 */
+	public TileWriteQueue getWriteQueue() {
+		return writeQueue;
+	}
+
+	/**
+	 * Returns the revalidator asking the servers whether expiring tiles were modified.
+	 * @return The revalidator of the cache.
+	 */
+	public TileRevalidator getRevalidator() {
+		return revalidator;
+	}
+
+	/**
+	 * Returns the janitor evicting tiles when the size on disk exceeds its maximum.
+	 * @return The janitor of the cache.
+	 */
+	public TileCacheJanitor getJanitor() {
+		return janitor;
 	}
 
 	/**
@@ -662,6 +1580,7 @@ public class TileCache extends Cache<TileResource> {
 	 */
 	public void setMaximumSizeOnDisk(long maximumSizeOnDisk) {
 		this.maximumSizeOnDisk = maximumSizeOnDisk;
+		janitor.check();
 	}
 
 	/**
@@ -669,6 +1588,6 @@ public class TileCache extends Cache<TileResource> {
 	 * @return The current size of the image-files of all styles in bytes.
 	 */
 	public long getCurrentSizeOnDisk() {
-		return currentSizeOnDisk;
+		return getSizeOnDisk();
 	}
 }
\ No newline at end of file
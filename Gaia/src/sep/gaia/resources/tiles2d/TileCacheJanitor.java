@@ -0,0 +1,396 @@
+package sep.gaia.resources.tiles2d;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import sep.gaia.util.Logger;
+
+/**
+ * Keeps the size of a tile-cache on disk within its quota on a thread of its own.
+ * <p>
+ * When the size reaches the high watermark, which is the maximum size of the cache,
+ * tiles are evicted in batches of <code>BATCH_SIZE</code> until the size falls below
+ * the low watermark of <code>LOW_WATERMARK_PERC</code> percent of the maximum size.
+ * The gap between both watermarks keeps the janitor from running on each tile added.
+ * <p>
+ * The space of tiles evicted may not be freed at once, e.g. if their data stays in a file
+ * shared with other tiles. So tiles are evicted until the data of the remaining ones fits
+ * below the low watermark, then the space of the evicted ones is freed by compacting.
+ * Only space actually freed is counted as reclaimed.
+ * The batches are paced to the deletion-rate, so that evicting does not compete with
+ * loading tiles for the disk. Checking whether a run is due never blocks.
+ * <p>
+ * The space reclaimed is counted and reported by the log after each run.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class TileCacheJanitor {
+
+	/**
+	 * The low watermark in percent of the maximum size.
+	 */
+	public static final int LOW_WATERMARK_PERC = 90;
+
+	/**
+	 * The number of tiles evicted at once.
+	 */
+	public static final int BATCH_SIZE = 32;
+
+	/**
+	 * The interval in milliseconds in which the size is checked without being asked to.
+	 */
+	private static final long CHECK_INTERVAL = 5000;
+
+	/**
+	 * The cache whose quota is enforced.
+	 *
+	 * @author Matthias Fisch
+	 *
+	 */
+	public interface Quota {
+
+		/**
+		 * Returns the size of the tiles on disk, including space of tiles evicted not freed yet.
+		 * @return The size in bytes.
+		 */
+		public long getSizeOnDisk();
+
+		/**
+		 * Returns the size of the data of the tiles cached, without space not freed yet.
+		 * @return The size in bytes.
+		 */
+		public long getDataSizeOnDisk();
+
+		/**
+		 * Frees the space of tiles evicted until the size on disk is at most <code>targetSize</code>
+		 * or no more space can be freed.
+		 * @param targetSize The size on disk to reach in bytes.
+		 * @return The number of bytes freed.
+		 */
+		public long compact(long targetSize);
+
+		/**
+		 * Returns the maximum size of the tiles on disk.
+		 * @return The maximum size in bytes.
+		 */
+		public long getMaximumSizeOnDisk();
+
+		/**
+		 * Evicts tiles chosen by the removal-strategy of the cache and deletes them from disk.
+		 * @param count The maximum number of tiles to evict.
+		 * @return The number of bytes freed at once or -1 if there was no tile to evict.
+		 */
+		public long evict(int count);
+	}
+
+	/**
+	 * The cache whose quota is enforced.
+	 */
+	private Quota quota;
+
+	/**
+	 * The maximum number of tiles evicted per second. Not limited if not positive.
+	 */
+	private volatile int deletionRate;
+
+	/**
+	 * The thread evicting the tiles.
+	 */
+	private Thread janitorThread;
+
+	/**
+	 * Flag if a run was requested and has not started yet.
+	 */
+	private boolean requested;
+
+	/**
+	 * Flag if a run is in progress.
+	 */
+	private boolean running;
+
+	/**
+	 * Flag if the janitor was closed.
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * Lock guarding <code>requested</code> and <code>running</code>.
+	 */
+	private Lock janitorLock = new ReentrantLock();
+
+	/**
+	 * Signalled when a run is requested.
+	 */
+	private Condition runRequested = janitorLock.newCondition();
+
+	/**
+	 * Signalled when a run has finished.
+	 */
+	private Condition runFinished = janitorLock.newCondition();
+
+	/**
+	 * Number of bytes reclaimed by all runs.
+	 */
+	private AtomicLong reclaimedBytes = new AtomicLong();
+
+	/**
+	 * Number of runs finished.
+	 */
+	private AtomicLong runCount = new AtomicLong();
+
+	/**
+	 * Initializes the janitor. It does not run before <code>start()</code> is called.
+	 * @param quota The cache whose quota is enforced.
+	 * @param deletionRate The maximum number of tiles evicted per second.
+	 * Not limited if not positive.
+	 */
+	public TileCacheJanitor(Quota quota, int deletionRate) {
+		this.quota = quota;
+		this.deletionRate = deletionRate;
+	}
+
+	/**
+	 * Starts the thread of the janitor.
+	 */
+	public void start() {
+		janitorThread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				while(!closed) {
+					if(!awaitRequest()) {
+						return;
+					}
+					try {
+						clean();
+
+					} catch (RuntimeException e) {
+						Logger.getInstance().error("Tile-cache janitor failed: " + e.getMessage());
+
+					} finally {
+						janitorLock.lock();
+						try {
+							running = false;
+							runFinished.signalAll();
+						} finally {
+							janitorLock.unlock();
+						}
+					}
+				}
+			}
+		}, "TileCacheJanitor");
+		janitorThread.setDaemon(true);
+		janitorThread.setPriority(Thread.MIN_PRIORITY);
+		janitorThread.start();
+	}
+
+	/**
+	 * Waits until a run is requested or the check-interval passed with the size above
+	 * the high watermark.
+	 * @return <code>true</code> if a run should start, <code>false</code> if the janitor was closed.
+	 */
+	private boolean awaitRequest() {
+		janitorLock.lock();
+		try {
+			while(!requested) {
+				if(closed) {
+					return false;
+				}
+				try {
+					runRequested.await(CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+
+				} catch (InterruptedException e) {
+					return false;
+				}
+				if(!requested && isAboveHighWatermark()) {
+					requested = true;
+				}
+			}
+			requested = false;
+			running = true;
+			return !closed;
+
+		} finally {
+			janitorLock.unlock();
+		}
+	}
+
+	/**
+	 * Evicts tiles until the size falls below the low watermark.
+	 */
+	private void clean() {
+		long startTime = System.currentTimeMillis();
+		long sizeBefore = quota.getSizeOnDisk();
+		long reclaimed = 0;
+
+		while(!closed && quota.getSizeOnDisk() > getLowWatermark()) {
+			if(quota.getDataSizeOnDisk() <= getLowWatermark()) {
+				// The remaining tiles fit, so the space of the evicted ones is freed:
+				long freed = quota.compact(getLowWatermark());
+				reclaimed += freed;
+				reclaimedBytes.addAndGet(freed);
+				break;
+			}
+			long batchStart = System.nanoTime();
+			long batchReclaimed = quota.evict(BATCH_SIZE);
+			if(batchReclaimed < 0) {
+				// Nothing left to evict:
+				break;
+			}
+			reclaimed += batchReclaimed;
+			reclaimedBytes.addAndGet(batchReclaimed);
+
+			if(!pace(batchStart)) {
+				break;
+			}
+		}
+		runCount.incrementAndGet();
+
+		if(reclaimed > 0) {
+			Logger.getInstance().message("Tile-cache janitor reclaimed " + (reclaimed / 1024) + " KiB in "
+					+ (System.currentTimeMillis() - startTime) + " ms, size on disk "
+					+ (sizeBefore / 1024) + " KiB -> " + (quota.getSizeOnDisk() / 1024) + " KiB.");
+		}
+	}
+
+	/**
+	 * Waits so that a batch takes as long as the deletion-rate demands.
+	 * @param batchStart The start of the batch by <code>System.nanoTime()</code>.
+	 * @return <code>false</code> if the janitor was interrupted.
+	 */
+	private boolean pace(long batchStart) {
+		int rate = deletionRate;
+		if(rate <= 0) {
+			return true;
+		}
+		long batchNanos = TimeUnit.SECONDS.toNanos(BATCH_SIZE) / rate;
+		long remaining = batchNanos - (System.nanoTime() - batchStart);
+		if(remaining > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(remaining);
+
+			} catch (InterruptedException e) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Requests a run if the size reached the high watermark. Never blocks.
+	 * @return <code>true</code> if a run was requested or is in progress.
+	 */
+	public boolean check() {
+		if(!isAboveHighWatermark()) {
+			return false;
+		}
+		janitorLock.lock();
+		try {
+			if(!running && !requested) {
+				requested = true;
+				runRequested.signalAll();
+			}
+			return true;
+
+		} finally {
+			janitorLock.unlock();
+		}
+	}
+
+	/**
+	 * Checks whether the size reached the high watermark.
+	 * @return <code>true</code> if tiles must be evicted.
+	 */
+	public boolean isAboveHighWatermark() {
+		return quota.getSizeOnDisk() >= getHighWatermark();
+	}
+
+	/**
+	 * Returns the size from which tiles are evicted.
+	 * @return The high watermark in bytes.
+	 */
+	public long getHighWatermark() {
+		return quota.getMaximumSizeOnDisk();
+	}
+
+	/**
+	 * Returns the size down to which tiles are evicted.
+	 * @return The low watermark in bytes.
+	 */
+	public long getLowWatermark() {
+		long maximum = quota.getMaximumSizeOnDisk();
+		// Avoid overflows for huge maximum sizes:
+		return maximum > Long.MAX_VALUE / 100 ? maximum / 100 * LOW_WATERMARK_PERC
+											  : maximum * LOW_WATERMARK_PERC / 100;
+	}
+
+	/**
+	 * Waits until no run is requested or in progress.
+	 * @param timeout The maximum time to wait in milliseconds.
+	 * @return <code>true</code> if the janitor is idle, <code>false</code> if the time elapsed.
+	 * @throws InterruptedException Thrown if the waiting thread was interrupted.
+	 */
+	public boolean awaitIdle(long timeout) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		janitorLock.lock();
+		try {
+			while(requested || running) {
+				long remaining = deadline - System.nanoTime();
+				if(remaining <= 0) {
+					return false;
+				}
+				runFinished.awaitNanos(remaining);
+			}
+			return true;
+
+		} finally {
+			janitorLock.unlock();
+		}
+	}
+
+	/**
+	 * Stops the janitor. A run in progress finishes after the current batch.
+	 */
+	public void close() {
+		closed = true;
+		if(janitorThread != null) {
+			janitorThread.interrupt();
+		}
+	}
+
+	/**
+	 * Returns the maximum number of tiles evicted per second.
+	 * @return The deletion-rate. Not limited if not positive.
+	 */
+	public int getDeletionRate() {
+		return deletionRate;
+	}
+
+	/**
+	 * Sets the maximum number of tiles evicted per second.
+	 * @param deletionRate The deletion-rate. Not limited if not positive.
+	 */
+	public void setDeletionRate(int deletionRate) {
+		this.deletionRate = deletionRate;
+	}
+
+	/**
+	 * Returns the number of bytes reclaimed by all runs.
+	 * @return The space reclaimed in bytes.
+	 */
+	public long getReclaimedBytes() {
+		return reclaimedBytes.get();
+	}
+
+	/**
+	 * Returns the number of runs finished.
+	 * @return The number of runs.
+	 */
+	public long getRunCount() {
+		return runCount.get();
+	}
+}
@@ -0,0 +1,619 @@
+package sep.gaia.resources.tiles2d;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import sep.gaia.resources.CacheValidators;
+import sep.gaia.util.Logger;
+
+/**
+ * Persists the index of the <code>TileCache</code> incrementally.
+ * <p>
+ * Each tile added to or removed from the cache is appended to a journal-file as a
+ * record of its own, so that the index survives the termination of the application
+ * at any time. Each record is protected by a checksum: A record only partially written
+ * when the application terminated is detected and cut off on loading.
+ * <p>
+ * From time to time all entries of the cache are written to a checkpoint-file and the
+ * journal is emptied. The checkpoint is written to a temporary file first and then
+ * renamed, so that there is always a complete checkpoint on disk. Loading reads the
+ * checkpoint and replays the journal on it as streams. Replaying is idempotent, so
+ * records written both to a checkpoint and to the journal do no harm.
+ * <p>
+ * How often tiles were used is only persisted by checkpoints.
+ * <p>
+ * The journal is thread-safe.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class TileCacheJournal {
+
+	/**
+	 * The minimum number of records in the journal before a checkpoint is recommended.
+	 */
+	public static final int CHECKPOINT_MIN_RECORDS = 1000;
+
+	/**
+	 * Describes a tile in the cache as stored in the journal.
+	 * @author Matthias Fisch
+	 *
+	 */
+	public static class Entry {
+
+		/**
+		 * The label of the style of the tile.
+		 */
+		private String style;
+
+		/**
+		 * The zoom-level of the tile.
+		 */
+		private int zoom;
+
+		/**
+		 * The x-coordinate of the tile.
+		 */
+		private int x;
+
+		/**
+		 * The y-coordinate of the tile.
+		 */
+		private int y;
+
+		/**
+		 * How often the tile was used yet.
+		 */
+		private int useCount;
+
+		/**
+		 * The time when the tile was loaded.
+		 */
+		private long timestamp;
+
+		/**
+		 * The path of the image-file of the tile or <code>null</code> if it is in the tile-store.
+		 */
+		private String file;
+
+		/**
+		 * The HTTP-validators and the expiry of the image-file or <code>null</code> if unknown.
+		 */
+		private CacheValidators validators;
+
+		/**
+		 * Initializes the description of a tile.
+		 * @param style The label of the style of the tile.
+		 * @param zoom The zoom-level of the tile.
+		 * @param x The x-coordinate of the tile.
+		 * @param y The y-coordinate of the tile.
+		 * @param useCount How often the tile was used yet.
+		 * @param timestamp The time when the tile was loaded.
+		 * @param file The path of the image-file of the tile or <code>null</code> if it is in the tile-store.
+		 */
+		public Entry(String style, int zoom, int x, int y, int useCount, long timestamp, String file) {
+			this(style, zoom, x, y, useCount, timestamp, file, null);
+		}
+
+		/**
+		 * Initializes the description of a tile.
+		 * @param style The label of the style of the tile.
+		 * @param zoom The zoom-level of the tile.
+		 * @param x The x-coordinate of the tile.
+		 * @param y The y-coordinate of the tile.
+		 * @param useCount How often the tile was used yet.
+		 * @param timestamp The time when the tile was loaded.
+		 * @param file The path of the image-file of the tile or <code>null</code> if it is in the tile-store.
+		 * @param validators The HTTP-validators and the expiry of the image-file or <code>null</code> if unknown.
+		 */
+		public Entry(String style, int zoom, int x, int y, int useCount, long timestamp, String file,
+				CacheValidators validators) {
+			this.style = style;
+			this.zoom = zoom;
+			this.x = x;
+			this.y = y;
+			this.useCount = useCount;
+			this.timestamp = timestamp;
+			this.file = file;
+			this.validators = validators;
+		}
+
+		/**
+		 * Returns the label of the style of the tile.
+		 * @return The label of the style of the tile.
+		 */
+		public String getStyle() {
+			return style;
+		}
+
+		/**
+		 * Returns the zoom-level of the tile.
+		 * @return The zoom-level of the tile.
+		 */
+		public int getZoom() {
+			return zoom;
+		}
+
+		/**
+		 * Returns the x-coordinate of the tile.
+		 * @return The x-coordinate of the tile.
+		 */
+		public int getX() {
+			return x;
+		}
+
+		/**
+		 * Returns the y-coordinate of the tile.
+		 * @return The y-coordinate of the tile.
+		 */
+		public int getY() {
+			return y;
+		}
+
+		/**
+		 * Returns how often the tile was used yet.
+		 * @return How often the tile was used yet.
+		 */
+		public int getUseCount() {
+			return useCount;
+		}
+
+		/**
+		 * Returns the time when the tile was loaded.
+		 * @return The time when the tile was loaded.
+		 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		/**
+		 * Returns the path of the image-file of the tile.
+		 * @return The path of the image-file or <code>null</code> if it is in the tile-store.
+		 */
+		public String getFile() {
+			return file;
+		}
+
+		/**
+		 * Returns the HTTP-validators and the expiry of the image-file.
+		 * @return The validators or <code>null</code> if unknown.
+		 */
+		public CacheValidators getValidators() {
+			return validators;
+		}
+
+		/**
+		 * Returns a key identifying the tile.
+		 */
+		private String getKey() {
+			return style + "/" + zoom + "/" + x + "/" + y;
+		}
+	}
+
+	/**
+	 * The first bytes of the journal-file ("GTJ2").
+	 */
+	private static final int JOURNAL_MAGIC = 0x47544a32;
+
+	/**
+	 * The first bytes of the checkpoint-file ("GTC2").
+	 */
+	private static final int CHECKPOINT_MAGIC = 0x47544332;
+
+	/**
+	 * The size of the header of the journal: magic.
+	 */
+	private static final int JOURNAL_HEADER_SIZE = 4;
+
+	/**
+	 * Type of records adding a tile or replacing its description.
+	 */
+	private static final byte ADD_RECORD = 1;
+
+	/**
+	 * Type of records removing a tile.
+	 */
+	private static final byte REMOVE_RECORD = 2;
+
+	/**
+	 * The maximum size of a record. Larger lengths indicate a damaged record.
+	 */
+	private static final int MAX_RECORD_SIZE = 64 * 1024;
+
+	/**
+	 * The file the records are appended to.
+	 */
+	private File journalFile;
+
+	/**
+	 * The file holding the last checkpoint.
+	 */
+	private File checkpointFile;
+
+	/**
+	 * The channel of the journal-file. <code>null</code> until loaded.
+	 */
+	private FileChannel journal;
+
+	/**
+	 * The number of records in the journal.
+	 */
+	private int recordCount;
+
+	/**
+	 * Lock serializing the writing of records and checkpoints.
+	 */
+	private Lock journalLock = new ReentrantLock();
+
+	/**
+	 * Initializes the journal. No file is accessed before <code>load()</code>.
+	 * @param journalFile The file the records are appended to.
+	 * @param checkpointFile The file holding the last checkpoint.
+	 */
+	public TileCacheJournal(File journalFile, File checkpointFile) {
+		this.journalFile = journalFile;
+		this.checkpointFile = checkpointFile;
+	}
+
+	/**
+	 * Checks whether a journal or checkpoint was written before.
+	 * @return <code>true</code> if there is a journal- or checkpoint-file.
+	 */
+	public boolean exists() {
+		return journalFile.exists() || checkpointFile.exists();
+	}
+
+	/**
+	 * Reads the last checkpoint and replays the journal on it. A damaged end of the
+	 * journal is cut off. Afterwards records can be appended.
+	 * @return The entries of the cache in the order they were added.
+	 * @throws IOException Thrown if the journal cannot be opened for appending.
+	 */
+	public Collection<Entry> load() throws IOException {
+		journalLock.lock();
+		try {
+			Map<String, Entry> entries = new LinkedHashMap<>();
+			readCheckpoint(entries);
+			replayJournal(entries);
+			return entries.values();
+
+		} finally {
+			journalLock.unlock();
+		}
+	}
+
+	/**
+	 * Reads the entries of the checkpoint-file. A damaged checkpoint is ignored.
+	 */
+	private void readCheckpoint(Map<String, Entry> entries) {
+		if(!checkpointFile.exists()) {
+			return;
+		}
+		CRC32 checksum = new CRC32();
+		try (DataInputStream in = new DataInputStream(new CheckedInputStream(
+				new BufferedInputStream(new FileInputStream(checkpointFile)), checksum))) {
+			if(in.readInt() != CHECKPOINT_MAGIC) {
+				throw new IOException("Not a checkpoint.");
+			}
+			Map<String, Entry> read = new LinkedHashMap<>();
+			while(in.readBoolean()) {
+				Entry entry = readEntry(in);
+				read.put(entry.getKey(), entry);
+			}
+			long expected = checksum.getValue();
+			if(in.readLong() != expected) {
+				throw new IOException("Checksum mismatch.");
+			}
+			entries.putAll(read);
+
+		} catch (IOException e) {
+			Logger.getInstance().error("Ignoring damaged tile-cache checkpoint " + checkpointFile + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Replays the records of the journal and opens it for appending.
+	 */
+	private void replayJournal(Map<String, Entry> entries) throws IOException {
+		journalFile.getAbsoluteFile().getParentFile().mkdirs();
+		journal = new RandomAccessFile(journalFile, "rw").getChannel();
+		recordCount = 0;
+
+		long valid = 0;
+		if(journal.size() >= JOURNAL_HEADER_SIZE) {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+			try {
+				if(in.readInt() == JOURNAL_MAGIC) {
+					valid = JOURNAL_HEADER_SIZE;
+					valid += replayRecords(in, entries);
+				}
+			} finally {
+				in.close();
+			}
+		}
+
+		if(valid == 0) {
+			// New or unreadable journal:
+			journal.truncate(0);
+			ByteBuffer header = ByteBuffer.allocate(JOURNAL_HEADER_SIZE);
+			header.putInt(JOURNAL_MAGIC).flip();
+			writeFully(header, 0);
+			valid = JOURNAL_HEADER_SIZE;
+
+		} else if(valid < journal.size()) {
+			Logger.getInstance().warning("Cutting off " + (journal.size() - valid) + " damaged bytes of tile-cache journal.");
+			journal.truncate(valid);
+		}
+		journal.position(valid);
+	}
+
+	/**
+	 * Replays records until the end of the journal or a damaged record.
+	 * @return The number of bytes of the complete records.
+	 */
+	private long replayRecords(DataInputStream in, Map<String, Entry> entries) throws IOException {
+		long valid = 0;
+		while(true) {
+			int length;
+			byte[] payload;
+			long checksum;
+			try {
+				length = in.readInt();
+				if(length <= 0 || length > MAX_RECORD_SIZE) {
+					return valid;
+				}
+				payload = new byte[length];
+				in.readFully(payload);
+				checksum = in.readInt() & 0xffffffffL;
+
+			} catch (EOFException e) {
+				return valid;
+			}
+
+			CRC32 crc = new CRC32();
+			crc.update(payload);
+			if(crc.getValue() != checksum) {
+				return valid;
+			}
+
+			DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+			byte type = record.readByte();
+			if(type == ADD_RECORD) {
+				Entry entry = readEntry(record);
+				// Move the tile to the end of the order:
+				entries.remove(entry.getKey());
+				entries.put(entry.getKey(), entry);
+
+			} else if(type == REMOVE_RECORD) {
+				entries.remove(new Entry(record.readUTF(), record.readInt(), record.readInt(), record.readInt(), 0, 0, null).getKey());
+
+			} else {
+				return valid;
+			}
+			valid += 4 + length + 4;
+			recordCount++;
+		}
+	}
+
+	/**
+	 * Records that a tile was added to the cache or its description changed.
+	 * @param entry The description of the tile.
+	 * @throws IOException Thrown if the record cannot be written.
+	 */
+	public void recordAdd(Entry entry) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(ADD_RECORD);
+		writeEntry(out, entry);
+		append(bytes.toByteArray());
+	}
+
+	/**
+	 * Records that a tile was removed from the cache.
+	 * @param style The label of the style of the tile.
+	 * @param zoom The zoom-level of the tile.
+	 * @param x The x-coordinate of the tile.
+	 * @param y The y-coordinate of the tile.
+	 * @throws IOException Thrown if the record cannot be written.
+	 */
+	public void recordRemove(String style, int zoom, int x, int y) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(REMOVE_RECORD);
+		out.writeUTF(style);
+		out.writeInt(zoom);
+		out.writeInt(x);
+		out.writeInt(y);
+		append(bytes.toByteArray());
+	}
+
+	/**
+	 * Appends a record framed by its length and checksum to the journal.
+	 */
+	private void append(byte[] payload) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		ByteBuffer record = ByteBuffer.allocate(4 + payload.length + 4);
+		record.putInt(payload.length).put(payload).putInt((int) crc.getValue());
+		record.flip();
+
+		journalLock.lock();
+		try {
+			if(journal == null) {
+				throw new IOException("Tile-cache journal is not loaded.");
+			}
+			// A single write, so that a record is only torn if the application terminates:
+			writeFully(record, journal.size());
+			recordCount++;
+
+		} finally {
+			journalLock.unlock();
+		}
+	}
+
+	/**
+	 * Writes <code>buffer</code> to the journal at <code>position</code>.
+	 */
+	private void writeFully(ByteBuffer buffer, long position) throws IOException {
+		while(buffer.hasRemaining()) {
+			position += journal.write(buffer, position);
+		}
+	}
+
+	/**
+	 * Checks whether the journal has grown so far that a checkpoint is recommended.
+	 * @param entryCount The number of entries in the cache.
+	 * @return <code>true</code> if the journal has more records than the cache has entries,
+	 * but at least <code>CHECKPOINT_MIN_RECORDS</code>.
+	 */
+	public boolean needsCheckpoint(int entryCount) {
+		journalLock.lock();
+		try {
+			return recordCount >= Math.max(CHECKPOINT_MIN_RECORDS, entryCount);
+		} finally {
+			journalLock.unlock();
+		}
+	}
+
+	/**
+	 * Writes all entries of the cache to a new checkpoint and empties the journal.
+	 * No records are appended while <code>entries</code> is iterated, so it should be
+	 * a view of the cache and not a copy made before: A change of the cache missing in
+	 * the view is recorded after the checkpoint then, as long as the cache is changed
+	 * before the change is recorded.
+	 * @param entries The entries of the cache.
+	 * @throws IOException Thrown if the checkpoint cannot be written.
+	 */
+	public void checkpoint(Iterable<Entry> entries) throws IOException {
+		journalLock.lock();
+		try {
+			checkpointFile.getAbsoluteFile().getParentFile().mkdirs();
+			File tempFile = new File(checkpointFile.getPath() + ".tmp");
+
+			CRC32 checksum = new CRC32();
+			try (FileOutputStream fileOut = new FileOutputStream(tempFile)) {
+				DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(fileOut), checksum));
+				out.writeInt(CHECKPOINT_MAGIC);
+				// Each entry is preceded by a flag, since the number of entries is unknown:
+				for(Entry entry : entries) {
+					out.writeBoolean(true);
+					writeEntry(out, entry);
+				}
+				out.writeBoolean(false);
+				out.flush();
+				long value = checksum.getValue();
+				out.writeLong(value);
+				out.flush();
+				// The checkpoint must be complete on disk before it replaces the old one:
+				fileOut.getChannel().force(false);
+			}
+			Files.move(tempFile.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+
+			// The records are contained in the checkpoint now:
+			if(journal != null) {
+				journal.truncate(JOURNAL_HEADER_SIZE);
+				journal.force(false);
+				recordCount = 0;
+			}
+
+		} finally {
+			journalLock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of records in the journal.
+	 * @return The number of records appended since the last checkpoint.
+	 */
+	public int getRecordCount() {
+		journalLock.lock();
+		try {
+			return recordCount;
+		} finally {
+			journalLock.unlock();
+		}
+	}
+
+	/**
+	 * Closes the journal-file. Records cannot be appended afterwards.
+	 * @throws IOException Thrown if the file cannot be closed.
+	 */
+	public void close() throws IOException {
+		journalLock.lock();
+		try {
+			if(journal != null) {
+				journal.force(false);
+				journal.close();
+				journal = null;
+			}
+		} finally {
+			journalLock.unlock();
+		}
+	}
+
+	/**
+	 * Writes the description of a tile.
+	 */
+	private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+		out.writeUTF(entry.getStyle());
+		out.writeInt(entry.getZoom());
+		out.writeInt(entry.getX());
+		out.writeInt(entry.getY());
+		out.writeInt(entry.getUseCount());
+		out.writeLong(entry.getTimestamp());
+		out.writeUTF(entry.getFile() != null ? entry.getFile() : "");
+
+		CacheValidators validators = entry.getValidators();
+		out.writeBoolean(validators != null);
+		if(validators != null) {
+			out.writeUTF(validators.getEntityTag() != null ? validators.getEntityTag() : "");
+			out.writeLong(validators.getLastModified());
+			out.writeLong(validators.getExpires());
+		}
+	}
+
+	/**
+	 * Reads the description of a tile.
+	 */
+	private static Entry readEntry(DataInputStream in) throws IOException {
+		String style = in.readUTF();
+		int zoom = in.readInt();
+		int x = in.readInt();
+		int y = in.readInt();
+		int useCount = in.readInt();
+		long timestamp = in.readLong();
+		String file = in.readUTF();
+
+		CacheValidators validators = null;
+		if(in.readBoolean()) {
+			String entityTag = in.readUTF();
+			long lastModified = in.readLong();
+			long expires = in.readLong();
+			validators = new CacheValidators(entityTag.isEmpty() ? null : entityTag, lastModified, expires);
+		}
+		return new Entry(style, zoom, x, y, useCount, timestamp, file.isEmpty() ? null : file, validators);
+	}
+}
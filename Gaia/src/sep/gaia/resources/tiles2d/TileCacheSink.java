@@ -0,0 +1,84 @@
+package sep.gaia.resources.tiles2d;
+
+import sep.gaia.resources.AbstractLoaderWorker;
+import sep.gaia.resources.ResultSink;
+
+import com.jogamp.opengl.util.texture.TextureData;
+
+/**
+ * Adds the tiles loaded in the background to the <code>TileCache</code>, e.g. by
+ * prefetching or seeding.
+ * <p>
+ * Only the image-file of a tile is kept, the decoded pixels are not uploaded. The worker
+ * owns the reference of each tile, even if it shared the fetch of another worker, and
+ * the cache keeps a reference of its own. So the reference of the worker is released
+ * after the tile was added.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class TileCacheSink implements ResultSink<TileResource> {
+
+	/**
+	 * The cache the tiles are added to.
+	 */
+	private TileCache cache;
+
+	/**
+	 * Flag if the tiles are added as viewed, i.e. by <code>TileCache.add()</code> instead
+	 * of <code>TileCache.addUnviewed()</code>.
+	 */
+	private boolean viewed;
+
+	/**
+	 * Initializes the sink.
+	 * @param cache The cache the tiles are added to.
+	 * @param viewed Flag if the tiles are added as viewed, i.e. by <code>TileCache.add()</code>
+	 * instead of <code>TileCache.addUnviewed()</code>.
+	 */
+	public TileCacheSink(TileCache cache, boolean viewed) {
+		this.cache = cache;
+		this.viewed = viewed;
+	}
+
+	@Override
+	public boolean onResult(AbstractLoaderWorker<?, TileResource> worker, TileResource result) {
+		try {
+			byte[] image = result.getEncodedImage();
+			boolean cached = false;
+			if(isWanted(worker, result)) {
+				cached = viewed ? cache.add(result) : cache.addUnviewed(result);
+				if(cached) {
+					cache.manage();
+				}
+			}
+			onLoaded(result, image != null ? image.length : 0, cached);
+
+		} finally {
+			TextureData data = result.getTextureData();
+			if(data instanceof PooledTextureData) {
+				((PooledTextureData) data).release();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks whether a tile loaded should be added to the cache. All tiles are by default.
+	 * @param worker The worker having loaded the tile.
+	 * @param tile The tile loaded.
+	 * @return <code>true</code> if the tile should be added.
+	 */
+	protected boolean isWanted(AbstractLoaderWorker<?, TileResource> worker, TileResource tile) {
+		return true;
+	}
+
+	/**
+	 * Called for each tile loaded, after it was added to the cache. Does nothing by default.
+	 * @param tile The tile loaded.
+	 * @param imageSize The size of its image-file in bytes.
+	 * @param cached Flag if the tile was added to the cache.
+	 */
+	protected void onLoaded(TileResource tile, long imageSize, boolean cached) {
+	}
+}
@@ -0,0 +1,215 @@
+package sep.gaia.resources.tiles2d;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import javax.media.opengl.GLProfile;
+
+import jogamp.opengl.util.pngj.ImageInfo;
+import jogamp.opengl.util.pngj.PngReader;
+import jogamp.opengl.util.pngj.PngjException;
+import jogamp.opengl.util.pngj.chunks.PngChunkPLTE;
+import jogamp.opengl.util.pngj.chunks.PngChunkTRNS;
+
+import com.jogamp.opengl.util.texture.TextureData;
+import com.jogamp.opengl.util.texture.TextureIO;
+
+/**
+ * Decodes the image-files of tiles into texture-data.
+ * <p>
+ * PNG-images fitting into a buffer of the <code>PixelBufferPool</code> are decoded row by
+ * row directly into a pooled buffer as RGBA-pixels, so that decoding a tile allocates no
+ * pixel-memory. All other images, or all images if the pool is exhausted, are decoded by
+ * <code>TextureIO</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class TileImageDecoder {
+
+	/**
+	 * The buffer of the samples of a row reused by each thread.
+	 */
+	private static ThreadLocal<int[]> rowBuffer = new ThreadLocal<>();
+
+	/**
+	 * The buffer of the palette of indexed images reused by each thread.
+	 */
+	private static ThreadLocal<int[]> paletteBuffer = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[256];
+		}
+	};
+
+	/**
+	 * No instances, all methods are static.
+	 */
+	private TileImageDecoder() { }
+
+	/**
+	 * Decodes an image-file without generating mipmaps.
+	 * @param profile The OpenGL-profile to use for the texture-data.
+	 * @param image The content of the image-file.
+	 * @param suffix The suffix of the image-files format, e.g. <code>Style.getImageSuffix()</code>.
+	 * @return The texture-data of the image. If it is a <code>PooledTextureData</code>,
+	 * it should be released when not needed any more.
+	 * @throws IOException Thrown if the image-file is invalid.
+	 */
+	public static TextureData decode(GLProfile profile, byte[] image, String suffix) throws IOException {
+		return decode(profile, image, suffix, PixelBufferPool.getInstance());
+	}
+
+	/**
+	 * Decodes an image-file without generating mipmaps, taking the pixels from <code>pool</code>.
+	 * @param profile The OpenGL-profile to use for the texture-data.
+	 * @param image The content of the image-file.
+	 * @param suffix The suffix of the image-files format, e.g. <code>Style.getImageSuffix()</code>.
+	 * @param pool The pool to take the pixels from.
+	 * @return The texture-data of the image. If it is a <code>PooledTextureData</code>,
+	 * it should be released when not needed any more.
+	 * @throws IOException Thrown if the image-file is invalid.
+	 */
+	public static TextureData decode(GLProfile profile, byte[] image, String suffix, PixelBufferPool pool)
+			throws IOException {
+		if(TextureIO.PNG.equalsIgnoreCase(suffix)) {
+			TextureData pooled = decodePng(profile, image, pool);
+			if(pooled != null) {
+				return pooled;
+			}
+		}
+
+		try {
+			return TextureIO.newTextureData(profile, new ByteArrayInputStream(image), false, suffix);
+
+		} catch (PngjException | IllegalArgumentException e) {
+			throw new IOException("Invalid image: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Decodes a PNG-image into a pooled buffer.
+	 * @return The texture-data or <code>null</code> if the image is not supported or no
+	 * buffer is available.
+	 * @throws IOException Thrown if the image-file is invalid.
+	 */
+	private static PooledTextureData decodePng(GLProfile profile, byte[] image, PixelBufferPool pool)
+			throws IOException {
+		PooledTextureData data = null;
+		try {
+			PngReader reader = new PngReader(new ByteArrayInputStream(image), null);
+			ImageInfo info = reader.imgInfo;
+			data = PooledTextureData.allocate(profile, info.cols, info.rows, pool);
+			if(data == null) {
+				reader.end();
+				return null;
+			}
+			// One sample per value, regardless of the bit-depth:
+			reader.setUnpackedMode(true);
+
+			int[] samples = rowBuffer.get();
+			if(samples == null || samples.length < info.samplesPerRow) {
+				samples = new int[Math.max(info.samplesPerRow, 256 * 4)];
+				rowBuffer.set(samples);
+			}
+
+			ByteBuffer pixels = (ByteBuffer) data.getBuffer();
+			int[] palette = info.indexed ? readPalette(reader) : null;
+			int transparentGray = -1;
+			if(info.greyscale && !info.alpha) {
+				PngChunkTRNS trns = reader.getMetadata().getTRNS();
+				transparentGray = trns != null ? trns.getGray() : -1;
+			}
+
+			for(int row = 0; row < info.rows; row++) {
+				reader.readRowInt(samples, row);
+				// OpenGL expects the lowest row first:
+				int offset = (info.rows - 1 - row) * info.cols * 4;
+				convertRow(info, samples, palette, transparentGray, pixels, offset);
+			}
+			reader.end();
+			return data;
+
+		} catch (PngjException | IllegalArgumentException | IndexOutOfBoundsException e) {
+			if(data != null) {
+				data.release();
+			}
+			throw new IOException("Invalid PNG-image: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Reads the palette of an indexed image, combined with its transparency.
+	 * @return The entries as RGBA packed into an int each.
+	 */
+	private static int[] readPalette(PngReader reader) {
+		PngChunkPLTE plte = reader.getMetadata().getPLTE();
+		if(plte == null) {
+			throw new IllegalArgumentException("Missing palette");
+		}
+		PngChunkTRNS trns = reader.getMetadata().getTRNS();
+		int[] alpha = trns != null ? trns.getPalletteAlpha() : null;
+
+		// Indices beyond the entries are mapped to transparent black:
+		int[] palette = paletteBuffer.get();
+		Arrays.fill(palette, 0);
+		for(int i = 0; i < plte.getNentries() && i < palette.length; i++) {
+			int rgb = plte.getEntry(i) & 0xffffff;
+			int a = alpha != null && i < alpha.length ? alpha[i] & 0xff : 0xff;
+			palette[i] = (rgb << 8) | a;
+		}
+		return palette;
+	}
+
+	/**
+	 * Converts the samples of a row to RGBA-pixels.
+	 * @param info The format of the image.
+	 * @param samples The samples of the row, one per value.
+	 * @param palette The palette of an indexed image, otherwise <code>null</code>.
+	 * @param transparentGray The transparent gray value of a gray image without alpha, otherwise -1.
+	 * @param pixels The buffer to write to.
+	 * @param offset The position in <code>pixels</code> of the first pixel of the row.
+	 */
+	private static void convertRow(ImageInfo info, int[] samples, int[] palette, int transparentGray,
+			ByteBuffer pixels, int offset) {
+		int channels = info.channels;
+		// Samples of 16 bit are reduced to 8 bit, samples of less bits are expanded:
+		int shift = info.bitDepth > 8 ? info.bitDepth - 8 : 0;
+		int scale = info.bitDepth < 8 && !info.indexed ? 255 / ((1 << info.bitDepth) - 1) : 1;
+
+		for(int col = 0; col < info.cols; col++) {
+			int s = col * channels;
+			int r, g, b, a;
+			if(palette != null) {
+				int entry = palette[samples[s] & 0xff];
+				r = entry >>> 24;
+				g = (entry >>> 16) & 0xff;
+				b = (entry >>> 8) & 0xff;
+				a = entry & 0xff;
+
+			} else if(info.greyscale) {
+				int gray = samples[s];
+				r = g = b = (gray >> shift) * scale;
+				if(info.alpha) {
+					a = (samples[s + 1] >> shift) * scale;
+				} else {
+					a = gray == transparentGray ? 0 : 0xff;
+				}
+
+			} else {
+				r = samples[s] >> shift;
+				g = samples[s + 1] >> shift;
+				b = samples[s + 2] >> shift;
+				a = info.alpha ? samples[s + 3] >> shift : 0xff;
+			}
+
+			int p = offset + col * 4;
+			pixels.put(p, (byte) r);
+			pixels.put(p + 1, (byte) g);
+			pixels.put(p + 2, (byte) b);
+			pixels.put(p + 3, (byte) a);
+		}
+	}
+}
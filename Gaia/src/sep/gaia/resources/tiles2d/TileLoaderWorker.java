@@ -7,6 +7,7 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
 
 import javax.media.opengl.GLProfile;
 
@@ -14,12 +15,20 @@ import jogamp.opengl.util.pngj.PngjException;
 
 import sep.gaia.resources.AbstractLoaderWorker;
 import sep.gaia.resources.Cache;
+import sep.gaia.resources.CacheValidators;
+import sep.gaia.resources.CircuitBreaker;
 import sep.gaia.resources.DataResource;
+import sep.gaia.resources.HostGovernor;
+import sep.gaia.resources.HttpDownloader;
+import sep.gaia.resources.HttpStatusException;
+import sep.gaia.resources.NegativeCache;
+import sep.gaia.resources.ResultSink;
+import sep.gaia.resources.SingleFlight;
+import sep.gaia.resources.monitoring.Monitor;
 import sep.gaia.util.IntegerVector3D;
 import sep.gaia.util.Logger;
 
 import com.jogamp.opengl.util.texture.TextureData;
-import com.jogamp.opengl.util.texture.TextureIO;
 
 /**
  * A worker for sequentially loading map-tiles from a server.
@@ -28,6 +37,50 @@ import com.jogamp.opengl.util.texture.TextureIO;
  */
 public class TileLoaderWorker extends AbstractLoaderWorker<TileQuery, TileResource> {
 
+	/**
+	 * Creates a copy of a tile fetched for each worker sharing the fetch, so that each
+	 * one owns a reference of its own to the decoded pixels and may release it.
+	 */
+	private static SingleFlight.Sharer<TileResource> tileSharer = new SingleFlight.Sharer<TileResource>() {
+		@Override
+		public TileResource share(TileResource tile) {
+			TextureData data = tile.getTextureData();
+			TextureData shared = data != null ? DecodedTileTier.share(data) : null;
+			if(data != null && shared == null) {
+				// The pixels were already returned to their pool:
+				return null;
+			}
+			TileResource copy = new TileResource(tile.getCoord());
+			copy.setStyle(tile.getStyle());
+			copy.setTextureData(shared);
+			copy.setEncodedImage(tile.getEncodedImage());
+			copy.setValidators(tile.getValidators());
+			copy.setTimestamp(tile.getTimestamp());
+			copy.setDummy(tile.isDummy());
+			return copy;
+		}
+
+		@Override
+		public void release(TileResource tile) {
+			TextureData data = tile.getTextureData();
+			if(data instanceof PooledTextureData) {
+				((PooledTextureData) data).release();
+			}
+		}
+	};
+
+	/**
+	 * The tiles currently fetched by any worker. A tile requested by several
+	 * queries at the same time is fetched and decoded only once. Each worker
+	 * sharing a fetch gets a copy of its own.
+	 */
+	private static SingleFlight<TileResource> inFlight = new SingleFlight<>(tileSharer);
+
+	/**
+	 * The tiles that failed recently and are not requested again until their entry expired.
+	 */
+	private static NegativeCache failedTiles = new NegativeCache();
+
 	/**
 	 * The OpenGL-profile to use when loading texture-data.
 	 */
@@ -50,6 +103,23 @@ public class TileLoaderWorker extends AbstractLoaderWorker<TileQuery, TileResour
 		this.profile = profile;
 	}
 
+	/**
+	 * Creates a worker loading tiles in the background, e.g. for prefetching. No cache is
+	 * passed, as the caller is expected to skip the tiles cached already.
+	 * @param query The tiles to load and the subserver to load them from.
+	 * @param profile The OpenGL-profile to use when loading texture-data.
+	 * @param completionQueue The queue the worker is added to when it finished.
+	 * @param sink The sink receiving the tiles loaded, usually a <code>TileCacheSink</code>.
+	 * @return The worker, not submitted yet.
+	 */
+	public static TileLoaderWorker createUncached(TileQuery query, GLProfile profile,
+			BlockingQueue<AbstractLoaderWorker<?, ?>> completionQueue, ResultSink<TileResource> sink) {
+		TileLoaderWorker worker = new TileLoaderWorker(query, profile, null);
+		worker.setCompletionQueue(completionQueue);
+		worker.setResultSink(sink);
+		return worker;
+	}
+
 	@Override
 	public void run() {
 		TileQuery query = getSubQuery();
@@ -81,12 +151,18 @@ public class TileLoaderWorker extends AbstractLoaderWorker<TileQuery, TileResour
 				}
 				
 				List<TileResource> results = new LinkedList<>();
+				// The results not taken over by the result-sink:
+				List<TileResource> unpublished = new LinkedList<>();
 				
 				// Add texture-data to each tile:
 				Iterator<TileResource> tileIter = tileResources.iterator();
 				while(tileIter.hasNext() && !isInterrupted()) {
 					
 					TileResource tile = tileIter.next();
+					if(!isRetained(tile)) {
+						// Not needed any more, e.g. not visible:
+						continue;
+					}
 					
 					// Check if present in cache:
 					boolean cacheHit = false;
@@ -95,15 +171,22 @@ public class TileLoaderWorker extends AbstractLoaderWorker<TileQuery, TileResour
 						TileResource result = cache.get(tile.getKey());
 						if(result != null) {
 							results.add(result);
+							if(!publishResult(result)) {
+								unpublished.add(result);
+							}
 							cacheHit = true;
 						}
 					}
 					
 					// The texture was not found in cache, so load it from the server:
 					if(!cacheHit) {
-						TileResource result = getFromRemoteSource(tile, style, subServer);
+						TileResource result = getShared(tile, style, subServer);
 						if(result != null) {
 							results.add(result);
+							// Let the tile be drawn before the remaining ones are loaded:
+							if(!publishResult(result)) {
+								unpublished.add(result);
+							}
 						}
 					}
 				}
@@ -111,12 +194,77 @@ public class TileLoaderWorker extends AbstractLoaderWorker<TileQuery, TileResour
 				if(!isInterrupted()) {
 					// Set all tile-resources as the workers result:
 					setResults(results);
+					
+				} else {
+					// Nobody receives these tiles, so their pixels return to the pool at once:
+					for(TileResource result : unpublished) {
+						tileSharer.release(result);
+					}
 				}
 			}
 		}
 	}
 
-	private TileResource getFromRemoteSource(TileResource tile, Style style, Style.SubServer subServer) {
+	/**
+	 * Loads <code>tile</code> from the server unless another worker is already loading it.
+	 * In that case a copy of the tile loaded by the other worker is returned. Either way
+	 * the caller owns the reference to the decoded pixels of the tile returned.
+	 * @param tile The tile to load.
+	 * @param style The style of the tile.
+	 * @param subServer The subserver to load the tile from.
+	 * @return The tile loaded or <code>null</code> if it could not be loaded or the
+	 * worker was interrupted.
+	 */
+	private TileResource getShared(final TileResource tile, final Style style, final Style.SubServer subServer) {
+		try {
+			return inFlight.execute(tile.getKey(), getCancellationToken(), new SingleFlight.Fetch<TileResource>() {
+				@Override
+				public TileResource fetch() {
+					return getFromRemoteSource(tile, style, subServer);
+				}
+			});
+		} catch (IOException e) {
+			// Errors are already logged by the fetching worker.
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the registry of the tiles currently fetched by any worker.
+	 * @return The registry of the tiles in flight.
+	 */
+	public static SingleFlight<TileResource> getInFlight() {
+		return inFlight;
+	}
+
+	/**
+	 * Returns the tiles that failed recently and are not requested again until their entry expired.
+	 * @return The negative cache shared by all workers.
+	 */
+	public static NegativeCache getFailedTiles() {
+		return failedTiles;
+	}
+
+	/**
+	 * Loads <code>tile</code> from <code>preferred</code> or, if it is down, from another subserver
+	 * of <code>style</code>. Tiles that failed recently are not requested at all.
+	 * @param tile The tile to load.
+	 * @param style The style of the tile.
+	 * @param preferred The subserver to load the tile from if it is healthy.
+	 * @return The tile loaded or <code>null</code> if it could not be loaded or the
+	 * worker was interrupted.
+	 */
+	private TileResource getFromRemoteSource(TileResource tile, Style style, Style.SubServer preferred) {
+		if(failedTiles.isFailed(tile.getKey())) {
+			return null;
+		}
+		Style.SubServer subServer = style.selectSubServer(preferred);
+		if(subServer == null) {
+			// All subservers are down, so the tile is loaded after one of them recovered:
+			return null;
+		}
+		CircuitBreaker breaker = subServer.getCircuitBreaker();
+		
 		// Get the vector (x, y, zoom):
 		IntegerVector3D coords = tile.getCoord();
 		
@@ -132,22 +280,78 @@ public class TileLoaderWorker extends AbstractLoaderWorker<TileQuery, TileResour
 					+ coords.getY() + " $z=" + coords.getZ());
 		}
 		
-		if(url != null) {
+		if(url == null) {
+			breaker.recordAbandoned();
+			
+		} else {
 			
 			TextureData textureData;
+			byte[] content;
+			CacheValidators validators;
+			try {
+				// Wait until the subserver permits another request:
+				HostGovernor.Permit permit = HostGovernor.getInstance().acquire(subServer.getHostname(),
+						subServer.getMaxConnections(), getCancellationToken());
+				if(permit == null) {
+					breaker.recordAbandoned();
+					return null;
+				}
+				
+				// Download the image, aborting if the query is cancelled meanwhile:
+				long fetchStart = System.nanoTime();
+				HttpDownloader.Response response;
+				try {
+					response = HttpDownloader.getInstance().download(url, null, getCancellationToken());
+				} finally {
+					permit.release();
+				}
+				if(response == null) {
+					breaker.recordAbandoned();
+					return null;
+				}
+				breaker.recordSuccess();
+				content = response.getContent();
+				validators = response.getValidators();
+				Monitor.getInstance().getFetchLatency(subServer.getHostname())
+									 .observe(System.nanoTime() - fetchStart);
+				
+			} catch (HttpStatusException e) {
+				if(e.isServerError()) {
+					breaker.recordFailure();
+				} else {
+					// The subserver is healthy, but does not have the tile:
+					breaker.recordSuccess();
+				}
+				failedTiles.recordStatus(tile.getKey(), e.getStatusCode());
+				Logger.getInstance().warning("Unable to load tile from " + url.toString() + ": " + e.getMessage());
+				return null;
+				
+			} catch (IOException e) {
+				// The subserver is unreachable, which the breaker notes instead of the tile:
+				breaker.recordFailure();
+				Logger.getInstance().warning("Unable to load tile from " + url.toString());
+				return null;
+				
+			}
+			
 			try {
 				// Create texture-data without auto-generating mipmaps:
-				textureData = TextureIO.newTextureData(profile, url, false, style.getImageSuffix());
+				textureData = TileImageDecoder.decode(profile, content, style.getImageSuffix());
 				
 			} catch (IOException | PngjException e) {
-				// TODO Set offline here!
-				Logger.getInstance().warning("Unable to load tile from " + url.toString());
+				// The image-file delivered is invalid:
+				failedTiles.recordFailure(tile.getKey());
+				Logger.getInstance().warning("Unable to decode tile from " + url.toString());
 				return null;
 			}
 			
 			//System.out.println("I've finished loading " + currentTile.getKey());
 			
 			tile.setTextureData(textureData);
+			// Keep the image-file, so that the cache does not have to encode it again:
+			tile.setEncodedImage(content);
+			// Allows the cache to revalidate the tile when it expires:
+			tile.setValidators(validators);
 			// Tile has been filled correctly, so remove dummy-flag:
 			tile.setDummy(false);
 			
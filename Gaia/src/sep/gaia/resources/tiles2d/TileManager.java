@@ -2,11 +2,18 @@ package sep.gaia.resources.tiles2d;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -28,18 +35,24 @@ import org.xml.sax.SAXException;
 import sep.gaia.environment.Environment;
 import sep.gaia.environment.Environment.EnvVariable;
 import sep.gaia.resources.Cache;
+import sep.gaia.resources.CircuitBreaker;
 import sep.gaia.resources.DataResource;
 import sep.gaia.resources.DataResourceManager;
 import sep.gaia.resources.Loader;
 import sep.gaia.resources.LoaderEventListener;
 import sep.gaia.resources.QuerySplitter;
+import sep.gaia.resources.WorkerPool.ExecutionMode;
 import sep.gaia.resources.tiles2d.Style.SubServer;
 import sep.gaia.state.AbstractStateManager.StateType;
 import sep.gaia.state.GLState;
 import sep.gaia.state.State;
 import sep.gaia.state.StateManager;
 import sep.gaia.util.AlgoUtil;
+import sep.gaia.util.FloatBoundingBox;
+import sep.gaia.util.FloatVector3D;
 import sep.gaia.util.IntegerBoundingBox;
+import sep.gaia.util.IntegerVector3D;
+import sep.gaia.util.Logger;
 
 /**
  * <code>StateObservable</code>: <code>TileManager</code> is responsible for the
@@ -73,18 +86,18 @@ public final class TileManager extends DataResourceManager<TileResource>
 
 		private SubServer subServer;
 
-		private List<DataResource> tiles = new LinkedList<>();
+		private Map<DataResource, Integer> tiles = new LinkedHashMap<>();
 
 		public SubServerTileList(SubServer subServer) {
 			super();
 			this.subServer = subServer;
 		}
 
-		public boolean add(TileResource tile) {
-			return tiles.add(tile);
+		public void add(TileResource tile, int priority) {
+			tiles.put(tile, priority);
 		}
 
-		public List<DataResource> getResources() {
+		public Map<DataResource, Integer> getResources() {
 			return tiles;
 		}
 
@@ -95,8 +108,18 @@ public final class TileManager extends DataResourceManager<TileResource>
 	 */
 	public static final String MANAGER_LABEL = "TileManager";
 
+	/**
+	 * The maximum number of tiles beyond the visible ones in each direction
+	 * that are prefetched because the view is expected to move there.
+	 */
 	private static final int PRELOAD_COUNT = 3;
 
+	/**
+	 * The time in milliseconds the position of the view is extrapolated ahead
+	 * when prefetching tiles.
+	 */
+	private static final long PREDICTION_HORIZON = 400;
+
 	private TileCache cache;
 
 	/**
@@ -123,6 +146,13 @@ public final class TileManager extends DataResourceManager<TileResource>
 	 */
 	private Collection<TileResource> loadedTiles = new LinkedList<>();
 
+	/**
+	 * The dummies of the tiles requested for the current view. Passed on with every
+	 * update, so that tiles still loading can be drawn by the tiles covering them.
+	 * Guarded by <code>loadedResourcesLock</code>.
+	 */
+	private Collection<TileResource> viewDummies = new LinkedList<>();
+
 	private GLProfile glProfile;
 	
 	/**
@@ -130,6 +160,38 @@ public final class TileManager extends DataResourceManager<TileResource>
 	 */
 	private Lock loadedResourcesLock = new ReentrantLock();
 
+	/**
+	 * The seeding of a region running or <code>null</code> if there is none.
+	 */
+	private TileSeeder seeder;
+
+	/**
+	 * Follows the view to predict where it will be shortly.
+	 */
+	private MotionPredictor motionPredictor = new MotionPredictor();
+
+	/**
+	 * Loads the tiles the view is expected to reach shortly into the cache.
+	 */
+	private TilePrefetcher prefetcher;
+
+	/**
+	 * Loads the tiles around the view into the cache while it stands still.
+	 */
+	private IdleTilePrefetcher idlePrefetcher;
+
+	/**
+	 * Sets the manager off-line when all subservers of the current style are
+	 * down and on-line again when one of them recovered.
+	 */
+	private CircuitBreaker.Listener healthListener = new CircuitBreaker.Listener() {
+
+		@Override
+		public void onStateChanged(CircuitBreaker breaker, CircuitBreaker.State state) {
+			updateOnline();
+		}
+	};
+
 	/**
 	 * Initializes a tile-manager using a persistent cache.
 	 * 
@@ -137,22 +199,28 @@ public final class TileManager extends DataResourceManager<TileResource>
 	 *            The OpenGL-Profile to use.
 	 */
 	public TileManager(GLProfile glProfile) {
-		super(MANAGER_LABEL, false, false);
+		super(MANAGER_LABEL, false, true);
 
+		this.glProfile = glProfile;
 		this.cache = new TileCache(this, glProfile);
 
 		/*
 		 * A loader must be created for performing queries for tiles. Also it
 		 * will use a TileCache as a on-disk-cache.
 		 */
-		loader = new Loader<TileQuery, TileResource>(this.cache,
-				new TileWorkerFactory(glProfile), this);
+		loader = new Loader<TileQuery, TileResource>(MANAGER_LABEL, this.cache,
+				new TileWorkerFactory(glProfile), this, Loader.DEFAULT_WORKER_QUOTA);
 
 		loader.addListener(this); // Listen for new data available
+		prefetcher = new TilePrefetcher(MANAGER_LABEL + "-prefetch", this.cache, glProfile);
+		idlePrefetcher = new IdleTilePrefetcher(MANAGER_LABEL + "-idle", this.cache, glProfile, loader);
 
 		loader.start();
+		idlePrefetcher.start();
+		registerMetrics(loader);
 
 		loadStylesFromXML(); // Read the available styles from file
+		updateWorkerQuota();
 	}
 
 	/**
@@ -162,23 +230,44 @@ public final class TileManager extends DataResourceManager<TileResource>
 	 *            The OpenGL-Profile to use.
 	 */
 	public TileManager(GLProfile glProfile, int maximumCacheSize) {
-		super(MANAGER_LABEL, false, false);
+		super(MANAGER_LABEL, false, true);
 
 		/*
 		 * A loader must be created for performing queries for tiles. Also it
 		 * will use a TileCache as a on-disk-cache.
 		 */
+		this.glProfile = glProfile;
 		TileCache cache = new TileCache(this, glProfile);
 		cache.setMaxEntries(maximumCacheSize);
+		this.cache = cache;
 
-		loader = new Loader<TileQuery, TileResource>(cache,
-				new TileWorkerFactory(glProfile), this);
+		loader = new Loader<TileQuery, TileResource>(MANAGER_LABEL, cache,
+				new TileWorkerFactory(glProfile), this, Loader.DEFAULT_WORKER_QUOTA);
 
 		loader.addListener(this); // Listen for new data available
+		prefetcher = new TilePrefetcher(MANAGER_LABEL + "-prefetch", this.cache, glProfile);
+		idlePrefetcher = new IdleTilePrefetcher(MANAGER_LABEL + "-idle", this.cache, glProfile, loader);
 
 		loader.start();
+		idlePrefetcher.start();
+		registerMetrics(loader);
 
 		loadStylesFromXML(); // Read the available styles from file
+		updateWorkerQuota();
+	}
+
+	/**
+	 * Sets the number of workers the loader may run concurrently to the sum of
+	 * the maximum connections of all subservers of the current style.
+	 */
+	private void updateWorkerQuota() {
+		if (currentStyle != null) {
+			int quota = 0;
+			for (SubServer subServer : currentStyle.getSubServers()) {
+				quota += subServer.getMaxConnections();
+			}
+			loader.setWorkerQuota(quota);
+		}
 	}
 
 	/**
@@ -314,6 +403,7 @@ public final class TileManager extends DataResourceManager<TileResource>
 					if (subServerHost != null && subServerMaxCons > 0) {
 						Style.SubServer subServer = new Style.SubServer(
 								subServerHost, subServerMaxCons);
+						subServer.getCircuitBreaker().setListener(healthListener);
 						subservers.add(subServer);
 					}
 
@@ -366,10 +456,22 @@ public final class TileManager extends DataResourceManager<TileResource>
 
 		if (query != null) {
 
-			Collection<DataResource> resources = query.getResources();
+			// The most important tiles first, so that each worker starts with them:
+			Map<DataResource, Integer> resources = query.getPriorities();
 
-			List<SubServerTileList> tileLists = new LinkedList<>();
+			// Route around subservers that are down, unless all of them are:
+			List<SubServer> subServers = new LinkedList<>();
 			for (SubServer subServer : currentStyle.getSubServers()) {
+				if (subServer.getCircuitBreaker().isAvailable()) {
+					subServers.add(subServer);
+				}
+			}
+			if (subServers.isEmpty()) {
+				subServers.addAll(currentStyle.getSubServers());
+			}
+
+			List<SubServerTileList> tileLists = new LinkedList<>();
+			for (SubServer subServer : subServers) {
 				int maxConnections = subServer.getMaxConnections();
 				for (int i = 0; i < maxConnections; i++) {
 					tileLists.add(new SubServerTileList(subServer));
@@ -378,10 +480,11 @@ public final class TileManager extends DataResourceManager<TileResource>
 
 			ListIterator<SubServerTileList> tileListsIter = tileLists
 					.listIterator();
-			for (DataResource resource : resources) {
+			for (Map.Entry<DataResource, Integer> entry : resources.entrySet()) {
+				DataResource resource = entry.getKey();
 				if (resource instanceof TileResource) {
 					SubServerTileList list = tileListsIter.next();
-					list.add((TileResource) resource);
+					list.add((TileResource) resource, entry.getValue());
 
 					if (!tileListsIter.hasNext()) {
 						tileListsIter = tileLists.listIterator();
@@ -390,9 +493,11 @@ public final class TileManager extends DataResourceManager<TileResource>
 			}
 
 			for (SubServerTileList list : tileLists) {
-				List<DataResource> listResources = list.getResources();
+				Map<DataResource, Integer> listResources = list.getResources();
 				if (!listResources.isEmpty()) {
-					splittedQueries.add(new TileQuery(listResources));
+					TileQuery subQuery = new TileQuery(listResources);
+					subQuery.setSubServer(list.subServer);
+					splittedQueries.add(subQuery);
 				}
 			}
 		}
@@ -412,24 +517,27 @@ public final class TileManager extends DataResourceManager<TileResource>
 			IntegerBoundingBox toLoad = AlgoUtil.glToTile(
 					glState.getBoundingBox(), glState.getZoom());
 
-			loader.requestWorkersStop();
-			loader.clearQueryQueue();
+			// Prefetching while idle yields to the visible tiles:
+			idlePrefetcher.onActivity(isOnline() ? toLoad : null, tileZoom, currentStyle);
+
+			// Tiles near the center of the view are loaded first:
+			TilePrioritizer prioritizer = new TilePrioritizer(toLoad, tileZoom);
 
 			// Generate dummies for current needed tiles.
-			Collection<DataResource> dummies = new LinkedList<>();
+			Map<DataResource, Integer> dummies = new LinkedHashMap<>();
 			for (int y = toLoad.getUpperLeft().getY(); y <= toLoad
 					.getLowerLeft().getY(); y++) {
 				for (int x = toLoad.getUpperLeft().getX(); x <= toLoad
 						.getUpperRight().getX(); x++) {
 					TileResource dummy = createDummy(x, y, tileZoom);
-					dummies.add(dummy);
+					dummies.put(dummy, prioritizer.getPriority(dummy));
 				}
 			}
 
 			loadedResourcesLock.lock();
 			
 			// Now check if needed resources a already used by consumers.
-			Iterator<DataResource> iter = dummies.iterator();
+			Iterator<DataResource> iter = dummies.keySet().iterator();
 			Collection<DataResource> alreadyLoaded = new LinkedList<>();
 			while (iter.hasNext()) {
 				DataResource current = iter.next();
@@ -443,7 +551,7 @@ public final class TileManager extends DataResourceManager<TileResource>
 			Collection<DataResource> notNeeded = new LinkedList<>();
 			while (tileIter.hasNext()) {
 				DataResource current = tileIter.next();
-				if (!dummies.contains(current)) {
+				if (!dummies.containsKey(current)) {
 					notNeeded.add(current);
 				}
 			}
@@ -454,10 +562,153 @@ public final class TileManager extends DataResourceManager<TileResource>
 			loadedResourcesLock.unlock();
 
 			// Remove resources that a already loaded.
-			dummies.removeAll(alreadyLoaded);
+			dummies.keySet().removeAll(alreadyLoaded);
+
+			loadedResourcesLock.lock();
+			viewDummies = new LinkedList<>();
+			for (DataResource dummy : dummies.keySet()) {
+				viewDummies.add((TileResource) dummy);
+			}
+			loadedResourcesLock.unlock();
+
+			// Only tiles that left the view are cancelled, downloads of the others go on:
+			loader.requestWorkersStop(dummies.keySet());
+			loader.clearQueryQueue();
 
 			TileQuery query = new TileQuery(dummies);
 			loader.request(query);
+
+			prefetchPredicted(glState, toLoad, tileZoom);
+		}
+	}
+
+	/**
+	 * Records the current position of the view and prefetches the tiles it is
+	 * expected to reach within <code>PREDICTION_HORIZON</code> milliseconds.
+	 * Tiles prefetched before that are not expected to be reached any more are
+	 * cancelled.
+	 * 
+	 * @param glState
+	 *            The current state of the view.
+	 * @param visible
+	 *            The tiles currently visible.
+	 * @param tileZoom
+	 *            The zoom-level of the visible tiles.
+	 */
+	private void prefetchPredicted(GLState glState, IntegerBoundingBox visible,
+			int tileZoom) {
+		FloatVector3D position = glState.getPosition();
+		motionPredictor.record(System.currentTimeMillis(), position.getX(),
+				position.getY(), glState.getZoom());
+
+		Set<String> visibleKeys = new HashSet<>();
+		for (int y = visible.getUpperLeft().getY(); y <= visible.getLowerLeft().getY(); y++) {
+			for (int x = visible.getUpperLeft().getX(); x <= visible.getUpperRight().getX(); x++) {
+				visibleKeys.add(TileResource.generateKey(x, y, tileZoom, currentStyle.getLabel()));
+			}
+		}
+
+		List<TileResource> predicted = new ArrayList<>();
+		if (isOnline() && motionPredictor.isMoving()) {
+			predicted = getPredictedTiles(glState, visible, tileZoom, visibleKeys);
+		}
+		// An empty prediction cancels the tiles predicted before:
+		prefetcher.prefetch(predicted, visibleKeys);
+	}
+
+	/**
+	 * Returns the tiles covering the view extrapolated <code>PREDICTION_HORIZON</code>
+	 * milliseconds ahead. The zoom-level predicted differs by one at most from the
+	 * current one, and at most <code>PRELOAD_COUNT</code> tiles beyond the
+	 * visible ones are predicted in each direction.
+	 * 
+	 * @param glState
+	 *            The current state of the view.
+	 * @param visible
+	 *            The tiles currently visible.
+	 * @param tileZoom
+	 *            The zoom-level of the visible tiles.
+	 * @param excluded
+	 *            The keys of the tiles not to return.
+	 * @return The tiles predicted, the ones nearest to the predicted center first.
+	 */
+	private List<TileResource> getPredictedTiles(GLState glState,
+			IntegerBoundingBox visible, int tileZoom, Set<String> excluded) {
+		FloatVector3D position = glState.getPosition();
+		FloatVector3D prediction = motionPredictor.predict(PREDICTION_HORIZON);
+
+		int zoom = AlgoUtil.glToTileZoom(prediction.getZ());
+		zoom = Math.max(tileZoom - 1, Math.min(tileZoom + 1, zoom));
+		zoom = Math.max(currentStyle.getMinZoom(), Math.min(currentStyle.getMaxZoom(), zoom));
+		float glZoom = AlgoUtil.tileToGLZoom(zoom);
+
+		// Move and scale the corners of the view as predicted:
+		float scale = prediction.getZ() / glState.getZoom();
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+		int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+		for (FloatVector3D corner : glState.getBoundingBox().getCornersClockwise()) {
+			float x = prediction.getX() + (corner.getX() - position.getX()) * scale;
+			float y = prediction.getY() + (corner.getY() - position.getY()) * scale;
+			IntegerVector3D tile = AlgoUtil.glToTile(new FloatVector3D(x, y, glZoom));
+			minX = Math.min(minX, tile.getX());
+			minY = Math.min(minY, tile.getY());
+			maxX = Math.max(maxX, tile.getX());
+			maxY = Math.max(maxY, tile.getY());
+		}
+
+		// The visible tiles at the zoom-level predicted:
+		int levels = zoom - tileZoom;
+		int visibleMinX = scaleTileCoord(visible.getUpperLeft().getX(), levels, false);
+		int visibleMinY = scaleTileCoord(visible.getUpperLeft().getY(), levels, false);
+		int visibleMaxX = scaleTileCoord(visible.getUpperRight().getX(), levels, true);
+		int visibleMaxY = scaleTileCoord(visible.getLowerLeft().getY(), levels, true);
+
+		int maxTile = (1 << zoom) - 1;
+		minX = Math.max(0, Math.max(minX, visibleMinX - PRELOAD_COUNT));
+		minY = Math.max(0, Math.max(minY, visibleMinY - PRELOAD_COUNT));
+		maxX = Math.min(maxTile, Math.min(maxX, visibleMaxX + PRELOAD_COUNT));
+		maxY = Math.min(maxTile, Math.min(maxY, visibleMaxY + PRELOAD_COUNT));
+
+		List<TileResource> predicted = new ArrayList<>();
+		for (int y = minY; y <= maxY; y++) {
+			for (int x = minX; x <= maxX; x++) {
+				TileResource dummy = createDummy(x, y, zoom);
+				if (!excluded.contains(dummy.getKey())) {
+					predicted.add(dummy);
+				}
+			}
+		}
+
+		// Tiles near the predicted center are needed first:
+		final TilePrioritizer prioritizer = new TilePrioritizer(
+				(minX + maxX + 1) / 2.0, (minY + maxY + 1) / 2.0, zoom);
+		Collections.sort(predicted, new Comparator<TileResource>() {
+			@Override
+			public int compare(TileResource a, TileResource b) {
+				return Integer.compare(prioritizer.getPriority(b), prioritizer.getPriority(a));
+			}
+		});
+		return predicted;
+	}
+
+	/**
+	 * Converts a tile-coordinate into the coordinate of the tiles covering
+	 * the same area <code>levels</code> zoom-levels below.
+	 * 
+	 * @param coord
+	 *            The coordinate.
+	 * @param levels
+	 *            The number of zoom-levels to descend, negative to ascend.
+	 * @param last
+	 *            <code>true</code> for the last of the tiles covering the
+	 *            area, <code>false</code> for the first.
+	 * @return The coordinate at the other zoom-level.
+	 */
+	private static int scaleTileCoord(int coord, int levels, boolean last) {
+		if (levels >= 0) {
+			return last ? ((coord + 1) << levels) - 1 : coord << levels;
+		} else {
+			return coord >> -levels;
 		}
 	}
 
@@ -476,18 +727,115 @@ public final class TileManager extends DataResourceManager<TileResource>
 			// Add all already loaded tile resources.
 			resources.addAll(loadedTiles);
 
+			// Add the tiles of the view still loading, if not in the update already:
+			Set<String> keys = new HashSet<>();
+			for (TileResource tile : resources) {
+				keys.add(tile.getKey());
+			}
+			for (TileResource dummy : viewDummies) {
+				if (keys.add(dummy.getKey())) {
+					resources.add(dummy);
+				}
+			}
+
 			notifyAll(resources);
 		}
 		loadedResourcesLock.unlock();
 	}
 
+	/**
+	 * Stops the workers running when the manager goes off-line. The loader
+	 * itself keeps running, so that cached tiles are still served and loading
+	 * resumes once a subserver recovered.
+	 */
 	@Override
 	public void requestLoaderStop() {
-		loader.interrupt();
+		if (!isOnline()) {
+			loader.requestWorkersStop();
+		}
+	}
+
+	@Override
+	public void enable() {
+		super.enable();
+		updateOnline();
+	}
+
+	/**
+	 * Sets the manager off-line if all subservers of the current style are
+	 * down and on-line otherwise. A subserver being probed still counts as down.
+	 */
+	private synchronized void updateOnline() {
+		Style style = currentStyle;
+		if (style == null) {
+			return;
+		}
+		boolean reachable = false;
+		for (SubServer subServer : style.getSubServers()) {
+			reachable |= subServer.getCircuitBreaker().getState() == CircuitBreaker.State.CLOSED;
+		}
+		if (reachable != isOnline()) {
+			if (reachable) {
+				Logger.getInstance().message("Tile-servers of style " + style.getLabel() + " reachable again");
+			} else {
+				Logger.getInstance().warning("All tile-servers of style " + style.getLabel()
+						+ " are down, loading cached tiles only");
+			}
+			setOnline(reachable);
+		}
+	}
+
+	@Override
+	protected void applyExecutionMode(ExecutionMode executionMode) {
+		loader.setExecutionMode(executionMode);
+	}
+
+	/**
+	 * Starts downloading all tiles of a region into the cache in the background. A seeding
+	 * still running is cancelled. If the region was seeded partially before, the seeding
+	 * continues where it stopped.
+	 * 
+	 * @param geoBox
+	 *            The region in geographic coordinates (latitude, longitude).
+	 * @param minZoom
+	 *            The smallest zoom-level to seed.
+	 * @param maxZoom
+	 *            The largest zoom-level to seed.
+	 * @param style
+	 *            The style of the tiles to seed.
+	 * @return The seeding started, e.g. for observing its progress.
+	 * @throws IllegalArgumentException
+	 *             Thrown if <code>style</code> supports none of the zoom-levels.
+	 */
+	public synchronized TileSeeder seedRegion(FloatBoundingBox geoBox, int minZoom,
+			int maxZoom, Style style) throws IllegalArgumentException {
+		if (seeder != null) {
+			seeder.cancel();
+		}
+		seeder = new TileSeeder(cache, glProfile, geoBox, minZoom, maxZoom, style);
+		seeder.start();
+		return seeder;
+	}
+
+	/**
+	 * Returns the seeding of a region started last.
+	 * 
+	 * @return The seeding or <code>null</code> if none was started.
+	 */
+	public synchronized TileSeeder getSeeder() {
+		return seeder;
 	}
 
 	@Override
 	public void onExit() {
+		prefetcher.close();
+		idlePrefetcher.close();
+		synchronized (this) {
+			if (seeder != null) {
+				// The progress is kept, so that seeding continues on the next start:
+				seeder.cancel();
+			}
+		}
 		if (loader != null) {
 			Cache<TileResource> cache = loader.getCache();
 			if (cache instanceof TileCache) {
@@ -495,6 +843,7 @@ public final class TileManager extends DataResourceManager<TileResource>
 				if (tileCache != null) {
 					// Write the caches index-file:
 					tileCache.writeBack();
+					tileCache.close();
 				}
 			}
 		}
@@ -524,6 +873,8 @@ public final class TileManager extends DataResourceManager<TileResource>
 	 */
 	public void setCurrentStyle(Style currentStyle) {
 		this.currentStyle = currentStyle;
+		updateWorkerQuota();
+		updateOnline();
 
 		// Force update
 		GLState glState = (GLState) StateManager.getInstance().getState(
@@ -0,0 +1,222 @@
+package sep.gaia.resources.tiles2d;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.media.opengl.GLProfile;
+
+import sep.gaia.resources.AbstractLoaderWorker;
+import sep.gaia.resources.DataResource;
+import sep.gaia.resources.WorkerPool;
+import sep.gaia.resources.tiles2d.Style.SubServer;
+
+/**
+ * Loads tiles into the <code>TileCache</code> that are likely to become visible shortly,
+ * so that they are taken from the cache when they do.
+ * <p>
+ * Each tile is loaded by a worker of its own in a share of the <code>WorkerPool</code>
+ * with a small quota, so that the loads of visible tiles are hardly delayed. The tiles
+ * requested replace those requested before: Loads of tiles not requested any more are
+ * cancelled, unless the tiles became visible meanwhile.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class TilePrefetcher {
+
+	/**
+	 * The number of tiles loaded concurrently at maximum.
+	 */
+	private static final int WORKER_QUOTA = 2;
+
+	/**
+	 * The cache the tiles are loaded into.
+	 */
+	private TileCache cache;
+
+	/**
+	 * The OpenGL-profile to use when decoding tiles.
+	 */
+	private GLProfile profile;
+
+	/**
+	 * The share of the <code>WorkerPool</code> the workers are executed in.
+	 */
+	private WorkerPool.Share workerShare;
+
+	/**
+	 * The workers loading tiles mapped by the keys of their tiles.
+	 */
+	private Map<String, TileLoaderWorker> inFlight = new HashMap<>();
+
+	/**
+	 * The workers having finished, not removed from <code>inFlight</code> yet.
+	 */
+	private BlockingQueue<AbstractLoaderWorker<?, ?>> finishedWorkers = new LinkedBlockingQueue<>();
+
+	/**
+	 * The index of the subserver to use next.
+	 */
+	private int nextSubServer;
+
+	/**
+	 * Flag if the prefetcher was closed.
+	 */
+	private boolean closed;
+
+	/**
+	 * Number of tiles loaded into the cache.
+	 */
+	private AtomicLong prefetchedCount = new AtomicLong();
+
+	/**
+	 * Number of loads cancelled because their tiles were not requested any more.
+	 */
+	private AtomicLong cancelledCount = new AtomicLong();
+
+	/**
+	 * Stores the tiles loaded by the workers.
+	 */
+	private TileCacheSink sink;
+
+	/**
+	 * Initializes the prefetcher.
+	 * @param name The name of the share of the <code>WorkerPool</code> used.
+	 * @param cache The cache to load the tiles into.
+	 * @param profile The OpenGL-profile to use when decoding tiles.
+	 */
+	public TilePrefetcher(String name, TileCache cache, GLProfile profile) {
+		this.cache = cache;
+		this.profile = profile;
+		this.sink = new TileCacheSink(cache, true) {
+			@Override
+			protected boolean isWanted(AbstractLoaderWorker<?, TileResource> worker, TileResource tile) {
+				// The tile is not expected to become visible any more if its load was cancelled:
+				return !worker.isInterrupted();
+			}
+
+			@Override
+			protected void onLoaded(TileResource tile, long imageSize, boolean cached) {
+				if(cached) {
+					prefetchedCount.incrementAndGet();
+				}
+			}
+		};
+		this.workerShare = WorkerPool.getInstance().createShare(name, WORKER_QUOTA);
+	}
+
+	/**
+	 * Requests tiles to be loaded into the cache. Loads of tiles requested before but
+	 * neither in <code>tiles</code> nor in <code>retained</code> are cancelled.
+	 * Tiles cached, loading already or failed recently are skipped.
+	 * @param tiles The tiles to load, the most important ones first.
+	 * @param retained The keys of tiles whose loads should not be cancelled, e.g. because
+	 * they are visible now.
+	 * @return The number of loads started.
+	 */
+	public synchronized int prefetch(Collection<TileResource> tiles, Collection<String> retained) {
+		removeFinished();
+
+		Set<String> requested = new HashSet<>();
+		for(TileResource tile : tiles) {
+			requested.add(tile.getKey());
+		}
+		for(Iterator<Map.Entry<String, TileLoaderWorker>> iter = inFlight.entrySet().iterator(); iter.hasNext(); ) {
+			Map.Entry<String, TileLoaderWorker> entry = iter.next();
+			if(!requested.contains(entry.getKey()) && !retained.contains(entry.getKey())) {
+				// The tile is not expected to become visible any more:
+				entry.getValue().interrupt();
+				iter.remove();
+				cancelledCount.incrementAndGet();
+			}
+		}
+
+		int started = 0;
+		for(TileResource tile : tiles) {
+			String key = tile.getKey();
+			if(closed || inFlight.containsKey(key) || cache.isCached(key)
+					|| TileLoaderWorker.getFailedTiles().isFailed(key)) {
+				continue;
+			}
+			List<SubServer> subServers = tile.getStyle().getSubServers();
+			if(subServers.isEmpty()) {
+				continue;
+			}
+			SubServer subServer = subServers.get(nextSubServer % subServers.size());
+			nextSubServer = (nextSubServer + 1) % subServers.size();
+
+			Collection<DataResource> query = Collections.<DataResource>singletonList(tile);
+			TileLoaderWorker worker = TileLoaderWorker.createUncached(
+					new TileQuery(query, subServer), profile, finishedWorkers, sink);
+			inFlight.put(key, worker);
+			workerShare.submit(worker);
+			started++;
+		}
+		return started;
+	}
+
+	/**
+	 * Cancels the loads of all tiles requested.
+	 */
+	public synchronized void cancel() {
+		removeFinished();
+		for(TileLoaderWorker worker : inFlight.values()) {
+			worker.interrupt();
+			cancelledCount.incrementAndGet();
+		}
+		inFlight.clear();
+	}
+
+	/**
+	 * Removes the workers having finished from <code>inFlight</code>.
+	 */
+	private void removeFinished() {
+		AbstractLoaderWorker<?, ?> finished;
+		while((finished = finishedWorkers.poll()) != null) {
+			inFlight.values().remove(finished);
+		}
+	}
+
+	/**
+	 * Cancels all loads and unregisters from the <code>WorkerPool</code>.
+	 */
+	public synchronized void close() {
+		cancel();
+		closed = true;
+		workerShare.release();
+	}
+
+	/**
+	 * Returns the number of tiles loading currently.
+	 * @return The number of loads requested and not finished yet.
+	 */
+	public synchronized int getInFlightCount() {
+		removeFinished();
+		return inFlight.size();
+	}
+
+	/**
+	 * Returns the number of tiles loaded into the cache.
+	 * @return The number of tiles prefetched.
+	 */
+	public long getPrefetchedCount() {
+		return prefetchedCount.get();
+	}
+
+	/**
+	 * Returns the number of loads cancelled because their tiles were not requested any more.
+	 * @return The number of loads cancelled.
+	 */
+	public long getCancelledCount() {
+		return cancelledCount.get();
+	}
+}
@@ -0,0 +1,124 @@
+package sep.gaia.resources.tiles2d;
+
+import sep.gaia.util.IntegerBoundingBox;
+import sep.gaia.util.IntegerVector3D;
+
+/**
+ * Computes the priorities of tiles to be loaded for a view, so that the area
+ * the user is looking at is loaded first.
+ * Tiles are ranked by their distance from the center of the view in screen-space,
+ * i.e. measured in tiles of the zoom-level displayed. Tiles at the same distance are
+ * ranked by the difference of their zoom-level to the one displayed.
+ * The priorities are to be used with <code>Query</code>, where higher values
+ * imply that a resource is preferably loaded.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class TilePrioritizer {
+
+	/**
+	 * The number of steps a tile-length is divided into when comparing distances.
+	 * Tiles whose distances differ less are considered equally distant.
+	 */
+	public static final int DISTANCE_STEPS_PER_TILE = 4;
+
+	/**
+	 * The number of distinct ranks for the zoom-difference. Must be greater than
+	 * the maximum zoom-difference so that the zoom never outweighs the distance.
+	 */
+	private static final int ZOOM_RANKS = 32;
+
+	/**
+	 * The maximum distance in steps that is distinguished. Farther tiles share the
+	 * lowest priority, which prevents an overflow of the priority.
+	 */
+	private static final int MAX_DISTANCE_STEPS = Integer.MAX_VALUE / ZOOM_RANKS - 1;
+
+	/**
+	 * The x-coordinate of the center of the view in tiles of <code>zoom</code>.
+	 */
+	private double centerX;
+
+	/**
+	 * The y-coordinate of the center of the view in tiles of <code>zoom</code>.
+	 */
+	private double centerY;
+
+	/**
+	 * The zoom-level displayed.
+	 */
+	private int zoom;
+
+	/**
+	 * Initializes the prioritizer.
+	 * @param centerX The x-coordinate of the center of the view in tiles of <code>zoom</code>.
+	 * @param centerY The y-coordinate of the center of the view in tiles of <code>zoom</code>.
+	 * @param zoom The zoom-level displayed.
+	 */
+	public TilePrioritizer(double centerX, double centerY, int zoom) {
+		this.centerX = centerX;
+		this.centerY = centerY;
+		this.zoom = zoom;
+	}
+
+	/**
+	 * Initializes the prioritizer for the tiles covering a view. The center of the view
+	 * is assumed to be the center of <code>visibleTiles</code>.
+	 * @param visibleTiles The tiles covering the view, e.g. as returned by
+	 * <code>AlgoUtil.glToTile(FloatBoundingBox, float)</code>.
+	 * @param zoom The zoom-level displayed.
+	 */
+	public TilePrioritizer(IntegerBoundingBox visibleTiles, int zoom) {
+		this((visibleTiles.getUpperLeft().getX() + visibleTiles.getUpperRight().getX() + 1) / 2.0,
+			 (visibleTiles.getUpperLeft().getY() + visibleTiles.getLowerLeft().getY() + 1) / 2.0,
+			 zoom);
+	}
+
+	/**
+	 * Returns the priority of a tile. The tile nearest to the center of the view
+	 * at the zoom-level displayed has the highest priority.
+	 * @param tile The tile to rank.
+	 * @return The priority of the tile. The value is zero or less.
+	 */
+	public int getPriority(TileResource tile) {
+		IntegerVector3D coord = tile.getCoord();
+		int tileZoom = coord.getZ();
+
+		// Tiles of other zoom-levels are scaled to tiles of the zoom displayed:
+		double scale = Math.pow(2, zoom - tileZoom);
+		double tileCenterX = (coord.getX() + 0.5) * scale;
+		double tileCenterY = (coord.getY() + 0.5) * scale;
+
+		double distance = Math.hypot(tileCenterX - centerX, tileCenterY - centerY);
+		long steps = Math.round(distance * DISTANCE_STEPS_PER_TILE);
+		int distanceRank = (int) Math.min(steps, MAX_DISTANCE_STEPS);
+		int zoomRank = Math.min(Math.abs(tileZoom - zoom), ZOOM_RANKS - 1);
+
+		return -(distanceRank * ZOOM_RANKS + zoomRank);
+	}
+
+	/**
+	 * Returns the x-coordinate of the center of the view.
+	 * @return The x-coordinate of the center of the view in tiles of the zoom displayed.
+	 */
+	public double getCenterX() {
+		return centerX;
+	}
+
+	/**
+	 * Returns the y-coordinate of the center of the view.
+	 * @return The y-coordinate of the center of the view in tiles of the zoom displayed.
+	 */
+	public double getCenterY() {
+		return centerY;
+	}
+
+	/**
+	 * Returns the zoom-level displayed.
+	 * @return The zoom-level displayed.
+	 */
+	public int getZoom() {
+		return zoom;
+	}
+}
@@ -55,7 +55,6 @@ public class TileQuery extends Query {
 	public TileQuery(Map<DataResource, Integer> resources)
 			throws NotADummyException {
 		super(resources);
-		// TODO Auto-generated constructor stub
 	}
 
 	/**
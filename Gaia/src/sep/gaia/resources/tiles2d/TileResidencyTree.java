@@ -0,0 +1,239 @@
+package sep.gaia.resources.tiles2d;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import sep.gaia.util.IntegerVector3D;
+
+/**
+ * Quadtree recording which tiles are resident, e.g. have a texture that can be drawn.
+ * <p>
+ * The root is the single tile of zoom-level 0 and each node has the four tiles of the next
+ * zoom-level covering it as children. Only the paths to resident tiles are kept, so the
+ * size of the tree is proportional to the number of resident tiles times their zoom-level.
+ * This allows finding the resident tiles covering a tile not resident itself: Its nearest
+ * resident ancestor, which may be drawn upscaled, or its resident descendants.
+ * <p>
+ * The tree is not thread-safe.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class TileResidencyTree {
+
+	/**
+	 * A tile in the tree, which is either resident or has resident descendants.
+	 *
+	 * @author Matthias Fisch
+	 *
+	 */
+	private static class Node {
+
+		/**
+		 * The four tiles of the next zoom-level covering this tile or <code>null</code>
+		 * where none of them is resident. Indexed by <code>2 * (y &amp; 1) + (x &amp; 1)</code>.
+		 */
+		private Node[] children = new Node[4];
+
+		/**
+		 * Flag if the tile itself is resident.
+		 */
+		private boolean resident;
+
+		/**
+		 * Checks whether the node can be removed from the tree.
+		 * @return <code>true</code> if neither the tile nor any descendant is resident.
+		 */
+		private boolean isEmpty() {
+			if(resident) {
+				return false;
+			}
+			for(Node child : children) {
+				if(child != null) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * The tile of zoom-level 0.
+	 */
+	private Node root = new Node();
+
+	/**
+	 * The number of resident tiles.
+	 */
+	private int size;
+
+	/**
+	 * Returns the index of the child of a tile on the path to another tile.
+	 * @param x The x-coordinate of the tile searched.
+	 * @param y The y-coordinate of the tile searched.
+	 * @param levelsBelow The number of zoom-levels the tile searched is below the child.
+	 * @return The index of the child in <code>Node.children</code>.
+	 */
+	private static int getChildIndex(int x, int y, int levelsBelow) {
+		return 2 * ((y >> levelsBelow) & 1) + ((x >> levelsBelow) & 1);
+	}
+
+	/**
+	 * Marks a tile as resident.
+	 * @param tile The coordinates of the tile.
+	 */
+	public void add(IntegerVector3D tile) {
+		Node node = root;
+		int zoom = tile.getZ();
+		for(int level = 1; level <= zoom; level++) {
+			int index = getChildIndex(tile.getX(), tile.getY(), zoom - level);
+			if(node.children[index] == null) {
+				node.children[index] = new Node();
+			}
+			node = node.children[index];
+		}
+		if(!node.resident) {
+			node.resident = true;
+			size++;
+		}
+	}
+
+	/**
+	 * Marks a tile as not resident any more.
+	 * @param tile The coordinates of the tile.
+	 * @return <code>true</code> if the tile was resident before.
+	 */
+	public boolean remove(IntegerVector3D tile) {
+		int zoom = tile.getZ();
+		Node[] path = new Node[zoom + 1];
+		path[0] = root;
+		for(int level = 1; level <= zoom; level++) {
+			path[level] = path[level - 1].children[getChildIndex(tile.getX(), tile.getY(), zoom - level)];
+			if(path[level] == null) {
+				return false;
+			}
+		}
+		if(!path[zoom].resident) {
+			return false;
+		}
+		path[zoom].resident = false;
+		size--;
+
+		// Remove the nodes not leading to resident tiles any more:
+		for(int level = zoom; level > 0 && path[level].isEmpty(); level--) {
+			path[level - 1].children[getChildIndex(tile.getX(), tile.getY(), zoom - level)] = null;
+		}
+		return true;
+	}
+
+	/**
+	 * Checks whether a tile is resident.
+	 * @param tile The coordinates of the tile.
+	 * @return <code>true</code> if the tile is resident.
+	 */
+	public boolean contains(IntegerVector3D tile) {
+		Node node = find(tile);
+		return node != null && node.resident;
+	}
+
+	/**
+	 * Returns the node of a tile.
+	 * @param tile The coordinates of the tile.
+	 * @return The node or <code>null</code> if neither the tile nor any descendant is resident.
+	 */
+	private Node find(IntegerVector3D tile) {
+		Node node = root;
+		int zoom = tile.getZ();
+		for(int level = 1; level <= zoom && node != null; level++) {
+			node = node.children[getChildIndex(tile.getX(), tile.getY(), zoom - level)];
+		}
+		return node;
+	}
+
+	/**
+	 * Returns the nearest resident ancestor of a tile, i.e. the resident tile of the
+	 * highest zoom-level below the one of <code>tile</code> that covers it.
+	 * @param tile The coordinates of the tile.
+	 * @param maxLevels The maximum number of zoom-levels the ancestor may be above the tile.
+	 * @return The coordinates of the ancestor or <code>null</code> if there is none.
+	 */
+	public IntegerVector3D findAncestor(IntegerVector3D tile, int maxLevels) {
+		int zoom = tile.getZ();
+		int minLevel = Math.max(0, zoom - maxLevels);
+		int ancestorLevel = -1;
+
+		Node node = root;
+		for(int level = 0; level < zoom && node != null; level++) {
+			if(node.resident && level >= minLevel) {
+				ancestorLevel = level;
+			}
+			node = node.children[getChildIndex(tile.getX(), tile.getY(), zoom - level - 1)];
+		}
+
+		if(ancestorLevel < 0) {
+			return null;
+		}
+		int levelsAbove = zoom - ancestorLevel;
+		return new IntegerVector3D(tile.getX() >> levelsAbove, tile.getY() >> levelsAbove, ancestorLevel);
+	}
+
+	/**
+	 * Returns the resident descendants of a tile nearest to it. Descendants covered by
+	 * another resident descendant are not returned.
+	 * @param tile The coordinates of the tile.
+	 * @param maxLevels The maximum number of zoom-levels the descendants may be below the tile.
+	 * @return The coordinates of the descendants, which may cover <code>tile</code> only partially.
+	 */
+	public List<IntegerVector3D> findDescendants(IntegerVector3D tile, int maxLevels) {
+		List<IntegerVector3D> descendants = new LinkedList<>();
+		Node node = find(tile);
+		if(node != null) {
+			collectDescendants(node, tile.getX(), tile.getY(), tile.getZ(), maxLevels, descendants);
+		}
+		return descendants;
+	}
+
+	/**
+	 * Adds the nearest resident descendants of a tile to <code>descendants</code>.
+	 * @param node The node of the tile.
+	 * @param x The x-coordinate of the tile.
+	 * @param y The y-coordinate of the tile.
+	 * @param zoom The zoom-level of the tile.
+	 * @param maxLevels The maximum number of zoom-levels to descend.
+	 * @param descendants The collection to add the coordinates of the descendants to.
+	 */
+	private static void collectDescendants(Node node, int x, int y, int zoom, int maxLevels,
+			List<IntegerVector3D> descendants) {
+		if(maxLevels <= 0) {
+			return;
+		}
+		for(int index = 0; index < node.children.length; index++) {
+			Node child = node.children[index];
+			if(child != null) {
+				int childX = 2 * x + (index & 1);
+				int childY = 2 * y + (index >> 1);
+				if(child.resident) {
+					descendants.add(new IntegerVector3D(childX, childY, zoom + 1));
+				} else {
+					collectDescendants(child, childX, childY, zoom + 1, maxLevels - 1, descendants);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Marks all tiles as not resident.
+	 */
+	public void clear() {
+		root = new Node();
+		size = 0;
+	}
+
+	/**
+	 * Returns the number of resident tiles.
+	 * @return The number of tiles marked as resident.
+	 */
+	public int size() {
+		return size;
+	}
+}
@@ -5,6 +5,7 @@ package sep.gaia.resources.tiles2d;
 
 import java.util.Date;
 
+import sep.gaia.resources.CacheValidators;
 import sep.gaia.resources.DataResource;
 import sep.gaia.util.IntegerVector3D;
 
@@ -40,6 +41,18 @@ public class TileResource extends DataResource {
 	 */
 	private TextureData image;
 	
+	/**
+	 * The image-file as received from the server, so that it can be cached without
+	 * encoding <code>image</code> again. <code>null</code> if not available.
+	 */
+	private byte[] encodedImage;
+	
+	/**
+	 * The HTTP-validators and the expiry sent by the server with the image-file.
+	 * <code>null</code> if unknown.
+	 */
+	private CacheValidators validators;
+	
 	/**
 	 * Refers to the position in "tile coordinates". Tile coordinates are
 	 * described in the slippy map convention. Let (x,y,z) be the components of
@@ -134,6 +147,39 @@ public class TileResource extends DataResource {
 		this.image = image;
 	}
 	
+	/**
+	 * Returns the image-file as received from the server.
+	 * @return The content of the image-file in the format of the style or <code>null</code>
+	 * if it is not available.
+	 */
+	public byte[] getEncodedImage() {
+		return encodedImage;
+	}
+	
+	/**
+	 * Sets the image-file as received from the server. It must not be modified afterwards.
+	 * @param encodedImage The content of the image-file in the format of the style.
+	 */
+	public void setEncodedImage(byte[] encodedImage) {
+		this.encodedImage = encodedImage;
+	}
+	
+	/**
+	 * Returns the HTTP-validators and the expiry sent by the server with the image-file.
+	 * @return The validators or <code>null</code> if unknown.
+	 */
+	public CacheValidators getValidators() {
+		return validators;
+	}
+	
+	/**
+	 * Sets the HTTP-validators and the expiry sent by the server with the image-file.
+	 * @param validators The validators or <code>null</code> if unknown.
+	 */
+	public void setValidators(CacheValidators validators) {
+		this.validators = validators;
+	}
+	
 	
 	/**
 	 * Returns the style the tile is in.
@@ -202,6 +248,18 @@ public class TileResource extends DataResource {
 		return false;
 	}
 
+	@Override
+	public int hashCode() {
+		// Consistent with equals(), which compares coordinates and style-label:
+		int hash = tileCoord.getX();
+		hash = 31 * hash + tileCoord.getY();
+		hash = 31 * hash + tileCoord.getZ();
+		if(style != null) {
+			hash = 31 * hash + style.getLabel().hashCode();
+		}
+		return hash;
+	}
+
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder("[");
@@ -0,0 +1,347 @@
+package sep.gaia.resources.tiles2d;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import sep.gaia.resources.CacheValidators;
+import sep.gaia.resources.CancellationToken;
+import sep.gaia.resources.CircuitBreaker;
+import sep.gaia.resources.HostGovernor;
+import sep.gaia.resources.HttpDownloader;
+import sep.gaia.resources.HttpStatusException;
+import sep.gaia.resources.tiles2d.Style.SubServer;
+import sep.gaia.util.IntegerVector3D;
+import sep.gaia.util.Logger;
+
+/**
+ * Keeps the tiles of a cache current by asking their servers in the background whether
+ * they were modified.
+ * <p>
+ * Every <code>REVALIDATION_INTERVAL</code> milliseconds up to <code>BATCH_SIZE</code> tiles
+ * expiring within <code>EXPIRY_MARGIN</code> milliseconds are revalidated, those expiring
+ * first before the others. The expiry is sent by the server with the tile. Tiles without
+ * one are considered to expire <code>DEFAULT_LIFETIME</code> milliseconds after they were
+ * loaded. The request is conditional on the validators of the tile, or on the time it
+ * was loaded if there are none. The server answers by <code>304 Not Modified</code> if
+ * the tile is current, which only refreshes its validators and expiry. Otherwise the
+ * image-file of the tile is replaced by the one received.
+ * <p>
+ * While the cache is offline, no tile is revalidated.
+ * <p>
+ * Tiles that could not be revalidated are retried after <code>RETRY_DELAY</code> milliseconds.
+ * The requests wait for their host at the <code>HostGovernor</code> and are routed around
+ * subservers that are down like all others.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class TileRevalidator {
+
+	/**
+	 * The time in milliseconds a tile without expiry is considered current after being loaded.
+	 */
+	public static final long DEFAULT_LIFETIME = 7L * 24 * 60 * 60 * 1000;
+
+	/**
+	 * The minimum time in milliseconds between two revalidations of a tile.
+	 */
+	public static final long MINIMUM_LIFETIME = 60L * 60 * 1000;
+
+	/**
+	 * The time in milliseconds before its expiry a tile is revalidated.
+	 */
+	public static final long EXPIRY_MARGIN = 10L * 60 * 1000;
+
+	/**
+	 * The maximum number of tiles revalidated at once.
+	 */
+	public static final int BATCH_SIZE = 16;
+
+	/**
+	 * The interval in milliseconds in which expiring tiles are revalidated.
+	 */
+	private static final long REVALIDATION_INTERVAL = 60L * 1000;
+
+	/**
+	 * The time in milliseconds after which a tile that could not be revalidated is retried.
+	 */
+	private static final long RETRY_DELAY = 15L * 60 * 1000;
+
+	/**
+	 * The cache whose tiles are revalidated.
+	 *
+	 * @author Matthias Fisch
+	 *
+	 */
+	public interface Tiles {
+
+		/**
+		 * Returns if the servers of the tiles may be asked.
+		 * @return <code>false</code> if the cache is offline.
+		 */
+		public boolean isOnline();
+
+		/**
+		 * Returns the tiles expiring first.
+		 * @param time The time the tiles must expire before in milliseconds since epoch.
+		 * @param count The maximum number of tiles to return.
+		 * @param excluded The keys of tiles not to return.
+		 * @return Descriptions of the tiles expiring before <code>time</code>, the ones
+		 * expiring first first.
+		 */
+		public List<TileResource> getExpiringTiles(long time, int count, Collection<String> excluded);
+
+		/**
+		 * Notes that a tile was not modified.
+		 * @param tile The description of the tile.
+		 * @param validators The validators and the expiry of the tile from now on.
+		 */
+		public void refresh(TileResource tile, CacheValidators validators);
+
+		/**
+		 * Replaces the image-file of a tile modified.
+		 * @param tile The description of the tile.
+		 * @param image The image-file received.
+		 * @param validators The validators and the expiry of the image-file.
+		 */
+		public void replace(TileResource tile, byte[] image, CacheValidators validators);
+	}
+
+	/**
+	 * The cache whose tiles are revalidated.
+	 */
+	private Tiles tiles;
+
+	/**
+	 * The keys of the tiles that could not be revalidated, mapped to the time they are retried.
+	 */
+	private Map<String, Long> retryTimes = new ConcurrentHashMap<>();
+
+	/**
+	 * The index of the subserver to use next.
+	 */
+	private AtomicInteger nextSubServer = new AtomicInteger();
+
+	/**
+	 * The token aborting the requests when the revalidator is closed.
+	 */
+	private CancellationToken cancellationToken = new CancellationToken();
+
+	/**
+	 * The thread revalidating the tiles.
+	 */
+	private Thread revalidatorThread;
+
+	/**
+	 * Flag if the revalidator was closed.
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * Number of tiles found not modified.
+	 */
+	private AtomicLong notModifiedCount = new AtomicLong();
+
+	/**
+	 * Number of tiles replaced because they were modified.
+	 */
+	private AtomicLong modifiedCount = new AtomicLong();
+
+	/**
+	 * Number of tiles that could not be revalidated.
+	 */
+	private AtomicLong failedCount = new AtomicLong();
+
+	/**
+	 * Initializes the revalidator. It does not run before <code>start()</code> is called.
+	 * @param tiles The cache whose tiles are revalidated.
+	 */
+	public TileRevalidator(Tiles tiles) {
+		this.tiles = tiles;
+	}
+
+	/**
+	 * Returns the time a tile expires.
+	 * @param tile The tile.
+	 * @return The time in milliseconds since epoch.
+	 */
+	public static long getExpiry(TileResource tile) {
+		CacheValidators validators = tile.getValidators();
+		long expires = validators != null && validators.getExpires() > 0 ? validators.getExpires()
+																		: tile.getTimestamp() + DEFAULT_LIFETIME;
+		// Servers not permitting to cache would be asked all the time otherwise:
+		return Math.max(expires, tile.getTimestamp() + MINIMUM_LIFETIME);
+	}
+
+	/**
+	 * Starts the thread of the revalidator.
+	 */
+	public void start() {
+		revalidatorThread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				while(!closed) {
+					try {
+						Thread.sleep(REVALIDATION_INTERVAL);
+
+					} catch (InterruptedException e) {
+						return;
+					}
+					try {
+						revalidateExpiring();
+
+					} catch (RuntimeException e) {
+						Logger.getInstance().error("Tile-revalidation failed: " + e.getMessage());
+					}
+				}
+			}
+		}, "TileRevalidator");
+		revalidatorThread.setDaemon(true);
+		revalidatorThread.setPriority(Thread.MIN_PRIORITY);
+		revalidatorThread.start();
+	}
+
+	/**
+	 * Revalidates the tiles expiring first. Nothing is done while the cache is offline.
+	 * @return The number of tiles revalidated successfully.
+	 */
+	public int revalidateExpiring() {
+		if(!tiles.isOnline()) {
+			return 0;
+		}
+		long now = System.currentTimeMillis();
+		for(Iterator<Long> retryIter = retryTimes.values().iterator(); retryIter.hasNext(); ) {
+			if(retryIter.next() <= now) {
+				retryIter.remove();
+			}
+		}
+
+		int revalidated = 0;
+		for(TileResource tile : tiles.getExpiringTiles(now + EXPIRY_MARGIN, BATCH_SIZE, retryTimes.keySet())) {
+			if(closed || !tiles.isOnline()) {
+				break;
+			}
+			if(revalidate(tile)) {
+				revalidated++;
+			} else if(!closed) {
+				failedCount.incrementAndGet();
+				retryTimes.put(tile.getKey(), now + RETRY_DELAY);
+			}
+		}
+		return revalidated;
+	}
+
+	/**
+	 * Sends a conditional request for a tile and refreshes or replaces it.
+	 * @param tile The description of the tile.
+	 * @return <code>true</code> if the tile was revalidated.
+	 */
+	private boolean revalidate(TileResource tile) {
+		Style style = tile.getStyle();
+		List<SubServer> subServers = style.getSubServers();
+		if(subServers.isEmpty()) {
+			return false;
+		}
+		SubServer subServer = style.selectSubServer(
+				subServers.get((nextSubServer.getAndIncrement() & Integer.MAX_VALUE) % subServers.size()));
+		if(subServer == null) {
+			// All subservers are down:
+			return false;
+		}
+		CircuitBreaker breaker = subServer.getCircuitBreaker();
+
+		CacheValidators cached = tile.getValidators();
+		if(cached == null || !cached.isConditional()) {
+			// The tile is current if not modified since it was loaded:
+			cached = new CacheValidators(null, tile.getTimestamp(), 0);
+		}
+
+		IntegerVector3D coords = tile.getCoord();
+		try {
+			URL url = style.generateUrl(subServer.getHostname(), coords.getZ(), coords.getX(), coords.getY());
+
+			HostGovernor.Permit permit = HostGovernor.getInstance().acquire(subServer.getHostname(),
+					subServer.getMaxConnections(), cancellationToken);
+			if(permit == null) {
+				breaker.recordAbandoned();
+				return false;
+			}
+			HttpDownloader.Response response;
+			try {
+				response = HttpDownloader.getInstance().download(url, cached, cancellationToken);
+			} finally {
+				permit.release();
+			}
+			if(response == null) {
+				breaker.recordAbandoned();
+				return false;
+			}
+			breaker.recordSuccess();
+
+			if(response.isNotModified()) {
+				tiles.refresh(tile, cached.refresh(response.getValidators()));
+				notModifiedCount.incrementAndGet();
+
+			} else {
+				tiles.replace(tile, response.getContent(), response.getValidators());
+				modifiedCount.incrementAndGet();
+			}
+			return true;
+
+		} catch (IOException e) {
+			if(e instanceof MalformedURLException) {
+				breaker.recordAbandoned();
+			} else if(!(e instanceof HttpStatusException) || ((HttpStatusException) e).isServerError()) {
+				breaker.recordFailure();
+			} else {
+				breaker.recordSuccess();
+			}
+			Logger.getInstance().warning("Cannot revalidate cached tile " + tile.getKey() + ": " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Stops the revalidator. Requests in progress are aborted.
+	 */
+	public void close() {
+		closed = true;
+		cancellationToken.cancel();
+		if(revalidatorThread != null) {
+			revalidatorThread.interrupt();
+		}
+	}
+
+	/**
+	 * Returns the number of tiles found not modified.
+	 * @return The number of tiles refreshed without transferring them.
+	 */
+	public long getNotModifiedCount() {
+		return notModifiedCount.get();
+	}
+
+	/**
+	 * Returns the number of tiles replaced because they were modified.
+	 * @return The number of tiles replaced.
+	 */
+	public long getModifiedCount() {
+		return modifiedCount.get();
+	}
+
+	/**
+	 * Returns the number of tiles that could not be revalidated.
+	 * @return The number of failures.
+	 */
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+}
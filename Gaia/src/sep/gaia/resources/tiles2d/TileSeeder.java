@@ -0,0 +1,756 @@
+package sep.gaia.resources.tiles2d;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.media.opengl.GLProfile;
+
+import sep.gaia.environment.Environment;
+import sep.gaia.environment.Environment.EnvVariable;
+import sep.gaia.resources.AbstractLoaderWorker;
+import sep.gaia.resources.DataResource;
+import sep.gaia.resources.WorkerPool;
+import sep.gaia.resources.tiles2d.Style.SubServer;
+import sep.gaia.util.AlgoUtil;
+import sep.gaia.util.FloatBoundingBox;
+import sep.gaia.util.FloatVector3D;
+import sep.gaia.util.IntegerVector3D;
+import sep.gaia.util.Logger;
+
+/**
+ * Downloads all tiles of a region in a range of zoom-levels into the tile-cache, e.g. for
+ * installations without a reliable connection.
+ * <p>
+ * The tiles are enumerated by zoom-level, row and column and fetched in batches of
+ * <code>BATCH_SIZE</code> tiles by <code>TileLoaderWorker</code>s in a share of the
+ * <code>WorkerPool</code> of its own. The tiles of a batch are distributed over the
+ * connection-slots of the subservers of the style, and each request waits for its host
+ * at the <code>HostGovernor</code>, so that the limits of the servers are kept.
+ * Tiles already cached are skipped.
+ * <p>
+ * After each batch the position in the enumeration is written to the file
+ * <code>EnvVariable.TILE_SEED_PROGRESS_FILE</code>, so that a seeding of the same region
+ * cancelled or interrupted by the termination of the application continues there.
+ * The progress, the throughput and the space still required on disk are logged regularly.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class TileSeeder {
+
+	/**
+	 * The number of tiles fetched between two records of the progress.
+	 */
+	public static final int BATCH_SIZE = 64;
+
+	/**
+	 * The size of a tile in bytes assumed for the estimate as long as no tile is cached.
+	 */
+	public static final long DEFAULT_TILE_SIZE = 16 * 1024;
+
+	/**
+	 * The interval in milliseconds in which the progress is logged.
+	 */
+	private static final long REPORT_INTERVAL = 10000;
+
+	/**
+	 * The maximum latitude of the mercator-projection of the tiles.
+	 */
+	private static final float MAXIMUM_LATITUDE = 85.0511f;
+
+	/**
+	 * The tiles of a region at a single zoom-level.
+	 *
+	 * @author Matthias Fisch
+	 *
+	 */
+	public static class TileRange {
+
+		/**
+		 * The zoom-level of the tiles.
+		 */
+		private final int zoom;
+
+		/**
+		 * The smallest x-coordinate of the tiles.
+		 */
+		private final int minX;
+
+		/**
+		 * The smallest y-coordinate of the tiles.
+		 */
+		private final int minY;
+
+		/**
+		 * The largest x-coordinate of the tiles.
+		 */
+		private final int maxX;
+
+		/**
+		 * The largest y-coordinate of the tiles.
+		 */
+		private final int maxY;
+
+		/**
+		 * Initializes the range.
+		 * @param zoom The zoom-level of the tiles.
+		 * @param minX The smallest x-coordinate of the tiles.
+		 * @param minY The smallest y-coordinate of the tiles.
+		 * @param maxX The largest x-coordinate of the tiles.
+		 * @param maxY The largest y-coordinate of the tiles.
+		 */
+		public TileRange(int zoom, int minX, int minY, int maxX, int maxY) {
+			this.zoom = zoom;
+			this.minX = minX;
+			this.minY = minY;
+			this.maxX = maxX;
+			this.maxY = maxY;
+		}
+
+		/**
+		 * Returns the zoom-level of the tiles.
+		 * @return The zoom-level of the tiles.
+		 */
+		public int getZoom() {
+			return zoom;
+		}
+
+		/**
+		 * Returns the smallest x-coordinate of the tiles.
+		 * @return The smallest x-coordinate of the tiles.
+		 */
+		public int getMinX() {
+			return minX;
+		}
+
+		/**
+		 * Returns the smallest y-coordinate of the tiles.
+		 * @return The smallest y-coordinate of the tiles.
+		 */
+		public int getMinY() {
+			return minY;
+		}
+
+		/**
+		 * Returns the largest x-coordinate of the tiles.
+		 * @return The largest x-coordinate of the tiles.
+		 */
+		public int getMaxX() {
+			return maxX;
+		}
+
+		/**
+		 * Returns the largest y-coordinate of the tiles.
+		 * @return The largest y-coordinate of the tiles.
+		 */
+		public int getMaxY() {
+			return maxY;
+		}
+
+		/**
+		 * Returns the number of tiles in the range.
+		 * @return The number of tiles.
+		 */
+		public long getTileCount() {
+			return (long) (maxX - minX + 1) * (maxY - minY + 1);
+		}
+
+		/**
+		 * Returns the coordinates of a tile of the range, enumerated row by row.
+		 * @param index The index of the tile in range [0, <code>getTileCount()</code>).
+		 * @return The coordinates of the tile (x, y, zoom).
+		 */
+		public IntegerVector3D getTile(long index) {
+			int width = maxX - minX + 1;
+			return new IntegerVector3D(minX + (int) (index % width), minY + (int) (index / width), zoom);
+		}
+	}
+
+	/**
+	 * The cache the tiles are seeded into.
+	 */
+	private TileCache cache;
+
+	/**
+	 * The OpenGL-profile to use when decoding the tiles.
+	 */
+	private GLProfile profile;
+
+	/**
+	 * The region to seed.
+	 */
+	private FloatBoundingBox geoBox;
+
+	/**
+	 * The style of the tiles to seed.
+	 */
+	private Style style;
+
+	/**
+	 * The tiles to seed for each zoom-level, starting at the smallest one.
+	 */
+	private List<TileRange> ranges = new ArrayList<>();
+
+	/**
+	 * The number of tiles in the region in all zoom-levels.
+	 */
+	private long totalTileCount;
+
+	/**
+	 * The file the progress is recorded in.
+	 */
+	private File progressFile;
+
+	/**
+	 * The index of the next tile to process in the enumeration of all tiles.
+	 */
+	private volatile long nextTile;
+
+	/**
+	 * The number of tiles not cached when the seeding started. -1 if not counted yet.
+	 */
+	private volatile long missingTileCount = -1;
+
+	/**
+	 * The number of tiles downloaded and cached.
+	 */
+	private AtomicLong loadedTileCount = new AtomicLong();
+
+	/**
+	 * The size of the image-files of the tiles downloaded in bytes.
+	 */
+	private AtomicLong loadedBytes = new AtomicLong();
+
+	/**
+	 * The number of tiles skipped because they were already cached.
+	 */
+	private AtomicLong skippedTileCount = new AtomicLong();
+
+	/**
+	 * The number of tiles that could not be downloaded.
+	 */
+	private AtomicLong failedTileCount = new AtomicLong();
+
+	/**
+	 * The time the seeding started by <code>System.currentTimeMillis()</code>.
+	 */
+	private volatile long startTime;
+
+	/**
+	 * The share of the <code>WorkerPool</code> the workers are executed in.
+	 */
+	private WorkerPool.Share workerShare;
+
+	/**
+	 * The workers of the batch currently fetched. Guarded by itself.
+	 */
+	private List<AbstractLoaderWorker<TileQuery, TileResource>> activeWorkers = new LinkedList<>();
+
+	/**
+	 * The thread enumerating the tiles.
+	 */
+	private Thread seederThread;
+
+	/**
+	 * Flag if the seeding was cancelled.
+	 */
+	private volatile boolean cancelled;
+
+	/**
+	 * Flag if all tiles of the region were processed.
+	 */
+	private volatile boolean finished;
+
+	/**
+	 * Initializes the seeding of a region. It does not start before <code>start()</code> is called.
+	 * The zoom-levels are limited to the ones supported by <code>style</code>.
+	 * @param cache The cache the tiles are seeded into.
+	 * @param profile The OpenGL-profile to use when decoding the tiles.
+	 * @param geoBox The region to seed in geographic coordinates (latitude, longitude).
+	 * @param minZoom The smallest zoom-level to seed.
+	 * @param maxZoom The largest zoom-level to seed.
+	 * @param style The style of the tiles to seed.
+	 * @throws IllegalArgumentException Thrown if the zoom-range is empty.
+	 */
+	public TileSeeder(TileCache cache, GLProfile profile, FloatBoundingBox geoBox,
+			int minZoom, int maxZoom, Style style) throws IllegalArgumentException {
+		this.cache = cache;
+		this.profile = profile;
+		this.geoBox = geoBox;
+		this.style = style;
+
+		int fromZoom = Math.max(minZoom, style.getMinZoom());
+		int toZoom = Math.min(maxZoom, style.getMaxZoom());
+		if(fromZoom > toZoom) {
+			throw new IllegalArgumentException("No zoom-level of " + minZoom + " to " + maxZoom
+					+ " is supported by " + style.getLabel());
+		}
+		for(int zoom = fromZoom; zoom <= toZoom; zoom++) {
+			TileRange range = getTileRange(geoBox, zoom);
+			ranges.add(range);
+			totalTileCount += range.getTileCount();
+		}
+		progressFile = new File(Environment.getInstance().getString(EnvVariable.TILE_SEED_PROGRESS_FILE));
+	}
+
+	/**
+	 * Returns the tiles covering a region at a zoom-level.
+	 * @param geoBox The region in geographic coordinates (latitude, longitude).
+	 * @param zoom The zoom-level of the tiles.
+	 * @return The tiles covering the region.
+	 */
+	public static TileRange getTileRange(FloatBoundingBox geoBox, int zoom) {
+		FloatVector3D[] corners = {geoBox.getUpperLeft(), geoBox.getUpperRight(),
+								   geoBox.getLowerLeft(), geoBox.getLowerRight()};
+		// A quarter zoom-level more, so that converting the zoom back is not rounded down:
+		float glZoom = AlgoUtil.tileToGLZoom(zoom + 0.25f);
+		int maxCoord = (1 << zoom) - 1;
+
+		int minX = maxCoord, minY = maxCoord, maxX = 0, maxY = 0;
+		for(FloatVector3D corner : corners) {
+			float lat = Math.max(-MAXIMUM_LATITUDE, Math.min(MAXIMUM_LATITUDE, corner.getX()));
+			float lon = Math.max(-180, Math.min(180, corner.getY()));
+			IntegerVector3D tile = AlgoUtil.geoToTile(new FloatVector3D(lat, lon, glZoom));
+
+			int x = Math.max(0, Math.min(maxCoord, tile.getX()));
+			int y = Math.max(0, Math.min(maxCoord, tile.getY()));
+			minX = Math.min(minX, x);
+			minY = Math.min(minY, y);
+			maxX = Math.max(maxX, x);
+			maxY = Math.max(maxY, y);
+		}
+		return new TileRange(zoom, minX, minY, maxX, maxY);
+	}
+
+	/**
+	 * Returns the coordinates of a tile in the enumeration of all tiles.
+	 * @param index The index of the tile in range [0, <code>getTotalTileCount()</code>).
+	 * @return The coordinates of the tile (x, y, zoom).
+	 */
+	private IntegerVector3D getTile(long index) {
+		for(TileRange range : ranges) {
+			if(index < range.getTileCount()) {
+				return range.getTile(index);
+			}
+			index -= range.getTileCount();
+		}
+		return null;
+	}
+
+	/**
+	 * Starts seeding in the background. If the progress of the same region was recorded,
+	 * the seeding continues there.
+	 */
+	public void start() {
+		nextTile = restoreProgress();
+		int quota = 0;
+		for(SubServer subServer : style.getSubServers()) {
+			quota += subServer.getMaxConnections();
+		}
+		workerShare = WorkerPool.getInstance().createShare("TileSeeder", quota);
+
+		seederThread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					seed();
+
+				} finally {
+					workerShare.release();
+				}
+			}
+		}, "TileSeeder");
+		seederThread.setDaemon(true);
+		seederThread.start();
+	}
+
+	/**
+	 * Fetches the tiles batch by batch, beginning at <code>nextTile</code>.
+	 */
+	private void seed() {
+		startTime = System.currentTimeMillis();
+		countMissingTiles();
+		reportEstimate();
+
+		long lastReport = startTime;
+		while(nextTile < totalTileCount && !cancelled) {
+			long batchEnd = Math.min(totalTileCount, nextTile + BATCH_SIZE);
+
+			List<DataResource> dummies = new LinkedList<>();
+			for(long index = nextTile; index < batchEnd; index++) {
+				IntegerVector3D coords = getTile(index);
+				TileResource dummy = new TileResource(coords.getX(), coords.getY(), coords.getZ());
+				dummy.setStyle(style);
+				dummy.setDummy(true);
+
+				if(cache.isCached(dummy.getKey())) {
+					skippedTileCount.incrementAndGet();
+				} else {
+					dummies.add(dummy);
+				}
+			}
+
+			if(!dummies.isEmpty() && !fetch(dummies)) {
+				// Cancelled, so the batch is fetched again when continued:
+				break;
+			}
+			nextTile = batchEnd;
+			saveProgress();
+
+			long now = System.currentTimeMillis();
+			if(now - lastReport >= REPORT_INTERVAL) {
+				reportProgress();
+				lastReport = now;
+			}
+		}
+
+		if(nextTile >= totalTileCount) {
+			finished = true;
+			progressFile.delete();
+		}
+		reportProgress();
+	}
+
+	/**
+	 * Counts the tiles of the region not cached yet, for estimating the space required.
+	 */
+	private void countMissingTiles() {
+		long missing = 0;
+		for(long index = nextTile; index < totalTileCount && !cancelled; index++) {
+			IntegerVector3D coords = getTile(index);
+			TileResource tile = new TileResource(coords.getX(), coords.getY(), coords.getZ());
+			tile.setStyle(style);
+			if(!cache.isCached(tile.getKey())) {
+				missing++;
+			}
+		}
+		missingTileCount = missing;
+	}
+
+	/**
+	 * Fetches a batch of tiles and adds them to the cache.
+	 * @param dummies The tiles to fetch.
+	 * @return <code>false</code> if the seeding was cancelled before all workers finished.
+	 */
+	private boolean fetch(List<DataResource> dummies) {
+		// Each connection-slot of the subservers gets a part of the batch:
+		List<SubServer> slots = new ArrayList<>();
+		for(SubServer subServer : style.getSubServers()) {
+			for(int i = 0; i < subServer.getMaxConnections(); i++) {
+				slots.add(subServer);
+			}
+		}
+		List<List<DataResource>> parts = new ArrayList<>();
+		for(int i = 0; i < slots.size(); i++) {
+			parts.add(new LinkedList<DataResource>());
+		}
+		int slot = 0;
+		for(DataResource dummy : dummies) {
+			parts.get(slot).add(dummy);
+			slot = (slot + 1) % slots.size();
+		}
+
+		final AtomicInteger loadedInBatch = new AtomicInteger();
+		TileCacheSink sink = new TileCacheSink(cache, false) {
+			@Override
+			protected void onLoaded(TileResource tile, long imageSize, boolean cached) {
+				if(cached) {
+					loadedTileCount.incrementAndGet();
+					loadedBytes.addAndGet(imageSize);
+					loadedInBatch.incrementAndGet();
+				}
+			}
+		};
+
+		BlockingQueue<AbstractLoaderWorker<?, ?>> finishedWorkers = new LinkedBlockingQueue<>();
+		int running = 0;
+		synchronized (activeWorkers) {
+			if(cancelled) {
+				return false;
+			}
+			for(int i = 0; i < slots.size(); i++) {
+				if(!parts.get(i).isEmpty()) {
+					TileLoaderWorker worker = TileLoaderWorker.createUncached(
+							new TileQuery(parts.get(i), slots.get(i)), profile, finishedWorkers, sink);
+					activeWorkers.add(worker);
+					workerShare.submit(worker);
+					running++;
+				}
+			}
+		}
+
+		try {
+			for(; running > 0; running--) {
+				finishedWorkers.take();
+			}
+		} catch (InterruptedException e) {
+			// Cancelled:
+		} finally {
+			synchronized (activeWorkers) {
+				activeWorkers.clear();
+			}
+		}
+		if(cancelled) {
+			return false;
+		}
+		failedTileCount.addAndGet(dummies.size() - loadedInBatch.get());
+		return true;
+	}
+
+	/**
+	 * Reads the progress recorded for this region.
+	 * @return The index of the next tile to process.
+	 */
+	private long restoreProgress() {
+		if(!progressFile.exists()) {
+			return 0;
+		}
+		Properties progress = new Properties();
+		try(InputStream in = new FileInputStream(progressFile)) {
+			progress.load(in);
+
+		} catch (IOException e) {
+			Logger.getInstance().warning("Cannot read seeding-progress " + progressFile + ": " + e.getMessage());
+			return 0;
+		}
+
+		if(!getSignature().equals(progress.getProperty("region"))) {
+			// The progress of another region:
+			return 0;
+		}
+		try {
+			long next = Long.parseLong(progress.getProperty("next", "0"));
+			Logger.getInstance().message("Continuing seeding of " + getSignature() + " at tile " + next
+					+ " of " + totalTileCount);
+			return Math.max(0, Math.min(totalTileCount, next));
+
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Records the index of the next tile to process. The file is replaced at once, so that
+	 * it is never found half-written.
+	 */
+	private void saveProgress() {
+		Properties progress = new Properties();
+		progress.setProperty("region", getSignature());
+		progress.setProperty("next", Long.toString(nextTile));
+
+		File tempFile = new File(progressFile.getPath() + ".tmp");
+		try {
+			try(OutputStream out = new FileOutputStream(tempFile)) {
+				progress.store(out, "Progress of seeding tiles");
+			}
+			Files.move(tempFile.toPath(), progressFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+
+		} catch (IOException e) {
+			Logger.getInstance().warning("Cannot record seeding-progress: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Returns a description of the region, identifying its progress.
+	 * @return The style, the corners and the zoom-levels of the region.
+	 */
+	private String getSignature() {
+		FloatVector3D upperLeft = geoBox.getUpperLeft();
+		FloatVector3D lowerRight = geoBox.getLowerRight();
+		return style.getLabel() + " (" + upperLeft.getX() + ", " + upperLeft.getY() + ") - ("
+				+ lowerRight.getX() + ", " + lowerRight.getY() + ") zoom "
+				+ ranges.get(0).getZoom() + "-" + ranges.get(ranges.size() - 1).getZoom();
+	}
+
+	/**
+	 * Logs the space required and warns if it exceeds the space left in the cache.
+	 */
+	private void reportEstimate() {
+		long required = getEstimatedRequiredBytes();
+		long available = cache.getMaximumSizeOnDisk() - cache.getSizeOnDisk();
+		Logger.getInstance().message("Seeding " + getSignature() + ": " + missingTileCount + " of "
+				+ totalTileCount + " tiles missing, about " + (required / (1024 * 1024)) + " MiB required.");
+		if(required > available) {
+			Logger.getInstance().warning("The tile-cache has only " + (Math.max(0, available) / (1024 * 1024))
+					+ " MiB left, seeded tiles will be evicted again.");
+		}
+	}
+
+	/**
+	 * Logs the progress and the throughput.
+	 */
+	private void reportProgress() {
+		Logger.getInstance().message("Seeded " + nextTile + " of " + totalTileCount + " tiles ("
+				+ Math.round(getProgress() * 100) + " %): " + loadedTileCount.get() + " loaded, "
+				+ skippedTileCount.get() + " cached, " + failedTileCount.get() + " failed, "
+				+ String.format("%.1f", getTileThroughput()) + " tiles/s, "
+				+ (getByteThroughput() / 1024) + " KiB/s, about "
+				+ (getEstimatedRequiredBytes() / (1024 * 1024)) + " MiB left.");
+	}
+
+	/**
+	 * Stops the seeding. The progress is kept, so that a later seeding of the region continues.
+	 */
+	public void cancel() {
+		cancelled = true;
+		synchronized (activeWorkers) {
+			for(AbstractLoaderWorker<TileQuery, TileResource> worker : activeWorkers) {
+				worker.interrupt();
+			}
+		}
+		if(workerShare != null) {
+			workerShare.cancelPending();
+		}
+		if(seederThread != null) {
+			seederThread.interrupt();
+		}
+	}
+
+	/**
+	 * Waits until the seeding is finished or cancelled.
+	 * @param timeout The maximum time to wait in milliseconds.
+	 * @return <code>true</code> if the seeding is not running any more.
+	 * @throws InterruptedException Thrown if the waiting thread was interrupted.
+	 */
+	public boolean awaitTermination(long timeout) throws InterruptedException {
+		if(seederThread != null) {
+			seederThread.join(timeout);
+			return !seederThread.isAlive();
+		}
+		return true;
+	}
+
+	/**
+	 * Checks whether all tiles of the region were processed.
+	 * @return <code>true</code> if the seeding is complete.
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * Returns the number of tiles in the region in all zoom-levels.
+	 * @return The number of tiles.
+	 */
+	public long getTotalTileCount() {
+		return totalTileCount;
+	}
+
+	/**
+	 * Returns the tiles to seed for each zoom-level.
+	 * @return The tile-ranges, starting at the smallest zoom-level.
+	 */
+	public List<TileRange> getRanges() {
+		return ranges;
+	}
+
+	/**
+	 * Returns the number of tiles processed, including those of earlier seedings of the region.
+	 * @return The number of tiles processed.
+	 */
+	public long getProcessedTileCount() {
+		return nextTile;
+	}
+
+	/**
+	 * Returns the share of the tiles processed.
+	 * @return The progress in range [0, 1].
+	 */
+	public double getProgress() {
+		return totalTileCount > 0 ? (double) nextTile / totalTileCount : 1;
+	}
+
+	/**
+	 * Returns the number of tiles downloaded and cached.
+	 * @return The number of tiles loaded.
+	 */
+	public long getLoadedTileCount() {
+		return loadedTileCount.get();
+	}
+
+	/**
+	 * Returns the size of the image-files downloaded.
+	 * @return The size in bytes.
+	 */
+	public long getLoadedBytes() {
+		return loadedBytes.get();
+	}
+
+	/**
+	 * Returns the number of tiles skipped because they were already cached.
+	 * @return The number of tiles skipped.
+	 */
+	public long getSkippedTileCount() {
+		return skippedTileCount.get();
+	}
+
+	/**
+	 * Returns the number of tiles that could not be downloaded.
+	 * @return The number of tiles failed.
+	 */
+	public long getFailedTileCount() {
+		return failedTileCount.get();
+	}
+
+	/**
+	 * Returns the number of tiles downloaded per second since the seeding started.
+	 * @return The throughput in tiles per second.
+	 */
+	public double getTileThroughput() {
+		long elapsed = System.currentTimeMillis() - startTime;
+		return startTime > 0 && elapsed > 0 ? loadedTileCount.get() * 1000.0 / elapsed : 0;
+	}
+
+	/**
+	 * Returns the number of bytes downloaded per second since the seeding started.
+	 * @return The throughput in bytes per second.
+	 */
+	public long getByteThroughput() {
+		long elapsed = System.currentTimeMillis() - startTime;
+		return startTime > 0 && elapsed > 0 ? loadedBytes.get() * 1000 / elapsed : 0;
+	}
+
+	/**
+	 * Estimates the space on disk the tiles still missing require. The size of a tile is
+	 * taken from the tiles downloaded so far, or from the tiles cached before.
+	 * @return The estimated size in bytes or 0 if the missing tiles are not counted yet.
+	 */
+	public long getEstimatedRequiredBytes() {
+		long missing = missingTileCount;
+		if(missing < 0) {
+			return 0;
+		}
+		long remaining = Math.max(0, missing - loadedTileCount.get() - failedTileCount.get());
+		return remaining * getAverageTileSize();
+	}
+
+	/**
+	 * Returns the average size of the image-file of a tile.
+	 * @return The size in bytes.
+	 */
+	private long getAverageTileSize() {
+		long loaded = loadedTileCount.get();
+		if(loaded > 0) {
+			return loadedBytes.get() / loaded;
+		}
+		int cached = cache.size();
+		long sizeOnDisk = cache.getSizeOnDisk();
+		return cached > 0 && sizeOnDisk > 0 ? sizeOnDisk / cached : DEFAULT_TILE_SIZE;
+	}
+}
@@ -0,0 +1,217 @@
+package sep.gaia.resources.tiles2d;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import sep.gaia.util.Logger;
+
+/**
+ * Writes the image-files of newly cached tiles on a dedicated thread, so that caching
+ * a tile does not delay loading the next one.
+ * <p>
+ * Tiles are written in the order they were queued. Until a tile is written, it can be
+ * retrieved by <code>getPending()</code>. If more than <code>MAXIMUM_PENDING</code>
+ * tiles wait for being written, the tile is written by the thread queuing it, so that
+ * producers are slowed down to the speed of the disk instead of filling the memory.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class TileWriteQueue {
+
+	/**
+	 * The maximum number of tiles waiting for being written.
+	 */
+	public static final int MAXIMUM_PENDING = 512;
+
+	/**
+	 * Persists the image-file of a single tile.
+	 *
+	 * @author Matthias Fisch
+	 *
+	 */
+	public interface Writer {
+
+		/**
+		 * Writes the image-file of <code>tile</code>. Errors must be handled by the writer.
+		 * @param tile The tile to write.
+		 */
+		public void write(TileResource tile);
+	}
+
+	/**
+	 * The tiles waiting for being written in the order they were queued.
+	 */
+	private BlockingQueue<TileResource> queue = new LinkedBlockingQueue<>(MAXIMUM_PENDING);
+
+	/**
+	 * The tiles queued but not written yet mapped by their key.
+	 */
+	private ConcurrentMap<String, TileResource> pending = new ConcurrentHashMap<>();
+
+	/**
+	 * The writer persisting the tiles.
+	 */
+	private Writer writer;
+
+	/**
+	 * The thread writing the queued tiles.
+	 */
+	private Thread writerThread;
+
+	/**
+	 * Number of tiles queued whose writing has not finished yet.
+	 */
+	private int unfinished;
+
+	/**
+	 * Flag if the queue was closed.
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * Lock guarding <code>unfinished</code>.
+	 */
+	private Lock finishLock = new ReentrantLock();
+
+	/**
+	 * Signalled when all tiles queued are written.
+	 */
+	private Condition finished = finishLock.newCondition();
+
+	/**
+	 * Initializes the queue and starts its thread.
+	 * @param writer The writer persisting the tiles.
+	 */
+	public TileWriteQueue(Writer writer) {
+		this.writer = writer;
+
+		writerThread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				while(true) {
+					TileResource tile;
+					try {
+						tile = queue.take();
+
+					} catch (InterruptedException e) {
+						// The queue was closed:
+						return;
+					}
+					write(tile);
+				}
+			}
+		}, "TileCacheWriter");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Queues a tile for being written. If the queue is full or closed the tile is written
+	 * by the calling thread before returning.
+	 * @param tile The tile to write.
+	 */
+	public void enqueue(TileResource tile) {
+		finishLock.lock();
+		try {
+			unfinished++;
+		} finally {
+			finishLock.unlock();
+		}
+		pending.put(tile.getKey(), tile);
+
+		if(closed || !queue.offer(tile)) {
+			write(tile);
+		}
+	}
+
+	/**
+	 * Writes a tile and marks it as finished.
+	 * @param tile The tile to write.
+	 */
+	private void write(TileResource tile) {
+		try {
+			writer.write(tile);
+
+		} catch (RuntimeException e) {
+			Logger.getInstance().error("Cannot write cached tile " + tile.getKey() + ": " + e.getMessage());
+
+		} finally {
+			// Only remove the tile if it was not queued again meanwhile:
+			pending.remove(tile.getKey(), tile);
+
+			finishLock.lock();
+			try {
+				unfinished--;
+				if(unfinished == 0) {
+					finished.signalAll();
+				}
+			} finally {
+				finishLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Returns a tile queued but not written yet.
+	 * @param key The key of the tile (see <code>TileResource.getKey()</code>).
+	 * @return The tile queued last with <code>key</code> or <code>null</code> if there is none waiting.
+	 */
+	public TileResource getPending(String key) {
+		return pending.get(key);
+	}
+
+	/**
+	 * Returns the number of tiles queued whose writing has not finished yet.
+	 * @return The number of tiles not written yet.
+	 */
+	public int getPendingCount() {
+		finishLock.lock();
+		try {
+			return unfinished;
+		} finally {
+			finishLock.unlock();
+		}
+	}
+
+	/**
+	 * Waits until all tiles queued before are written.
+	 */
+	public void flush() {
+		boolean interrupted = false;
+		finishLock.lock();
+		try {
+			while(unfinished > 0) {
+				try {
+					finished.await();
+
+				} catch (InterruptedException e) {
+					// Finish waiting, so that no tile is lost:
+					interrupted = true;
+				}
+			}
+		} finally {
+			finishLock.unlock();
+		}
+
+		if(interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Writes all tiles queued and stops the thread of the queue. Tiles queued afterwards
+	 * are written by the thread queuing them.
+	 */
+	public void close() {
+		closed = true;
+		flush();
+		writerThread.interrupt();
+	}
+}
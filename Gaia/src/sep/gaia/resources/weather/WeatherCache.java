@@ -10,6 +10,7 @@ import sep.gaia.resources.Cache;
 import sep.gaia.resources.DataResource;
 import sep.gaia.resources.LoaderEventListener;
 import sep.gaia.resources.Query;
+import sep.gaia.resources.WorkerPool;
 
 /**
  * <code>WeatherResource</code> objects are only stored in memory. The removal
@@ -25,6 +26,11 @@ public class WeatherCache extends Cache<WeatherResource> implements
 	
 	private WeatherManager manager;
 
+	/**
+	 * The share of the <code>WorkerPool</code> the workers of this cache are executed in.
+	 */
+	private WorkerPool.Share workerShare;
+
 	/**
 	 * Constructs a <code>WeatherCache</code> object with a specific manager.
 	 * 
@@ -34,6 +40,18 @@ public class WeatherCache extends Cache<WeatherResource> implements
 	public WeatherCache(WeatherManager manager) {
 		super(MAX_ENTRIES);
 		this.manager = manager;
+		this.workerShare = WorkerPool.getInstance().createShare(WeatherManager.MANAGER_LABEL, 1);
+	}
+
+	/**
+	 * Sets how the workers loading weather-data are executed.
+	 * 
+	 * @param executionMode How the workers should be executed.
+	 * @return <code>true</code> if the mode was set, <code>false</code> if virtual
+	 * threads are not supported by the runtime.
+	 */
+	public boolean setExecutionMode(WorkerPool.ExecutionMode executionMode) {
+		return workerShare.setExecutionMode(executionMode);
 	}
 
 	public void get(WeatherResource dummy) {
@@ -43,7 +61,7 @@ public class WeatherCache extends Cache<WeatherResource> implements
 			Collection<DataResource> querySet = new HashSet<>();
 			querySet.add(dummy);
 			WeatherLoaderWorker worker = new WeatherLoaderWorker(new Query(querySet), this);
-			worker.start();
+			workerShare.submit(worker);
 		} else {
 			Collection<WeatherResource> results = new HashSet<>();
 			results.add(result);
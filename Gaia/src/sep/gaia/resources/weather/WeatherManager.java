@@ -19,6 +19,7 @@ import javax.media.opengl.awt.GLCanvas;
 import sep.gaia.resources.DataResourceManager;
 import sep.gaia.resources.Loader;
 import sep.gaia.resources.LoaderEventListener;
+import sep.gaia.resources.WorkerPool.ExecutionMode;
 import sep.gaia.resources.Query;
 import sep.gaia.state.GLState;
 import sep.gaia.state.State;
@@ -180,6 +181,11 @@ public class WeatherManager extends DataResourceManager<WeatherResource>
 		notifyAll(null);
 	}
 
+	@Override
+	protected void applyExecutionMode(ExecutionMode executionMode) {
+		cache.setExecutionMode(executionMode);
+	}
+
 	@Override
 	public void onResourcesAvailable(Collection<WeatherResource> resources) {
 
@@ -5,6 +5,7 @@ import sep.gaia.resources.DataResource;
 import sep.gaia.resources.DataResourceManager;
 import sep.gaia.resources.Loader;
 import sep.gaia.resources.LoaderEventListener;
+import sep.gaia.resources.WorkerPool.ExecutionMode;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
@@ -55,7 +56,7 @@ public class WikipediaManager extends DataResourceManager<WikipediaData> impleme
 	public WikipediaManager() {
 		super("Wikipedia");
 		cache = new WikipediaCache();
-		loader = new Loader<Query, WikipediaData>(cache, new WikipediaWorkerFactory(), null);
+		loader = new Loader<Query, WikipediaData>(getLabel(), cache, new WikipediaWorkerFactory(), null, Loader.DEFAULT_WORKER_QUOTA);
 		currentWikis = new HashSet<WikipediaData>();
 		loader.addListener(this);
 		loader.start();
@@ -240,4 +241,11 @@ public class WikipediaManager extends DataResourceManager<WikipediaData> impleme
 			loader.interrupt(); // set the interrupt-flag to request termination.
 		}
 	}
+
+	@Override
+	protected void applyExecutionMode(ExecutionMode executionMode) {
+		if(loader != null) {
+			loader.setExecutionMode(executionMode);
+		}
+	}
 }
\ No newline at end of file
@@ -0,0 +1,143 @@
+package sep.gaia.resources.eviction.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collection;
+
+import org.junit.Test;
+
+import sep.gaia.resources.eviction.EvictionPolicy;
+import sep.gaia.resources.eviction.FrequencySketch;
+import sep.gaia.resources.eviction.LruEvictionPolicy;
+import sep.gaia.resources.eviction.SegmentedLruEvictionPolicy;
+import sep.gaia.resources.eviction.WTinyLfuEvictionPolicy;
+import sep.gaia.resources.test.NamedResource;
+import sep.gaia.resources.test.SimpleCache;
+
+/**
+ * Class to test the eviction-policies of <code>sep.gaia.resources.eviction</code>
+ * and their use by <code>Cache</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class EvictionPolicyTest {
+
+	@Test
+	/**
+	 * Tests that the least recently used key is evicted first.
+	 */
+	public void testLru() {
+		EvictionPolicy policy = new LruEvictionPolicy();
+		policy.recordInsertion("a");
+		policy.recordInsertion("b");
+		policy.recordInsertion("c");
+		policy.recordAccess("a");
+		policy.recordRemoval("c");
+
+		assertEquals("b", policy.evict());
+		assertEquals("a", policy.evict());
+		assertNull(policy.evict());
+	}
+
+	@Test
+	/**
+	 * Tests that keys used repeatedly are protected from keys used once.
+	 */
+	public void testSegmentedLru() {
+		EvictionPolicy policy = new SegmentedLruEvictionPolicy();
+		policy.setCapacity(10);
+		policy.recordInsertion("hot");
+		policy.recordAccess("hot");
+		for(int i = 0; i < 5; i++) {
+			policy.recordInsertion("scan" + i);
+		}
+
+		for(int i = 0; i < 5; i++) {
+			assertEquals("scan" + i, policy.evict());
+		}
+		assertEquals("hot", policy.evict());
+	}
+
+	@Test
+	/**
+	 * Tests that the sketch estimates frequencies and forgets them over time.
+	 */
+	public void testFrequencySketch() {
+		FrequencySketch sketch = new FrequencySketch(16);
+		for(int i = 0; i < 5; i++) {
+			sketch.increment("a");
+		}
+		sketch.increment("b");
+
+		assertTrue(sketch.frequency("a") >= 5);
+		assertTrue(sketch.frequency("a") > sketch.frequency("b"));
+
+		// Counters saturate:
+		for(int i = 0; i < 100; i++) {
+			sketch.increment("a");
+		}
+		assertEquals(FrequencySketch.MAX_FREQUENCY, sketch.frequency("a"));
+
+		// Many other uses halve the counters:
+		for(int i = 0; i < 1000; i++) {
+			sketch.increment("other" + i);
+		}
+		assertTrue(sketch.frequency("a") < FrequencySketch.MAX_FREQUENCY);
+	}
+
+	@Test
+	/**
+	 * Tests that a scan over many keys used once does not evict keys used frequently.
+	 */
+	public void testWTinyLfuScanResistance() {
+		SimpleCache cache = new SimpleCache(100, new WTinyLfuEvictionPolicy());
+
+		// A working set used repeatedly:
+		for(int i = 0; i < 50; i++) {
+			cache.add(new NamedResource("hot" + i));
+		}
+		for(int round = 0; round < 3; round++) {
+			for(int i = 0; i < 50; i++) {
+				assertNotNull(cache.get("hot" + i));
+			}
+		}
+
+		// A scan over many keys used once:
+		for(int i = 0; i < 1000; i++) {
+			cache.add(new NamedResource("scan" + i));
+			cache.manage();
+		}
+
+		assertEquals(100, cache.size());
+		for(int i = 0; i < 50; i++) {
+			assertNotNull("hot" + i + " was evicted", cache.getAll("hot" + i));
+		}
+	}
+
+	@Test
+	/**
+	 * Tests that the cache records hits at the policy and evicts incrementally.
+	 */
+	public void testCacheEviction() {
+		SimpleCache cache = new SimpleCache(3, EvictionPolicy.Type.LRU.createPolicy());
+		cache.add(new NamedResource("a"));
+		cache.add(new NamedResource("b"));
+		cache.add(new NamedResource("c"));
+		cache.get("a");
+		cache.add(new NamedResource("d"));
+
+		Collection<?> removed = cache.manage();
+		assertEquals(1, removed.size());
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(3, cache.size());
+		assertNull(cache.getAll("b"));
+		assertNotNull(cache.getAll("a"));
+
+		// Nothing to remove within the limit:
+		assertTrue(cache.manage().isEmpty());
+	}
+}
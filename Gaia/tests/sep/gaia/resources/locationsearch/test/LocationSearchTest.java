@@ -1,5 +1,6 @@
 package sep.gaia.resources.locationsearch.test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -9,6 +10,8 @@ import java.util.LinkedList;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import sep.gaia.resources.WorkerPool;
+import sep.gaia.resources.WorkerPool.ExecutionMode;
 import sep.gaia.resources.locationsearch.Location;
 import sep.gaia.resources.locationsearch.LocationSearch;
 
@@ -51,5 +54,21 @@ public class LocationSearchTest {
 		
 		assertTrue(lSearch.getLocationResults().containsAll(resources));
 	}
+	
+	@Test
+	public void testSetExecutionMode() {
+		LocationSearch search = new LocationSearch();
+		assertEquals(ExecutionMode.POOLED, search.getExecutionMode());
+		
+		// The mode is passed on to the loader of the search, if the runtime supports it:
+		boolean supported = WorkerPool.isVirtualThreadSupported();
+		assertEquals(supported, search.setExecutionMode(ExecutionMode.VIRTUAL));
+		ExecutionMode expected = supported ? ExecutionMode.VIRTUAL : ExecutionMode.POOLED;
+		assertEquals(expected, search.getExecutionMode());
+		assertEquals(expected, search.getLoader().getExecutionMode());
+		
+		assertTrue(search.setExecutionMode(ExecutionMode.POOLED));
+		assertEquals(ExecutionMode.POOLED, search.getLoader().getExecutionMode());
+	}
 
 }
@@ -0,0 +1,104 @@
+package sep.gaia.resources.monitoring.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+import sep.gaia.resources.monitoring.CacheStats;
+import sep.gaia.resources.monitoring.Histogram;
+import sep.gaia.resources.monitoring.Monitor;
+import sep.gaia.resources.monitoring.MetricsWriter;
+import sep.gaia.resources.test.NamedResource;
+import sep.gaia.resources.test.SimpleCache;
+
+/**
+ * Class to test the publication of metrics by <code>sep.gaia.resources.monitoring.Monitor</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class MonitorTest {
+
+	@Test
+	/**
+	 * Tests that the hits and misses of a cache are published as MBean and in
+	 * Prometheus text-format.
+	 */
+	public void testCacheMetrics() throws Exception {
+		SimpleCache cache = new SimpleCache();
+		cache.add(new NamedResource("a"));
+		cache.get("a");
+		cache.get("a");
+		cache.get("b");
+
+		CacheStats stats = new CacheStats(cache);
+		Monitor.getInstance().register("Cache", "test-cache", stats);
+		try {
+			ObjectName name = new ObjectName(Monitor.DOMAIN + ":type=Cache,name=\"test-cache\"");
+			assertEquals(2L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Hits"));
+			assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Misses"));
+
+			String text = Monitor.getInstance().renderPrometheus();
+			assertTrue(text.contains("# TYPE gaia_cache_hits_total counter\n"));
+			assertTrue(text.contains("gaia_cache_hits_total{name=\"test-cache\"} 2\n"));
+			assertTrue(text.contains("gaia_cache_misses_total{name=\"test-cache\"} 1\n"));
+		} finally {
+			Monitor.getInstance().unregister(stats);
+		}
+	}
+
+	@Test
+	/**
+	 * Tests that histogram-buckets are cumulative.
+	 */
+	public void testHistogram() {
+		Histogram histogram = new Histogram(new double[] {0.1, 1});
+		histogram.observe(50000000L);
+		histogram.observe(500000000L);
+		histogram.observe(5000000000L);
+
+		MetricsWriter writer = new MetricsWriter();
+		histogram.collect(writer, "test_seconds", "Test.", MetricsWriter.label("server", "a"));
+		String text = writer.toString();
+
+		assertTrue(text.contains("gaia_test_seconds_bucket{server=\"a\",le=\"0.1\"} 1\n"));
+		assertTrue(text.contains("gaia_test_seconds_bucket{server=\"a\",le=\"1.0\"} 2\n"));
+		assertTrue(text.contains("gaia_test_seconds_bucket{server=\"a\",le=\"+Inf\"} 3\n"));
+		assertTrue(text.contains("gaia_test_seconds_count{server=\"a\"} 3\n"));
+		assertEquals(3, histogram.getCount());
+	}
+
+	@Test
+	/**
+	 * Tests that the endpoint serves the metrics of the sources registered.
+	 */
+	public void testEndpoint() throws Exception {
+		Monitor monitor = Monitor.getInstance();
+		monitor.getFetchLatency("tile.example.org").observe(1000000L);
+		monitor.startEndpoint(0);
+		try {
+			URL url = new URL("http://127.0.0.1:" + monitor.getEndpointPort() + Monitor.ENDPOINT_PATH);
+			ByteArrayOutputStream content = new ByteArrayOutputStream();
+			try (InputStream in = url.openStream()) {
+				byte[] buffer = new byte[4096];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					content.write(buffer, 0, read);
+				}
+			}
+			String text = content.toString("UTF-8");
+			assertTrue(text.contains("gaia_fetch_latency_seconds_count{server=\"tile.example.org\"}"));
+			assertTrue(text.contains("gaia_http_saved_bytes_total"));
+		} finally {
+			monitor.stopEndpoint();
+		}
+	}
+}
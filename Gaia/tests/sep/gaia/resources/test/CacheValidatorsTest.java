@@ -0,0 +1,120 @@
+package sep.gaia.resources.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Test;
+
+import sep.gaia.resources.CacheValidators;
+
+/**
+ * Class to test <code>sep.gaia.resources.CacheValidators</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class CacheValidatorsTest {
+
+	/**
+	 * The time the responses are received at.
+	 */
+	private static final long RESPONSE_TIME = 1000000000000L;
+
+	/**
+	 * Creates a successful response.
+	 */
+	private static HttpResponse createResponse() {
+		return new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+	}
+
+	@Test
+	/**
+	 * Tests that the validators are read and the expiry is taken from <code>max-age</code>.
+	 */
+	public void testMaxAge() {
+		HttpResponse response = createResponse();
+		response.addHeader("ETag", "\"abc\"");
+		response.addHeader("Last-Modified", DateUtils.formatDate(new Date(RESPONSE_TIME - 60000)));
+		response.addHeader("Cache-Control", "public, max-age=3600");
+		// Cache-Control takes precedence:
+		response.addHeader("Expires", DateUtils.formatDate(new Date(RESPONSE_TIME)));
+
+		CacheValidators validators = CacheValidators.fromResponse(response, RESPONSE_TIME);
+		assertEquals("\"abc\"", validators.getEntityTag());
+		assertEquals(RESPONSE_TIME - 60000, validators.getLastModified());
+		assertEquals(RESPONSE_TIME + 3600000, validators.getExpires());
+		assertTrue(validators.isConditional());
+	}
+
+	@Test
+	/**
+	 * Tests that <code>Expires</code> is taken relative to the clock of the server.
+	 */
+	public void testExpires() {
+		HttpResponse response = createResponse();
+		// The clock of the server is an hour ahead:
+		long serverTime = RESPONSE_TIME + 3600000;
+		response.addHeader("Date", DateUtils.formatDate(new Date(serverTime)));
+		response.addHeader("Expires", DateUtils.formatDate(new Date(serverTime + 120000)));
+
+		CacheValidators validators = CacheValidators.fromResponse(response, RESPONSE_TIME);
+		assertEquals(RESPONSE_TIME + 120000, validators.getExpires());
+		assertNull(validators.getEntityTag());
+		assertFalse(validators.isConditional());
+	}
+
+	@Test
+	/**
+	 * Tests that resources not to be cached expire immediately.
+	 */
+	public void testNoCache() {
+		HttpResponse response = createResponse();
+		response.addHeader("Cache-Control", "max-age=3600, no-cache");
+		assertEquals(RESPONSE_TIME, CacheValidators.fromResponse(response, RESPONSE_TIME).getExpires());
+
+		// Without any information the expiry is unknown:
+		assertEquals(0, CacheValidators.fromResponse(createResponse(), RESPONSE_TIME).getExpires());
+	}
+
+	@Test
+	/**
+	 * Tests that the validators of a <code>304</code>-response update the cached ones.
+	 */
+	public void testRefresh() {
+		CacheValidators cached = new CacheValidators("\"abc\"", 5000, 9000);
+		CacheValidators refreshed = cached.refresh(new CacheValidators(null, 0, 20000));
+		assertEquals("\"abc\"", refreshed.getEntityTag());
+		assertEquals(5000, refreshed.getLastModified());
+		assertEquals(20000, refreshed.getExpires());
+
+		refreshed = cached.refresh(new CacheValidators("\"def\"", 6000, 0));
+		assertEquals("\"def\"", refreshed.getEntityTag());
+		assertEquals(6000, refreshed.getLastModified());
+		assertEquals(0, refreshed.getExpires());
+	}
+
+	@Test
+	/**
+	 * Tests that requests are made conditional on the validators.
+	 */
+	public void testApplyTo() {
+		HttpGet request = new HttpGet("http://localhost/tile.png");
+		new CacheValidators("\"abc\"", RESPONSE_TIME, 0).applyTo(request);
+		assertEquals("\"abc\"", request.getFirstHeader("If-None-Match").getValue());
+		assertEquals(RESPONSE_TIME, DateUtils.parseDate(request.getFirstHeader("If-Modified-Since").getValue()).getTime());
+
+		request = new HttpGet("http://localhost/tile.png");
+		new CacheValidators(null, 0, 9000).applyTo(request);
+		assertNull(request.getFirstHeader("If-None-Match"));
+		assertNull(request.getFirstHeader("If-Modified-Since"));
+	}
+}
@@ -0,0 +1,91 @@
+package sep.gaia.resources.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import sep.gaia.resources.CircuitBreaker;
+import sep.gaia.resources.CircuitBreaker.State;
+
+/**
+ * Class to test <code>sep.gaia.resources.CircuitBreaker</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class CircuitBreakerTest {
+
+	@Test
+	/**
+	 * Tests that the breaker opens after consecutive failures only.
+	 */
+	public void testOpen() {
+		CircuitBreaker breaker = new CircuitBreaker(3, 10000, 60000);
+		breaker.recordFailure();
+		breaker.recordFailure();
+		// A success in between resets the count:
+		breaker.recordSuccess();
+		breaker.recordFailure();
+		breaker.recordFailure();
+		assertEquals(State.CLOSED, breaker.getState());
+		assertTrue(breaker.allowRequest());
+
+		breaker.recordFailure();
+		assertEquals(State.OPEN, breaker.getState());
+		assertFalse(breaker.allowRequest());
+		assertFalse(breaker.isAvailable());
+	}
+
+	@Test
+	/**
+	 * Tests that a single probe is let through after the backoff, which is doubled if it fails.
+	 */
+	public void testProbe() throws InterruptedException {
+		CircuitBreaker breaker = new CircuitBreaker(1, 50, 150);
+		final List<State> changes = new ArrayList<>();
+		breaker.setListener(new CircuitBreaker.Listener() {
+			@Override
+			public void onStateChanged(CircuitBreaker breaker, State state) {
+				changes.add(state);
+			}
+		});
+
+		breaker.recordFailure();
+		assertFalse(breaker.allowRequest());
+		Thread.sleep(80);
+		assertTrue(breaker.isAvailable());
+		assertTrue(breaker.allowRequest());
+		assertEquals(State.HALF_OPEN, breaker.getState());
+		// Only a single probe at once:
+		assertFalse(breaker.allowRequest());
+
+		breaker.recordFailure();
+		assertEquals(100, breaker.getBackoff());
+		Thread.sleep(60);
+		assertFalse(breaker.allowRequest());
+		Thread.sleep(60);
+		assertTrue(breaker.allowRequest());
+
+		// A cancelled probe is replaced by the next request:
+		breaker.recordAbandoned();
+		assertEquals(State.OPEN, breaker.getState());
+		assertTrue(breaker.allowRequest());
+
+		breaker.recordFailure();
+		assertEquals(150, breaker.getBackoff());
+		Thread.sleep(180);
+		assertTrue(breaker.allowRequest());
+		breaker.recordSuccess();
+		assertEquals(State.CLOSED, breaker.getState());
+		assertEquals(50, breaker.getBackoff());
+
+		assertEquals(State.OPEN, changes.get(0));
+		assertEquals(State.HALF_OPEN, changes.get(1));
+		assertEquals(State.CLOSED, changes.get(changes.size() - 1));
+	}
+}
@@ -0,0 +1,130 @@
+package sep.gaia.resources.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import sep.gaia.resources.eviction.AccessBuffer;
+import sep.gaia.resources.eviction.EvictionPolicy;
+
+/**
+ * Class to test the thread-safety of <code>sep.gaia.resources.Cache</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class ConcurrentCacheTest {
+
+	/**
+	 * The number of threads reading concurrently.
+	 */
+	private static final int READERS = 16;
+
+	@Test
+	/**
+	 * Tests that readers, a writer and evictions running concurrently keep the
+	 * cache and its eviction-policy consistent.
+	 */
+	public void testConcurrentReadersAndWriter() throws Exception {
+		for(EvictionPolicy.Type type : EvictionPolicy.Type.values()) {
+			final SimpleCache cache = new SimpleCache(200, type.createPolicy());
+			for(int i = 0; i < 200; i++) {
+				cache.add(new NamedResource("r" + i));
+			}
+
+			final CountDownLatch start = new CountDownLatch(1);
+			final AtomicLong reads = new AtomicLong();
+			final AtomicLong found = new AtomicLong();
+			final AtomicReference<Throwable> failure = new AtomicReference<>();
+			List<Thread> readers = new ArrayList<>();
+			for(int t = 0; t < READERS; t++) {
+				final int seed = t;
+				Thread reader = new Thread() {
+					@Override
+					public void run() {
+						try {
+							start.await();
+							for(int i = 0; i < 20000; i++) {
+								NamedResource result = cache.get("r" + ((i * 31 + seed) % 400));
+								reads.incrementAndGet();
+								if(result != null) {
+									found.incrementAndGet();
+								}
+							}
+						} catch (Throwable e) {
+							failure.set(e);
+						}
+					}
+				};
+				reader.start();
+				readers.add(reader);
+			}
+
+			start.countDown();
+			// Add the keys the readers partly miss, evicting others:
+			for(int i = 200; i < 400; i++) {
+				cache.add(new NamedResource("r" + i));
+				cache.manage();
+			}
+			for(Thread reader : readers) {
+				reader.join();
+			}
+			cache.manage();
+
+			assertNull(type + ": " + failure.get(), failure.get());
+			assertEquals(reads.get(), cache.getHitCount() + cache.getMissCount());
+			assertEquals(found.get(), cache.getHitCount());
+			assertTrue(cache.size() <= 200);
+			assertEquals(200, cache.getEvictionCount());
+			// The policy knows about exactly the entries cached:
+			assertEquals(type.name(), cache.size(), cache.getEvictionPolicy().size());
+		}
+	}
+
+	@Test
+	/**
+	 * Tests that every access offered is either drained or counted as dropped.
+	 */
+	public void testAccessBuffer() throws Exception {
+		final AccessBuffer buffer = new AccessBuffer();
+		final List<String> drained = new ArrayList<>();
+		final CountDownLatch start = new CountDownLatch(1);
+		List<Thread> writers = new ArrayList<>();
+		for(int t = 0; t < READERS; t++) {
+			Thread writer = new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					for(int i = 0; i < 1000; i++) {
+						if(buffer.offer("k" + i)) {
+							synchronized (drained) {
+								buffer.drainTo(drained);
+							}
+						}
+					}
+				}
+			};
+			writer.start();
+			writers.add(writer);
+		}
+		start.countDown();
+		for(Thread writer : writers) {
+			writer.join();
+		}
+		buffer.drainTo(drained);
+
+		assertEquals(READERS * 1000, drained.size() + buffer.getDroppedCount());
+	}
+}
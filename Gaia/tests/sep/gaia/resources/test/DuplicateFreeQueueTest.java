@@ -128,4 +128,60 @@ public class DuplicateFreeQueueTest {
 		
 		assertTrue(queue.isEmpty());
 	}
+	
+	@Test
+	/**
+	 * Tests that <code>take</code> blocks until an entry was pushed.
+	 */
+	public void testTake() throws InterruptedException {
+		
+		Thread producer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					return;
+				}
+				queue.push(42);
+			}
+		});
+		producer.start();
+		
+		assertEquals(new Integer(42), queue.take());
+		assertTrue(queue.isEmpty());
+	}
+	
+	@Test
+	/**
+	 * Tests the <code>setPriority</code> method.
+	 */
+	public void testSetPriority() {
+		
+		queue.push(0, 1);
+		queue.push(1, 1);
+		queue.push(2, 5);
+		
+		assertTrue(queue.setPriority(1, 10));
+		
+		assertEquals(new Integer(10), queue.getPriority(1));
+		assertEquals(new Integer(1), queue.pop());
+		assertEquals(new Integer(2), queue.pop());
+		assertEquals(new Integer(0), queue.pop());
+	}
+	
+	@Test
+	/**
+	 * Tests the <code>remove</code> and <code>contains</code> methods.
+	 */
+	public void testRemove() {
+		
+		queue.push(0);
+		queue.push(1);
+		
+		assertTrue(queue.remove(0));
+		assertTrue(!queue.contains(0));
+		assertEquals(1, queue.size());
+		assertEquals(new Integer(1), queue.pop());
+	}
 }
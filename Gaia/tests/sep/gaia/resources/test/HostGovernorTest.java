@@ -0,0 +1,128 @@
+package sep.gaia.resources.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Test;
+
+import sep.gaia.resources.CancellationToken;
+import sep.gaia.resources.HostGovernor;
+
+/**
+ * Class to test the limits enforced by <code>sep.gaia.resources.HostGovernor</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class HostGovernorTest {
+
+	/**
+	 * A thread acquiring a permit, recording its name and holding the permit until released.
+	 */
+	private static class Requester extends Thread {
+
+		private HostGovernor governor;
+		private String name;
+		private List<String> order;
+		private CancellationToken token = new CancellationToken();
+		private volatile HostGovernor.Permit permit;
+
+		public Requester(HostGovernor governor, String name, List<String> order) {
+			this.governor = governor;
+			this.name = name;
+			this.order = order;
+		}
+
+		@Override
+		public void run() {
+			permit = governor.acquire("tile.example.org", 1, token);
+			if (permit != null) {
+				order.add(name);
+			}
+		}
+	}
+
+	@Test
+	/**
+	 * Tests that no more requests than connection-slots run concurrently and that
+	 * waiting requests are served in the order of their arrival.
+	 */
+	public void testSlotsAndFairness() throws InterruptedException {
+		HostGovernor governor = new HostGovernor();
+		governor.setRequestRate("tile.example.org", 1000);
+		List<String> order = Collections.synchronizedList(new LinkedList<String>());
+
+		Requester first = new Requester(governor, "A", order);
+		first.start();
+		first.join(1000);
+		assertNotNull(first.permit);
+
+		Requester second = new Requester(governor, "B", order);
+		second.start();
+		Thread.sleep(50);
+		Requester third = new Requester(governor, "C", order);
+		third.start();
+		Thread.sleep(50);
+
+		assertEquals(1, governor.getActiveCount("tile.example.org"));
+		assertEquals(2, governor.getWaitingCount("tile.example.org"));
+
+		first.permit.release();
+		second.join(1000);
+		assertNotNull(second.permit);
+		second.permit.release();
+		third.join(1000);
+		assertNotNull(third.permit);
+		third.permit.release();
+
+		assertEquals(Arrays.asList("A", "B", "C"), order);
+		assertEquals(0, governor.getActiveCount("tile.example.org"));
+	}
+
+	@Test
+	/**
+	 * Tests that the request-rate is limited once the burst is used up.
+	 */
+	public void testRateLimit() {
+		HostGovernor governor = new HostGovernor();
+		governor.setRequestRate("tile.example.org", 20);
+
+		long start = System.nanoTime();
+		for (int i = 0; i < 5; i++) {
+			HostGovernor.Permit permit = governor.acquire("tile.example.org", 1, new CancellationToken());
+			permit.release();
+		}
+		long elapsedMillis = (System.nanoTime() - start) / 1000000;
+
+		// One request is permitted immediately, the others 50ms apart:
+		assertTrue(elapsedMillis >= 180);
+	}
+
+	@Test
+	/**
+	 * Tests that a waiting request returns as soon as its token is cancelled.
+	 */
+	public void testCancelWaiting() throws InterruptedException {
+		HostGovernor governor = new HostGovernor();
+		List<String> order = Collections.synchronizedList(new LinkedList<String>());
+
+		HostGovernor.Permit held = governor.acquire("tile.example.org", 1, new CancellationToken());
+		Requester waiting = new Requester(governor, "B", order);
+		waiting.start();
+		Thread.sleep(50);
+
+		waiting.token.cancel();
+		waiting.join(1000);
+		assertTrue(!waiting.isAlive());
+		assertNull(waiting.permit);
+		assertEquals(0, governor.getWaitingCount("tile.example.org"));
+		held.release();
+	}
+}
@@ -0,0 +1,138 @@
+package sep.gaia.resources.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import sep.gaia.resources.CancellationToken;
+import sep.gaia.resources.HttpDownloader;
+
+/**
+ * Class to test the abortable downloads of <code>sep.gaia.resources.HttpDownloader</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class HttpDownloaderTest {
+
+	/**
+	 * Size of the content announced by the test-server.
+	 */
+	private static final int CONTENT_LENGTH = 100000;
+
+	/**
+	 * Starts a server answering a single request with a header announcing
+	 * <code>CONTENT_LENGTH</code> bytes followed by <code>sent</code> bytes of body.
+	 * If <code>sent</code> is less than the length announced, the connection is kept
+	 * open until <code>release</code> is counted down.
+	 */
+	private static ServerSocket serve(final int sent, final CountDownLatch bodySent,
+			final CountDownLatch release) throws IOException {
+		final ServerSocket server = new ServerSocket(0);
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try (Socket socket = server.accept()) {
+					InputStream in = socket.getInputStream();
+					// Skip the request-header:
+					int matched = 0;
+					while (matched < 4) {
+						int c = in.read();
+						if (c == -1) {
+							return;
+						}
+						matched = (c == '\r' || c == '\n') ? matched + 1 : 0;
+					}
+					OutputStream out = socket.getOutputStream();
+					out.write(("HTTP/1.1 200 OK\r\nContent-Length: " + CONTENT_LENGTH
+							+ "\r\n\r\n").getBytes("US-ASCII"));
+					out.write(new byte[sent]);
+					out.flush();
+					bodySent.countDown();
+					release.await(5, TimeUnit.SECONDS);
+				} catch (IOException | InterruptedException e) {
+					// Client went away.
+				}
+			}
+		};
+		thread.setDaemon(true);
+		thread.start();
+		return server;
+	}
+
+	@Test
+	/**
+	 * Tests that a complete download returns its content.
+	 */
+	public void testDownload() throws IOException {
+		CountDownLatch release = new CountDownLatch(0);
+		try (ServerSocket server = serve(CONTENT_LENGTH, new CountDownLatch(1), release)) {
+			URL url = new URL("http://localhost:" + server.getLocalPort() + "/tile.png");
+			byte[] content = HttpDownloader.getInstance().download(url, new CancellationToken());
+			assertArrayEquals(new byte[CONTENT_LENGTH], content);
+		}
+	}
+
+	@Test
+	/**
+	 * Tests that cancelling the token aborts a stalled download immediately and
+	 * records the bytes not transferred.
+	 */
+	public void testCancelInFlight() throws Exception {
+		CountDownLatch bodySent = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		try (ServerSocket server = serve(1000, bodySent, release)) {
+			final URL url = new URL("http://localhost:" + server.getLocalPort() + "/tile.png");
+			final CancellationToken token = new CancellationToken();
+			HttpDownloader downloader = HttpDownloader.getInstance();
+			long savedBefore = downloader.getBytesSaved();
+			long cancelledBefore = downloader.getCancelledCount();
+
+			final byte[][] result = new byte[1][];
+			Thread client = new Thread() {
+				@Override
+				public void run() {
+					try {
+						result[0] = HttpDownloader.getInstance().download(url, token);
+					} catch (IOException e) {
+						result[0] = new byte[0];
+					}
+				}
+			};
+			client.start();
+
+			assertTrue(bodySent.await(5, TimeUnit.SECONDS));
+			Thread.sleep(100);
+			token.cancel();
+			client.join(2000);
+			release.countDown();
+
+			assertTrue(!client.isAlive());
+			assertNull(result[0]);
+			assertEquals(cancelledBefore + 1, downloader.getCancelledCount());
+			assertTrue(downloader.getBytesSaved() - savedBefore >= CONTENT_LENGTH - 1000);
+		}
+	}
+
+	@Test
+	/**
+	 * Tests that no connection is made if the token is already cancelled.
+	 */
+	public void testCancelledBeforeStart() throws IOException {
+		CancellationToken token = new CancellationToken();
+		token.cancel();
+		assertNull(HttpDownloader.getInstance().download(new URL("http://localhost:1/"), token));
+	}
+}
@@ -0,0 +1,122 @@
+package sep.gaia.resources.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import sep.gaia.resources.ListenerDispatcher;
+import sep.gaia.resources.LoaderEventListener;
+
+/**
+ * Class to test the ordering and coalescing of
+ * <code>sep.gaia.resources.ListenerDispatcher</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class ListenerDispatcherTest {
+
+	/**
+	 * A listener blocking on its first batch until it is released and recording
+	 * all batches received.
+	 */
+	private static class RecordingListener implements LoaderEventListener<NamedResource> {
+
+		private List<Collection<NamedResource>> batches = Collections.synchronizedList(
+				new LinkedList<Collection<NamedResource>>());
+		private CountDownLatch started = new CountDownLatch(1);
+		private CountDownLatch release = new CountDownLatch(1);
+		private CountDownLatch done;
+
+		public RecordingListener(int expectedBatches) {
+			done = new CountDownLatch(expectedBatches);
+		}
+
+		@Override
+		public void onResourcesAvailable(Collection<NamedResource> resources) {
+			batches.add(resources);
+			started.countDown();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				// Finish anyway
+			}
+			done.countDown();
+		}
+	}
+
+	/**
+	 * Returns the keys of the non-dummy resources of <code>batch</code>.
+	 */
+	private static List<String> loadedKeys(Collection<NamedResource> batch) {
+		List<String> keys = new LinkedList<>();
+		for (NamedResource resource : batch) {
+			if (!resource.isDummy()) {
+				keys.add(resource.getKey());
+			}
+		}
+		return keys;
+	}
+
+	@Test
+	/**
+	 * Tests that batches dispatched while the listener is busy are merged into one
+	 * and that loaded resources replace their dummies.
+	 */
+	public void testCoalescing() throws InterruptedException {
+		ListenerDispatcher<NamedResource> dispatcher = new ListenerDispatcher<>("test-dispatcher");
+		RecordingListener listener = new RecordingListener(2);
+
+		dispatcher.dispatch(listener, Arrays.asList(new NamedResource("a", false),
+				new NamedResource("b", true), new NamedResource("c", true)), 1);
+		assertTrue(listener.started.await(5, TimeUnit.SECONDS));
+
+		dispatcher.dispatch(listener, Arrays.asList(new NamedResource("a", false),
+				new NamedResource("b", false), new NamedResource("c", true)), 1);
+		dispatcher.dispatch(listener, Arrays.asList(new NamedResource("a", false),
+				new NamedResource("b", true), new NamedResource("c", false)), 1);
+
+		listener.release.countDown();
+		assertTrue(listener.done.await(5, TimeUnit.SECONDS));
+
+		assertEquals(2, listener.batches.size());
+		assertEquals(Arrays.asList("a"), loadedKeys(listener.batches.get(0)));
+		assertEquals(Arrays.asList("a", "b", "c"), loadedKeys(listener.batches.get(1)));
+		assertEquals(1, dispatcher.getCoalescedCount());
+		assertEquals(2, dispatcher.getDeliveredCount());
+	}
+
+	@Test
+	/**
+	 * Tests that a waiting batch is replaced by one of a newer generation and that
+	 * batches of an older generation are not delivered anymore.
+	 */
+	public void testNewerGenerationSupersedes() throws InterruptedException {
+		ListenerDispatcher<NamedResource> dispatcher = new ListenerDispatcher<>("test-dispatcher");
+		RecordingListener listener = new RecordingListener(2);
+
+		dispatcher.dispatch(listener, Arrays.asList(new NamedResource("a", false)), 1);
+		assertTrue(listener.started.await(5, TimeUnit.SECONDS));
+
+		dispatcher.dispatch(listener, Arrays.asList(new NamedResource("b", false)), 1);
+		dispatcher.dispatch(listener, Arrays.asList(new NamedResource("c", false)), 2);
+		dispatcher.dispatch(listener, Arrays.asList(new NamedResource("d", false)), 1);
+
+		listener.release.countDown();
+		assertTrue(listener.done.await(5, TimeUnit.SECONDS));
+
+		assertEquals(2, listener.batches.size());
+		assertEquals(Arrays.asList("c"), loadedKeys(listener.batches.get(1)));
+		assertEquals(2, dispatcher.getDiscardedCount());
+		assertTrue(dispatcher.getMaxLagMillis() >= dispatcher.getLastLagMillis());
+	}
+}
@@ -0,0 +1,256 @@
+package sep.gaia.resources.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import sep.gaia.resources.AbstractLoaderWorker;
+import sep.gaia.resources.Cache;
+import sep.gaia.resources.DataResource;
+import sep.gaia.resources.Loader;
+import sep.gaia.resources.LoaderEventListener;
+import sep.gaia.resources.Query;
+import sep.gaia.resources.QuerySplitter;
+import sep.gaia.resources.WorkerFactory;
+import sep.gaia.resources.WorkerPool;
+
+/**
+ * Class to test that <code>sep.gaia.resources.Loader</code> passes on results
+ * published by its workers before they have finished.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class LoaderStreamingTest {
+
+	/**
+	 * A worker publishing the first resource, then blocking until released
+	 * before publishing the second one.
+	 */
+	private static class SteppingWorker extends AbstractLoaderWorker<Query, NamedResource> {
+
+		private CountDownLatch release;
+
+		public SteppingWorker(Query query, CountDownLatch release) {
+			super(query);
+			this.release = release;
+		}
+
+		@Override
+		public void run() {
+			List<NamedResource> results = new LinkedList<>();
+			NamedResource first = new NamedResource("a", false);
+			results.add(first);
+			publishResult(first);
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				return;
+			}
+			NamedResource second = new NamedResource("b", false);
+			results.add(second);
+			publishResult(second);
+			setResults(results);
+		}
+	}
+
+	/**
+	 * Returns the keys of the loaded resources of <code>batch</code>.
+	 */
+	private static List<String> loadedKeys(Collection<NamedResource> batch) {
+		List<String> keys = new LinkedList<>();
+		for (NamedResource resource : batch) {
+			if (!resource.isDummy()) {
+				keys.add(resource.getKey());
+			}
+		}
+		Collections.sort(keys);
+		return keys;
+	}
+
+	@Test
+	/**
+	 * Tests that a published result reaches the listeners while its worker is still running
+	 * and that each result is delivered once, without the rest of the query.
+	 */
+	public void testPartialResults() throws InterruptedException {
+		final CountDownLatch release = new CountDownLatch(1);
+		WorkerFactory<Query, NamedResource> factory = new WorkerFactory<Query, NamedResource>() {
+			@Override
+			public AbstractLoaderWorker<Query, NamedResource> createWorker(Query query,
+					Cache<NamedResource> cache) {
+				return new SteppingWorker(query, release);
+			}
+		};
+
+		Loader<Query, NamedResource> loader = new Loader<>("streaming-test", null, factory, null, 1);
+		final BlockingQueue<Collection<NamedResource>> batches = new LinkedBlockingQueue<>();
+		loader.addListener(new LoaderEventListener<NamedResource>() {
+			@Override
+			public void onResourcesAvailable(Collection<NamedResource> resources) {
+				batches.add(resources);
+			}
+		});
+		loader.start();
+
+		List<DataResource> dummies = new LinkedList<>();
+		dummies.add(new NamedResource("a", true));
+		dummies.add(new NamedResource("b", true));
+		loader.request(new Query(dummies));
+
+		Collection<NamedResource> partial = batches.poll(5, TimeUnit.SECONDS);
+		assertTrue(partial != null);
+		assertEquals(1, partial.size());
+		assertEquals(Arrays.asList("a"), loadedKeys(partial));
+
+		release.countDown();
+		Collection<NamedResource> next = batches.poll(5, TimeUnit.SECONDS);
+		assertTrue(next != null);
+		assertEquals(Arrays.asList("b"), loadedKeys(next));
+
+		// Everything was published, so finishing the worker delivers nothing new:
+		assertEquals(null, batches.poll(200, TimeUnit.MILLISECONDS));
+		loader.interrupt();
+	}
+
+	@Test
+	/**
+	 * Tests that the dummies of a query reach the listeners if its worker loads nothing.
+	 */
+	public void testNothingLoaded() throws InterruptedException {
+		WorkerFactory<Query, NamedResource> factory = new WorkerFactory<Query, NamedResource>() {
+			@Override
+			public AbstractLoaderWorker<Query, NamedResource> createWorker(Query query,
+					Cache<NamedResource> cache) {
+				return new AbstractLoaderWorker<Query, NamedResource>(query) {
+					@Override
+					public void run() {
+						// E.g. the server cannot be reached:
+						setResults(new LinkedList<NamedResource>());
+					}
+				};
+			}
+		};
+
+		Loader<Query, NamedResource> loader = new Loader<>("empty-test", null, factory, null, 1);
+		final BlockingQueue<Collection<NamedResource>> batches = new LinkedBlockingQueue<>();
+		loader.addListener(new LoaderEventListener<NamedResource>() {
+			@Override
+			public void onResourcesAvailable(Collection<NamedResource> resources) {
+				batches.add(resources);
+			}
+		});
+		loader.start();
+
+		List<DataResource> dummies = new LinkedList<>();
+		dummies.add(new NamedResource("a", true));
+		loader.request(new Query(dummies));
+
+		Collection<NamedResource> batch = batches.poll(5, TimeUnit.SECONDS);
+		assertTrue(batch != null);
+		assertEquals(1, batch.size());
+		assertTrue(batch.iterator().next().isDummy());
+		loader.interrupt();
+	}
+
+	@Test
+	/**
+	 * Tests that only workers without resources still needed are stopped and that the
+	 * others skip the resources not needed.
+	 */
+	public void testStopWorkersNotRetained() throws InterruptedException {
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch started = new CountDownLatch(2);
+		final List<AbstractLoaderWorker<Query, NamedResource>> workers = Collections.synchronizedList(
+				new LinkedList<AbstractLoaderWorker<Query, NamedResource>>());
+		WorkerFactory<Query, NamedResource> factory = new WorkerFactory<Query, NamedResource>() {
+			@Override
+			public AbstractLoaderWorker<Query, NamedResource> createWorker(Query query,
+					Cache<NamedResource> cache) {
+				AbstractLoaderWorker<Query, NamedResource> worker = new SteppingWorker(query, release) {
+					@Override
+					public void run() {
+						started.countDown();
+						super.run();
+					}
+				};
+				workers.add(worker);
+				return worker;
+			}
+		};
+		// Each resource is loaded by a worker of its own:
+		QuerySplitter<Query> splitter = new QuerySplitter<Query>() {
+			@Override
+			public Collection<Query> splitQuery(Query query) {
+				Collection<Query> parts = new LinkedList<>();
+				for (DataResource resource : query.getResources()) {
+					parts.add(new Query(Collections.singletonList(resource)));
+				}
+				return parts;
+			}
+		};
+
+		Loader<Query, NamedResource> loader = new Loader<>("retain-test", null, factory, splitter, 2);
+		loader.start();
+		NamedResource a = new NamedResource("a", true);
+		NamedResource b = new NamedResource("b", true);
+		loader.request(new Query(Arrays.<DataResource>asList(a, b)));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+
+		assertEquals(1, loader.requestWorkersStop(Arrays.asList(a)));
+		AbstractLoaderWorker<Query, NamedResource> workerA = workers.get(0);
+		AbstractLoaderWorker<Query, NamedResource> workerB = workers.get(1);
+		if (workerA.getSubQuery().getResources().contains(b)) {
+			AbstractLoaderWorker<Query, NamedResource> swap = workerA;
+			workerA = workerB;
+			workerB = swap;
+		}
+		assertTrue(!workerA.isInterrupted());
+		assertTrue(workerA.isRetained(a));
+		assertTrue(!workerA.isRetained(b));
+		assertTrue(workerB.isInterrupted());
+
+		release.countDown();
+		loader.interrupt();
+	}
+
+	@Test
+	/**
+	 * Tests that a loader unregisters its share from the <code>WorkerPool</code> when it
+	 * exits or is interrupted without having been started.
+	 */
+	public void testShareReleased() throws InterruptedException {
+		WorkerFactory<Query, NamedResource> factory = new WorkerFactory<Query, NamedResource>() {
+			@Override
+			public AbstractLoaderWorker<Query, NamedResource> createWorker(Query query,
+					Cache<NamedResource> cache) {
+				return new SteppingWorker(query, new CountDownLatch(0));
+			}
+		};
+		WorkerPool pool = WorkerPool.getInstance();
+		int shareCount = pool.getShareCount();
+
+		Loader<Query, NamedResource> loader = new Loader<>("release-test", null, factory, null, 1);
+		assertEquals(shareCount + 1, pool.getShareCount());
+		loader.start();
+		loader.interrupt();
+		loader.join(5000);
+		assertEquals(shareCount, pool.getShareCount());
+
+		Loader<Query, NamedResource> unstarted = new Loader<>("unstarted-test", null, factory, null, 1);
+		assertEquals(shareCount + 1, pool.getShareCount());
+		unstarted.interrupt();
+		assertEquals(shareCount, pool.getShareCount());
+	}
+}
@@ -0,0 +1,58 @@
+package sep.gaia.resources.test;
+
+import sep.gaia.resources.DataResource;
+
+/**
+ * A resource identified by a name, shared by the tests of the resource-framework.
+ * Resources with the same name are equal.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class NamedResource extends DataResource {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The name identifying the resource.
+	 */
+	private String name;
+
+	/**
+	 * Initializes a resource that is not a dummy.
+	 * @param name The name identifying the resource.
+	 */
+	public NamedResource(String name) {
+		this(name, false);
+	}
+
+	/**
+	 * Initializes the resource.
+	 * @param name The name identifying the resource.
+	 * @param dummy Flag if the resource is a dummy still to be loaded.
+	 */
+	public NamedResource(String name, boolean dummy) {
+		this.name = name;
+		setDummy(dummy);
+	}
+
+	@Override
+	protected long incrementTimestamp() {
+		return 0;
+	}
+
+	@Override
+	public String getKey() {
+		return name;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof NamedResource && ((NamedResource) obj).name.equals(name);
+	}
+
+	@Override
+	public int hashCode() {
+		return name.hashCode();
+	}
+}
@@ -0,0 +1,54 @@
+package sep.gaia.resources.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import sep.gaia.resources.NegativeCache;
+
+/**
+ * Class to test <code>sep.gaia.resources.NegativeCache</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class NegativeCacheTest {
+
+	@Test
+	/**
+	 * Tests that failures are remembered according to their status until they expire.
+	 */
+	public void testLifetimes() throws InterruptedException {
+		NegativeCache cache = new NegativeCache(1000, 50);
+		cache.recordStatus("missing", 404);
+		cache.recordStatus("broken", 503);
+		assertTrue(cache.isFailed("missing"));
+		assertTrue(cache.isFailed("broken"));
+		assertFalse(cache.isFailed("other"));
+
+		Thread.sleep(100);
+		// Server-errors are retried sooner than resources not found:
+		assertTrue(cache.isFailed("missing"));
+		assertFalse(cache.isFailed("broken"));
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	/**
+	 * Tests that failures can be forgotten before they expire.
+	 */
+	public void testRemove() {
+		NegativeCache cache = new NegativeCache();
+		cache.recordNotFound("a");
+		cache.recordFailure("b");
+		cache.remove("a");
+		assertFalse(cache.isFailed("a"));
+		assertTrue(cache.isFailed("b"));
+
+		cache.clear();
+		assertFalse(cache.isFailed("b"));
+		assertEquals(0, cache.size());
+	}
+}
@@ -0,0 +1,36 @@
+package sep.gaia.resources.test;
+
+import java.util.Collection;
+
+import sep.gaia.resources.Cache;
+import sep.gaia.resources.eviction.EvictionPolicy;
+
+/**
+ * A cache of <code>NamedResource</code>s exposing its management, shared by the tests
+ * of the resource-framework.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class SimpleCache extends Cache<NamedResource> {
+
+	/**
+	 * Initializes a cache with the default size and eviction-policy.
+	 */
+	public SimpleCache() {
+	}
+
+	/**
+	 * Initializes the cache.
+	 * @param maxEntries The maximum number of entries kept after managing the cache.
+	 * @param policy The policy choosing the entries to evict.
+	 */
+	public SimpleCache(int maxEntries, EvictionPolicy policy) {
+		super(maxEntries, policy);
+	}
+
+	@Override
+	public Collection<CacheEntry> manage() {
+		return super.manage();
+	}
+}
@@ -0,0 +1,151 @@
+package sep.gaia.resources.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import sep.gaia.resources.CancellationToken;
+import sep.gaia.resources.SingleFlight;
+
+/**
+ * Class to test the request-deduplication of <code>sep.gaia.resources.SingleFlight</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class SingleFlightTest {
+
+	/**
+	 * A fetch blocking until it is released and counting its executions.
+	 */
+	private static class BlockingFetch implements SingleFlight.Fetch<NamedResource> {
+
+		private CountDownLatch started = new CountDownLatch(1);
+		private CountDownLatch release = new CountDownLatch(1);
+		private AtomicInteger executions = new AtomicInteger();
+		private NamedResource result;
+
+		public BlockingFetch(NamedResource result) {
+			this.result = result;
+		}
+
+		@Override
+		public NamedResource fetch() throws IOException {
+			executions.incrementAndGet();
+			started.countDown();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				// Finish anyway
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * A thread requesting a resource and storing the result.
+	 */
+	private static class Requester extends Thread {
+
+		private SingleFlight<NamedResource> flight;
+		private CancellationToken token;
+		private SingleFlight.Fetch<NamedResource> fetch;
+		private volatile NamedResource result;
+
+		public Requester(SingleFlight<NamedResource> flight, CancellationToken token,
+				SingleFlight.Fetch<NamedResource> fetch) {
+			this.flight = flight;
+			this.token = token;
+			this.fetch = fetch;
+		}
+
+		@Override
+		public void run() {
+			try {
+				result = flight.execute("tile", token, fetch);
+			} catch (IOException e) {
+				result = null;
+			}
+		}
+	}
+
+	@Test
+	/**
+	 * Tests that concurrent requests for the same key share a single fetch.
+	 */
+	public void testConcurrentRequestsShareFetch() throws InterruptedException {
+		SingleFlight<NamedResource> flight = new SingleFlight<>();
+		NamedResource resource = new NamedResource("tile");
+		BlockingFetch fetch = new BlockingFetch(resource);
+
+		Requester first = new Requester(flight, new CancellationToken(), fetch);
+		first.start();
+		assertTrue(fetch.started.await(5, TimeUnit.SECONDS));
+
+		Requester second = new Requester(flight, new CancellationToken(), fetch);
+		Requester third = new Requester(flight, new CancellationToken(), fetch);
+		second.start();
+		third.start();
+		Thread.sleep(100);
+		assertTrue(flight.isInFlight("tile"));
+
+		fetch.release.countDown();
+		first.join(5000);
+		second.join(5000);
+		third.join(5000);
+
+		assertEquals(1, fetch.executions.get());
+		assertSame(resource, first.result);
+		assertSame(resource, second.result);
+		assertSame(resource, third.result);
+		assertEquals(2, flight.getJoinCount());
+		assertTrue(!flight.isInFlight("tile"));
+	}
+
+	@Test
+	/**
+	 * Tests that a waiting requester fetches again if the fetch in flight was abandoned
+	 * and that a cancelled waiting requester returns immediately.
+	 */
+	public void testAbandonedFetchIsTakenOver() throws InterruptedException {
+		SingleFlight<NamedResource> flight = new SingleFlight<>();
+		BlockingFetch abandoned = new BlockingFetch(null);
+		NamedResource resource = new NamedResource("tile");
+		BlockingFetch takeover = new BlockingFetch(resource);
+		takeover.release.countDown();
+
+		CancellationToken leaderToken = new CancellationToken();
+		Requester leader = new Requester(flight, leaderToken, abandoned);
+		leader.start();
+		assertTrue(abandoned.started.await(5, TimeUnit.SECONDS));
+
+		CancellationToken cancelledToken = new CancellationToken();
+		Requester cancelled = new Requester(flight, cancelledToken, takeover);
+		Requester waiting = new Requester(flight, new CancellationToken(), takeover);
+		cancelled.start();
+		waiting.start();
+		Thread.sleep(100);
+
+		cancelledToken.cancel();
+		cancelled.join(1000);
+		assertTrue(!cancelled.isAlive());
+		assertNull(cancelled.result);
+
+		leaderToken.cancel();
+		abandoned.release.countDown();
+		leader.join(5000);
+		waiting.join(5000);
+
+		assertNull(leader.result);
+		assertSame(resource, waiting.result);
+		assertEquals(1, takeover.executions.get());
+	}
+}
@@ -0,0 +1,236 @@
+package sep.gaia.resources.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import sep.gaia.resources.AbstractLoaderWorker;
+import sep.gaia.resources.DataResource;
+import sep.gaia.resources.Query;
+import sep.gaia.resources.WorkerPool;
+
+/**
+ * Class to test the scheduling of <code>sep.gaia.resources.WorkerPool</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class WorkerPoolTest {
+
+	/**
+	 * A worker blocking until it is released and counting the workers running
+	 * at the same time.
+	 */
+	private static class BlockingWorker extends AbstractLoaderWorker<Query, DataResource> {
+
+		private CountDownLatch release;
+		private AtomicInteger running;
+		private AtomicInteger maxRunning;
+		private CountDownLatch done;
+
+		public BlockingWorker(CountDownLatch release, AtomicInteger running,
+				AtomicInteger maxRunning, CountDownLatch done) {
+			super(new Query(new LinkedList<DataResource>()));
+			this.release = release;
+			this.running = running;
+			this.maxRunning = maxRunning;
+			this.done = done;
+		}
+
+		@Override
+		public void run() {
+			int current = running.incrementAndGet();
+			synchronized (maxRunning) {
+				maxRunning.set(Math.max(maxRunning.get(), current));
+			}
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				// Finish anyway
+			}
+			running.decrementAndGet();
+			done.countDown();
+		}
+	}
+
+	/**
+	 * A worker recording its name when executed.
+	 */
+	private static class RecordingWorker extends AbstractLoaderWorker<Query, DataResource> {
+
+		private String name;
+		private List<String> order;
+		private CountDownLatch release;
+		private CountDownLatch done;
+
+		public RecordingWorker(String name, List<String> order, CountDownLatch release,
+				CountDownLatch done) {
+			super(new Query(new LinkedList<DataResource>()));
+			this.name = name;
+			this.order = order;
+			this.release = release;
+			this.done = done;
+		}
+
+		@Override
+		public void run() {
+			order.add(name);
+			try {
+				if (release != null) {
+					release.await(5, TimeUnit.SECONDS);
+				}
+			} catch (InterruptedException e) {
+				// Finish anyway
+			}
+			done.countDown();
+		}
+	}
+
+	@Test
+	/**
+	 * Tests that a share never runs more workers than its quota allows.
+	 */
+	public void testQuota() throws InterruptedException {
+		WorkerPool pool = new WorkerPool(8);
+		WorkerPool.Share share = pool.createShare("test", 2);
+
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(6);
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+
+		for (int i = 0; i < 6; i++) {
+			share.submit(new BlockingWorker(release, running, maxRunning, done));
+		}
+		Thread.sleep(200);
+
+		assertEquals(2, share.getRunningCount());
+		assertEquals(4, share.getPendingCount());
+
+		release.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(2, maxRunning.get());
+	}
+
+	@Test
+	/**
+	 * Tests that a share with many queued workers does not starve another share.
+	 */
+	public void testFairShare() throws InterruptedException {
+		WorkerPool pool = new WorkerPool(1);
+		WorkerPool.Share busy = pool.createShare("busy", 1);
+		WorkerPool.Share other = pool.createShare("other", 1);
+
+		final List<String> order = Collections.synchronizedList(new LinkedList<String>());
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(4);
+
+		busy.submit(new RecordingWorker("A", order, release, done));
+		Thread.sleep(100);
+		busy.submit(new RecordingWorker("B", order, null, done));
+		busy.submit(new RecordingWorker("C", order, null, done));
+		other.submit(new RecordingWorker("D", order, null, done));
+
+		release.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(Arrays.asList("A", "D", "B", "C"), order);
+	}
+
+	@Test
+	/**
+	 * Tests that cancelled workers are not executed.
+	 */
+	public void testCancelPending() throws InterruptedException {
+		WorkerPool pool = new WorkerPool(1);
+		WorkerPool.Share share = pool.createShare("test", 1);
+
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(3);
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+
+		BlockingWorker first = new BlockingWorker(release, running, maxRunning, done);
+		BlockingWorker second = new BlockingWorker(release, running, maxRunning, done);
+		share.submit(first);
+		share.submit(second);
+		Thread.sleep(100);
+
+		assertEquals(1, share.cancelPending());
+		assertTrue(second.isInterrupted());
+		assertTrue(!second.isAlive());
+
+		release.countDown();
+		Thread.sleep(100);
+		assertEquals(2, done.getCount());
+	}
+
+	@Test
+	/**
+	 * Tests that workers of a share in virtual mode are neither bound by the
+	 * quota of the share nor by the size of the pool.
+	 */
+	public void testVirtualExecution() throws InterruptedException {
+		assumeTrue(WorkerPool.isVirtualThreadSupported());
+		WorkerPool pool = new WorkerPool(1);
+		WorkerPool.Share share = pool.createShare("test", 1);
+		assertTrue(share.setExecutionMode(WorkerPool.ExecutionMode.VIRTUAL));
+
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(3);
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+
+		for (int i = 0; i < 3; i++) {
+			share.submit(new BlockingWorker(release, running, maxRunning, done));
+		}
+		Thread.sleep(200);
+
+		assertEquals(3, share.getRunningCount());
+		assertEquals(0, pool.getRunningCount());
+
+		release.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(3, maxRunning.get());
+	}
+
+	@Test
+	/**
+	 * Tests that a share stays pooled if the runtime does not support virtual threads,
+	 * so that its workers are still bound by its quota.
+	 */
+	public void testVirtualUnsupported() throws InterruptedException {
+		assumeFalse(WorkerPool.isVirtualThreadSupported());
+		WorkerPool pool = new WorkerPool(4);
+		WorkerPool.Share share = pool.createShare("test", 1);
+		assertFalse(share.setExecutionMode(WorkerPool.ExecutionMode.VIRTUAL));
+		assertEquals(WorkerPool.ExecutionMode.POOLED, share.getExecutionMode());
+
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(3);
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+
+		for (int i = 0; i < 3; i++) {
+			share.submit(new BlockingWorker(release, running, maxRunning, done));
+		}
+		Thread.sleep(200);
+
+		assertEquals(1, share.getRunningCount());
+
+		release.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(1, maxRunning.get());
+	}
+}
@@ -0,0 +1,156 @@
+package sep.gaia.resources.tiles2d.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import javax.media.opengl.GL;
+
+import org.junit.Test;
+
+import sep.gaia.resources.tiles2d.DecodedTileTier;
+import sep.gaia.resources.tiles2d.PixelBufferPool;
+import sep.gaia.resources.tiles2d.PooledTextureData;
+
+import com.jogamp.opengl.util.texture.TextureData;
+
+/**
+ * Class to test <code>sep.gaia.resources.tiles2d.DecodedTileTier</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class DecodedTileTierTest {
+
+	/**
+	 * Creates the decoded data of a tile of 256x256 RGBA-pixels.
+	 */
+	private static TextureData createData(byte fill) {
+		ByteBuffer pixels = ByteBuffer.allocate(DecodedTileTier.TILE_BYTES);
+		for(int i = 0; i < pixels.capacity(); i++) {
+			pixels.put(i, fill);
+		}
+		return new TextureData(null, GL.GL_RGBA, 256, 256, 0, GL.GL_RGBA, GL.GL_UNSIGNED_BYTE,
+				false, false, false, pixels, null);
+	}
+
+	@Test
+	/**
+	 * Tests that promoted tiles are returned and counted as hits.
+	 */
+	public void testPutGet() {
+		DecodedTileTier tier = new DecodedTileTier(4 * DecodedTileTier.TILE_BYTES);
+		assertNull(tier.get("a"));
+		assertEquals(1, tier.getMissCount());
+
+		tier.put("a", createData((byte) 1));
+		assertTrue(tier.contains("a"));
+		TextureData data = tier.get("a");
+		assertNotNull(data);
+		assertEquals(1, ((ByteBuffer) data.getBuffer()).get(0));
+		assertEquals(1, tier.getHitCount());
+		assertEquals(DecodedTileTier.TILE_BYTES, tier.getUsedBytes());
+
+		// Replacing does not count twice:
+		tier.put("a", createData((byte) 2));
+		assertEquals(1, tier.size());
+		assertEquals(DecodedTileTier.TILE_BYTES, tier.getUsedBytes());
+		assertEquals(2, ((ByteBuffer) tier.get("a").getBuffer()).get(0));
+	}
+
+	@Test
+	/**
+	 * Tests that tiles are demoted when the budget is exceeded, sparing the ones used repeatedly.
+	 */
+	public void testDemotion() {
+		DecodedTileTier tier = new DecodedTileTier(4 * DecodedTileTier.TILE_BYTES);
+		tier.put("hot", createData((byte) 0));
+		tier.get("hot");
+		tier.get("hot");
+
+		// A pan across many tiles viewed once:
+		for(int i = 0; i < 10; i++) {
+			tier.put("scan" + i, createData((byte) i));
+		}
+		assertEquals(4, tier.size());
+		assertTrue(tier.getUsedBytes() <= tier.getBudget());
+		assertEquals(7, tier.getDemotionCount());
+		assertTrue(tier.contains("hot"));
+		assertFalse(tier.contains("scan0"));
+		assertTrue(tier.contains("scan9"));
+
+		// Data larger than the budget is not kept:
+		tier.setBudget(DecodedTileTier.TILE_BYTES / 2);
+		tier.put("large", createData((byte) 0));
+		assertFalse(tier.contains("large"));
+	}
+
+	@Test
+	/**
+	 * Tests removing single and all tiles.
+	 */
+	public void testRemoveClear() {
+		DecodedTileTier tier = new DecodedTileTier(4 * DecodedTileTier.TILE_BYTES);
+		tier.put("a", createData((byte) 1));
+		tier.put("b", createData((byte) 2));
+
+		tier.remove("a");
+		assertFalse(tier.contains("a"));
+		assertEquals(DecodedTileTier.TILE_BYTES, tier.getUsedBytes());
+
+		tier.clear();
+		assertEquals(0, tier.size());
+		assertEquals(0, tier.getUsedBytes());
+		assertNull(tier.get("b"));
+	}
+
+	@Test
+	/**
+	 * Tests that the data handed out shares the pixels but not the position of the buffer.
+	 */
+	public void testSharedViews() {
+		DecodedTileTier tier = new DecodedTileTier(4 * DecodedTileTier.TILE_BYTES);
+		TextureData original = createData((byte) 3);
+		tier.put("a", original);
+
+		// Consuming the buffer of the caller does not affect the data kept:
+		original.getBuffer().position(100);
+		TextureData first = tier.get("a");
+		assertEquals(0, first.getBuffer().position());
+
+		first.getBuffer().position(DecodedTileTier.TILE_BYTES);
+		TextureData second = tier.get("a");
+		assertEquals(0, second.getBuffer().position());
+		assertEquals(DecodedTileTier.TILE_BYTES, second.getBuffer().remaining());
+		assertEquals(3, ((ByteBuffer) second.getBuffer()).get(0));
+	}
+
+	@Test
+	/**
+	 * Tests that pooled pixels return to their pool when their tile is demoted or removed.
+	 */
+	public void testPooledPixels() {
+		PixelBufferPool pool = new PixelBufferPool(PixelBufferPool.BUFFER_SIZE);
+		DecodedTileTier tier = new DecodedTileTier(DecodedTileTier.TILE_BYTES);
+
+		PooledTextureData decoded = PooledTextureData.allocate(null, 256, 256, pool);
+		tier.put("a", decoded);
+		// The uploaded data is released, the tier keeps its own reference:
+		decoded.release();
+		assertEquals(pool.getAllocatedCount() - 1, pool.getFreeCount());
+
+		TextureData viewed = tier.get("a");
+		assertTrue(viewed instanceof PooledTextureData);
+		((PooledTextureData) viewed).release();
+
+		// Demoting the tile returns the buffer:
+		tier.put("b", PooledTextureData.allocate(null, 256, 256, pool));
+		assertFalse(tier.contains("a"));
+		tier.remove("b");
+		assertEquals(pool.getAllocatedCount() - 1, pool.getFreeCount());
+	}
+}
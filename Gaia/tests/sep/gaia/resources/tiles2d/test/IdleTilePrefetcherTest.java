@@ -0,0 +1,94 @@
+package sep.gaia.resources.tiles2d.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import sep.gaia.resources.tiles2d.IdleTilePrefetcher;
+import sep.gaia.util.IntegerBoundingBox;
+import sep.gaia.util.IntegerVector3D;
+import sep.gaia.util.exception.NotABoxException;
+
+/**
+ * Class to test <code>sep.gaia.resources.tiles2d.IdleTilePrefetcher</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class IdleTilePrefetcherTest {
+
+	@Test
+	/**
+	 * Tests that the parents, the ring and the children are returned in this order.
+	 */
+	public void testGetTiles() throws NotABoxException {
+		// 2x2 tiles in the middle of zoom-level 4:
+		IntegerBoundingBox visible = new IntegerBoundingBox(new IntegerVector3D(6, 6, 0), new IntegerVector3D(7, 7, 0));
+		List<IntegerVector3D> tiles = IdleTilePrefetcher.getTiles(visible, 4, 2, 0, 18);
+
+		// One parent, rings of 12 and 20 tiles, 16 children:
+		assertEquals(1 + 12 + 20 + 16, tiles.size());
+		assertEquals(new IntegerVector3D(3, 3, 3), tiles.get(0));
+		for(IntegerVector3D tile : tiles.subList(1, 13)) {
+			assertEquals(4, tile.getZ());
+			assertEquals(1, getDistance(tile, 6, 6, 7, 7));
+		}
+		for(IntegerVector3D tile : tiles.subList(13, 33)) {
+			assertEquals(2, getDistance(tile, 6, 6, 7, 7));
+		}
+		for(IntegerVector3D tile : tiles.subList(33, 49)) {
+			assertEquals(5, tile.getZ());
+			assertTrue(tile.getX() >= 12 && tile.getX() <= 15);
+			assertTrue(tile.getY() >= 12 && tile.getY() <= 15);
+		}
+		// No tile twice:
+		Set<String> distinct = new HashSet<>();
+		for(IntegerVector3D tile : tiles) {
+			distinct.add(tile.toString());
+		}
+		assertEquals(tiles.size(), distinct.size());
+	}
+
+	@Test
+	/**
+	 * Tests that no tiles outside the map or the zoom-levels available are returned.
+	 */
+	public void testGetTilesAtBorders() throws NotABoxException {
+		// The upper left corner of zoom-level 2, with no children available:
+		IntegerBoundingBox visible = new IntegerBoundingBox(new IntegerVector3D(0, 0, 0), new IntegerVector3D(0, 0, 0));
+		List<IntegerVector3D> tiles = IdleTilePrefetcher.getTiles(visible, 2, 1, 0, 2);
+
+		List<IntegerVector3D> expected = Arrays.asList(new IntegerVector3D(0, 0, 1), new IntegerVector3D(1, 0, 2),
+				new IntegerVector3D(0, 1, 2), new IntegerVector3D(1, 1, 2));
+		assertEquals(expected.size(), tiles.size());
+		assertTrue(tiles.containsAll(expected));
+
+		// No parents below the minimum zoom-level:
+		tiles = IdleTilePrefetcher.getTiles(visible, 2, 0, 2, 2);
+		assertTrue(tiles.isEmpty());
+
+		// A ring without tiles at zoom-level 0:
+		tiles = IdleTilePrefetcher.getTiles(visible, 0, 3, 0, 1);
+		assertEquals(4, tiles.size());
+		for(IntegerVector3D tile : tiles) {
+			assertEquals(1, tile.getZ());
+			assertFalse(tile.getX() > 1 || tile.getY() > 1);
+		}
+	}
+
+	/**
+	 * Returns the number of tiles between a tile and a range of tiles.
+	 */
+	private static int getDistance(IntegerVector3D tile, int minX, int minY, int maxX, int maxY) {
+		int dx = Math.max(minX - tile.getX(), Math.max(0, tile.getX() - maxX));
+		int dy = Math.max(minY - tile.getY(), Math.max(0, tile.getY() - maxY));
+		return Math.max(dx, dy);
+	}
+}
@@ -0,0 +1,100 @@
+package sep.gaia.resources.tiles2d.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import sep.gaia.resources.tiles2d.MotionPredictor;
+import sep.gaia.util.FloatVector3D;
+
+/**
+ * Class to test <code>sep.gaia.resources.tiles2d.MotionPredictor</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class MotionPredictorTest {
+
+	/**
+	 * The tolerance when comparing coordinates.
+	 */
+	private static final float DELTA = 1e-3f;
+
+	@Test
+	/**
+	 * Tests that a constant pan is extrapolated linearly.
+	 */
+	public void testPan() {
+		MotionPredictor predictor = new MotionPredictor();
+		assertNull(predictor.predict(100));
+
+		// 1 unit per 10 ms to the right, 2 units per 10 ms down:
+		for(int i = 0; i <= 5; i++) {
+			predictor.record(1000 + 10 * i, 10 * i / 10f, -2 * i, 64);
+		}
+		assertTrue(predictor.isMoving());
+
+		FloatVector3D prediction = predictor.predict(100);
+		assertEquals(15, prediction.getX(), DELTA);
+		assertEquals(-30, prediction.getY(), DELTA);
+		assertEquals(64, prediction.getZ(), DELTA);
+	}
+
+	@Test
+	/**
+	 * Tests that the zoom is extrapolated by a constant factor per time.
+	 */
+	public void testZoom() {
+		MotionPredictor predictor = new MotionPredictor();
+		// The zoom halves every 50 ms:
+		predictor.record(0, 0, 0, 256);
+		predictor.record(50, 0, 0, 128);
+		predictor.record(100, 0, 0, 64);
+
+		FloatVector3D prediction = predictor.predict(100);
+		assertEquals(16, prediction.getZ(), DELTA);
+		assertEquals(0, prediction.getX(), DELTA);
+	}
+
+	@Test
+	/**
+	 * Tests that the latest position is predicted while the view stands still.
+	 */
+	public void testStandingStill() {
+		MotionPredictor predictor = new MotionPredictor();
+		predictor.record(0, 3, 4, 8);
+		assertFalse(predictor.isMoving());
+		FloatVector3D prediction = predictor.predict(400);
+		assertEquals(3, prediction.getX(), DELTA);
+		assertEquals(4, prediction.getY(), DELTA);
+		assertEquals(8, prediction.getZ(), DELTA);
+
+		predictor.record(100, 3, 4, 8);
+		assertFalse(predictor.isMoving());
+		assertEquals(3, predictor.predict(400).getX(), DELTA);
+
+		predictor.reset();
+		assertNull(predictor.predict(400));
+	}
+
+	@Test
+	/**
+	 * Tests that positions recorded before the window are ignored.
+	 */
+	public void testWindow() {
+		MotionPredictor predictor = new MotionPredictor();
+		// A fast pan long ago:
+		predictor.record(0, 0, 0, 1);
+		predictor.record(10, 100, 0, 1);
+
+		// Standing still since:
+		long later = 10 + MotionPredictor.SAMPLE_WINDOW + 1;
+		predictor.record(later, 100, 0, 1);
+		predictor.record(later + 50, 100, 0, 1);
+		assertFalse(predictor.isMoving());
+		assertEquals(100, predictor.predict(400).getX(), DELTA);
+	}
+}
@@ -0,0 +1,299 @@
+package sep.gaia.resources.tiles2d.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sep.gaia.resources.tiles2d.PackedTileStore;
+
+/**
+ * Class to test <code>sep.gaia.resources.tiles2d.PackedTileStore</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class PackedTileStoreTest {
+
+	/**
+	 * The segment-size of the stores tested. Small so that tests span several segments.
+	 */
+	private static final long SEGMENT_SIZE = 4096;
+
+	/**
+	 * The directory of the store tested.
+	 */
+	private File directory;
+
+	/**
+	 * The store tested.
+	 */
+	private PackedTileStore store;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("tilestore").toFile();
+		store = new PackedTileStore(directory, SEGMENT_SIZE);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		store.close();
+		deleteRecursively(directory);
+	}
+
+	/**
+	 * Deletes a file or directory with all its content.
+	 */
+	private static void deleteRecursively(File file) {
+		File[] children = file.listFiles();
+		if(children != null) {
+			for(File child : children) {
+				deleteRecursively(child);
+			}
+		}
+		file.delete();
+	}
+
+	/**
+	 * Creates image-data identifying a tile.
+	 */
+	private static byte[] createData(int x, int y, int length) {
+		byte[] data = new byte[length];
+		for(int i = 0; i < length; i++) {
+			data[i] = (byte) (x * 31 + y * 7 + i);
+		}
+		return data;
+	}
+
+	@Test
+	/**
+	 * Tests writing, reading, replacing and removing tiles.
+	 */
+	public void testWriteReadRemove() throws IOException {
+		byte[] data = createData(1, 2, 100);
+		assertEquals(-1, store.write("osm", 5, 1, 2, data));
+		assertTrue(store.contains("osm", 5, 1, 2));
+		assertArrayEquals(data, store.read("osm", 5, 1, 2));
+
+		// Other styles and coordinates are separate:
+		assertFalse(store.contains("other", 5, 1, 2));
+		assertFalse(store.contains("osm", 5, 2, 1));
+		assertNull(store.read("osm", 6, 1, 2));
+
+		// Replacing returns the size of the old data:
+		byte[] replacement = createData(1, 2, 50);
+		assertEquals(100, store.write("osm", 5, 1, 2, replacement));
+		assertArrayEquals(replacement, store.read("osm", 5, 1, 2));
+		assertEquals(1, store.getTileCount());
+		assertEquals(50, store.getDataBytes());
+
+		assertEquals(50, store.remove("osm", 5, 1, 2));
+		assertEquals(-1, store.remove("osm", 5, 1, 2));
+		assertNull(store.read("osm", 5, 1, 2));
+		assertEquals(0, store.getTileCount());
+		assertEquals(0, store.getDataBytes());
+	}
+
+	@Test
+	/**
+	 * Tests that the index grows and all tiles remain readable.
+	 */
+	public void testManyTiles() throws IOException {
+		for(int x = 0; x < 64; x++) {
+			for(int y = 0; y < 64; y++) {
+				store.write("osm", 12, x, y, createData(x, y, 8));
+			}
+		}
+		assertEquals(64 * 64, store.getTileCount());
+		assertTrue(store.getSegmentCount() > 1);
+
+		final AtomicInteger visited = new AtomicInteger();
+		store.forEach(new PackedTileStore.Visitor() {
+			@Override
+			public void visit(String style, int zoom, int x, int y, int length) {
+				assertEquals("osm", style);
+				assertEquals(12, zoom);
+				assertEquals(8, length);
+				visited.incrementAndGet();
+			}
+		});
+		assertEquals(64 * 64, visited.get());
+
+		for(int x = 0; x < 64; x++) {
+			for(int y = 0; y < 64; y++) {
+				assertArrayEquals(createData(x, y, 8), store.read("osm", 12, x, y));
+			}
+		}
+	}
+
+	@Test
+	/**
+	 * Tests that tiles are kept after closing and reopening.
+	 */
+	public void testReopen() throws IOException {
+		store.write("osm", 3, 1, 1, createData(1, 1, 20));
+		store.write("cycle", 3, 1, 1, createData(2, 2, 30));
+		store.write("osm", 3, 2, 2, createData(3, 3, 40));
+		store.remove("osm", 3, 2, 2);
+		store.close();
+
+		store = new PackedTileStore(directory, SEGMENT_SIZE);
+		assertEquals(2, store.getTileCount());
+		assertEquals(50, store.getDataBytes());
+		assertArrayEquals(createData(1, 1, 20), store.read("osm", 3, 1, 1));
+		assertArrayEquals(createData(2, 2, 30), store.read("cycle", 3, 1, 1));
+		assertFalse(store.contains("osm", 3, 2, 2));
+	}
+
+	@Test
+	/**
+	 * Tests that the index is rebuilt from the segments if the store was not closed,
+	 * including removals and an incomplete record at the end.
+	 */
+	public void testRecovery() throws IOException {
+		// A single segment, so that no compaction interferes with copying the files:
+		store.close();
+		store = new PackedTileStore(directory, 1024 * 1024);
+
+		for(int i = 0; i < 100; i++) {
+			store.write("osm", 10, i, i, createData(i, i, 100));
+		}
+		for(int i = 0; i < 100; i += 2) {
+			store.remove("osm", 10, i, i);
+		}
+		store.write("osm", 10, 1, 1, createData(7, 7, 60));
+		store.flush();
+
+		// Copy the files of the open store, as if the application crashed:
+		File copy = Files.createTempDirectory("tilestore").toFile();
+		int lastSegment = 0;
+		for(File file : directory.listFiles()) {
+			Files.copy(file.toPath(), new File(copy, file.getName()).toPath());
+			String name = file.getName();
+			if(name.startsWith("segment-")) {
+				lastSegment = Math.max(lastSegment, Integer.parseInt(name.substring(8, name.indexOf('.'))));
+			}
+		}
+		// Append a part of a record, as if the crash happened while writing:
+		File segmentFile = new File(copy, "segment-" + lastSegment + ".dat");
+		try (FileOutputStream out = new FileOutputStream(segmentFile, true)) {
+			out.write(new byte[] {0x47, 0x54, 0x4c, 0x31, 0, 0});
+		}
+
+		PackedTileStore recovered = new PackedTileStore(copy, SEGMENT_SIZE);
+		try {
+			assertEquals(50, recovered.getTileCount());
+			for(int i = 0; i < 100; i++) {
+				if(i == 1) {
+					assertArrayEquals(createData(7, 7, 60), recovered.read("osm", 10, 1, 1));
+				} else if(i % 2 == 0) {
+					assertFalse(recovered.contains("osm", 10, i, i));
+				} else {
+					assertArrayEquals(createData(i, i, 100), recovered.read("osm", 10, i, i));
+				}
+			}
+			// Writing after the recovery must work:
+			recovered.write("osm", 10, 0, 0, createData(0, 0, 10));
+			assertArrayEquals(createData(0, 0, 10), recovered.read("osm", 10, 0, 0));
+
+		} finally {
+			recovered.close();
+			deleteRecursively(copy);
+		}
+	}
+
+	@Test
+	/**
+	 * Tests that compaction deletes segments of removed tiles and keeps the remaining ones.
+	 */
+	public void testCompaction() throws IOException {
+		for(int i = 0; i < 200; i++) {
+			store.write("osm", 10, i, 0, createData(i, 0, 100));
+		}
+		long sizeBefore = store.getSegmentBytes();
+
+		// Remove three quarters of the tiles:
+		for(int i = 0; i < 200; i++) {
+			if(i % 4 != 0) {
+				store.remove("osm", 10, i, 0);
+			}
+		}
+		store.compact();
+
+		assertTrue(store.getSegmentBytes() < sizeBefore / 2);
+		assertEquals(50, store.getTileCount());
+		for(int i = 0; i < 200; i += 4) {
+			assertArrayEquals(createData(i, 0, 100), store.read("osm", 10, i, 0));
+		}
+
+		// Removals must not be undone by rebuilding the index:
+		store.close();
+		for(File file : directory.listFiles()) {
+			if(file.getName().startsWith("index-")) {
+				file.delete();
+			}
+		}
+		store = new PackedTileStore(directory, SEGMENT_SIZE);
+		assertEquals(50, store.getTileCount());
+		assertFalse(store.contains("osm", 10, 1, 0));
+	}
+
+	@Test
+	/**
+	 * Tests that compacting to a size frees the garbage of segments below the garbage-threshold.
+	 */
+	public void testCompactTo() throws IOException {
+		for(int i = 0; i < 200; i++) {
+			store.write("osm", 10, i, 0, createData(i, 0, 100));
+		}
+		// Remove a quarter of the tiles, less than needed for compacting in the background:
+		for(int i = 0; i < 200; i += 4) {
+			store.remove("osm", 10, i, 0);
+		}
+		long sizeBefore = store.getSegmentBytes();
+		store.compact();
+		assertEquals(sizeBefore, store.getSegmentBytes());
+
+		long freed = store.compactTo(0);
+		assertTrue(freed > 0);
+		assertEquals(sizeBefore - freed, store.getSegmentBytes());
+		assertEquals(150, store.getTileCount());
+		for(int i = 1; i < 200; i++) {
+			if(i % 4 != 0) {
+				assertArrayEquals(createData(i, 0, 100), store.read("osm", 10, i, 0));
+			}
+		}
+
+		// Nothing is compacted if the size is reached already:
+		assertEquals(0, store.compactTo(store.getSegmentBytes()));
+	}
+
+	@Test
+	/**
+	 * Tests that clearing removes all tiles.
+	 */
+	public void testClear() throws IOException {
+		for(int i = 0; i < 100; i++) {
+			store.write("osm", 10, i, 0, createData(i, 0, 100));
+		}
+		store.clear();
+		assertEquals(0, store.getTileCount());
+		assertEquals(0, store.getSegmentBytes());
+		assertFalse(store.contains("osm", 10, 0, 0));
+
+		store.write("osm", 10, 0, 0, createData(0, 0, 10));
+		assertArrayEquals(createData(0, 0, 10), store.read("osm", 10, 0, 0));
+	}
+}
@@ -0,0 +1,135 @@
+package sep.gaia.resources.tiles2d.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import sep.gaia.resources.tiles2d.PixelBufferPool;
+import sep.gaia.resources.tiles2d.PooledTextureData;
+
+/**
+ * Class to test <code>sep.gaia.resources.tiles2d.PixelBufferPool</code> and
+ * <code>sep.gaia.resources.tiles2d.PooledTextureData</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class PixelBufferPoolTest {
+
+	/**
+	 * The size of a single slab in bytes.
+	 */
+	private static final long SLAB_SIZE = (long) PixelBufferPool.BUFFER_SIZE * PixelBufferPool.BUFFERS_PER_SLAB;
+
+	@Test
+	/**
+	 * Tests that buffers are allocated in slabs up to the maximum size and reused.
+	 */
+	public void testAcquireRelease() {
+		PixelBufferPool pool = new PixelBufferPool(2 * SLAB_SIZE);
+		assertEquals(0, pool.getAllocatedCount());
+		assertEquals(2 * PixelBufferPool.BUFFERS_PER_SLAB, pool.getCapacity());
+
+		List<ByteBuffer> buffers = new ArrayList<>();
+		for(int i = 0; i < pool.getCapacity(); i++) {
+			ByteBuffer buffer = pool.acquire();
+			assertNotNull(buffer);
+			assertTrue(buffer.isDirect());
+			assertEquals(PixelBufferPool.BUFFER_SIZE, buffer.remaining());
+			buffers.add(buffer);
+		}
+		assertEquals(pool.getCapacity(), pool.getAllocatedCount());
+
+		// The pool is exhausted:
+		assertNull(pool.acquire());
+		assertEquals(1, pool.getExhaustedCount());
+
+		// Buffers released are handed out again:
+		ByteBuffer released = buffers.get(3);
+		released.position(100);
+		pool.release(released);
+		ByteBuffer reused = pool.acquire();
+		assertSame(released, reused);
+		assertEquals(0, reused.position());
+
+		// Buffers are independent of each other:
+		buffers.get(0).put(0, (byte) 1);
+		assertEquals(0, buffers.get(1).get(0));
+		buffers.get(1).put(PixelBufferPool.BUFFER_SIZE - 1, (byte) 2);
+		assertEquals(0, buffers.get(2).get(0));
+
+		// Foreign buffers are ignored:
+		pool.release(ByteBuffer.allocate(PixelBufferPool.BUFFER_SIZE));
+		assertEquals(0, pool.getFreeCount());
+	}
+
+	@Test
+	/**
+	 * Tests that pooled texture-data returns its buffer when the last reference is released.
+	 */
+	public void testSharedReferences() {
+		PixelBufferPool pool = new PixelBufferPool(SLAB_SIZE);
+		PooledTextureData data = PooledTextureData.allocate(null, 256, 256, pool);
+		assertNotNull(data);
+		assertEquals(PixelBufferPool.BUFFERS_PER_SLAB - 1, pool.getFreeCount());
+		((ByteBuffer) data.getBuffer()).put(0, (byte) 7);
+
+		PooledTextureData shared = data.share();
+		assertNotNull(shared);
+		assertEquals(7, ((ByteBuffer) shared.getBuffer()).get(0));
+
+		// The buffer is kept while a reference remains:
+		data.release();
+		data.release();
+		assertTrue(data.isReleased());
+		assertNull(data.share());
+		assertEquals(PixelBufferPool.BUFFERS_PER_SLAB - 1, pool.getFreeCount());
+		assertEquals(7, ((ByteBuffer) shared.getBuffer()).get(0));
+
+		shared.release();
+		assertEquals(PixelBufferPool.BUFFERS_PER_SLAB, pool.getFreeCount());
+	}
+
+	@Test
+	/**
+	 * Tests that images not fitting into a buffer are refused.
+	 */
+	public void testTooLarge() {
+		PixelBufferPool pool = new PixelBufferPool(SLAB_SIZE);
+		assertNull(PooledTextureData.allocate(null, 512, 512, pool));
+		assertEquals(0, pool.getAllocatedCount());
+
+		PooledTextureData small = PooledTextureData.allocate(null, 128, 64, pool);
+		assertEquals(128 * 64 * 4, small.getBuffer().remaining());
+		small.release();
+	}
+
+	@Test
+	/**
+	 * Tests that the buffers of texture-data dropped without being released return to the pool.
+	 */
+	public void testReclaimAbandoned() throws InterruptedException {
+		PixelBufferPool pool = new PixelBufferPool(SLAB_SIZE);
+		for(int i = 0; i < 4; i++) {
+			assertNotNull(PooledTextureData.allocate(null, 256, 256, pool));
+		}
+		assertFalse(pool.getFreeCount() == PixelBufferPool.BUFFERS_PER_SLAB);
+
+		// Garbage-collection is not guaranteed, so try several times:
+		for(int i = 0; i < 50 && pool.getFreeCount() < PixelBufferPool.BUFFERS_PER_SLAB; i++) {
+			System.gc();
+			Thread.sleep(20);
+			PooledTextureData.reclaimAbandoned();
+		}
+		assertEquals(PixelBufferPool.BUFFERS_PER_SLAB, pool.getFreeCount());
+	}
+}
@@ -0,0 +1,232 @@
+package sep.gaia.resources.tiles2d.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import sep.gaia.resources.tiles2d.TileCacheJanitor;
+
+/**
+ * Class to test <code>sep.gaia.resources.tiles2d.TileCacheJanitor</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class TileCacheJanitorTest {
+
+	/**
+	 * A cache of tiles of equal size evicting at most <code>batchSize</code> tiles at once.
+	 */
+	private static class FakeQuota implements TileCacheJanitor.Quota {
+
+		/**
+		 * The number of tiles cached.
+		 */
+		private volatile int tileCount;
+
+		/**
+		 * The size of a tile in bytes.
+		 */
+		private final int tileSize;
+
+		/**
+		 * The maximum size in bytes.
+		 */
+		private final long maximumSize;
+
+		/**
+		 * The maximum number of tiles evicted at once.
+		 */
+		private final int batchSize;
+
+		/**
+		 * Initializes the cache with <code>tileCount</code> tiles.
+		 */
+		public FakeQuota(int tileCount, int tileSize, long maximumSize, int batchSize) {
+			this.tileCount = tileCount;
+			this.tileSize = tileSize;
+			this.maximumSize = maximumSize;
+			this.batchSize = batchSize;
+		}
+
+		@Override
+		public long getSizeOnDisk() {
+			return (long) tileCount * tileSize;
+		}
+
+		@Override
+		public long getDataSizeOnDisk() {
+			return getSizeOnDisk();
+		}
+
+		@Override
+		public long compact(long targetSize) {
+			return 0;
+		}
+
+		@Override
+		public long getMaximumSizeOnDisk() {
+			return maximumSize;
+		}
+
+		@Override
+		public long evict(int count) {
+			int evicted = Math.min(tileCount, Math.min(count, batchSize));
+			if(evicted == 0) {
+				return -1;
+			}
+			tileCount -= evicted;
+			return (long) evicted * tileSize;
+		}
+	}
+
+	/**
+	 * A cache of tiles of equal size whose space is only freed by compacting after evicting.
+	 */
+	private static class GarbageQuota implements TileCacheJanitor.Quota {
+
+		/**
+		 * The number of tiles cached.
+		 */
+		private volatile int tileCount;
+
+		/**
+		 * The space of tiles evicted not freed yet in bytes.
+		 */
+		private volatile long garbage;
+
+		/**
+		 * The size of a tile in bytes.
+		 */
+		private final int tileSize;
+
+		/**
+		 * The maximum size in bytes.
+		 */
+		private final long maximumSize;
+
+		/**
+		 * Initializes the cache with <code>tileCount</code> tiles and no garbage.
+		 */
+		public GarbageQuota(int tileCount, int tileSize, long maximumSize) {
+			this.tileCount = tileCount;
+			this.tileSize = tileSize;
+			this.maximumSize = maximumSize;
+		}
+
+		@Override
+		public long getSizeOnDisk() {
+			return getDataSizeOnDisk() + garbage;
+		}
+
+		@Override
+		public long getDataSizeOnDisk() {
+			return (long) tileCount * tileSize;
+		}
+
+		@Override
+		public long compact(long targetSize) {
+			long freed = garbage;
+			garbage = 0;
+			return freed;
+		}
+
+		@Override
+		public long getMaximumSizeOnDisk() {
+			return maximumSize;
+		}
+
+		@Override
+		public long evict(int count) {
+			if(tileCount == 0) {
+				return -1;
+			}
+			tileCount--;
+			garbage += tileSize;
+			return 0;
+		}
+	}
+
+	@Test
+	/**
+	 * Tests that the space of evicted tiles is freed by compacting and only counted once freed.
+	 */
+	public void testCompaction() throws InterruptedException {
+		GarbageQuota quota = new GarbageQuota(20, 100, 1500);
+		TileCacheJanitor janitor = new TileCacheJanitor(quota, 0);
+		janitor.start();
+
+		assertTrue(janitor.check());
+		assertTrue(janitor.awaitIdle(1000));
+		// Not more tiles are evicted than needed to get below the low watermark:
+		assertEquals(1300, quota.getDataSizeOnDisk());
+		assertEquals(1300, quota.getSizeOnDisk());
+		assertEquals(700, janitor.getReclaimedBytes());
+		janitor.close();
+	}
+
+	@Test
+	/**
+	 * Tests that tiles are evicted from the high watermark down to the low watermark.
+	 */
+	public void testWatermarks() throws InterruptedException {
+		FakeQuota quota = new FakeQuota(20, 100, 1500, 1);
+		TileCacheJanitor janitor = new TileCacheJanitor(quota, 0);
+		janitor.start();
+		assertEquals(1350, janitor.getLowWatermark());
+
+		assertTrue(janitor.check());
+		assertTrue(janitor.awaitIdle(1000));
+		assertEquals(1300, quota.getSizeOnDisk());
+		assertEquals(700, janitor.getReclaimedBytes());
+		assertEquals(1, janitor.getRunCount());
+
+		// Below the high watermark nothing is evicted:
+		assertFalse(janitor.check());
+		assertTrue(janitor.awaitIdle(1000));
+		assertEquals(1300, quota.getSizeOnDisk());
+		assertEquals(1, janitor.getRunCount());
+		janitor.close();
+	}
+
+	@Test
+	/**
+	 * Tests that the batches are paced to the deletion-rate.
+	 */
+	public void testDeletionRate() throws InterruptedException {
+		FakeQuota quota = new FakeQuota(100, 1, 40, TileCacheJanitor.BATCH_SIZE);
+		// Each batch takes 100 ms:
+		TileCacheJanitor janitor = new TileCacheJanitor(quota, TileCacheJanitor.BATCH_SIZE * 10);
+		janitor.start();
+
+		long start = System.currentTimeMillis();
+		assertTrue(janitor.check());
+		assertTrue(janitor.awaitIdle(5000));
+		long duration = System.currentTimeMillis() - start;
+
+		// Two batches are needed to get down to 36 bytes:
+		assertEquals(100 - 2 * TileCacheJanitor.BATCH_SIZE, quota.getSizeOnDisk());
+		assertTrue("Evicted within " + duration + " ms", duration >= 180);
+		janitor.close();
+	}
+
+	@Test
+	/**
+	 * Tests that a run ends if there is nothing left to evict.
+	 */
+	public void testNothingToEvict() throws InterruptedException {
+		// No tile can be evicted, e.g. because all are in use:
+		FakeQuota quota = new FakeQuota(10, 100, 500, 0);
+		TileCacheJanitor janitor = new TileCacheJanitor(quota, 0);
+		janitor.start();
+
+		assertTrue(janitor.check());
+		assertTrue(janitor.awaitIdle(1000));
+		assertEquals(1000, quota.getSizeOnDisk());
+		assertEquals(0, janitor.getReclaimedBytes());
+		assertEquals(1, janitor.getRunCount());
+		janitor.close();
+	}
+}
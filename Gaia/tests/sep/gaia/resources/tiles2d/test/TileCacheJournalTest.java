@@ -0,0 +1,240 @@
+package sep.gaia.resources.tiles2d.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sep.gaia.resources.CacheValidators;
+import sep.gaia.resources.tiles2d.TileCacheJournal;
+import sep.gaia.resources.tiles2d.TileCacheJournal.Entry;
+
+/**
+ * Class to test <code>sep.gaia.resources.tiles2d.TileCacheJournal</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class TileCacheJournalTest {
+
+	/**
+	 * The directory of the files of the journal tested.
+	 */
+	private File directory;
+
+	/**
+	 * The file the records are appended to.
+	 */
+	private File journalFile;
+
+	/**
+	 * The file of the checkpoints.
+	 */
+	private File checkpointFile;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("journal").toFile();
+		journalFile = new File(directory, "tilecache.journal");
+		checkpointFile = new File(directory, "tilecache.checkpoint");
+	}
+
+	@After
+	public void tearDown() {
+		for(File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	/**
+	 * Opens the journal anew, as on the start of the application.
+	 */
+	private TileCacheJournal open(List<Entry> loaded) throws IOException {
+		TileCacheJournal journal = new TileCacheJournal(journalFile, checkpointFile);
+		loaded.clear();
+		loaded.addAll(journal.load());
+		return journal;
+	}
+
+	/**
+	 * Creates the description of a tile.
+	 */
+	private static Entry createEntry(int x, String file) {
+		return new Entry("osm", 10, x, 2 * x, x + 1, 1000L * x, file);
+	}
+
+	@Test
+	/**
+	 * Tests that added and removed tiles are restored in order.
+	 */
+	public void testReplay() throws IOException {
+		List<Entry> loaded = new ArrayList<>();
+		TileCacheJournal journal = open(loaded);
+		assertTrue(loaded.isEmpty());
+		assertTrue(journal.exists());
+
+		for(int x = 0; x < 5; x++) {
+			journal.recordAdd(createEntry(x, null));
+		}
+		journal.recordRemove("osm", 10, 1, 2);
+		// Replace the description of tile 0:
+		journal.recordAdd(createEntry(0, "cache/osm/10/0/0.png"));
+		assertEquals(7, journal.getRecordCount());
+		journal.close();
+
+		open(loaded);
+		assertEquals(4, loaded.size());
+		assertEquals(2, loaded.get(0).getX());
+		assertEquals(3, loaded.get(1).getX());
+		assertEquals(4, loaded.get(2).getX());
+
+		Entry replaced = loaded.get(3);
+		assertEquals(0, replaced.getX());
+		assertEquals("cache/osm/10/0/0.png", replaced.getFile());
+		assertNull(loaded.get(0).getFile());
+		assertEquals(3, loaded.get(0).getUseCount());
+		assertEquals(2000, loaded.get(0).getTimestamp());
+	}
+
+	@Test
+	/**
+	 * Tests that a record only partially written is cut off and appending continues after it.
+	 */
+	public void testTornRecord() throws IOException {
+		List<Entry> loaded = new ArrayList<>();
+		TileCacheJournal journal = open(loaded);
+		journal.recordAdd(createEntry(1, null));
+		journal.recordAdd(createEntry(2, null));
+		journal.close();
+
+		// Cut the last record in half, as if the application terminated while writing:
+		long length = journalFile.length();
+		try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+			file.setLength(length - 10);
+		}
+
+		journal = open(loaded);
+		assertEquals(1, loaded.size());
+		assertEquals(1, loaded.get(0).getX());
+		assertEquals(1, journal.getRecordCount());
+
+		journal.recordAdd(createEntry(3, null));
+		journal.close();
+
+		open(loaded);
+		assertEquals(2, loaded.size());
+		assertEquals(3, loaded.get(1).getX());
+	}
+
+	@Test
+	/**
+	 * Tests that the HTTP-validators of tiles are restored from records and checkpoints.
+	 */
+	public void testValidators() throws IOException {
+		List<Entry> loaded = new ArrayList<>();
+		TileCacheJournal journal = open(loaded);
+		CacheValidators validators = new CacheValidators("\"abc\"", 5000, 9000);
+		journal.recordAdd(new Entry("osm", 10, 1, 2, 3, 1000, null, validators));
+		journal.recordAdd(new Entry("osm", 10, 2, 4, 3, 1000, null, new CacheValidators(null, 0, 7000)));
+		journal.recordAdd(createEntry(3, null));
+		journal.close();
+
+		journal = open(loaded);
+		assertEquals(3, loaded.size());
+		CacheValidators restored = loaded.get(0).getValidators();
+		assertEquals("\"abc\"", restored.getEntityTag());
+		assertEquals(5000, restored.getLastModified());
+		assertEquals(9000, restored.getExpires());
+		assertNull(loaded.get(1).getValidators().getEntityTag());
+		assertEquals(7000, loaded.get(1).getValidators().getExpires());
+		assertNull(loaded.get(2).getValidators());
+
+		journal.checkpoint(new ArrayList<>(loaded));
+		journal.close();
+		open(loaded);
+		assertEquals("\"abc\"", loaded.get(0).getValidators().getEntityTag());
+		assertNull(loaded.get(2).getValidators());
+	}
+
+	@Test
+	/**
+	 * Tests that a checkpoint empties the journal and is combined with later records.
+	 */
+	public void testCheckpoint() throws IOException {
+		List<Entry> loaded = new ArrayList<>();
+		TileCacheJournal journal = open(loaded);
+		for(int x = 0; x < 3; x++) {
+			journal.recordAdd(createEntry(x, null));
+		}
+		long journalSize = journalFile.length();
+
+		journal.checkpoint(Arrays.asList(createEntry(0, null), createEntry(1, null), createEntry(2, null)));
+		assertEquals(0, journal.getRecordCount());
+		assertTrue(journalFile.length() < journalSize);
+		assertTrue(checkpointFile.exists());
+
+		journal.recordRemove("osm", 10, 0, 0);
+		journal.recordAdd(createEntry(5, null));
+		journal.close();
+
+		open(loaded);
+		assertEquals(3, loaded.size());
+		assertEquals(1, loaded.get(0).getX());
+		assertEquals(2, loaded.get(1).getX());
+		assertEquals(5, loaded.get(2).getX());
+	}
+
+	@Test
+	/**
+	 * Tests that a damaged checkpoint is ignored instead of restoring wrong entries.
+	 */
+	public void testDamagedCheckpoint() throws IOException {
+		List<Entry> loaded = new ArrayList<>();
+		TileCacheJournal journal = open(loaded);
+		journal.checkpoint(Arrays.asList(createEntry(0, null), createEntry(1, null)));
+		journal.recordAdd(createEntry(2, null));
+		journal.close();
+
+		// Flip a byte of the checkpoint:
+		try (RandomAccessFile file = new RandomAccessFile(checkpointFile, "rw")) {
+			file.seek(10);
+			int value = file.read();
+			file.seek(10);
+			file.write(value ^ 0xff);
+		}
+
+		open(loaded);
+		assertEquals(1, loaded.size());
+		assertEquals(2, loaded.get(0).getX());
+	}
+
+	@Test
+	/**
+	 * Tests that checkpoints are recommended once the journal outgrows the cache.
+	 */
+	public void testNeedsCheckpoint() throws IOException {
+		List<Entry> loaded = new ArrayList<>();
+		TileCacheJournal journal = open(loaded);
+		for(int i = 0; i < TileCacheJournal.CHECKPOINT_MIN_RECORDS - 1; i++) {
+			journal.recordAdd(createEntry(i % 10, null));
+		}
+		assertFalse(journal.needsCheckpoint(10));
+		journal.recordAdd(createEntry(0, null));
+		assertTrue(journal.needsCheckpoint(10));
+		assertFalse(journal.needsCheckpoint(2 * TileCacheJournal.CHECKPOINT_MIN_RECORDS));
+		journal.close();
+	}
+}
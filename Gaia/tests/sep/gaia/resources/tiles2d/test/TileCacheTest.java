@@ -1,15 +1,19 @@
 package sep.gaia.resources.tiles2d.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.nio.file.Files;
 import java.nio.channels.FileChannel;
 
 import javax.media.opengl.GLProfile;
@@ -19,7 +23,10 @@ import org.junit.Test;
 
 import sep.gaia.environment.Environment;
 import sep.gaia.environment.Environment.EnvVariable;
+import sep.gaia.resources.tiles2d.PackedTileStore;
+import sep.gaia.resources.tiles2d.PooledTextureData;
 import sep.gaia.resources.tiles2d.TileCache;
+import sep.gaia.resources.tiles2d.TileImageDecoder;
 import sep.gaia.resources.tiles2d.TileManager;
 import sep.gaia.resources.tiles2d.TileResource;
 import sep.gaia.util.IntegerVector3D;
@@ -58,19 +65,6 @@ public class TileCacheTest {
 		cache = new TileCache(manager, profile);
 	}
 	
-	/**
-	 * Generates and returns the path where the cache-file for <code>tile</code> should be stored.
-	 * The path is formatted as follows:
-	 * <i>&lt;CACHE_ROOT_DIR&gt;/&lt;URL-encoded style&gt;/z/x/y.&lt;style image-suffix&gt;</i>.
-	 * @param tile The resource the cached file is for.
-	 * @param suffix The suffix the file should have.
-	 * @return The generated path.
-	 */
-	private static String getCacheFilePath(TileResource tile, String suffix) {
-		IntegerVector3D coords = tile.getCoord();
-		return getCacheFilePath(coords.getX(), coords.getY(), coords.getZ(), tile.getStyle().getLabel(), suffix);
-	}
-	
 	/**
 	 * Generates and returns the path where the cache-file for a tile with given criteria should be stored.
 	 * The path is formatted as follows:
@@ -112,27 +106,33 @@ public class TileCacheTest {
 	}
 	
 	/**
-	 * Returns the texture data stored in the cache-file for <code>tile</code>.
+	 * Returns the tile-store the cache writes to.
+	 * @return The tile-store in <code>EnvVariable.TILE_STORE_DIR</code>.
+	 * @throws IOException Thrown if the store cannot be opened.
+	 */
+	private static PackedTileStore getStore() throws IOException {
+		return PackedTileStore.open(new File(Environment.getInstance().getString(EnvVariable.TILE_STORE_DIR)));
+	}
+	
+	/**
+	 * Returns the texture data stored in the tile-store for <code>tile</code>.
 	 * @param tile The resource the cached file is for.
 	 * @param profile The OpenGL-profile to use when creating texture-data.
 	 * @param suffix The suffix the file should have.
 	 * @return The texture-data read or <code>null</code> if an error occured on reading, especially
-	 * if the file was not found.
+	 * if the tile was not found.
 	 */
 	private static TextureData readCachedFile(TileResource tile, GLProfile profile, String suffix) {
-		
-		
-		File cacheFile = new File(getCacheFilePath(tile, suffix));
-		
-		if(cacheFile.exists()) {
-			try {
-				// Return the texture-data read from the file:
-				return TextureIO.newTextureData(profile, cacheFile, false, suffix);
-			} catch(IOException e) {
+		IntegerVector3D coords = tile.getCoord();
+		try {
+			byte[] image = getStore().read(tile.getStyle().getLabel(), coords.getZ(), coords.getX(), coords.getY());
+			if(image == null) {
 				return null;
 			}
+			// Return the texture-data read from the store:
+			return TextureIO.newTextureData(profile, new ByteArrayInputStream(image), false, suffix);
 			
-		} else { // The file does not exist:
+		} catch(IOException e) {
 			return null;
 		}
 	}
@@ -203,6 +203,8 @@ public class TileCacheTest {
 		
 		// Adding should succeed:
 		assertEquals(cache.add(tile), true);
+		// The image-file is written in the background:
+		cache.getWriteQueue().flush();
 		
 		// The texture-data stored in the cached file should match the one in the resource:
 		TextureData readData = readCachedFile(tile, profile, suffix);
@@ -257,6 +259,43 @@ public class TileCacheTest {
 		assertEquals(result.getTimestamp(), tile.getTimestamp());
 	}
 	
+	/**
+	 * Tests that a tile not written yet is found after the tile added released its pixels.
+	 */
+	@Test
+	public void testGetPendingReleased() throws IOException {
+		// This test assumes an empty cache:
+		cache.clear();
+		
+		IntegerVector3D coords = new IntegerVector3D(1, 1, 5);
+		TileResource tile = new TileResource(coords);
+		String suffix = manager.getCurrentStyle().getImageSuffix();
+		
+		// Decode the image as the loader does, so that the pixels are pooled:
+		byte[] image = Files.readAllBytes(new File("test/tiles/osm-5-1-1." + suffix).toPath());
+		tile.setTextureData(TileImageDecoder.decode(profile, image, suffix));
+		tile.setEncodedImage(image);
+		tile.setStyle(manager.getCurrentStyle());
+		tile.setDummy(false);
+		
+		// Not kept in memory, so that the tile is answered from the write-queue or the store:
+		assertTrue(cache.addUnviewed(tile));
+		if(tile.getTextureData() instanceof PooledTextureData) {
+			((PooledTextureData) tile.getTextureData()).release();
+		}
+		
+		TileResource result = cache.get(tile.getKey());
+		assertNotNull(result);
+		assertNotNull(result.getTextureData());
+		if(result.getTextureData() instanceof PooledTextureData) {
+			assertFalse(((PooledTextureData) result.getTextureData()).isReleased());
+		}
+		
+		// The tile is still found once written:
+		cache.getWriteQueue().flush();
+		assertNotNull(cache.get(tile.getKey()));
+	}
+	
 	/**
 	 * Tests the initial loading of data from the cache index file.
 	 */
@@ -265,7 +304,12 @@ public class TileCacheTest {
 		
 		// Copy required files:
 		try {
-			String cacheIndexPath = Environment.getInstance().getString(EnvVariable.TILE_CACHE_INDEX_FILE);
+			// The index-file is only imported if there is no journal yet:
+			Environment environment = Environment.getInstance();
+			new File(environment.getString(EnvVariable.TILE_CACHE_JOURNAL_FILE)).delete();
+			new File(environment.getString(EnvVariable.TILE_CACHE_CHECKPOINT_FILE)).delete();
+			
+			String cacheIndexPath = environment.getString(EnvVariable.TILE_CACHE_INDEX_FILE);
 			copyFile("test/tilecache_test.xml", cacheIndexPath);
 			copyFile("test/tiles/osm-5-6-7.png", getCacheFilePath(6, 7, 5, "OpenStreetMap - DE", "png"));
 		} catch (IOException e) {
@@ -277,6 +321,10 @@ public class TileCacheTest {
 		
 		// One tile must be loaded now:
 		assertEquals(1, cache.size());
+		
+		// The index-file was imported into the journal:
+		String cacheIndexPath = Environment.getInstance().getString(EnvVariable.TILE_CACHE_INDEX_FILE);
+		assertEquals(false, new File(cacheIndexPath).exists());
 	}
 	
 	@Test
@@ -309,11 +357,11 @@ public class TileCacheTest {
 		// Adding should succeed:
 		assertEquals(cache.add(tile), true);
 		
-		String cacheIndexPath = Environment.getInstance().getString(EnvVariable.TILE_CACHE_INDEX_FILE);
-		File cacheIndex = new File(cacheIndexPath);
+		String checkpointPath = Environment.getInstance().getString(EnvVariable.TILE_CACHE_CHECKPOINT_FILE);
+		File cacheIndex = new File(checkpointPath);
 		cacheIndex.delete();
 		
-		// Write the cache-index-file:
+		// Write a checkpoint of the cache-index:
 		cache.writeBack();
 		
 		assertEquals(true, cacheIndex.exists());
@@ -354,24 +402,34 @@ public class TileCacheTest {
 		
 		// Adding should succeed:
 		assertEquals(cache.add(tile), true);
+		cache.getWriteQueue().flush();
 		
-		// The cached file should exist now:
-		File cachedFile = new File(getCacheFilePath(tile, suffix));
-		assertEquals(true, cachedFile.exists());
+		// The tile should be stored now:
+		IntegerVector3D tileCoords = tile.getCoord();
+		String label = tile.getStyle().getLabel();
+		try {
+			assertEquals(true, getStore().contains(label, tileCoords.getZ(), tileCoords.getX(), tileCoords.getY()));
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
 		
 		// Clean the cache:
 		cache.manage();
 		
-		// Wait for the asynchronous file-deletion to complete:
+		// Wait for the janitor evicting the tile:
 		try {
-			Thread.sleep(100);
+			assertTrue(cache.getJanitor().awaitIdle(1000));
 		} catch (InterruptedException e) {
 			fail("Test interrupted!");
 		}
 		
-		// The file should now not be present any more and cache-size should be zero:
+		// The tile should now not be stored any more and cache-size should be zero:
 		assertEquals(0, cache.size());
-		assertEquals(false, cachedFile.exists());
+		try {
+			assertEquals(false, getStore().contains(label, tileCoords.getZ(), tileCoords.getX(), tileCoords.getY()));
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
 		
 		// Reset cache-size:
 		cache.setMaximumSizeOnDisk(Long.MAX_VALUE);
@@ -406,7 +464,7 @@ public class TileCacheTest {
 		cache.manage();
 		
 		try {
-			Thread.sleep(500);
+			assertTrue(cache.getJanitor().awaitIdle(1000));
 		} catch (InterruptedException e) {
 			fail("Test was interrupted!");
 		}
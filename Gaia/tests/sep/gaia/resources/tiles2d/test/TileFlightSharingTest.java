@@ -0,0 +1,157 @@
+package sep.gaia.resources.tiles2d.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import sep.gaia.resources.CancellationToken;
+import sep.gaia.resources.SingleFlight;
+import sep.gaia.resources.tiles2d.PixelBufferPool;
+import sep.gaia.resources.tiles2d.PooledTextureData;
+import sep.gaia.resources.tiles2d.TileLoaderWorker;
+import sep.gaia.resources.tiles2d.TileResource;
+
+/**
+ * Class to test that the workers sharing the fetch of a tile by
+ * <code>TileLoaderWorker.getInFlight()</code> own references of their own to its pixels.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class TileFlightSharingTest {
+
+	/**
+	 * The size of a slab of the pool used.
+	 */
+	private static final long SLAB_SIZE = (long) PixelBufferPool.BUFFER_SIZE * PixelBufferPool.BUFFERS_PER_SLAB;
+
+	/**
+	 * A worker requesting a tile from the registry and releasing its pixels after
+	 * storing them, as the sinks of the prefetchers do.
+	 */
+	private static class Requester extends Thread {
+
+		private SingleFlight.Fetch<TileResource> fetch;
+		private boolean releaseAfterwards;
+		private volatile TileResource result;
+
+		public Requester(SingleFlight.Fetch<TileResource> fetch, boolean releaseAfterwards) {
+			this.fetch = fetch;
+			this.releaseAfterwards = releaseAfterwards;
+		}
+
+		@Override
+		public void run() {
+			try {
+				result = TileLoaderWorker.getInFlight().execute("1-2-3-test", new CancellationToken(), fetch);
+			} catch (IOException e) {
+				result = null;
+			}
+			if(releaseAfterwards && result != null) {
+				((PooledTextureData) result.getTextureData()).release();
+			}
+		}
+	}
+
+	/**
+	 * A fetch blocking until it is released, returning a tile with pooled pixels.
+	 */
+	private static class BlockingFetch implements SingleFlight.Fetch<TileResource> {
+
+		private CountDownLatch started = new CountDownLatch(1);
+		private CountDownLatch release = new CountDownLatch(1);
+		private TileResource tile;
+
+		public BlockingFetch(PixelBufferPool pool) {
+			PooledTextureData data = PooledTextureData.allocate(null, 256, 256, pool);
+			((ByteBuffer) data.getBuffer()).put(0, (byte) 7);
+			tile = new TileResource(1, 2, 3);
+			tile.setTextureData(data);
+		}
+
+		@Override
+		public TileResource fetch() throws IOException {
+			started.countDown();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				// Finish anyway
+			}
+			return tile;
+		}
+	}
+
+	@Test
+	/**
+	 * Tests that the tile of a loader attached to the fetch of a prefetch is usable after
+	 * the prefetch released its tile.
+	 */
+	public void testLoaderJoinsPrefetch() throws InterruptedException {
+		PixelBufferPool pool = new PixelBufferPool(SLAB_SIZE);
+		BlockingFetch fetch = new BlockingFetch(pool);
+
+		Requester prefetch = new Requester(fetch, true);
+		prefetch.start();
+		assertTrue(fetch.started.await(5, TimeUnit.SECONDS));
+		Requester loader = new Requester(fetch, false);
+		loader.start();
+		Thread.sleep(100);
+
+		fetch.release.countDown();
+		prefetch.join(5000);
+		loader.join(5000);
+
+		assertUsable(loader.result);
+		assertNotSame(prefetch.result, loader.result);
+		assertTrue(((PooledTextureData) prefetch.result.getTextureData()).isReleased());
+
+		// The buffer returns to the pool once the loader released its reference too:
+		assertEquals(PixelBufferPool.BUFFERS_PER_SLAB - 1, pool.getFreeCount());
+		((PooledTextureData) loader.result.getTextureData()).release();
+		assertEquals(PixelBufferPool.BUFFERS_PER_SLAB, pool.getFreeCount());
+	}
+
+	@Test
+	/**
+	 * Tests that the tile of a loader leading a fetch is usable after a prefetch attached
+	 * to it released its tile.
+	 */
+	public void testPrefetchJoinsLoader() throws InterruptedException {
+		PixelBufferPool pool = new PixelBufferPool(SLAB_SIZE);
+		BlockingFetch fetch = new BlockingFetch(pool);
+
+		Requester loader = new Requester(fetch, false);
+		loader.start();
+		assertTrue(fetch.started.await(5, TimeUnit.SECONDS));
+		Requester prefetch = new Requester(fetch, true);
+		prefetch.start();
+		Thread.sleep(100);
+
+		fetch.release.countDown();
+		loader.join(5000);
+		prefetch.join(5000);
+
+		assertUsable(loader.result);
+		assertNotNull(prefetch.result);
+		assertTrue(((PooledTextureData) prefetch.result.getTextureData()).isReleased());
+	}
+
+	/**
+	 * Asserts that a tile has pixels not released yet.
+	 */
+	private static void assertUsable(TileResource tile) {
+		assertNotNull(tile);
+		PooledTextureData data = (PooledTextureData) tile.getTextureData();
+		assertFalse(data.isReleased());
+		assertEquals(7, ((ByteBuffer) data.getBuffer()).get(0));
+	}
+}
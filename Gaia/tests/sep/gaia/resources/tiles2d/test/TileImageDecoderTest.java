@@ -0,0 +1,96 @@
+package sep.gaia.resources.tiles2d.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import javax.media.opengl.GL;
+
+import org.junit.Test;
+
+import sep.gaia.resources.tiles2d.PixelBufferPool;
+import sep.gaia.resources.tiles2d.PooledTextureData;
+import sep.gaia.resources.tiles2d.TileImageDecoder;
+
+import com.jogamp.opengl.util.texture.TextureData;
+import com.jogamp.opengl.util.texture.spi.PNGImage;
+
+/**
+ * Class to test <code>sep.gaia.resources.tiles2d.TileImageDecoder</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class TileImageDecoderTest {
+
+	/**
+	 * Checks that decoding an image into the pool yields the same pixels as JOGL.
+	 */
+	private static void assertDecodedLikeJogl(String path) throws IOException {
+		byte[] image = Files.readAllBytes(Paths.get(path));
+		PixelBufferPool pool = new PixelBufferPool(PixelBufferPool.BUFFER_SIZE);
+
+		TextureData data = TileImageDecoder.decode(null, image, "png", pool);
+		assertTrue(data instanceof PooledTextureData);
+		assertEquals(GL.GL_RGBA, data.getPixelFormat());
+
+		PNGImage expected = PNGImage.read(new ByteArrayInputStream(image));
+		assertEquals(expected.getWidth(), data.getWidth());
+		assertEquals(expected.getHeight(), data.getHeight());
+
+		ByteBuffer expectedPixels = expected.getData();
+		ByteBuffer pixels = (ByteBuffer) data.getBuffer();
+		int bytesPerPixel = expected.getBytesPerPixel();
+		for(int i = 0; i < data.getWidth() * data.getHeight(); i++) {
+			for(int c = 0; c < 3; c++) {
+				if(expectedPixels.get(i * bytesPerPixel + c) != pixels.get(i * 4 + c)) {
+					fail("Pixel " + i + " differs in " + path);
+				}
+			}
+			if(bytesPerPixel == 4) {
+				assertEquals(expectedPixels.get(i * 4 + 3), pixels.get(i * 4 + 3));
+			} else {
+				assertEquals((byte) 0xff, pixels.get(i * 4 + 3));
+			}
+		}
+
+		((PooledTextureData) data).release();
+		assertEquals(pool.getAllocatedCount(), pool.getFreeCount());
+	}
+
+	@Test
+	/**
+	 * Tests decoding indexed images of different bit-depths.
+	 */
+	public void testDecodePng() throws IOException {
+		assertDecodedLikeJogl("test/tiles/osm-5-1-1.png");
+		assertDecodedLikeJogl("test/tiles/osm-5-6-7.png");
+	}
+
+	@Test
+	/**
+	 * Tests that invalid images are rejected without losing the buffer.
+	 */
+	public void testInvalidImage() throws IOException {
+		byte[] image = Files.readAllBytes(Paths.get("test/tiles/osm-5-6-7.png"));
+		// Cut off the compressed pixels:
+		byte[] truncated = new byte[image.length / 2];
+		System.arraycopy(image, 0, truncated, 0, truncated.length);
+		PixelBufferPool pool = new PixelBufferPool(PixelBufferPool.BUFFER_SIZE);
+
+		try {
+			TileImageDecoder.decode(null, truncated, "png", pool);
+			fail("Truncated image decoded");
+
+		} catch (IOException e) {
+			// Expected.
+		}
+		assertEquals(pool.getAllocatedCount(), pool.getFreeCount());
+	}
+}
@@ -0,0 +1,122 @@
+package sep.gaia.resources.tiles2d.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Test;
+
+import sep.gaia.resources.AbstractLoaderWorker;
+import sep.gaia.resources.Cache;
+import sep.gaia.resources.DataResource;
+import sep.gaia.resources.ResultSink;
+import sep.gaia.resources.tiles2d.PixelBufferPool;
+import sep.gaia.resources.tiles2d.PooledTextureData;
+import sep.gaia.resources.tiles2d.Style;
+import sep.gaia.resources.tiles2d.TileLoaderWorker;
+import sep.gaia.resources.tiles2d.TileQuery;
+import sep.gaia.resources.tiles2d.TileResource;
+
+/**
+ * Class to test that a <code>TileLoaderWorker</code> gives up the pixels of the tiles
+ * nobody received from it.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class TileLoaderWorkerReleaseTest {
+
+	/**
+	 * The size of a slab of the pool used.
+	 */
+	private static final long SLAB_SIZE = (long) PixelBufferPool.BUFFER_SIZE * PixelBufferPool.BUFFERS_PER_SLAB;
+
+	/**
+	 * A cache answering every request with a tile of pooled pixels. Optionally the
+	 * worker requesting it is interrupted meanwhile.
+	 */
+	private static class PooledCache extends Cache<TileResource> {
+
+		private PixelBufferPool pool;
+		private AbstractLoaderWorker<?, ?> toInterrupt;
+		private PooledTextureData data;
+
+		public PooledCache(PixelBufferPool pool) {
+			this.pool = pool;
+		}
+
+		@Override
+		public TileResource get(String key) {
+			data = PooledTextureData.allocate(null, 256, 256, pool);
+			TileResource tile = new TileResource(1, 2, 3);
+			tile.setTextureData(data);
+			if(toInterrupt != null) {
+				toInterrupt.interrupt();
+			}
+			return tile;
+		}
+	}
+
+	/**
+	 * Creates a worker loading a single tile from <code>cache</code>.
+	 */
+	private static TileLoaderWorker createWorker(Cache<TileResource> cache, final List<TileResource> received) {
+		Style style = new Style("test", Collections.<Style.SubServer>emptyList(), "http://$s/$z/$x/$y.png");
+		TileResource dummy = new TileResource(1, 2, 3);
+		dummy.setStyle(style);
+		dummy.setDummy(true);
+
+		TileLoaderWorker worker = new TileLoaderWorker(
+				new TileQuery(Collections.<DataResource>singletonList(dummy), new Style.SubServer("localhost", 1)),
+				null, cache);
+		worker.setResultSink(new ResultSink<TileResource>() {
+			@Override
+			public boolean onResult(AbstractLoaderWorker<?, TileResource> worker, TileResource result) {
+				received.add(result);
+				return true;
+			}
+		});
+		return worker;
+	}
+
+	@Test
+	/**
+	 * Tests that the pixels of a tile are returned to the pool if the worker was
+	 * interrupted before handing the tile over.
+	 */
+	public void testReleaseWhenInterrupted() {
+		PixelBufferPool pool = new PixelBufferPool(SLAB_SIZE);
+		PooledCache cache = new PooledCache(pool);
+		List<TileResource> received = new LinkedList<>();
+		TileLoaderWorker worker = createWorker(cache, received);
+		cache.toInterrupt = worker;
+
+		worker.run();
+
+		assertTrue(received.isEmpty());
+		assertTrue(cache.data.isReleased());
+		assertEquals(PixelBufferPool.BUFFERS_PER_SLAB, pool.getFreeCount());
+	}
+
+	@Test
+	/**
+	 * Tests that the pixels of a tile handed over are left to the receiver.
+	 */
+	public void testKeepWhenPublished() {
+		PixelBufferPool pool = new PixelBufferPool(SLAB_SIZE);
+		PooledCache cache = new PooledCache(pool);
+		List<TileResource> received = new LinkedList<>();
+		TileLoaderWorker worker = createWorker(cache, received);
+
+		worker.run();
+
+		assertEquals(1, received.size());
+		assertFalse(cache.data.isReleased());
+		assertEquals(PixelBufferPool.BUFFERS_PER_SLAB - 1, pool.getFreeCount());
+		cache.data.release();
+	}
+}
@@ -0,0 +1,121 @@
+package sep.gaia.resources.tiles2d.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import sep.gaia.resources.DataResource;
+import sep.gaia.resources.tiles2d.Style;
+import sep.gaia.resources.tiles2d.Style.SubServer;
+import sep.gaia.resources.tiles2d.TilePrioritizer;
+import sep.gaia.resources.tiles2d.TileQuery;
+import sep.gaia.resources.tiles2d.TileResource;
+import sep.gaia.util.IntegerBoundingBox;
+import sep.gaia.util.IntegerVector3D;
+
+/**
+ * Class to test <code>sep.gaia.resources.tiles2d.TilePrioritizer</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class TilePrioritizerTest {
+
+	/**
+	 * The style of the tiles created.
+	 */
+	private static final Style STYLE = new Style("test", Arrays.asList(new SubServer("a.osm.de", 1)),
+			"http://$s/$z/$x/$y.png");
+
+	/**
+	 * Creates a dummy-tile.
+	 */
+	private static TileResource createDummy(int x, int y, int zoom) {
+		TileResource tile = new TileResource(new IntegerVector3D(x, y, zoom));
+		tile.setDummy(true);
+		tile.setStyle(STYLE);
+		return tile;
+	}
+
+	@Test
+	/**
+	 * Tests that tiles are ranked by their distance from the center.
+	 */
+	public void testDistance() {
+		// View centered in tile (5, 5):
+		TilePrioritizer prioritizer = new TilePrioritizer(5.5, 5.5, 10);
+
+		int center = prioritizer.getPriority(createDummy(5, 5, 10));
+		int neighbour = prioritizer.getPriority(createDummy(6, 5, 10));
+		int diagonal = prioritizer.getPriority(createDummy(6, 6, 10));
+		int far = prioritizer.getPriority(createDummy(0, 0, 10));
+
+		assertEquals(0, center);
+		assertTrue(center > neighbour);
+		assertTrue(neighbour > diagonal);
+		assertTrue(diagonal > far);
+	}
+
+	@Test
+	/**
+	 * Tests that tiles at the same distance are ranked by their zoom-difference.
+	 */
+	public void testZoom() {
+		// Both tiles have their center half a tile away from the center of the view:
+		TilePrioritizer prioritizer = new TilePrioritizer(5, 4.5, 10);
+
+		int sameZoom = prioritizer.getPriority(createDummy(4, 4, 10));
+		int parent = prioritizer.getPriority(createDummy(2, 2, 9));
+		assertTrue(sameZoom > parent);
+
+		// The distance outweighs the zoom:
+		int farSameZoom = prioritizer.getPriority(createDummy(8, 8, 10));
+		assertTrue(parent > farSameZoom);
+	}
+
+	@Test
+	/**
+	 * Tests that the center of a bounding-box of tiles is the center of the view
+	 * and that a query built from the priorities returns the center first.
+	 */
+	public void testQueryOrder() {
+		TilePrioritizer prioritizer = new TilePrioritizer(
+				new IntegerBoundingBox(new IntegerVector3D(0, 0, 3),
+						new IntegerVector3D(4, 4, 3)), 3);
+		assertEquals(2.5, prioritizer.getCenterX(), 1e-9);
+		assertEquals(2.5, prioritizer.getCenterY(), 1e-9);
+
+		// Add the tiles row by row, starting at the upper-left:
+		Map<DataResource, Integer> dummies = new LinkedHashMap<>();
+		for(int y = 0; y <= 4; y++) {
+			for(int x = 0; x <= 4; x++) {
+				TileResource dummy = createDummy(x, y, 3);
+				dummies.put(dummy, prioritizer.getPriority(dummy));
+			}
+		}
+		TileQuery query = new TileQuery(dummies);
+
+		Iterator<DataResource> iter = query.getResourcesByPriority().iterator();
+		TileResource first = (TileResource) iter.next();
+		assertEquals(2, first.getCoord().getX());
+		assertEquals(2, first.getCoord().getY());
+
+		// The corners come last:
+		int lastPriority = Integer.MAX_VALUE;
+		DataResource last = null;
+		for(DataResource current : query.getResourcesByPriority()) {
+			int priority = query.getPriority(current);
+			assertTrue(priority <= lastPriority);
+			lastPriority = priority;
+			last = current;
+		}
+		IntegerVector3D lastCoord = ((TileResource) last).getCoord();
+		assertTrue(lastCoord.getX() % 4 == 0 && lastCoord.getY() % 4 == 0);
+	}
+}
@@ -4,8 +4,10 @@ import static org.junit.Assert.assertEquals;
 
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import javax.media.opengl.GLProfile;
 
@@ -80,4 +82,40 @@ public class TileQuerySplitterTest {
 	assertEquals(6, numberOfSplittedQueries);
 
     }
+
+    @Test
+    /**
+     * Check that the tile of highest priority is in the first subquery and
+     * that the priorities are kept when splitting.
+     */
+    public void testSplitQueryKeepsPriorities() {
+	TileManager manager = new TileManager(GLProfile.getDefault());
+
+	List<Style.SubServer> subservers = new LinkedList<>();
+	subservers.add(new SubServer("a.osm.de", 2));
+	Style style = new Style("", subservers, "http://$s/style/$z/$x/$y.png");
+
+	Map<DataResource, Integer> tiledummies = new LinkedHashMap<>();
+	for (int x = 0; x < 8; x++) {
+	    TileResource dummy = new TileResource(new IntegerVector3D(x, 0, 3));
+	    dummy.setDummy(true);
+	    dummy.setStyle(style);
+	    // The tile at x = 5 is the most important one:
+	    tiledummies.put(dummy, -Math.abs(x - 5));
+	}
+	TileQuery query = new TileQuery(tiledummies);
+
+	Collection<TileQuery> splittedQueries = manager.splitQuery(query);
+	TileQuery first = splittedQueries.iterator().next();
+	TileResource firstTile = (TileResource) first.getResourcesByPriority()
+		.iterator().next();
+	assertEquals(5, firstTile.getCoord().getX());
+
+	for (TileQuery subQuery : splittedQueries) {
+	    for (DataResource resource : subQuery.getResources()) {
+		assertEquals(query.getPriority(resource),
+			subQuery.getPriority(resource));
+	    }
+	}
+    }
 }
@@ -0,0 +1,93 @@
+package sep.gaia.resources.tiles2d.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import sep.gaia.resources.tiles2d.TileResidencyTree;
+import sep.gaia.util.IntegerVector3D;
+
+/**
+ * Class to test <code>sep.gaia.resources.tiles2d.TileResidencyTree</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class TileResidencyTreeTest {
+
+	@Test
+	/**
+	 * Tests that the nearest resident ancestor is found within the levels permitted.
+	 */
+	public void testFindAncestor() {
+		TileResidencyTree tree = new TileResidencyTree();
+		tree.add(new IntegerVector3D(0, 0, 0));
+		tree.add(new IntegerVector3D(2, 1, 2));
+		assertEquals(2, tree.size());
+
+		IntegerVector3D ancestor = tree.findAncestor(new IntegerVector3D(9, 5, 4), 8);
+		assertEquals(new IntegerVector3D(2, 1, 2), ancestor);
+
+		// Tiles in another quadrant only have the root:
+		ancestor = tree.findAncestor(new IntegerVector3D(1, 14, 4), 8);
+		assertEquals(new IntegerVector3D(0, 0, 0), ancestor);
+		assertNull(tree.findAncestor(new IntegerVector3D(1, 14, 4), 3));
+
+		// A tile is not its own ancestor:
+		assertEquals(new IntegerVector3D(0, 0, 0), tree.findAncestor(new IntegerVector3D(2, 1, 2), 8));
+	}
+
+	@Test
+	/**
+	 * Tests that the nearest resident descendants are found.
+	 */
+	public void testFindDescendants() {
+		TileResidencyTree tree = new TileResidencyTree();
+		tree.add(new IntegerVector3D(4, 6, 4));
+		tree.add(new IntegerVector3D(5, 6, 4));
+		// Covered by (4, 6, 4), which is resident itself:
+		tree.add(new IntegerVector3D(8, 12, 5));
+		// Covered by (5, 7, 4), which is not resident:
+		tree.add(new IntegerVector3D(11, 14, 5));
+		tree.add(new IntegerVector3D(11, 15, 5));
+
+		List<IntegerVector3D> descendants = tree.findDescendants(new IntegerVector3D(2, 3, 3), 2);
+		assertEquals(4, descendants.size());
+		assertTrue(descendants.contains(new IntegerVector3D(4, 6, 4)));
+		assertTrue(descendants.contains(new IntegerVector3D(5, 6, 4)));
+		assertTrue(descendants.contains(new IntegerVector3D(11, 14, 5)));
+		assertTrue(descendants.contains(new IntegerVector3D(11, 15, 5)));
+		assertFalse(descendants.contains(new IntegerVector3D(8, 12, 5)));
+
+		// The tiles of the next level only:
+		assertEquals(2, tree.findDescendants(new IntegerVector3D(2, 3, 3), 1).size());
+	}
+
+	@Test
+	/**
+	 * Tests that removed tiles are not found any more.
+	 */
+	public void testRemove() {
+		TileResidencyTree tree = new TileResidencyTree();
+		IntegerVector3D parent = new IntegerVector3D(1, 1, 1);
+		IntegerVector3D child = new IntegerVector3D(3, 2, 2);
+		tree.add(parent);
+		tree.add(child);
+		assertTrue(tree.contains(child));
+
+		assertTrue(tree.remove(child));
+		assertFalse(tree.remove(child));
+		assertFalse(tree.contains(child));
+		assertTrue(tree.findDescendants(parent, 4).isEmpty());
+		assertEquals(parent, tree.findAncestor(child, 4));
+
+		assertTrue(tree.remove(parent));
+		assertNull(tree.findAncestor(child, 4));
+		assertEquals(0, tree.size());
+	}
+}
@@ -0,0 +1,71 @@
+package sep.gaia.resources.tiles2d.test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import sep.gaia.resources.CacheValidators;
+import sep.gaia.resources.tiles2d.TileResource;
+import sep.gaia.resources.tiles2d.TileRevalidator;
+
+/**
+ * Class to test the <code>TileRevalidator</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class TileRevalidatorTest {
+
+	/**
+	 * A cache without tiles counting how often it was asked for expiring ones.
+	 */
+	private static class CountingTiles implements TileRevalidator.Tiles {
+
+		private boolean online;
+		private int requestCount;
+
+		public CountingTiles(boolean online) {
+			this.online = online;
+		}
+
+		@Override
+		public boolean isOnline() {
+			return online;
+		}
+
+		@Override
+		public List<TileResource> getExpiringTiles(long time, int count, Collection<String> excluded) {
+			requestCount++;
+			return Collections.emptyList();
+		}
+
+		@Override
+		public void refresh(TileResource tile, CacheValidators validators) {
+		}
+
+		@Override
+		public void replace(TileResource tile, byte[] image, CacheValidators validators) {
+		}
+	}
+
+	@Test
+	/**
+	 * Tests that no tile is revalidated while the cache is offline.
+	 */
+	public void testOffline() {
+		CountingTiles tiles = new CountingTiles(false);
+		TileRevalidator revalidator = new TileRevalidator(tiles);
+
+		assertEquals(0, revalidator.revalidateExpiring());
+		assertEquals(0, tiles.requestCount);
+
+		tiles.online = true;
+		assertEquals(0, revalidator.revalidateExpiring());
+		assertEquals(1, tiles.requestCount);
+		revalidator.close();
+	}
+}
@@ -0,0 +1,66 @@
+package sep.gaia.resources.tiles2d.test;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import sep.gaia.resources.tiles2d.TileSeeder;
+import sep.gaia.resources.tiles2d.TileSeeder.TileRange;
+import sep.gaia.util.FloatBoundingBox;
+import sep.gaia.util.FloatVector3D;
+import sep.gaia.util.IntegerVector3D;
+
+/**
+ * Class to test <code>sep.gaia.resources.tiles2d.TileSeeder</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class TileSeederTest {
+
+	/**
+	 * Creates a region from its corners in geographic coordinates.
+	 */
+	private static FloatBoundingBox createRegion(float north, float west, float south, float east) {
+		return new FloatBoundingBox(new FloatVector3D(north, west, 0), new FloatVector3D(south, east, 0));
+	}
+
+	@Test
+	/**
+	 * Tests the tiles covering a region.
+	 */
+	public void testTileRange() {
+		FloatBoundingBox region = createRegion(49.0f, 8.4f, 48.9f, 8.5f);
+		TileRange range = TileSeeder.getTileRange(region, 10);
+		assertEquals(10, range.getZoom());
+		assertEquals(535, range.getMinX());
+		assertEquals(351, range.getMinY());
+		assertEquals(536, range.getMaxX());
+		assertEquals(352, range.getMaxY());
+		assertEquals(4, range.getTileCount());
+
+		// The tiles are enumerated row by row:
+		IntegerVector3D tile = range.getTile(1);
+		assertEquals(536, tile.getX());
+		assertEquals(351, tile.getY());
+		tile = range.getTile(2);
+		assertEquals(535, tile.getX());
+		assertEquals(352, tile.getY());
+	}
+
+	@Test
+	/**
+	 * Tests that regions beyond the projection are limited to the existing tiles.
+	 */
+	public void testWholeWorld() {
+		FloatBoundingBox world = createRegion(90, -180, -90, 180);
+		assertEquals(1, TileSeeder.getTileRange(world, 0).getTileCount());
+
+		TileRange range = TileSeeder.getTileRange(world, 3);
+		assertEquals(0, range.getMinX());
+		assertEquals(0, range.getMinY());
+		assertEquals(7, range.getMaxX());
+		assertEquals(7, range.getMaxY());
+		assertEquals(64, range.getTileCount());
+	}
+}
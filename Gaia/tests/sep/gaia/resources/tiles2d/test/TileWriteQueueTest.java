@@ -0,0 +1,168 @@
+package sep.gaia.resources.tiles2d.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import sep.gaia.resources.tiles2d.Style;
+import sep.gaia.resources.tiles2d.Style.SubServer;
+import sep.gaia.resources.tiles2d.TileResource;
+import sep.gaia.resources.tiles2d.TileWriteQueue;
+
+/**
+ * Class to test <code>sep.gaia.resources.tiles2d.TileWriteQueue</code>.
+ *
+ * @author Matthias Fisch
+ *
+ */
+public class TileWriteQueueTest {
+
+	/**
+	 * The style of the tiles created.
+	 */
+	private static final Style STYLE = new Style("test", Arrays.asList(new SubServer("a.osm.de", 1)),
+			"http://$s/$z/$x/$y.png");
+
+	/**
+	 * Creates a tile to write.
+	 */
+	private static TileResource createTile(int x, int y, int zoom) {
+		TileResource tile = new TileResource(x, y, zoom);
+		tile.setStyle(STYLE);
+		return tile;
+	}
+
+	/**
+	 * Writer recording the tiles written, optionally waiting for being released.
+	 */
+	private static class RecordingWriter implements TileWriteQueue.Writer {
+
+		/**
+		 * The tiles written in order.
+		 */
+		private List<TileResource> written = new CopyOnWriteArrayList<>();
+
+		/**
+		 * The names of the threads the tiles were written by in order.
+		 */
+		private List<String> threads = new CopyOnWriteArrayList<>();
+
+		/**
+		 * Released when writing may continue.
+		 */
+		private CountDownLatch release = new CountDownLatch(0);
+
+		@Override
+		public void write(TileResource tile) {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			written.add(tile);
+			threads.add(Thread.currentThread().getName());
+		}
+	}
+
+	@Test
+	/**
+	 * Tests that tiles are written in order by the thread of the queue.
+	 */
+	public void testWriteInOrder() {
+		RecordingWriter writer = new RecordingWriter();
+		TileWriteQueue queue = new TileWriteQueue(writer);
+		for(int x = 0; x < 10; x++) {
+			queue.enqueue(createTile(x, 0, 5));
+		}
+		queue.flush();
+
+		assertEquals(0, queue.getPendingCount());
+		assertEquals(10, writer.written.size());
+		for(int x = 0; x < 10; x++) {
+			assertEquals(x, writer.written.get(x).getCoord().getX());
+			assertEquals("TileCacheWriter", writer.threads.get(x));
+		}
+		queue.close();
+	}
+
+	@Test
+	/**
+	 * Tests that tiles not written yet can be retrieved.
+	 */
+	public void testPending() {
+		RecordingWriter writer = new RecordingWriter();
+		writer.release = new CountDownLatch(1);
+		TileWriteQueue queue = new TileWriteQueue(writer);
+
+		TileResource first = createTile(1, 1, 5);
+		TileResource second = createTile(1, 1, 5);
+		queue.enqueue(first);
+		queue.enqueue(second);
+		// The tile queued last is returned:
+		assertSame(second, queue.getPending(first.getKey()));
+		assertEquals(2, queue.getPendingCount());
+
+		writer.release.countDown();
+		queue.flush();
+		assertNull(queue.getPending(first.getKey()));
+		queue.close();
+	}
+
+	@Test
+	/**
+	 * Tests that the calling thread writes the tiles if the queue is full or closed.
+	 */
+	public void testBackpressure() throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		RecordingWriter writer = new RecordingWriter() {
+			@Override
+			public void write(TileResource tile) {
+				// Block the writer-thread on the first tile:
+				if(tile.getCoord().getY() == 0) {
+					started.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				super.write(tile);
+			}
+		};
+		TileWriteQueue queue = new TileWriteQueue(writer);
+		queue.enqueue(createTile(0, 0, 15));
+		started.await();
+
+		// Fill the queue:
+		for(int x = 0; x < TileWriteQueue.MAXIMUM_PENDING; x++) {
+			queue.enqueue(createTile(x, 1, 15));
+		}
+		assertTrue(writer.written.isEmpty());
+
+		// The queue is full, so this one is written by the caller:
+		TileResource overflow = createTile(0, 2, 15);
+		queue.enqueue(overflow);
+		assertEquals(1, writer.written.size());
+		assertSame(overflow, writer.written.get(0));
+		assertEquals(Thread.currentThread().getName(), writer.threads.get(0));
+
+		release.countDown();
+		queue.flush();
+		assertEquals(TileWriteQueue.MAXIMUM_PENDING + 2, writer.written.size());
+
+		// Tiles queued after closing are written by the caller:
+		queue.close();
+		queue.enqueue(createTile(1, 2, 15));
+		assertEquals(TileWriteQueue.MAXIMUM_PENDING + 3, writer.written.size());
+		assertEquals(Thread.currentThread().getName(), writer.threads.get(writer.threads.size() - 1));
+	}
+}